@@ -17,6 +17,10 @@ import android.util.Log;
 
 import androidx.core.app.NotificationCompat;
 
+import com.pipiqiang.qcamera.imaging.FrameQuality;
+
+import java.io.File;
+
 public class CameraService extends Service {
     
     private static final String TAG = "CameraService";
@@ -27,6 +31,9 @@ public class CameraService extends Service {
     public static final String ACTION_SHOW_LAST_IMAGE = "com.pipiqiang.qcamera.action.SHOW_LAST_IMAGE"; // 新增广播动作
     
     private static final int NOTIFICATION_ID = 1;
+    private static final int MAX_OPEN_RETRIES = 3; // 相机被占用时的最大重试次数
+    private static final long MAX_AVAILABILITY_WAIT_MS = 60 * 1000L; // 等待相机可用的上限
+    private static final int UPLOAD_RETRY_BATCH = 3; // 每次拍照后重试上传失败照片的数量
     private static final String CHANNEL_ID = "CameraServiceChannel";
     
     private Handler handler;
@@ -41,6 +48,12 @@ public class CameraService extends Service {
     // 拍照计数器
     private CaptureCounter captureCounter;
     
+    // 帧质量门限，本次拍照服务内复用并累计拒绝统计
+    private FrameQualityGate qualityGate;
+    
+    // 是否已开始跟踪相机占用状态（与 stopCapture 配对）
+    private boolean trackingAvailability = false;
+    
     @Override
     public void onCreate() {
         super.onCreate();
@@ -50,6 +63,12 @@ public class CameraService extends Service {
         // 初始化计数器
         captureCounter = new CaptureCounter(getApplicationContext());
         
+        // 旧的平铺照片目录在后台迁移到按时间分片的目录
+        ShardMigrator.startIfNeeded(getApplicationContext());
+        
+        // 清理上次进程中断的照片写入
+        PhotoWriteRecovery.recoverAsync(getApplicationContext());
+        
         // 获取电源锁
         PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
         wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "CameraApp::ServiceWakelockTag");
@@ -105,6 +124,20 @@ public class CameraService extends Service {
         statusIntent.putExtra("isRunning", true);
         sendBroadcast(statusIntent);
         
+        SettingsManager settingsManager = new SettingsManager(this);
+        qualityGate = new FrameQualityGate(settingsManager.getQualityGateMode(),
+                settingsManager.getQualityMinBrightness(), settingsManager.getQualityMaxOverexposedPercent(),
+                settingsManager.getQualityMinSharpness());
+        
+        // 服务运行期间跟踪相机占用状态
+        CameraAvailabilityTracker.get(this).startTracking();
+        trackingAvailability = true;
+        
+        // 旧照片归档在充电且未拍照时由 WorkManager 执行
+        ArchiveWorker.schedule(this, settingsManager);
+        // 开始拍照前先在后台测量一次剩余空间
+        StorageHousekeeper.get(this).requestHousekeeping();
+        
         // 创建并启动周期性拍照任务
         createCaptureTask();
         
@@ -115,12 +148,21 @@ public class CameraService extends Service {
     private void stopCapture() {
         Log.d(TAG, "停止拍照服务");
         isCapturing = false;
+        if (qualityGate != null && qualityGate.isEnabled()) {
+            Log.d(TAG, "本次服务帧质量统计: " + qualityGate.describeStats());
+        }
         
         // 释放电源锁
         if (wakeLock != null && wakeLock.isHeld()) {
             wakeLock.release();
         }
         
+        // 停止跟踪相机占用状态（onDestroy 也会调用 stopCapture，只释放一次）
+        if (trackingAvailability) {
+            trackingAvailability = false;
+            CameraAvailabilityTracker.get(this).stopTracking();
+        }
+        
         // 发送广播通知MainActivity服务已停止
         Intent statusIntent = new Intent("com.pipiqiang.qcamera.SERVICE_STATUS");
         statusIntent.putExtra("isRunning", false);
@@ -136,6 +178,9 @@ public class CameraService extends Service {
             captureCounter.resetSessionCount();
         }
         
+        // 把批量同步策略下还未落盘的照片同步掉
+        PhotoWriteRecovery.writer(this).flush();
+        
         // 发送计数重置广播
         Intent countResetIntent = new Intent("com.pipiqiang.qcamera.COUNT_RESET");
         sendBroadcast(countResetIntent);
@@ -159,8 +204,10 @@ public class CameraService extends Service {
                     // 执行拍照
                     executeCapture();
                     
-                    // 继续下一次拍照
-                    handler.postDelayed(this, intervalSeconds * 1000L);
+                    // 继续下一次拍照（存储即将耗尽时按预测拉长间隔）
+                    long floorBytes = StorageManager.floorBytes(new SettingsManager(CameraService.this).getMinSpaceMB());
+                    handler.postDelayed(this, StorageMonitor.get(CameraService.this)
+                            .adjustIntervalMs(intervalSeconds * 1000L, floorBytes));
                 }
             }
         };
@@ -186,10 +233,38 @@ public class CameraService extends Service {
                     StorageManager storageManager = new StorageManager(CameraService.this);
                     EmailManager emailManager = new EmailManager(CameraService.this);
                     
+                    // 相机被其他应用占用时推迟本周期，最多等待半个拍摄间隔，仍被占用则跳过
+                    CameraAvailabilityTracker tracker = CameraAvailabilityTracker.get(CameraService.this);
+                    String targetCameraId = tracker.resolveCameraId(cameraIndex);
+                    if (!tracker.isAvailable(targetCameraId)) {
+                        long waitMs = Math.min(settingsManager.getCaptureInterval() * 1000L / 2, MAX_AVAILABILITY_WAIT_MS);
+                        tracker.recordDeferredCycle(targetCameraId);
+                        Log.w(TAG, "相机被占用，推迟本次拍照，最多等待 " + waitMs + "ms");
+                        if (!tracker.awaitAvailable(targetCameraId, waitMs)) {
+                            tracker.recordSkippedCycle(targetCameraId);
+                            Log.w(TAG, "相机仍被占用，跳过本次拍照 - " + tracker.describeStats(targetCameraId));
+                            return;
+                        }
+                    }
+                    
                     // 设置摄像头索引
                     cameraManager.setSelectedCameraIndex(cameraIndex);
                     // 设置闪光灯三态
                     cameraManager.setFlashMode(flashMode);
+                    // 预事件缓冲
+                    cameraManager.setPreEventBuffer(settingsManager.isPreEventEnabled(), settingsManager.getPreEventSeconds());
+                    cameraManager.setThumbnailOutputEnabled(settingsManager.isThumbnailOutputEnabled());
+                    cameraManager.setZslEnabled(settingsManager.isZslEnabled());
+                    cameraManager.setJpegQuality(StorageMonitor.get(CameraService.this).adjustJpegQuality(
+                            settingsManager.getCameraQuality(), StorageManager.floorBytes(settingsManager.getMinSpaceMB())));
+                    cameraManager.setHdrEnabled(settingsManager.isHdrEnabled());
+                    cameraManager.setCropRegion(settingsManager.getCropRegion(cameraIndex));
+                    cameraManager.setPrivacyMasks(settingsManager.getPrivacyMasks());
+                    cameraManager.setQualityGate(qualityGate);
+                    PhotoWriteRecovery.configure(CameraService.this, settingsManager);
+                    cameraManager.setSegmentStorage(settingsManager.isSegmentStorageEnabled());
+                    cameraManager.setLowLightMode(settingsManager.getLowLightMode(), settingsManager.getLowLightFrames(),
+                            settingsManager.getLowLightIsoThreshold(), settingsManager.getLowLightExposureMs());
                     Log.d(TAG, "设置相机管理器参数 - 摄像头索引: " + cameraIndex + ", 闪光模式: " + flashMode);
                     
                     // 设置TextureView（虽然在服务中不直接使用，但保持接口一致性）
@@ -204,17 +279,33 @@ public class CameraService extends Service {
                         }
                     });
                     
+                    // 只有剩余空间低于硬水位时才等待后台清理
+                    if (!StorageHousekeeper.get(CameraService.this).awaitCaptureSpace()) {
+                        Log.w(TAG, "清理后剩余空间仍低于下限，照常拍照");
+                    }
+                    
                     // 启动后台线程
                     cameraManager.startBackgroundThread();
                     
                     // 执行拍照操作
-                    String photoPath = takePicture(cameraManager);
+                    String photoPath;
+                    long captureToken = CaptureActivity.begin();
+                    try {
+                        photoPath = takePicture(cameraManager, tracker, targetCameraId);
+                    } finally {
+                        CaptureActivity.end(captureToken);
+                    }
+                    long shutterLagNs = cameraManager.getLastShutterLagNs();
+                    if (shutterLagNs != Long.MIN_VALUE) {
+                        Log.d(TAG, "拍照方式: " + cameraManager.getLastCaptureMode()
+                                + ", 触发到曝光延迟: " + (shutterLagNs / 1000000) + "ms");
+                    }
                     
                     // 处理照片（保存或发送邮件）
                     processPicture(photoPath, settingsManager, storageManager, emailManager);
                     
-                    // 检查存储空间并清理
-                    checkAndCleanStorage(settingsManager, storageManager);
+                    // 存储检查和清理交给后台整理线程，不等待
+                    StorageHousekeeper.get(CameraService.this).requestHousekeeping();
                     
                     // 递增计数器
                     if (captureCounter != null) {
@@ -232,6 +323,8 @@ public class CameraService extends Service {
                     sendBroadcast(showLastImageIntent);
                     
                     Log.d(TAG, "拍照任务完成");
+                } catch (FrameQualityGate.FrameRejectedException e) {
+                    Log.w(TAG, e.getMessage() + "，本次服务: " + qualityGate.describeStats());
                 } catch (Exception e) {
                     Log.e(TAG, "执行拍照任务时出错", e);
                 } finally {
@@ -251,7 +344,8 @@ public class CameraService extends Service {
         captureThread.start();
     }
     
-    private String takePicture(CustomCameraManager cameraManager) throws Exception {
+    private String takePicture(CustomCameraManager cameraManager, CameraAvailabilityTracker tracker,
+                               String cameraId) throws Exception {
         // 实现拍照逻辑
         Log.d(TAG, "正在拍照...");
         
@@ -282,21 +376,32 @@ public class CameraService extends Service {
             }
         });
         
-        // 打开相机
-        Log.d(TAG, "打开相机");
-        cameraManager.openCamera();
-        
-        // 等待一段时间确保相机打开
-        try {
-            Thread.sleep(2000);
-        } catch (InterruptedException e) {
-            // 忽略中断异常
-        }
-        
-        // 检查相机是否成功打开
-        if (!cameraManager.isCameraOpened()) {
-            Log.e(TAG, "相机打开失败");
-            throw new Exception("相机打开失败");
+        // 打开相机；因相机被占用而失败时按指数退避重试，相机重新可用时提前重试
+        int attempts = 0;
+        while (true) {
+            Log.d(TAG, "打开相机");
+            cameraManager.openCamera();
+            
+            // 等待一段时间确保相机打开
+            try {
+                Thread.sleep(2000);
+            } catch (InterruptedException e) {
+                // 忽略中断异常
+            }
+            
+            // 检查相机是否成功打开
+            if (cameraManager.isCameraOpened()) {
+                tracker.recordOpenSuccess(cameraId);
+                break;
+            }
+            boolean contended = cameraManager.isLastOpenContended();
+            tracker.recordOpenFailure(cameraId, contended);
+            cameraManager.closeCamera();
+            if (!contended || ++attempts > MAX_OPEN_RETRIES) {
+                Log.e(TAG, "相机打开失败 - " + tracker.describeStats(cameraId));
+                throw new Exception("相机打开失败");
+            }
+            tracker.awaitRetry(cameraId);
         }
         
         // 拍照
@@ -346,18 +451,38 @@ public class CameraService extends Service {
         // 根据设置决定是保存照片还是发送邮件
         Log.d(TAG, "处理照片: " + photoPath);
         
+        PhotoCatalog catalog = PhotoCatalog.get(this);
+        
+        // 被质量门限标记的照片只保留在本地，不发送邮件也不上传
+        if (qualityGate != null && qualityGate.isEnabled()
+                && FrameQualityGate.readFlag(photoPath) != FrameQuality.Verdict.OK) {
+            Log.w(TAG, "照片被标记为质量不合格，跳过邮件和上传: " + photoPath);
+            catalog.setEmailState(photoPath, PhotoCatalog.STATE_SKIPPED);
+            catalog.setUploadState(photoPath, PhotoCatalog.STATE_SKIPPED);
+            return;
+        }
+        
         if (settingsManager.isEmailSendingEnabled()) {
             // 发送邮件
             String emailAddress = settingsManager.getEmailAddress();
-            if (emailManager.isValidEmail(emailAddress)) {
+            String contentHash = contentHashOf(catalog, photoPath);
+            String channel = "email:" + emailAddress;
+            if (emailManager.isValidEmail(emailAddress) && catalog.isDelivered(contentHash, channel)) {
+                // 相同内容已经发送到这个邮箱
+                Log.d(TAG, "照片内容已发送过，跳过邮件: " + photoPath);
+                catalog.setEmailState(photoPath, PhotoCatalog.STATE_DONE);
+            } else if (emailManager.isValidEmail(emailAddress)) {
                 boolean success = emailManager.sendPhotoByEmail(photoPath, emailAddress);
                 if (success) {
                     Log.d(TAG, "照片已发送到邮箱");
+                    catalog.markDelivered(contentHash, channel);
                 } else {
                     Log.e(TAG, "发送邮件失败");
                 }
+                catalog.setEmailState(photoPath, success ? PhotoCatalog.STATE_DONE : PhotoCatalog.STATE_FAILED);
             } else {
                 Log.e(TAG, "邮箱地址无效");
+                catalog.setEmailState(photoPath, PhotoCatalog.STATE_FAILED);
             }
         } else {
             // 照片已保存到默认位置，无需额外操作
@@ -366,28 +491,59 @@ public class CameraService extends Service {
 
         // 云存储自动上传与成功后删除
         if (settingsManager.isCloudEnabled() && settingsManager.isCloudAutoUploadEnabled()) {
-            try {
-                performCloudUpload(photoPath, settingsManager);
-            } catch (Exception e) {
-                Log.e(TAG, "云上传失败", e);
+            uploadAndRecord(catalog, photoPath, settingsManager);
+            
+            // 从照片目录按状态索引取出之前上传失败的照片重试，不遍历目录
+            for (PhotoCatalog.Entry entry : catalog.withUploadState(PhotoCatalog.STATE_FAILED, UPLOAD_RETRY_BATCH)) {
+                if (!entry.path.equals(photoPath)) {
+                    Log.d(TAG, "重试上传: " + entry.path);
+                    uploadAndRecord(catalog, entry.path, settingsManager);
+                }
             }
         }
     }
+    
+    private void uploadAndRecord(PhotoCatalog catalog, String photoPath, SettingsManager settingsManager) {
+        if (!PhotoStorages.forPath(this, photoPath).exists(photoPath)) {
+            if (ShardMigrator.isMoving(this, photoPath)) {
+                // 正在被迁移到分片目录，目录中的路径更新后下次再重试
+                Log.d(TAG, "照片正在迁移，稍后上传: " + photoPath);
+                return;
+            }
+            // 文件已不存在（被外部删除），移除目录记录，避免一直占着失败重试的名额
+            Log.w(TAG, "照片文件不存在，移除记录: " + photoPath);
+            catalog.remove(photoPath);
+            return;
+        }
+        // 哈希要在上传前取：上传成功后删除本地文件时记录会随文件移除
+        String contentHash = contentHashOf(catalog, photoPath);
+        String channel = "upload:" + settingsManager.getCloudProviderRaw();
+        if (catalog.isDelivered(contentHash, channel)) {
+            Log.d(TAG, "照片内容已上传过，跳过上传: " + photoPath);
+            catalog.setUploadState(photoPath, PhotoCatalog.STATE_DONE);
+            return;
+        }
+        catalog.setUploadState(photoPath, PhotoCatalog.STATE_PENDING);
+        try {
+            performCloudUpload(photoPath, settingsManager);
+            catalog.markDelivered(contentHash, channel);
+            // 成功后删除本地文件时记录已随文件移除，更新不会生效
+            catalog.setUploadState(photoPath, PhotoCatalog.STATE_DONE);
+        } catch (Exception e) {
+            Log.e(TAG, "云上传失败", e);
+            catalog.setUploadState(photoPath, PhotoCatalog.STATE_FAILED);
+        }
+    }
+
+    private static String contentHashOf(PhotoCatalog catalog, String photoPath) {
+        PhotoCatalog.Entry entry = catalog.find(photoPath);
+        return entry != null ? entry.contentHash : null;
+    }
 
     private void performCloudUpload(String photoPath, SettingsManager settingsManager) throws Exception {
         CloudUploadHelper.upload(this, settingsManager, photoPath);
     }
     
-    private void checkAndCleanStorage(SettingsManager settingsManager, StorageManager storageManager) {
-        // 检查存储空间并在必要时清理旧照片
-        Log.d(TAG, "检查存储空间...");
-        
-        boolean autoClean = settingsManager.isAutoCleanEnabled();
-        int minSpaceMB = settingsManager.getMinSpaceMB();
-        
-        storageManager.checkAndCleanStorage(autoClean, minSpaceMB);
-    }
-    
     private int getCaptureInterval() {
         SettingsManager settingsManager = new SettingsManager(this);
         return settingsManager.getCaptureInterval();
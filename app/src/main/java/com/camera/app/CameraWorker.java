@@ -10,6 +10,7 @@ import androidx.work.WorkerParameters;
 public class CameraWorker extends Worker {
     
     private static final String TAG = "CameraWorker";
+    private static final long AVAILABILITY_REPORT_TIMEOUT_MS = 500; // 等待相机状态回调的最长时间
     
     public CameraWorker(@NonNull Context context, @NonNull WorkerParameters params) {
         super(context, params);
@@ -27,17 +28,42 @@ public class CameraWorker extends Worker {
             StorageManager storageManager = new StorageManager(getApplicationContext());
             EmailManager emailManager = new EmailManager(getApplicationContext());
             
+            // 相机被其他应用占用时交给WorkManager按退避策略稍后重试
+            CameraAvailabilityTracker tracker = CameraAvailabilityTracker.get(getApplicationContext());
+            tracker.startTracking();
+            try {
+                String cameraId = tracker.resolveCameraId(0);
+                if (!tracker.awaitReportedAvailable(cameraId, AVAILABILITY_REPORT_TIMEOUT_MS)) {
+                    tracker.recordDeferredCycle(cameraId);
+                    Log.w(TAG, "相机被占用，稍后重试 - " + tracker.describeStats(cameraId));
+                    return Result.retry();
+                }
+            } finally {
+                tracker.stopTracking();
+            }
+            
+            // 只有剩余空间低于硬水位时才等待后台清理
+            if (!StorageHousekeeper.get(getApplicationContext()).awaitCaptureSpace()) {
+                Log.w(TAG, "清理后剩余空间仍低于下限，照常拍照");
+            }
+            
             // 启动后台线程
             cameraManager.startBackgroundThread();
             
             // 执行拍照操作
-            String photoPath = takePicture(cameraManager);
+            String photoPath;
+            long captureToken = CaptureActivity.begin();
+            try {
+                photoPath = takePicture(cameraManager);
+            } finally {
+                CaptureActivity.end(captureToken);
+            }
             
             // 处理照片（保存或发送邮件）
             processPicture(photoPath, settingsManager, storageManager, emailManager);
             
-            // 检查存储空间并清理
-            checkAndCleanStorage(settingsManager, storageManager);
+            // 存储检查和清理交给后台整理线程，不等待
+            StorageHousekeeper.get(getApplicationContext()).requestHousekeeping();
             
             // 停止后台线程
             cameraManager.stopBackgroundThread();
@@ -88,6 +114,11 @@ public class CameraWorker extends Worker {
             // 忽略中断异常
         }
         
+        if (!cameraManager.isCameraOpened()) {
+            cameraManager.closeCamera();
+            throw new Exception("相机打开失败");
+        }
+        
         // 拍照
         Log.d(TAG, "执行拍照");
         cameraManager.takePicture();
@@ -151,14 +182,4 @@ public class CameraWorker extends Worker {
     private void performCloudUpload(String photoPath, SettingsManager settingsManager) throws Exception {
         CloudUploadHelper.upload(getApplicationContext(), settingsManager, photoPath);
     }
-    
-    private void checkAndCleanStorage(SettingsManager settingsManager, StorageManager storageManager) {
-        // 检查存储空间并在必要时清理旧照片
-        Log.d(TAG, "检查存储空间...");
-        
-        boolean autoClean = settingsManager.isAutoCleanEnabled();
-        int minSpaceMB = settingsManager.getMinSpaceMB();
-        
-        storageManager.checkAndCleanStorage(autoClean, minSpaceMB);
-    }
 }
\ No newline at end of file
@@ -8,6 +8,7 @@ import com.pipiqiang.qcamera.storage.CloudStorageFactory;
 
 import java.io.File;
 import java.text.SimpleDateFormat;
+import java.util.Collections;
 import java.util.Date;
 
 public class CloudUploadHelper {
@@ -16,8 +17,11 @@ public class CloudUploadHelper {
 
     public static void upload(Context context, SettingsManager settingsManager, String photoPath) throws Exception {
         if (photoPath == null || photoPath.isEmpty()) return;
-        File file = new File(photoPath);
-        if (!file.exists()) return;
+        PhotoStorage photoStorage = PhotoStorages.forPath(context, photoPath);
+        if (!photoStorage.exists(photoPath)) return;
+        // 云存储接口需要文件，段存储中的照片先导出到缓存目录
+        File file = photoStorage.toLocalFile(photoPath, context.getCacheDir());
+        boolean scratchCopy = SegmentPhotoStorage.isSegmentPath(photoPath);
 
         String filename = file.getName();
         SimpleDateFormat sdf = new SimpleDateFormat("yyyy/MM/dd");
@@ -47,11 +51,18 @@ public class CloudUploadHelper {
         );
 
         CloudStorage storage = CloudStorageFactory.create(context.getApplicationContext(), cfg);
-        storage.upload(key, file);
+        try {
+            storage.upload(key, file);
+        } finally {
+            if (scratchCopy) {
+                file.delete();
+            }
+        }
 
         if (settingsManager.isCloudDeleteOnSuccessEnabled()) {
-            boolean deleted = file.delete();
-            Log.d(TAG, "上传成功，删除本地文件: " + deleted);
+            // 与其它删除一样走删除队列：目录记录当场移除，照片、缩略图和预事件帧在后台删除
+            DeletionService.get(context).deleteNow(Collections.singletonList(photoPath));
+            Log.d(TAG, "上传成功，已提交删除本地照片: " + photoPath);
         }
     }
 }
\ No newline at end of file
@@ -4,7 +4,9 @@ import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.ImageFormat;
+import android.graphics.Rect;
 import android.graphics.SurfaceTexture;
+import android.graphics.YuvImage;
 import android.hardware.camera2.CameraAccessException;
 import android.hardware.camera2.CameraCaptureSession;
 import android.hardware.camera2.CameraCharacteristics;
@@ -13,44 +15,50 @@ import android.hardware.camera2.CameraManager;
 import android.hardware.camera2.CameraMetadata;
 import android.hardware.camera2.CaptureFailure;
 import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.CaptureResult;
 import android.hardware.camera2.TotalCaptureResult;
+import android.hardware.camera2.params.InputConfiguration;
 import android.hardware.camera2.params.StreamConfigurationMap;
+import android.media.ExifInterface;
 import android.media.Image;
 import android.media.ImageReader;
+import android.media.ImageWriter;
 import android.os.Environment;
 import android.os.Handler;
-import android.os.HandlerThread;
+import android.os.SystemClock;
 import android.util.Log;
+import android.util.Range;
 import android.util.Size;
 import android.view.Surface;
 import android.view.TextureView;
+
+import com.pipiqiang.qcamera.imaging.FrameQuality;
+import com.pipiqiang.qcamera.imaging.PrivacyMask;
 import android.content.Intent;
 import android.media.MediaScannerConnection; // 添加媒体扫描连接导入
 import android.net.Uri;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.Date;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Locale;
 
 public class CustomCameraManager {
     
     private static final String TAG = "CustomCameraManager";
+    private static final int ZSL_QUEUE_SIZE = 4; // ZSL帧队列保留的全分辨率帧数
     
     private Context context;
     private CameraDevice cameraDevice;
     private CameraCaptureSession captureSession;
     private ImageReader imageReader;
-    private Handler backgroundHandler;
-    private HandlerThread backgroundThread;
+    private Handler backgroundHandler; // 进程共享的相机线程，见 CameraThreadOwner
     private String cameraId;
     private Size previewSize; // 实际使用的预览尺寸
     private Size captureSize; // 实际使用的拍照尺寸
@@ -58,6 +66,7 @@ public class CustomCameraManager {
     
     private CaptureCallback captureCallback;
     private boolean isCameraOpened = false;
+    private boolean lastOpenContended = false; // 最近一次打开失败/断开是否因为相机被占用
     private int selectedCameraIndex = 0; // 默认选择第一个摄像头
     private boolean isFlashEnabled = false; // 兼容旧逻辑的布尔标记
     private FlashMode flashMode = FlashMode.OFF; // 三态闪光灯模式
@@ -71,6 +80,70 @@ public class CustomCameraManager {
     // 添加预览显示回调接口
     private PreviewDisplayCallback previewDisplayCallback;
     
+    // 低分辨率YUV分析流：用于预事件缓冲和拍照时的缩略图输出
+    private ImageReader analysisReader;
+    private PreEventRecorder preEventRecorder;
+    private boolean preEventEnabled = false;
+    private int preEventSeconds = 3;
+    private ThumbnailWriter thumbnailWriter;
+    private boolean thumbnailOutputEnabled = false;
+    
+    // 零快门延迟（ZSL）：支持PRIVATE重处理时保留最近的全分辨率帧，触发时重处理最接近的一帧
+    private boolean zslEnabled = false;
+    private ImageReader zslReader;
+    private ImageWriter zslWriter;
+    private ZslFrameQueue zslQueue;
+    private boolean sensorTimestampRealtime = false; // 传感器时间戳是否与elapsedRealtimeNanos同一时基
+    private long lastShutterLagNs = Long.MIN_VALUE;  // 最近一次触发到传感器时间戳的差值
+    private String lastCaptureMode = "";
+    
+    // 会话配置完成后按闪光模式预先构建的请求，会话重建时失效
+    private Surface previewSurface;
+    // 会话重建时换下的预览Surface，可能仍被旧会话使用，在closeCamera中统一释放
+    private final List<Surface> retiredPreviewSurfaces = new ArrayList<>();
+    private final EnumMap<FlashMode, CaptureRequest> previewRequests = new EnumMap<>(FlashMode.class);
+    private final EnumMap<FlashMode, CaptureRequest> stillRequests = new EnumMap<>(FlashMode.class);
+    private final EnumMap<FlashMode, String> stillCaptureModes = new EnumMap<>(FlashMode.class);
+    private String requestCacheKey; // 相机/拍照尺寸/质量，用于日志
+    private int jpegQuality = 0;    // 0 表示使用设备默认质量
+    
+    // 帧质量门限：写盘前丢弃或标记过暗、过曝、模糊的帧
+    private FrameQualityGate qualityGate;
+    
+    // 隐私遮挡：配置后拍照输出YUV，在YUV平面上遮挡后只编码一次JPEG
+    private List<float[]> privacyPolygons; // 照片坐标下的遮挡多边形，null 表示不遮挡
+    private PrivacyMask stillMask;         // 按拍照尺寸编译的遮挡区间表
+    private byte[] stillNv21;              // 复用的拍照帧NV21缓冲
+    private ByteBuffer stillNv21Buffer;
+    
+    // 感兴趣区域：通过 SCALER_CROP_REGION 只读出该区域，并使用与之匹配的较小JPEG尺寸
+    private CropRegion cropRegion;
+    private Rect cropRect;          // 有效像素阵列坐标下的裁剪区域，null 表示不裁剪
+    private String cropDescription; // 写入照片EXIF的ROI描述
+    
+    // 段存储：照片追加到大的段文件而不是每张一个文件
+    private boolean segmentStorage = false;
+    
+    // 低光多帧叠加：使用YUV连拍流，根据预览测光结果自动触发
+    private String lowLightMode = LowLightStacker.MODE_OFF;
+    private int lowLightFrames = 4;
+    private int lowLightIsoThreshold = 800;
+    private long lowLightExposureThresholdNs = 50000000L;
+    private LowLightStacker lowLightStacker;
+    private List<CaptureRequest> lowLightBurst;
+    
+    // HDR包围曝光融合：关闭AE，以测光结果为基准手动设置曝光时间和ISO，按 -2EV/0/+2EV 连拍三帧，
+    // 与低光叠加共用YUV连拍流
+    private static final float HDR_EV_STEP = 2.0f;
+    private static final long HDR_MAX_EXPOSURE_NS = 66000000L; // 过曝档曝光时间上限，超过后提高ISO
+    private boolean hdrEnabled = false;
+    private Range<Long> exposureTimeRange;    // 手动曝光范围，设备不支持手动曝光时为 null
+    private Range<Integer> sensitivityRange;
+    private HdrFuser hdrFuser;
+    private ImageReader burstReader;
+    private volatile int lastIso = 0;          // 最近一帧重复请求结果的ISO
+    private volatile long lastExposureNs = 0;  // 最近一帧重复请求结果的曝光时间
+    
     public interface CaptureCallback {
         void onCaptureSuccess(String imagePath);
         void onCaptureError(Exception e);
@@ -115,6 +188,72 @@ public class CustomCameraManager {
     public FlashMode getFlashMode() {
         return this.flashMode;
     }
+
+    // 设置预事件缓冲（需在openCamera之前调用）
+    public void setPreEventBuffer(boolean enabled, int seconds) {
+        this.preEventEnabled = enabled;
+        this.preEventSeconds = seconds > 0 ? seconds : 3;
+    }
+
+    // 设置拍照时是否同时输出缩略图（需在openCamera之前调用）
+    public void setThumbnailOutputEnabled(boolean enabled) {
+        this.thumbnailOutputEnabled = enabled;
+    }
+    
+    // 设置零快门延迟拍照（需在openCamera之前调用）
+    public void setZslEnabled(boolean enabled) {
+        this.zslEnabled = enabled;
+    }
+
+    // 设置低光多帧叠加（需在openCamera之前调用）
+    // mode: off / auto（ISO或曝光时间超过阈值时触发）/ always
+    public void setLowLightMode(String mode, int frames, int isoThreshold, int exposureThresholdMs) {
+        this.lowLightMode = mode != null ? mode : LowLightStacker.MODE_OFF;
+        this.lowLightFrames = Math.max(2, Math.min(8, frames));
+        this.lowLightIsoThreshold = isoThreshold;
+        this.lowLightExposureThresholdNs = exposureThresholdMs * 1000000L;
+    }
+
+    // 设置HDR包围曝光融合（需在openCamera之前调用）
+    public void setHdrEnabled(boolean enabled) {
+        this.hdrEnabled = enabled;
+    }
+
+    // 设置帧质量门限（需在openCamera之前调用），null 表示不检查
+    public void setQualityGate(FrameQualityGate gate) {
+        this.qualityGate = gate;
+    }
+
+    // 设置是否把照片保存到段存储（需要修改EXIF的照片仍保存为单独文件）
+    public void setSegmentStorage(boolean enabled) {
+        this.segmentStorage = enabled;
+    }
+
+    // 设置隐私遮挡区域（需在openCamera之前调用），格式见 PrivacyMask.parse，空表示不遮挡
+    public void setPrivacyMasks(String spec) {
+        List<float[]> polygons = PrivacyMask.parse(spec);
+        this.privacyPolygons = polygons.isEmpty() ? null : polygons;
+    }
+
+    // 设置感兴趣区域（需在openCamera之前调用），null 表示使用完整画面
+    public void setCropRegion(CropRegion region) {
+        this.cropRegion = region;
+    }
+
+    // 设置JPEG质量（1-100，需在openCamera之前调用）
+    public void setJpegQuality(int quality) {
+        this.jpegQuality = Math.max(0, Math.min(100, quality));
+    }
+
+    // 最近一次拍照从触发到传感器曝光时间戳的差值（纳秒），负值表示所用帧早于触发；无数据时为Long.MIN_VALUE
+    public long getLastShutterLagNs() {
+        return lastShutterLagNs;
+    }
+
+    // 最近一次拍照使用的方式：ZSL重处理 / ZSL模板 / 普通拍照
+    public String getLastCaptureMode() {
+        return lastCaptureMode;
+    }
     
     // 获取所有可用的摄像头ID
     public String[] getAvailableCameraIds() throws CameraAccessException {
@@ -147,28 +286,37 @@ public class CustomCameraManager {
         return isCameraOpened;
     }
     
+    // 最近一次打开失败或断开是否由其他应用占用相机引起
+    public boolean isLastOpenContended() {
+        return lastOpenContended;
+    }
+    
+    // 当前选中的摄像头ID（openCamera之后有效）
+    public String getCameraId() {
+        return cameraId;
+    }
+    
     public void startBackgroundThread() {
-        backgroundThread = new HandlerThread("CameraBackground");
-        backgroundThread.start();
-        backgroundHandler = new Handler(backgroundThread.getLooper());
+        if (backgroundHandler != null) {
+            return; // 已持有共享线程
+        }
+        backgroundHandler = CameraThreadOwner.getInstance().acquire();
     }
     
     public void stopBackgroundThread() {
-        if (backgroundThread != null) {
-            backgroundThread.quitSafely();
-            try {
-                backgroundThread.join();
-                backgroundThread = null;
-                backgroundHandler = null;
-            } catch (InterruptedException e) {
-                Log.e(TAG, "中断后台线程", e);
-            }
+        if (backgroundHandler != null) {
+            // 共享线程不会随本实例退出，需要移除本实例投递的延时任务（如断线重连）
+            backgroundHandler.removeCallbacksAndMessages(this);
+            backgroundHandler = null;
+            CameraThreadOwner.getInstance().release();
+            Log.d(TAG, "释放相机线程 - " + CameraThreadOwner.getInstance().describeMetrics());
         }
     }
     
     public void openCamera() {
         isCameraOpened = false;
         isCapturing = false; // 重置拍照状态
+        lastOpenContended = false;
         CameraManager manager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
         try {
             Log.d(TAG, "开始打开相机");
@@ -216,9 +364,16 @@ public class CustomCameraManager {
                     previewSize = new Size(1920, 1080);
                 }
                 
-                // 获取拍照支持的最大尺寸
-                Size[] captureSizes = map.getOutputSizes(ImageFormat.JPEG);
+                // 获取拍照支持的最大尺寸；隐私遮挡模式下拍照输出YUV，在软件中遮挡后编码
+                int captureFormat = privacyPolygons != null ? ImageFormat.YUV_420_888 : ImageFormat.JPEG;
+                Size[] captureSizes = map.getOutputSizes(captureFormat);
                 captureSize = Collections.max(Arrays.asList(captureSizes), new CompareSizesByArea());
+                // 配置了感兴趣区域时按区域大小选用较小的JPEG尺寸
+                cropRect = null;
+                cropDescription = null;
+                if (cropRegion != null) {
+                    applyCropRegion(characteristics, captureSizes);
+                }
                 Log.d(TAG, "选择拍照尺寸: " + captureSize.getWidth() + "x" + captureSize.getHeight());
                 
                 // 初始化ImageReader，使用拍照的最大分辨率
@@ -228,16 +383,122 @@ public class CustomCameraManager {
                 imageReader = ImageReader.newInstance(
                         captureSize.getWidth(), 
                         captureSize.getHeight(),
-                        ImageFormat.JPEG, 
+                        captureFormat, 
                         2);
                 imageReader.setOnImageAvailableListener(onImageAvailableListener, backgroundHandler);
                 Log.d(TAG, "ImageReader初始化完成");
+                
+                // 遮挡区间表和NV21缓冲按拍照尺寸准备一次，拍照时不再分配
+                stillMask = null;
+                stillNv21 = null;
+                stillNv21Buffer = null;
+                if (privacyPolygons != null) {
+                    stillMask = compilePrivacyMask(captureSize);
+                    stillNv21 = new byte[YuvUtils.nv21Size(captureSize.getWidth(), captureSize.getHeight())];
+                    stillNv21Buffer = ByteBuffer.wrap(stillNv21);
+                    Log.d(TAG, "隐私遮挡已启用，遮挡区域数: " + privacyPolygons.size());
+                }
+                
+                // ZSL：设备支持PRIVATE重处理时创建全分辨率帧队列，否则拍照时仅使用ZSL模板
+                releaseZsl();
+                Integer timestampSource = characteristics.get(CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE);
+                sensorTimestampRealtime = timestampSource != null
+                        && timestampSource == CameraMetadata.SENSOR_INFO_TIMESTAMP_SOURCE_REALTIME;
+                if (zslEnabled && privacyPolygons != null) {
+                    // 重处理输出为相机编码的JPEG，无法在编码前遮挡
+                    Log.w(TAG, "隐私遮挡模式下ZSL仅使用模板");
+                } else if (zslEnabled) {
+                    Size zslSize = chooseZslInputSize(characteristics, map);
+                    if (zslSize != null) {
+                        zslReader = ImageReader.newInstance(
+                                zslSize.getWidth(),
+                                zslSize.getHeight(),
+                                ImageFormat.PRIVATE,
+                                ZSL_QUEUE_SIZE + 2);
+                        zslReader.setOnImageAvailableListener(onZslImageAvailableListener, backgroundHandler);
+                        zslQueue = new ZslFrameQueue(ZSL_QUEUE_SIZE);
+                        Log.d(TAG, "ZSL重处理帧队列初始化完成: " + zslSize.getWidth() + "x" + zslSize.getHeight());
+                    } else {
+                        Log.d(TAG, "设备不支持PRIVATE重处理，ZSL仅使用模板");
+                    }
+                }
+                
+                // 低光叠加/HDR：创建共用的YUV连拍流（与ZSL重处理互斥）
+                releaseBurst();
+                boolean lowLightRequested = !LowLightStacker.MODE_OFF.equals(lowLightMode);
+                boolean hdrAvailable = hdrEnabled && loadManualExposureRanges(characteristics);
+                if (lowLightRequested || hdrAvailable) {
+                    if (zslReader != null) {
+                        Log.w(TAG, "ZSL重处理模式下不启用低光叠加和HDR");
+                    } else {
+                        Size burstSize = chooseAnalysisSize(map.getOutputSizes(ImageFormat.YUV_420_888), captureSize, 1920, 1440);
+                        burstReader = ImageReader.newInstance(
+                                burstSize.getWidth(),
+                                burstSize.getHeight(),
+                                ImageFormat.YUV_420_888,
+                                3);
+                        burstReader.setOnImageAvailableListener(onBurstImageAvailableListener, backgroundHandler);
+                        if (lowLightRequested) {
+                            lowLightStacker = new LowLightStacker(burstSize.getWidth(), burstSize.getHeight(), lowLightFrames);
+                            lowLightStacker.setJpegQuality(jpegQuality);
+                            lowLightStacker.setQualityGate(qualityGate);
+                            lowLightStacker.setPrivacyMask(compilePrivacyMask(burstSize));
+                            lowLightStacker.setPhotoWriter(PhotoWriteRecovery.writer(context));
+                            lowLightStacker.setImageDescription(cropDescription);
+                            Log.d(TAG, "低光叠加初始化完成: " + burstSize.getWidth() + "x" + burstSize.getHeight()
+                                    + ", 帧数: " + lowLightStacker.getFrameCount() + ", 模式: " + lowLightMode);
+                        }
+                        if (hdrAvailable) {
+                            hdrFuser = new HdrFuser(burstSize.getWidth(), burstSize.getHeight());
+                            hdrFuser.setJpegQuality(jpegQuality);
+                            hdrFuser.setQualityGate(qualityGate);
+                            hdrFuser.setPrivacyMask(compilePrivacyMask(burstSize));
+                            hdrFuser.setPhotoWriter(PhotoWriteRecovery.writer(context));
+                            hdrFuser.setImageDescription(cropDescription);
+                            Log.d(TAG, "HDR融合初始化完成: " + burstSize.getWidth() + "x" + burstSize.getHeight()
+                                    + ", 曝光: " + exposureTimeRange + "ns, ISO: " + sensitivityRange);
+                        }
+                    }
+                }
+                
+                // 预事件缓冲/缩略图：创建低分辨率YUV分析流
+                if (analysisReader != null) {
+                    analysisReader.close();
+                    analysisReader = null;
+                }
+                preEventRecorder = null;
+                thumbnailWriter = null;
+                if (privacyPolygons != null && (preEventEnabled || thumbnailOutputEnabled)) {
+                    // 预事件帧和缩略图来自未遮挡的分析流
+                    Log.w(TAG, "隐私遮挡模式下不启用预事件缓冲和缩略图输出");
+                } else if ((zslReader != null || burstReader != null) && (preEventEnabled || thumbnailOutputEnabled)) {
+                    // 重处理会话和连拍流占用了额外的流，为保证流组合受支持不再添加分析流
+                    Log.w(TAG, "ZSL重处理、低光叠加或HDR模式下不启用预事件缓冲和缩略图输出");
+                } else if (preEventEnabled || thumbnailOutputEnabled) {
+                    Size analysisSize = chooseAnalysisSize(map.getOutputSizes(ImageFormat.YUV_420_888), captureSize, 640, 480);
+                    analysisReader = ImageReader.newInstance(
+                            analysisSize.getWidth(),
+                            analysisSize.getHeight(),
+                            ImageFormat.YUV_420_888,
+                            3);
+                    analysisReader.setOnImageAvailableListener(onAnalysisImageAvailableListener, backgroundHandler);
+                    if (preEventEnabled) {
+                        preEventRecorder = PreEventRecorder.obtain(analysisSize.getWidth(), analysisSize.getHeight(), preEventSeconds);
+                        preEventRecorder.reset();
+                    }
+                    if (thumbnailOutputEnabled) {
+                        thumbnailWriter = new ThumbnailWriter(analysisSize.getWidth(), analysisSize.getHeight());
+                    }
+                    Log.d(TAG, "分析流初始化完成: " + analysisSize.getWidth() + "x" + analysisSize.getHeight());
+                }
             }
             
             manager.openCamera(cameraId, stateCallback, backgroundHandler);
             Log.d(TAG, "已调用openCamera方法");
         } catch (CameraAccessException e) {
-            Log.e(TAG, "无法访问相机", e);
+            lastOpenContended = e.getReason() == CameraAccessException.CAMERA_IN_USE
+                    || e.getReason() == CameraAccessException.MAX_CAMERAS_IN_USE;
+            Log.e(TAG, "无法访问相机" + (lastOpenContended ? "（相机被占用）" : ""), e);
         } catch (Exception e) {
             Log.e(TAG, "打开相机时发生未知错误", e);
         }
@@ -291,13 +552,31 @@ public class CustomCameraManager {
             imageReader = null;
         }
         
+        if (analysisReader != null) {
+            try {
+                analysisReader.close();
+            } catch (Exception e) {
+                Log.e(TAG, "关闭analysisReader时出错", e);
+            }
+            analysisReader = null;
+        }
+        
+        releaseZsl();
+        releaseBurst();
+        clearRequestCache();
+        releasePreviewSurface();
+        
         Log.d(TAG, "相机和闪光灯已完全关闭");
     }
     
-    public void takePicture() {
+    /**
+     * 触发拍照，结果通过拍照回调返回
+     * @return 已有拍照在进行时返回 false（本次不会回调）；其它情况一定会回调成功或失败
+     */
+    public boolean takePicture() {
         if (isCapturing) {
             Log.w(TAG, "拍照已在进行中");
-            return;
+            return false;
         }
 
         if (cameraDevice == null) {
@@ -305,7 +584,7 @@ public class CustomCameraManager {
             if (captureCallback != null) {
                 captureCallback.onCaptureError(new Exception("相机未打开"));
             }
-            return;
+            return true;
         }
 
         // 检查captureSession是否已创建
@@ -314,45 +593,81 @@ public class CustomCameraManager {
             if (captureCallback != null) {
                 captureCallback.onCaptureError(new Exception("相机预览会话未创建"));
             }
-            return;
+            return true;
         }
 
         isCapturing = true;
         Log.d(TAG, "开始拍照 - 闪光模式: " + flashMode);
+        // 触发时刻，与传感器时间戳同一时基（时基未知时以单调时钟近似）
+        final long triggerTimestamp = sensorTimestampRealtime
+                ? SystemClock.elapsedRealtimeNanos() : System.nanoTime();
         try {
-            final CaptureRequest.Builder captureBuilder =
-                    cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_STILL_CAPTURE);
-            captureBuilder.addTarget(imageReader.getSurface());
-
-            // 设置自动对焦
-            captureBuilder.set(CaptureRequest.CONTROL_MODE, CameraMetadata.CONTROL_MODE_AUTO);
-            captureBuilder.set(CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
-
-            // 设置闪光灯状态（三态）
-            if (flashMode == FlashMode.ON) {
-                // 强制闪光：始终在拍照时触发
-                captureBuilder.set(CaptureRequest.CONTROL_AE_MODE, CameraMetadata.CONTROL_AE_MODE_ON_ALWAYS_FLASH);
-                Log.d(TAG, "拍照闪光模式: ALWAYS_FLASH");
-            } else if (flashMode == FlashMode.AUTO) {
-                // 自动闪光：由AE判断是否需要
-                captureBuilder.set(CaptureRequest.CONTROL_AE_MODE, CameraMetadata.CONTROL_AE_MODE_ON_AUTO_FLASH);
-                // 保留单闪以提高部分HAL兼容性
-                captureBuilder.set(CaptureRequest.FLASH_MODE, CameraMetadata.FLASH_MODE_SINGLE);
-                Log.d(TAG, "拍照闪光模式: AUTO_FLASH + SINGLE");
-            } else {
-                // 关闭闪光
-                captureBuilder.set(CaptureRequest.FLASH_MODE, CameraMetadata.FLASH_MODE_OFF);
-                captureBuilder.set(CaptureRequest.CONTROL_AE_MODE, CameraMetadata.CONTROL_AE_MODE_ON);
-                Log.d(TAG, "拍照闪光模式: OFF");
+            final CaptureRequest captureRequest;
+            final String captureMode;
+            YuvBurstProcessor processor = null;  // 连拍后处理器，非空时发送连拍请求
+            List<CaptureRequest> burstRequests = null;
+            // 闪光需要重新曝光，只有关闭闪光时才从ZSL队列中取帧
+            ZslFrameQueue.Frame zslFrame = null;
+            if (zslWriter != null && zslQueue != null && flashMode == FlashMode.OFF) {
+                zslFrame = zslQueue.takeClosest(sensorTimestampRealtime ? triggerTimestamp : -1);
             }
 
-            // 方向
-            captureBuilder.set(CaptureRequest.JPEG_ORIENTATION, 90);
+            if (zslFrame != null) {
+                // 重处理请求依赖所选帧的拍摄结果，无法预先缓存
+                CaptureRequest.Builder reprocessBuilder = cameraDevice.createReprocessCaptureRequest(zslFrame.result);
+                reprocessBuilder.addTarget(imageReader.getSurface());
+                applyJpegSettings(reprocessBuilder);
+                captureRequest = reprocessBuilder.build();
+                captureMode = "ZSL重处理";
+                zslWriter.queueInputImage(zslFrame.image);
+                Log.d(TAG, "ZSL重处理: 选用帧时间戳 " + zslFrame.timestamp);
+            } else if (shouldStackLowLight()) {
+                captureRequest = null;
+                captureMode = "低光叠加";
+                processor = lowLightStacker;
+                burstRequests = lowLightBurst;
+            } else if (shouldFuseHdr()) {
+                captureRequest = null;
+                captureMode = "HDR融合";
+                processor = hdrFuser;
+                burstRequests = buildHdrBurst();
+            } else {
+                CaptureRequest cached = stillRequests.get(flashMode);
+                if (cached == null) {
+                    Log.w(TAG, "拍照请求缓存未建立，重新构建");
+                    cached = buildStillRequest(flashMode);
+                }
+                captureRequest = cached;
+                String mode = stillCaptureModes.get(flashMode);
+                captureMode = mode != null ? mode : "普通拍照";
+            }
 
+            final YuvBurstProcessor burstProcessor = processor;
+            final boolean burst = burstProcessor != null;
+            final int expectedResults = burst ? burstRequests.size() : 1;
+            final int[] completedResults = {0};
             CameraCaptureSession.CaptureCallback captureListener = new CameraCaptureSession.CaptureCallback() {
+                @Override
+                public void onCaptureStarted(CameraCaptureSession session, CaptureRequest request, long timestamp, long frameNumber) {
+                    super.onCaptureStarted(session, request, timestamp, frameNumber);
+                    if (thumbnailWriter != null) {
+                        thumbnailWriter.expect(timestamp);
+                    }
+                    if (burst) {
+                        burstProcessor.expect(timestamp);
+                    }
+                }
+
                 @Override
                 public void onCaptureCompleted(CameraCaptureSession session, CaptureRequest request, TotalCaptureResult result) {
                     super.onCaptureCompleted(session, request, result);
+                    completedResults[0]++;
+                    if (completedResults[0] == 1) {
+                        reportShutterLag(triggerTimestamp, result.get(CaptureResult.SENSOR_TIMESTAMP), captureMode);
+                    }
+                    if (completedResults[0] < expectedResults) {
+                        return; // 连拍尚未结束
+                    }
                     Log.d(TAG, "拍照完成，准备关闭摄像头和闪光灯");
                     isCapturing = false;
                     
@@ -375,6 +690,9 @@ public class CustomCameraManager {
                     super.onCaptureFailed(session, request, failure);
                     Log.e(TAG, "拍照失败: " + failure.getReason());
                     isCapturing = false;
+                    if (burst) {
+                        burstProcessor.cancel();
+                    }
                     if (captureCallback != null) {
                         captureCallback.onCaptureError(new Exception("拍照失败: " + failure.getReason()));
                     }
@@ -391,6 +709,9 @@ public class CustomCameraManager {
                     super.onCaptureSequenceAborted(session, sequenceId);
                     Log.e(TAG, "拍照序列被中止");
                     isCapturing = false;
+                    if (burst) {
+                        burstProcessor.cancel();
+                    }
                     if (captureCallback != null) {
                         captureCallback.onCaptureError(new Exception("拍照序列被中止"));
                     }
@@ -400,8 +721,17 @@ public class CustomCameraManager {
             // 拍照时不停止预览，让预览继续显示直到拍照完成
             // 这样用户可以一直看到预览画面
 
-            captureSession.capture(captureBuilder.build(), captureListener, backgroundHandler);
-            Log.d(TAG, "已发送拍照请求");
+            if (burst) {
+                // 连拍帧收齐后在后处理线程合成，不阻塞相机线程
+                if (!burstProcessor.begin(getTargetImageFile(), burstListener)) {
+                    throw new IllegalStateException("连拍缓冲区不可用（内存不足）");
+                }
+                captureSession.captureBurst(burstRequests, captureListener, backgroundHandler);
+                Log.d(TAG, "已发送" + captureMode + "连拍请求，帧数: " + burstRequests.size());
+            } else {
+                captureSession.capture(captureRequest, captureListener, backgroundHandler);
+                Log.d(TAG, "已发送拍照请求");
+            }
         } catch (CameraAccessException e) {
             Log.e(TAG, "拍照时发生错误", e);
             isCapturing = false;
@@ -415,6 +745,7 @@ public class CustomCameraManager {
                 captureCallback.onCaptureError(e);
             }
         }
+        return true;
     }
     
     // 公共方法：为了闪光灯切换而重启预览
@@ -427,44 +758,12 @@ public class CustomCameraManager {
         try {
             Log.d(TAG, "尝试重新启动预览");
             if (cameraDevice != null && captureSession != null) {
-                // 先停止当前的重复请求
-                try {
-                    captureSession.stopRepeating();
-                } catch (Exception e) {
-                    Log.e(TAG, "停止重复请求失败", e);
-                }
-                
-                final CaptureRequest.Builder previewBuilder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
-                
-                SurfaceTexture texture = textureView != null ? textureView.getSurfaceTexture() : null;
-                if (texture != null) {
-                    // 确保预览尺寸已设置
-                    if (previewSize == null) {
-                        Log.e(TAG, "预览尺寸未设置");
-                        return;
-                    }
-                    
-                    texture.setDefaultBufferSize(previewSize.getWidth(), previewSize.getHeight());
-                    Surface surface = new Surface(texture);
-                    previewBuilder.addTarget(surface);
-                    
-                    // 预览闪光（三态）：ON 使用手电（TORCH），AUTO/OFF 关闭
-                    if (flashMode == FlashMode.ON) {
-                        previewBuilder.set(CaptureRequest.FLASH_MODE, CameraMetadata.FLASH_MODE_TORCH);
-                        previewBuilder.set(CaptureRequest.CONTROL_AE_MODE, CameraMetadata.CONTROL_AE_MODE_ON);
-                        Log.d(TAG, "预览闪光: TORCH");
-                    } else {
-                        previewBuilder.set(CaptureRequest.FLASH_MODE, CameraMetadata.FLASH_MODE_OFF);
-                        previewBuilder.set(CaptureRequest.CONTROL_AE_MODE, CameraMetadata.CONTROL_AE_MODE_ON);
-                        Log.d(TAG, "预览闪光: OFF");
-                    }
-                    
-                    previewBuilder.set(CaptureRequest.CONTROL_MODE, CameraMetadata.CONTROL_MODE_AUTO);
-                    previewBuilder.set(CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
-                    
-                    // 使用setRepeatingRequest重新启动预览
-                    captureSession.setRepeatingRequest(previewBuilder.build(), null, backgroundHandler);
-                    Log.d(TAG, "预览已重新启动");
+                CaptureRequest previewRequest = previewRequests.get(flashMode);
+                if (previewRequest != null && previewSurface != null) {
+                    // 直接切换到缓存的预览请求，setRepeatingRequest会替换当前的重复请求
+                    captureSession.setRepeatingRequest(previewRequest,
+                            repeatingResultCallback, backgroundHandler);
+                    Log.d(TAG, "预览已切换到缓存请求，闪光模式: " + flashMode);
                     
                     // 确保TextureView可见
                     if (textureView != null) {
@@ -476,7 +775,7 @@ public class CustomCameraManager {
                         });
                     }
                 } else {
-                    Log.w(TAG, "无法重新启动预览：Texture为空");
+                    Log.w(TAG, "无法重新启动预览：预览Surface或请求缓存为空");
                     // 尝试重新创建预览
                     if (textureView != null && textureView.isAvailable()) {
                         createCameraPreview();
@@ -517,6 +816,7 @@ public class CustomCameraManager {
         public void onDisconnected(CameraDevice camera) {
             isCameraOpened = false;
             isCapturing = false; // 重置拍照状态
+            lastOpenContended = true; // 通常是更高优先级的应用抢占了相机
             if (cameraDevice != null) {
                 cameraDevice.close();
                 cameraDevice = null;
@@ -524,7 +824,7 @@ public class CustomCameraManager {
             Log.d(TAG, "相机已断开连接");
             // 若存在预览视图，尝试延时重连，缓解黑屏
             if (textureView != null && backgroundHandler != null) {
-                backgroundHandler.postDelayed(new Runnable() {
+                backgroundHandler.postAtTime(new Runnable() {
                     @Override
                     public void run() {
                         try {
@@ -533,7 +833,7 @@ public class CustomCameraManager {
                             Log.e(TAG, "断开后重连失败", e);
                         }
                     }
-                }, 1000);
+                }, CustomCameraManager.this, SystemClock.uptimeMillis() + 1000);
             }
         }
         
@@ -541,13 +841,15 @@ public class CustomCameraManager {
         public void onError(CameraDevice camera, int error) {
             isCameraOpened = false;
             isCapturing = false; // 重置拍照状态
+            lastOpenContended = error == CameraDevice.StateCallback.ERROR_CAMERA_IN_USE
+                    || error == CameraDevice.StateCallback.ERROR_MAX_CAMERAS_IN_USE;
             if (cameraDevice != null) {
                 cameraDevice.close();
                 cameraDevice = null;
             }
             Log.e(TAG, "打开相机错误: " + error);
             if (textureView != null && backgroundHandler != null) {
-                backgroundHandler.postDelayed(new Runnable() {
+                backgroundHandler.postAtTime(new Runnable() {
                     @Override
                     public void run() {
                         try {
@@ -556,7 +858,7 @@ public class CustomCameraManager {
                             Log.e(TAG, "错误后重连失败", e);
                         }
                     }
-                }, 1200);
+                }, CustomCameraManager.this, SystemClock.uptimeMillis() + 1200);
             }
         }
     };
@@ -564,7 +866,11 @@ public class CustomCameraManager {
     private void createCameraPreview() {
         try {
             // 在服务模式下，textureView可能为null，我们只需要创建captureSession
-            Surface previewSurface = null;
+            // 旧的预览Surface可能仍被旧会话使用，先记下，统一在closeCamera中释放
+            if (previewSurface != null) {
+                retiredPreviewSurfaces.add(previewSurface);
+                previewSurface = null;
+            }
             SurfaceTexture texture = null;
             
             if (textureView != null) {
@@ -590,31 +896,6 @@ public class CustomCameraManager {
                 return;
             }
             
-            // 创建预览请求构建器（仅用于预览 Surface）
-            final CaptureRequest.Builder previewBuilder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
-
-            // 添加预览 surface（如果可用）
-            if (previewSurface != null) {
-                previewBuilder.addTarget(previewSurface);
-            }
-
-            // 预览阶段不向 ImageReader 输出，避免不必要的负载与异常
-
-            // 预览阶段闪光（三态）：ON 使用手电（需有预览Surface），AUTO/OFF 关闭
-            if (flashMode == FlashMode.ON && previewSurface != null) {
-                previewBuilder.set(CaptureRequest.FLASH_MODE, CameraMetadata.FLASH_MODE_TORCH);
-                previewBuilder.set(CaptureRequest.CONTROL_AE_MODE, CameraMetadata.CONTROL_AE_MODE_ON);
-                Log.d(TAG, "createPreview: 预览闪光 TORCH");
-            } else {
-                previewBuilder.set(CaptureRequest.FLASH_MODE, CameraMetadata.FLASH_MODE_OFF);
-                previewBuilder.set(CaptureRequest.CONTROL_AE_MODE, CameraMetadata.CONTROL_AE_MODE_ON);
-                Log.d(TAG, "createPreview: 预览闪光 OFF");
-            }
-
-            // 设置自动对焦
-            previewBuilder.set(CaptureRequest.CONTROL_MODE, CameraMetadata.CONTROL_MODE_AUTO);
-            previewBuilder.set(CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
-            
             // 创建capture session
             List<Surface> surfaces = new ArrayList<>();
             if (previewSurface != null) {
@@ -623,6 +904,15 @@ public class CustomCameraManager {
             if (imageReader != null) {
                 surfaces.add(imageReader.getSurface());
             }
+            if (analysisReader != null) {
+                surfaces.add(analysisReader.getSurface());
+            }
+            if (zslReader != null) {
+                surfaces.add(zslReader.getSurface());
+            }
+            if (burstReader != null) {
+                surfaces.add(burstReader.getSurface());
+            }
             
             // 确保surface列表不为空
             if (surfaces.isEmpty()) {
@@ -633,8 +923,12 @@ public class CustomCameraManager {
             Log.d(TAG, "准备创建capture session，surface数量: " + surfaces.size());
             // 在内部类中使用时需要是final或有效final
             final boolean hasPreviewSurface = (previewSurface != null);
+            final boolean hasRepeatingTarget = hasPreviewSurface
+                    || (analysisReader != null && preEventRecorder != null)
+                    || zslReader != null
+                    || burstReader != null;
 
-            cameraDevice.createCaptureSession(surfaces,
+            CameraCaptureSession.StateCallback sessionCallback =
                     new CameraCaptureSession.StateCallback() {
                         @Override
                         public void onConfigured(CameraCaptureSession session) {
@@ -646,10 +940,17 @@ public class CustomCameraManager {
 
                             captureSession = session;
                             try {
-                                if (hasPreviewSurface) {
-                                    // 仅在有预览 Surface 时启动重复预览请求
-                                    captureSession.setRepeatingRequest(previewBuilder.build(), null, backgroundHandler);
-                                    Log.d(TAG, "相机预览会话配置完成（包含预览）");
+                                if (zslReader != null && session.isReprocessable()) {
+                                    // 选中的ZSL帧经由输入Surface回送给相机重处理
+                                    zslWriter = ImageWriter.newInstance(session.getInputSurface(), 2);
+                                }
+                                // 会话的输出已确定，预先构建各闪光模式的预览/拍照请求
+                                buildRequestCache();
+                                if (hasRepeatingTarget) {
+                                    // 仅在有预览 Surface、分析流或ZSL帧队列时启动重复请求
+                                    captureSession.setRepeatingRequest(previewRequests.get(flashMode),
+                                            repeatingResultCallback, backgroundHandler);
+                                    Log.d(TAG, "相机预览会话配置完成（包含预览: " + hasPreviewSurface + "）");
                                 } else {
                                     // 服务模式（无预览）下不启动重复请求，保留会话用于静态拍照
                                     Log.d(TAG, "相机会话配置完成（无预览，仅拍照）");
@@ -671,7 +972,16 @@ public class CustomCameraManager {
                             Log.d(TAG, "相机预览会话已关闭");
                             super.onClosed(session);
                         }
-                    }, backgroundHandler);
+                    };
+
+            if (zslReader != null) {
+                InputConfiguration inputConfiguration = new InputConfiguration(
+                        zslReader.getWidth(), zslReader.getHeight(), ImageFormat.PRIVATE);
+                cameraDevice.createReprocessableCaptureSession(inputConfiguration, surfaces,
+                        sessionCallback, backgroundHandler);
+            } else {
+                cameraDevice.createCaptureSession(surfaces, sessionCallback, backgroundHandler);
+            }
         } catch (CameraAccessException e) {
             Log.e(TAG, "创建预览失败", e);
         } catch (Exception e) {
@@ -698,6 +1008,507 @@ public class CustomCameraManager {
         }
     };
     
+    // 分析流帧回调：拍照帧交给缩略图写入器，其余帧写入预事件环形缓冲区，处理后立即释放
+    private final ImageReader.OnImageAvailableListener onAnalysisImageAvailableListener
+            = new ImageReader.OnImageAvailableListener() {
+        @Override
+        public void onImageAvailable(ImageReader reader) {
+            // 逐帧获取，避免跳过拍照帧
+            Image image = reader.acquireNextImage();
+            if (image == null) {
+                return;
+            }
+            try {
+                if (thumbnailWriter != null && thumbnailWriter.offer(image)) {
+                    return;
+                }
+                if (preEventRecorder != null) {
+                    preEventRecorder.onFrame(image);
+                }
+            } finally {
+                image.close();
+            }
+        }
+    };
+    
+    // ZSL帧队列：全分辨率帧与其拍摄结果按传感器时间戳配对
+    private final ImageReader.OnImageAvailableListener onZslImageAvailableListener
+            = new ImageReader.OnImageAvailableListener() {
+        @Override
+        public void onImageAvailable(ImageReader reader) {
+            Image image = reader.acquireNextImage();
+            if (image == null) {
+                return;
+            }
+            if (zslQueue != null) {
+                zslQueue.addImage(image);
+            } else {
+                image.close();
+            }
+        }
+    };
+    
+    // 重复请求结果：记录测光数据（低光自动触发），并交给ZSL队列配对
+    private final CameraCaptureSession.CaptureCallback repeatingResultCallback = new CameraCaptureSession.CaptureCallback() {
+        @Override
+        public void onCaptureCompleted(CameraCaptureSession session, CaptureRequest request, TotalCaptureResult result) {
+            Integer iso = result.get(CaptureResult.SENSOR_SENSITIVITY);
+            Long exposure = result.get(CaptureResult.SENSOR_EXPOSURE_TIME);
+            if (iso != null) {
+                lastIso = iso;
+            }
+            if (exposure != null) {
+                lastExposureNs = exposure;
+            }
+            if (zslQueue != null) {
+                zslQueue.addResult(result);
+            }
+        }
+    };
+    
+    // 连拍合成结果（后处理线程）
+    private final YuvBurstProcessor.Listener burstListener = new YuvBurstProcessor.Listener() {
+        @Override
+        public void onProcessed(File photo, long sensorTimestamp) {
+            PhotoCatalog catalog = PhotoCatalog.get(context);
+            catalog.recordPhoto(photo, cameraId);
+            // 合成时已把质量标记写入EXIF，同步到照片目录供保留清理和图库使用
+            if (qualityGate != null
+                    && FrameQualityGate.readFlag(photo.getAbsolutePath()) != FrameQuality.Verdict.OK) {
+                catalog.markQualityFlagged(photo.getAbsolutePath());
+            }
+            StorageMonitor.get(context).onBytesWritten(photo.length());
+            notifyMediaScanner(photo);
+            if (captureCallback != null) {
+                captureCallback.onCaptureSuccess(photo.getAbsolutePath());
+            }
+        }
+
+        @Override
+        public void onProcessFailed(Exception e) {
+            if (captureCallback != null) {
+                captureCallback.onCaptureError(e);
+            }
+        }
+    };
+    
+    // 连拍帧：交给正在收集的后处理器，其余帧（服务模式下用于测光的重复请求）直接释放
+    private final ImageReader.OnImageAvailableListener onBurstImageAvailableListener
+            = new ImageReader.OnImageAvailableListener() {
+        @Override
+        public void onImageAvailable(ImageReader reader) {
+            Image image = reader.acquireNextImage();
+            if (image == null) {
+                return;
+            }
+            try {
+                boolean accepted = lowLightStacker != null && lowLightStacker.offer(image);
+                if (!accepted && hdrFuser != null) {
+                    hdrFuser.offer(image);
+                }
+            } finally {
+                image.close();
+            }
+        }
+    };
+    
+    // 重复请求：ZSL重处理时使用ZSL模板并持续向帧队列出帧，预事件缓冲开启时分析流随预览出帧
+    private CaptureRequest.Builder createRepeatingBuilder() throws CameraAccessException {
+        CaptureRequest.Builder builder = cameraDevice.createCaptureRequest(
+                zslReader != null ? CameraDevice.TEMPLATE_ZERO_SHUTTER_LAG : CameraDevice.TEMPLATE_PREVIEW);
+        if (analysisReader != null && preEventRecorder != null) {
+            builder.addTarget(analysisReader.getSurface());
+        }
+        if (zslReader != null) {
+            builder.addTarget(zslReader.getSurface());
+        }
+        // 服务模式没有预览，需要连拍流持续出帧以完成自动曝光和测光
+        if (burstReader != null && previewSurface == null) {
+            builder.addTarget(burstReader.getSurface());
+        }
+        return builder;
+    }
+    
+    // 按闪光模式预先构建预览和拍照请求；请求绑定本会话的输出，会话重建时失效
+    private void buildRequestCache() throws CameraAccessException {
+        clearRequestCache();
+        for (FlashMode mode : FlashMode.values()) {
+            previewRequests.put(mode, buildPreviewRequest(mode));
+            stillRequests.put(mode, buildStillRequest(mode));
+        }
+        if (lowLightStacker != null) {
+            lowLightBurst = Collections.nCopies(lowLightStacker.getFrameCount(), buildBurstRequest(null));
+        }
+        requestCacheKey = cameraId + "/" + captureSize + "/q" + jpegQuality;
+        Log.d(TAG, "已缓存预览/拍照请求: " + requestCacheKey);
+    }
+    
+    private void clearRequestCache() {
+        previewRequests.clear();
+        stillRequests.clear();
+        stillCaptureModes.clear();
+        lowLightBurst = null;
+        requestCacheKey = null;
+    }
+    
+    // 预览闪光（三态）：ON 使用手电（需有预览Surface），AUTO/OFF 关闭
+    private CaptureRequest buildPreviewRequest(FlashMode mode) throws CameraAccessException {
+        CaptureRequest.Builder builder = createRepeatingBuilder();
+        if (previewSurface != null) {
+            builder.addTarget(previewSurface);
+        }
+        if (mode == FlashMode.ON && previewSurface != null) {
+            builder.set(CaptureRequest.FLASH_MODE, CameraMetadata.FLASH_MODE_TORCH);
+        } else {
+            builder.set(CaptureRequest.FLASH_MODE, CameraMetadata.FLASH_MODE_OFF);
+        }
+        builder.set(CaptureRequest.CONTROL_AE_MODE, CameraMetadata.CONTROL_AE_MODE_ON);
+        builder.set(CaptureRequest.CONTROL_MODE, CameraMetadata.CONTROL_MODE_AUTO);
+        builder.set(CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
+        if (cropRect != null) {
+            builder.set(CaptureRequest.SCALER_CROP_REGION, cropRect);
+        }
+        return builder.build();
+    }
+    
+    private CaptureRequest buildStillRequest(FlashMode mode) throws CameraAccessException {
+        CaptureRequest.Builder builder = null;
+        String captureMode = "普通拍照";
+        // 开启ZSL且不闪光时优先使用ZSL模板，设备不支持时回退到普通拍照模板
+        if (zslEnabled && mode == FlashMode.OFF) {
+            try {
+                builder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_ZERO_SHUTTER_LAG);
+                captureMode = "ZSL模板";
+            } catch (IllegalArgumentException e) {
+                Log.w(TAG, "设备不支持ZSL模板，使用普通拍照模板");
+            }
+        }
+        if (builder == null) {
+            builder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_STILL_CAPTURE);
+        }
+        stillCaptureModes.put(mode, captureMode);
+        builder.addTarget(imageReader.getSurface());
+        // 同一请求输出小尺寸YUV帧，直接生成缩略图
+        if (thumbnailWriter != null && analysisReader != null) {
+            builder.addTarget(analysisReader.getSurface());
+        }
+
+        // 设置自动对焦
+        builder.set(CaptureRequest.CONTROL_MODE, CameraMetadata.CONTROL_MODE_AUTO);
+        builder.set(CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
+
+        // 设置闪光灯状态（三态）
+        if (mode == FlashMode.ON) {
+            // 强制闪光：始终在拍照时触发
+            builder.set(CaptureRequest.CONTROL_AE_MODE, CameraMetadata.CONTROL_AE_MODE_ON_ALWAYS_FLASH);
+        } else if (mode == FlashMode.AUTO) {
+            // 自动闪光：由AE判断是否需要，保留单闪以提高部分HAL兼容性
+            builder.set(CaptureRequest.CONTROL_AE_MODE, CameraMetadata.CONTROL_AE_MODE_ON_AUTO_FLASH);
+            builder.set(CaptureRequest.FLASH_MODE, CameraMetadata.FLASH_MODE_SINGLE);
+        } else {
+            builder.set(CaptureRequest.FLASH_MODE, CameraMetadata.FLASH_MODE_OFF);
+            builder.set(CaptureRequest.CONTROL_AE_MODE, CameraMetadata.CONTROL_AE_MODE_ON);
+        }
+        applyJpegSettings(builder);
+        return builder.build();
+    }
+    
+    // 连拍请求：只输出到YUV连拍流，不使用闪光；bracket 非空时关闭AE，按给定曝光时间和ISO手动曝光
+    private CaptureRequest buildBurstRequest(ExposureBracket bracket) throws CameraAccessException {
+        CaptureRequest.Builder builder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_STILL_CAPTURE);
+        builder.addTarget(burstReader.getSurface());
+        builder.set(CaptureRequest.CONTROL_MODE, CameraMetadata.CONTROL_MODE_AUTO);
+        builder.set(CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
+        builder.set(CaptureRequest.FLASH_MODE, CameraMetadata.FLASH_MODE_OFF);
+        if (bracket != null) {
+            builder.set(CaptureRequest.CONTROL_AE_MODE, CameraMetadata.CONTROL_AE_MODE_OFF);
+            builder.set(CaptureRequest.SENSOR_EXPOSURE_TIME, bracket.exposureNs);
+            builder.set(CaptureRequest.SENSOR_SENSITIVITY, bracket.iso);
+            // 帧间隔不短于曝光时间，HAL 会提高到输出配置允许的最小值
+            builder.set(CaptureRequest.SENSOR_FRAME_DURATION, bracket.exposureNs);
+        } else {
+            builder.set(CaptureRequest.CONTROL_AE_MODE, CameraMetadata.CONTROL_AE_MODE_ON);
+        }
+        if (cropRect != null) {
+            builder.set(CaptureRequest.SCALER_CROP_REGION, cropRect);
+        }
+        return builder.build();
+    }
+
+    // HDR包围曝光请求：以最近一帧预览的测光结果为基准，每帧的曝光时间和ISO按 2^EV 缩放
+    private List<CaptureRequest> buildHdrBurst() throws CameraAccessException {
+        long meteredNs = lastExposureNs;
+        int meteredIso = lastIso;
+        float[] evs = {-HDR_EV_STEP, 0f, HDR_EV_STEP};
+        List<CaptureRequest> requests = new ArrayList<>(evs.length);
+        StringBuilder summary = new StringBuilder();
+        for (float ev : evs) {
+            ExposureBracket bracket = ExposureBracket.scale(meteredNs, meteredIso, ev,
+                    exposureTimeRange.getLower(), exposureTimeRange.getUpper(),
+                    sensitivityRange.getLower(), sensitivityRange.getUpper(), HDR_MAX_EXPOSURE_NS);
+            requests.add(buildBurstRequest(bracket));
+            summary.append(String.format(Locale.US, " %.1fEV(%dus/ISO%d)",
+                    bracket.evFrom(meteredNs, meteredIso), bracket.exposureNs / 1000, bracket.iso));
+        }
+        Log.d(TAG, "HDR包围曝光:" + summary);
+        return requests;
+    }
+
+    // 读取手动曝光范围；设备不支持手动曝光（MANUAL_SENSOR）时返回 false，不启用HDR
+    private boolean loadManualExposureRanges(CameraCharacteristics characteristics) {
+        exposureTimeRange = null;
+        sensitivityRange = null;
+        int[] capabilities = characteristics.get(CameraCharacteristics.REQUEST_AVAILABLE_CAPABILITIES);
+        boolean manualSensor = false;
+        if (capabilities != null) {
+            for (int capability : capabilities) {
+                if (capability == CameraMetadata.REQUEST_AVAILABLE_CAPABILITIES_MANUAL_SENSOR) {
+                    manualSensor = true;
+                }
+            }
+        }
+        Range<Long> exposure = characteristics.get(CameraCharacteristics.SENSOR_INFO_EXPOSURE_TIME_RANGE);
+        Range<Integer> sensitivity = characteristics.get(CameraCharacteristics.SENSOR_INFO_SENSITIVITY_RANGE);
+        if (!manualSensor || exposure == null || sensitivity == null) {
+            Log.w(TAG, "设备不支持手动曝光，不启用HDR");
+            return false;
+        }
+        exposureTimeRange = exposure;
+        sensitivityRange = sensitivity;
+        return true;
+    }
+    
+    // 是否使用HDR融合：需关闭闪光、已有测光结果且上一次融合已完成
+    private boolean shouldFuseHdr() {
+        return hdrFuser != null && exposureTimeRange != null && lastExposureNs > 0 && lastIso > 0
+                && flashMode == FlashMode.OFF && !hdrFuser.isBusy();
+    }
+    
+    // 是否使用低光叠加：需关闭闪光且上一次合成已完成；自动模式按测光结果判断
+    private boolean shouldStackLowLight() {
+        if (lowLightStacker == null || lowLightBurst == null || flashMode != FlashMode.OFF || lowLightStacker.isBusy()) {
+            return false;
+        }
+        if (LowLightStacker.MODE_ALWAYS.equals(lowLightMode)) {
+            return true;
+        }
+        boolean dark = (lowLightIsoThreshold > 0 && lastIso >= lowLightIsoThreshold)
+                || (lowLightExposureThresholdNs > 0 && lastExposureNs >= lowLightExposureThresholdNs);
+        if (dark) {
+            Log.d(TAG, "低光自动触发 - ISO: " + lastIso + ", 曝光: " + (lastExposureNs / 1000000) + "ms");
+        }
+        return dark;
+    }
+    
+    // 放弃正在收集的连拍；已开始合成的连拍在后处理线程上完成后自行释放共用缓冲区并回调
+    private void releaseBurst() {
+        if (lowLightStacker != null) {
+            lowLightStacker.cancel();
+            lowLightStacker = null;
+        }
+        lowLightBurst = null;
+        if (hdrFuser != null) {
+            hdrFuser.cancel();
+            hdrFuser = null;
+        }
+        if (burstReader != null) {
+            try {
+                burstReader.close();
+            } catch (Exception e) {
+                Log.e(TAG, "关闭burstReader时出错", e);
+            }
+            burstReader = null;
+        }
+    }
+    
+    // 方向与JPEG质量
+    private void applyJpegSettings(CaptureRequest.Builder builder) {
+        builder.set(CaptureRequest.JPEG_ORIENTATION, 90);
+        if (jpegQuality > 0) {
+            builder.set(CaptureRequest.JPEG_QUALITY, (byte) jpegQuality);
+        }
+        if (cropRect != null) {
+            builder.set(CaptureRequest.SCALER_CROP_REGION, cropRect);
+        }
+    }
+    
+    // 按感兴趣区域确定裁剪区域和JPEG尺寸：选取宽高比接近区域、且不小于区域实际像素数的最小尺寸，
+    // 再把裁剪区域扩展到该尺寸的宽高比，读出、编码和存储都随区域大小缩小
+    private void applyCropRegion(CameraCharacteristics characteristics, Size[] jpegSizes) {
+        Rect active = characteristics.get(CameraCharacteristics.SENSOR_INFO_ACTIVE_ARRAY_SIZE);
+        if (active == null) {
+            Log.w(TAG, "无法获取传感器有效区域，不使用感兴趣区域");
+            return;
+        }
+        Float maxZoom = characteristics.get(CameraCharacteristics.SCALER_AVAILABLE_MAX_DIGITAL_ZOOM);
+        // 设置中是照片坐标，照片相对传感器输出顺时针旋转90度（与隐私遮挡一致）
+        CropRegion sensorRegion = cropRegion.toSensorCoordinates(90);
+        double aspect = sensorRegion.aspectRatio(active.width(), active.height());
+        double requiredArea = (double) captureSize.getWidth() * captureSize.getHeight() * sensorRegion.areaFraction();
+        Size best = null;
+        for (Size option : jpegSizes) {
+            double diff = Math.abs((double) option.getWidth() / option.getHeight() - aspect);
+            if (best == null) {
+                best = option;
+                continue;
+            }
+            double bestDiff = Math.abs((double) best.getWidth() / best.getHeight() - aspect);
+            if (diff < bestDiff - 0.05) {
+                best = option;
+            } else if (Math.abs(diff - bestDiff) <= 0.05) {
+                long area = (long) option.getWidth() * option.getHeight();
+                long bestArea = (long) best.getWidth() * best.getHeight();
+                // 同一宽高比下取满足像素数的最小尺寸，都不满足时取最大尺寸
+                boolean enough = area >= requiredArea;
+                boolean bestEnough = bestArea >= requiredArea;
+                if ((enough && (!bestEnough || area < bestArea)) || (!enough && !bestEnough && area > bestArea)) {
+                    best = option;
+                }
+            }
+        }
+        captureSize = best;
+        int[] rect = sensorRegion.toSensorRect(active.width(), active.height(),
+                (double) best.getWidth() / best.getHeight(), maxZoom != null ? maxZoom : 1f);
+        cropRect = new Rect(rect[0], rect[1], rect[2], rect[3]);
+        cropDescription = cropRegion.toExifDescription(rect);
+        Log.d(TAG, "感兴趣区域: " + cropRegion + " -> 裁剪区域 " + cropRect.toShortString()
+                + ", JPEG尺寸 " + best.getWidth() + "x" + best.getHeight());
+    }
+    
+    // 按帧尺寸编译遮挡区间表；照片相对传感器输出顺时针旋转90度（与JPEG方向一致）
+    private PrivacyMask compilePrivacyMask(Size size) {
+        if (privacyPolygons == null) {
+            return null;
+        }
+        List<float[]> sensorPolygons = new ArrayList<>();
+        for (float[] polygon : privacyPolygons) {
+            sensorPolygons.add(PrivacyMask.toSensorCoordinates(polygon, 90));
+        }
+        return PrivacyMask.compile(sensorPolygons, size.getWidth(), size.getHeight());
+    }
+    
+    // 在照片EXIF中记录感兴趣区域，供图库显示
+    private void tagCropRegion(File photo) {
+        if (cropDescription == null) {
+            return;
+        }
+        try {
+            ExifInterface exif = new ExifInterface(photo.getAbsolutePath());
+            exif.setAttribute(ExifInterface.TAG_IMAGE_DESCRIPTION, cropDescription);
+            exif.saveAttributes();
+        } catch (IOException e) {
+            Log.w(TAG, "写入ROI信息失败: " + photo.getName(), e);
+        }
+    }
+    
+    private void releasePreviewSurface() {
+        if (previewSurface != null) {
+            previewSurface.release();
+            previewSurface = null;
+        }
+        for (Surface surface : retiredPreviewSurfaces) {
+            surface.release();
+        }
+        retiredPreviewSurfaces.clear();
+    }
+    
+    // 记录触发到传感器时间戳的差值
+    private void reportShutterLag(long triggerTimestamp, Long sensorTimestamp, String captureMode) {
+        lastCaptureMode = captureMode;
+        if (sensorTimestamp == null) {
+            lastShutterLagNs = Long.MIN_VALUE;
+            return;
+        }
+        lastShutterLagNs = sensorTimestamp - triggerTimestamp;
+        Log.d(TAG, "拍照方式: " + captureMode + ", 触发到传感器时间戳: "
+                + String.format(Locale.US, "%.1f", lastShutterLagNs / 1000000.0) + "ms"
+                + (sensorTimestampRealtime ? "" : "（时基未知，仅供参考）"));
+    }
+    
+    // ZSL重处理输入尺寸：需支持PRIVATE重处理且可输出JPEG，取最大输入尺寸
+    private Size chooseZslInputSize(CameraCharacteristics characteristics, StreamConfigurationMap map) {
+        int[] capabilities = characteristics.get(CameraCharacteristics.REQUEST_AVAILABLE_CAPABILITIES);
+        boolean supported = false;
+        if (capabilities != null) {
+            for (int capability : capabilities) {
+                if (capability == CameraMetadata.REQUEST_AVAILABLE_CAPABILITIES_PRIVATE_REPROCESSING) {
+                    supported = true;
+                    break;
+                }
+            }
+        }
+        if (!supported || map == null) {
+            return null;
+        }
+        boolean jpegOutput = false;
+        for (int format : map.getValidOutputFormatsForInput(ImageFormat.PRIVATE)) {
+            if (format == ImageFormat.JPEG) {
+                jpegOutput = true;
+                break;
+            }
+        }
+        Size[] inputSizes = map.getInputSizes(ImageFormat.PRIVATE);
+        if (!jpegOutput || inputSizes == null || inputSizes.length == 0) {
+            return null;
+        }
+        return Collections.max(Arrays.asList(inputSizes), new CompareSizesByArea());
+    }
+    
+    private void releaseZsl() {
+        if (zslWriter != null) {
+            try {
+                zslWriter.close();
+            } catch (Exception e) {
+                Log.e(TAG, "关闭zslWriter时出错", e);
+            }
+            zslWriter = null;
+        }
+        if (zslQueue != null) {
+            zslQueue.clear();
+            zslQueue = null;
+        }
+        if (zslReader != null) {
+            try {
+                zslReader.close();
+            } catch (Exception e) {
+                Log.e(TAG, "关闭zslReader时出错", e);
+            }
+            zslReader = null;
+        }
+    }
+    
+    // 通知媒体扫描器有新文件（确保照片在系统图库中可见）
+    private void notifyMediaScanner(final File file) {
+        try {
+            MediaScannerConnection.scanFile(context,
+                    new String[]{file.getAbsolutePath()},
+                    new String[]{"image/jpeg"},
+                    new MediaScannerConnection.OnScanCompletedListener() {
+                        @Override
+                        public void onScanCompleted(String path, Uri uri) {
+                            if (uri != null) {
+                                Log.d(TAG, "媒体扫描完成，照片已添加到系统图库: " + uri);
+                            } else {
+                                Log.w(TAG, "媒体扫描完成，但URI为空: " + path);
+                            }
+                        }
+                    });
+            Log.d(TAG, "已通知媒体扫描器扫描新文件: " + file.getAbsolutePath());
+        } catch (Exception e) {
+            Log.e(TAG, "通知媒体扫描器失败", e);
+            // 如果MediaScannerConnection失败，尝试使用广播（兼容旧版本）
+            try {
+                Intent mediaScanIntent = new Intent(Intent.ACTION_MEDIA_SCANNER_SCAN_FILE);
+                Uri contentUri = Uri.fromFile(file);
+                mediaScanIntent.setData(contentUri);
+                context.sendBroadcast(mediaScanIntent);
+                Log.d(TAG, "已发送媒体扫描广播: " + file.getAbsolutePath());
+            } catch (Exception ex) {
+                Log.e(TAG, "发送媒体扫描广播失败", ex);
+            }
+        }
+    }
+    
     private class ImageSaver implements Runnable {
         private final Image image;
         
@@ -714,51 +1525,94 @@ public class CustomCameraManager {
             }
             
             Log.d(TAG, "开始保存图片");
-            ByteBuffer buffer = image.getPlanes()[0].getBuffer();
-            byte[] bytes = new byte[buffer.remaining()];
-            buffer.get(bytes);
+            long sensorTimestamp = image.getTimestamp();
+            // 隐私遮挡模式下图像为YUV，遮挡后再编码
+            boolean masked = stillMask != null && image.getFormat() == ImageFormat.YUV_420_888;
+            byte[] bytes = null;
+            if (!masked) {
+                ByteBuffer buffer = image.getPlanes()[0].getBuffer();
+                bytes = new byte[buffer.remaining()];
+                buffer.get(bytes);
+            }
             
             // 获取目标文件路径
             File file = getTargetImageFile();
             Log.d(TAG, "创建图片文件: " + file.getAbsolutePath());
             
-            FileOutputStream output = null;
+            AtomicPhotoWriter.Pending pending = null;
             File savedFile = null;
             try {
-                output = new FileOutputStream(file);
-                output.write(bytes);
+                if (masked) {
+                    stillNv21Buffer.clear();
+                    if (image.getWidth() != stillMask.getWidth() || image.getHeight() != stillMask.getHeight()
+                            || !YuvUtils.packNv21(image, stillNv21Buffer)) {
+                        throw new IOException("YUV帧尺寸与遮挡配置不一致");
+                    }
+                    stillMask.applyNv21(stillNv21);
+                }
+                
+                // 质量检查在写盘之前进行，丢弃模式下不合格的帧不落盘
+                FrameQuality.Verdict verdict = FrameQuality.Verdict.OK;
+                if (qualityGate != null) {
+                    verdict = masked
+                            ? qualityGate.checkNv21(stillNv21, stillMask.getWidth(), stillMask.getHeight())
+                            : qualityGate.checkJpeg(bytes);
+                }
+                if (verdict != FrameQuality.Verdict.OK && qualityGate.isDropMode()) {
+                    if (captureCallback != null) {
+                        captureCallback.onCaptureError(new FrameQualityGate.FrameRejectedException(verdict));
+                    }
+                    return;
+                }
+                
+                // 段存储：相机编码的JPEG不需要修改EXIF时直接追加到段文件，不创建单独的文件
+                if (segmentStorage && !masked && cropDescription == null && verdict == FrameQuality.Verdict.OK) {
+                    saveToSegments(file.getName(), bytes, sensorTimestamp);
+                    return;
+                }
+                
+                // 先写临时文件，EXIF修改完成后再原子重命名，中途被杀不会留下截断的照片
+                pending = PhotoWriteRecovery.writer(context).begin(file);
+                if (masked) {
+                    int width = stillMask.getWidth();
+                    int height = stillMask.getHeight();
+                    YuvImage yuvImage = new YuvImage(stillNv21, ImageFormat.NV21, width, height, null);
+                    if (!yuvImage.compressToJpeg(new Rect(0, 0, width, height), jpegQuality > 0 ? jpegQuality : 90,
+                            pending.getOutputStream())) {
+                        throw new IOException("JPEG编码失败");
+                    }
+                } else {
+                    pending.getOutputStream().write(bytes);
+                }
+                pending.closeStream();
+                // 只在需要修改EXIF时才取临时文件，否则直接使用写入时计算的哈希
+                if (masked || cropDescription != null || verdict != FrameQuality.Verdict.OK) {
+                    File temp = pending.getTempFile();
+                    if (masked) {
+                        // YUV输出不带JPEG方向，与相机编码的照片保持相同方向
+                        ExifInterface exif = new ExifInterface(temp.getAbsolutePath());
+                        exif.setAttribute(ExifInterface.TAG_ORIENTATION, String.valueOf(ExifInterface.ORIENTATION_ROTATE_90));
+                        exif.saveAttributes();
+                    }
+                    tagCropRegion(temp);
+                    if (verdict != FrameQuality.Verdict.OK) {
+                        FrameQualityGate.markFlagged(temp, verdict);
+                    }
+                }
+                pending.commit();
                 Log.d(TAG, "图片保存成功");
                 savedFile = file;
+                // 登记到照片目录（大小和哈希为最终文件），内容重复时与已有照片共用存储
+                PhotoCatalog catalog = PhotoCatalog.get(context);
+                catalog.recordPhoto(file, cameraId, pending.getContentHash());
+                if (verdict != FrameQuality.Verdict.OK) {
+                    // 标记模式：保留清理优先删除，不参与归档
+                    catalog.markQualityFlagged(file.getAbsolutePath());
+                }
+                StorageMonitor.get(context).onBytesWritten(file.length());
                 
                 // 通知媒体扫描器有新文件（确保照片在系统图库中可见）
-                try {
-                    MediaScannerConnection.scanFile(context,
-                            new String[]{file.getAbsolutePath()},
-                            new String[]{"image/jpeg"},
-                            new MediaScannerConnection.OnScanCompletedListener() {
-                                @Override
-                                public void onScanCompleted(String path, Uri uri) {
-                                    if (uri != null) {
-                                        Log.d(TAG, "媒体扫描完成，照片已添加到系统图库: " + uri);
-                                    } else {
-                                        Log.w(TAG, "媒体扫描完成，但URI为空: " + path);
-                                    }
-                                }
-                            });
-                    Log.d(TAG, "已通知媒体扫描器扫描新文件: " + file.getAbsolutePath());
-                } catch (Exception e) {
-                    Log.e(TAG, "通知媒体扫描器失败", e);
-                    // 如果MediaScannerConnection失败，尝试使用广播（兼容旧版本）
-                    try {
-                        Intent mediaScanIntent = new Intent(Intent.ACTION_MEDIA_SCANNER_SCAN_FILE);
-                        Uri contentUri = Uri.fromFile(file);
-                        mediaScanIntent.setData(contentUri);
-                        context.sendBroadcast(mediaScanIntent);
-                        Log.d(TAG, "已发送媒体扫描广播: " + file.getAbsolutePath());
-                    } catch (Exception ex) {
-                        Log.e(TAG, "发送媒体扫描广播失败", ex);
-                    }
-                }
+                notifyMediaScanner(file);
                 
                 // 不再通过预览显示回调传递图片，直接通过文件路径通知
                 // Bitmap bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
@@ -766,6 +1620,16 @@ public class CustomCameraManager {
                 //     previewDisplayCallback.onPreviewDisplay(bitmap);
                 // }
                 
+                // 写出同一请求输出的缩略图
+                if (thumbnailWriter != null) {
+                    thumbnailWriter.onPhotoSaved(file, sensorTimestamp);
+                }
+                
+                // 写出触发前的预事件帧
+                if (preEventRecorder != null && analysisReader != null) {
+                    preEventRecorder.flushTo(file, sensorTimestamp);
+                }
+                
                 // 通知回调拍照成功
                 if (captureCallback != null && savedFile != null) {
                     captureCallback.onCaptureSuccess(savedFile.getAbsolutePath());
@@ -784,12 +1648,9 @@ public class CustomCameraManager {
                         Log.e(TAG, "关闭图像时出错", e);
                     }
                 }
-                if (output != null) {
-                    try {
-                        output.close();
-                    } catch (IOException e) {
-                        Log.e(TAG, "关闭输出流失败", e);
-                    }
+                if (pending != null) {
+                    // 未提交的写入删除临时文件
+                    pending.abort();
                 }
                 
                 // 按照用户要求：拍照完成后关闭摄像头，不在这里重启预览
@@ -798,35 +1659,48 @@ public class CustomCameraManager {
         }
     }
     
+    // 追加到段存储并登记，缩略图和预事件帧放在段目录下
+    private void saveToSegments(String name, byte[] bytes, long sensorTimestamp) throws IOException {
+        long capturedAt = System.currentTimeMillis();
+        SegmentPhotoStorage storage = PhotoStorages.segments(context);
+        String path = storage.append(name, capturedAt, bytes);
+        if (AtomicPhotoWriter.SYNC_PER_FILE.equals(PhotoWriteRecovery.writer(context).getSyncPolicy())) {
+            storage.getStore().sync();
+        }
+        Log.d(TAG, "图片已追加到段存储: " + path);
+        // 哈希直接用内存中的JPEG数据计算
+        String hash = ContentHash.toHex(ContentHash.newDigest().digest(bytes));
+        PhotoCatalog.get(context).recordStoredPhoto(path, capturedAt, bytes.length, cameraId, hash);
+        StorageMonitor.get(context).onBytesWritten(bytes.length);
+        
+        File local = PhotoStorages.localFile(path);
+        if (thumbnailWriter != null) {
+            thumbnailWriter.onPhotoSaved(local, sensorTimestamp);
+        }
+        if (preEventRecorder != null && analysisReader != null) {
+            preEventRecorder.flushTo(local, sensorTimestamp);
+        }
+        if (captureCallback != null) {
+            captureCallback.onCaptureSuccess(path);
+        }
+    }
+    
     private File createImageFile() {
-        // 创建图片文件
-        String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
-        String imageFileName = "IMG_" + timeStamp + ".jpg";
+        // 创建图片文件（按时间分片目录，同一秒内按序号区分）
         File storageDir = context.getExternalFilesDir(null);
-        return new File(storageDir, imageFileName);
+        return PhotoLayout.forRoot(storageDir).newPhotoFile(System.currentTimeMillis());
     }
     
     // 创建公共目录的照片文件（用于系统相册显示）
     private File createPublicImageFile() {
-        // 创建图片文件在公共图片目录中的独立子文件夹
-        String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
-        String imageFileName = "IMG_" + timeStamp + ".jpg";
-        
-        // 在Pictures目录下创建应用专用的子文件夹
+        // 在Pictures目录下应用专用的子文件夹中按时间分片
         File picturesDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_PICTURES);
-        File appPhotoDir = new File(picturesDir, "CameraApp");
+        File appPhotoDir = new File(picturesDir, PhotoRetention.PUBLIC_DIR_NAME);
         
-        // 确保目录存在
-        if (!appPhotoDir.exists()) {
-            boolean created = appPhotoDir.mkdirs();
-            if (created) {
-                Log.d(TAG, "创建应用照片目录: " + appPhotoDir.getAbsolutePath());
-            } else {
-                Log.w(TAG, "无法创建应用照片目录: " + appPhotoDir.getAbsolutePath());
-            }
+        File imageFile = PhotoLayout.forRoot(appPhotoDir).newPhotoFile(System.currentTimeMillis());
+        if (!imageFile.getParentFile().exists()) {
+            Log.w(TAG, "无法创建应用照片目录: " + imageFile.getParentFile().getAbsolutePath());
         }
-        
-        File imageFile = new File(appPhotoDir, imageFileName);
         return imageFile;
     }
     
@@ -898,6 +1772,33 @@ public class CustomCameraManager {
         return largest;
     }
     
+    // 选择YUV流尺寸：不超过 maxWidth x maxHeight，宽高比尽量与拍照尺寸一致
+    private Size chooseAnalysisSize(Size[] choices, Size reference, int maxWidth, int maxHeight) {
+        if (choices == null || choices.length == 0) {
+            return new Size(320, 240);
+        }
+        double targetAspectRatio = reference != null
+                ? (double) reference.getWidth() / reference.getHeight()
+                : 4.0 / 3.0;
+        Size best = null;
+        double bestDiff = Double.MAX_VALUE;
+        for (Size option : choices) {
+            if (option.getWidth() > maxWidth || option.getHeight() > maxHeight) {
+                continue;
+            }
+            double diff = Math.abs((double) option.getWidth() / option.getHeight() - targetAspectRatio);
+            if (best == null || diff < bestDiff - 0.01
+                    || (Math.abs(diff - bestDiff) <= 0.01 && new CompareSizesByArea().compare(option, best) > 0)) {
+                best = option;
+                bestDiff = diff;
+            }
+        }
+        if (best == null) {
+            best = Collections.min(Arrays.asList(choices), new CompareSizesByArea());
+        }
+        return best;
+    }
+    
     private static class CompareSizesByArea implements Comparator<Size> {
         @Override
         public int compare(Size lhs, Size rhs) {
@@ -20,11 +20,11 @@ import android.hardware.camera2.CameraMetadata;
 import android.hardware.camera2.CaptureRequest;
 import android.hardware.camera2.params.StreamConfigurationMap;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Environment;
 import android.os.Handler;
-import android.os.HandlerThread;
 import android.os.PowerManager;
 import android.provider.Settings;
 import android.util.Log;
@@ -47,6 +47,8 @@ import androidx.appcompat.app.ActionBar;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -67,6 +69,7 @@ public class MainActivity extends AppCompatActivity {
     private ImageView appIcon; // 应用图标
     private LinearLayout appIconContainer; // 图标容器
     private TextView tvCaptureCount; // 拍照计数器显示
+    private TextView tvStorageForecast; // 存储空间预测显示
     private TextView tvCaptureTime; // 拍摄时间显示
     private boolean isRunning = false;
     
@@ -75,8 +78,7 @@ public class MainActivity extends AppCompatActivity {
     private TextureView textureView;
     private ImageView ivCapturedImage; // 用于显示拍摄照片的ImageView
     private ImageButton btnFlashIndicator; // 闪光灯指示器（图标）
-    private Handler backgroundHandler;
-    private HandlerThread backgroundThread;
+    private Handler backgroundHandler; // 进程共享的相机线程，见 CameraThreadOwner
     private String cameraId;
     private Size previewSize;
     private boolean isFlashOn = false; // 仅用于预览时的闪光灯指示
@@ -85,12 +87,15 @@ public class MainActivity extends AppCompatActivity {
     
     // 自定义相机管理器
     private CustomCameraManager customCameraManager;
+    private FrameQualityGate qualityGate; // 预览界面拍照的帧质量门限，页面存续期间累计统计
     
     // 进度条相关
     private Handler progressHandler = new Handler();
     private Runnable progressRunnable;
     private long startTime;
-    private long interval; // 从设置中获取的间隔时间（毫秒）
+    private long interval; // 当前使用的间隔时间（毫秒），存储紧张时会被拉长
+    private long baseInterval; // 从设置中获取的间隔时间（毫秒）
+    private long storageFloorBytes; // 剩余空间下限
     // 方案A：Activity内驱动的拍照循环
     private Handler captureHandler = new Handler();
     private Runnable captureCycleRunnable;
@@ -106,6 +111,7 @@ public class MainActivity extends AppCompatActivity {
     
     // 拍照计数器
     private CaptureCounter captureCounter;
+    private long captureToken; // 当前拍照在 CaptureActivity 中的编号
     
     // 广播接收器，用于接收拍照服务的状态更新
     private BroadcastReceiver serviceStatusReceiver = new BroadcastReceiver() {
@@ -146,6 +152,12 @@ public class MainActivity extends AppCompatActivity {
         // 初始化计数器
         captureCounter = new CaptureCounter(getApplicationContext());
         
+        // 旧的平铺照片目录在后台迁移到按时间分片的目录
+        ShardMigrator.startIfNeeded(getApplicationContext());
+        
+        // 清理上次进程中断的照片写入
+        PhotoWriteRecovery.recoverAsync(getApplicationContext());
+        
         // 设置窗口标志以支持锁屏状态下运行
         setupWindowFlags();
         
@@ -202,6 +214,7 @@ public class MainActivity extends AppCompatActivity {
         appIcon = findViewById(R.id.app_icon); // 初始化应用图标
         appIconContainer = findViewById(R.id.app_icon_container); // 初始化图标容器
         tvCaptureCount = findViewById(R.id.tv_capture_count); // 初始化计数器显示
+        tvStorageForecast = findViewById(R.id.tv_storage_forecast);
         
         // 初始化相机预览相关视图
         cameraPreviewContainer = findViewById(R.id.camera_preview_container);
@@ -485,7 +498,9 @@ public class MainActivity extends AppCompatActivity {
         
         // 获取拍照间隔设置
         SettingsManager settingsManager = new SettingsManager(this);
-        interval = settingsManager.getCaptureInterval() * 1000L; // 转换为毫秒
+        baseInterval = settingsManager.getCaptureInterval() * 1000L; // 转换为毫秒
+        storageFloorBytes = StorageManager.floorBytes(settingsManager.getMinSpaceMB());
+        interval = StorageMonitor.get(this).adjustIntervalMs(baseInterval, storageFloorBytes);
         
         // 获取电源锁
         if (!wakeLock.isHeld()) {
@@ -510,6 +525,8 @@ public class MainActivity extends AppCompatActivity {
         
         // 停止Activity驱动的拍照循环
         stopCaptureLoop();
+        // 把批量同步策略下还未落盘的照片同步掉
+        PhotoWriteRecovery.writer(this).flush();
 
         // 关闭相机资源，但保留已显示的图片
         closeCameraResourcesOnlyOnUI();
@@ -620,7 +637,11 @@ public class MainActivity extends AppCompatActivity {
                 // 更新闪光模式到拍照设置
                 customCameraManager.setFlashMode(flashModeForCapture);
                 Log.d(TAG, "相机已就绪，开始拍照");
-                customCameraManager.takePicture();
+                // 拍照回调（成功或失败）中结束；拍照没有真正开始时不会有回调，立即结束
+                captureToken = CaptureActivity.begin();
+                if (!customCameraManager.takePicture()) {
+                    CaptureActivity.end(captureToken);
+                }
             } else {
                 Log.w(TAG, "拍照管理器未就绪，跳过本次拍照");
                 // 如果相机未就绪，尝试重新打开
@@ -662,6 +683,8 @@ public class MainActivity extends AppCompatActivity {
         if (!isRunning) return;
         // 重置进度参考时间
         startTime = System.currentTimeMillis();
+        // 按存储预测决定是否拉长间隔
+        interval = StorageMonitor.get(this).adjustIntervalMs(baseInterval, storageFloorBytes);
         // 在设定间隔后执行下一次周期
         captureHandler.postDelayed(new Runnable() {
             @Override
@@ -723,6 +746,35 @@ public class MainActivity extends AppCompatActivity {
             int sessionCount = captureCounter.getSessionCount();
             tvCaptureCount.setText("已拍张数: " + sessionCount);
         }
+        updateStorageDisplay();
+    }
+    
+    // 更新存储预测显示：快照可能需要重新采样 StatFs，在后台线程读取后回到主线程显示
+    private void updateStorageDisplay() {
+        if (tvStorageForecast == null) {
+            return;
+        }
+        final long floorBytes = StorageManager.floorBytes(new SettingsManager(this).getMinSpaceMB());
+        final StorageMonitor monitor = StorageMonitor.get(this);
+        Runnable readSnapshot = new Runnable() {
+            @Override
+            public void run() {
+                final String text = monitor.getSnapshot(floorBytes).describe();
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (tvStorageForecast != null && !isFinishing()) {
+                            tvStorageForecast.setText(text);
+                        }
+                    }
+                });
+            }
+        };
+        if (backgroundHandler != null) {
+            backgroundHandler.post(readSnapshot);
+        } else {
+            AsyncTask.THREAD_POOL_EXECUTOR.execute(readSnapshot);
+        }
     }
     
     private void updateUI(boolean running) {
@@ -821,26 +873,17 @@ public class MainActivity extends AppCompatActivity {
     }
     
     private void startBackgroundThread() {
-        // 如果后台线程已经存在，先停止它
-        if (backgroundThread != null) {
-            stopBackgroundThread();
+        // 已持有共享线程时直接复用
+        if (backgroundHandler != null) {
+            return;
         }
-        
-        backgroundThread = new HandlerThread("CameraBackground");
-        backgroundThread.start();
-        backgroundHandler = new Handler(backgroundThread.getLooper());
+        backgroundHandler = CameraThreadOwner.getInstance().acquire();
     }
     
     private void stopBackgroundThread() {
-        if (backgroundThread != null) {
-            backgroundThread.quitSafely();
-            try {
-                backgroundThread.join();
-                backgroundThread = null;
-                backgroundHandler = null;
-            } catch (InterruptedException e) {
-                Log.e(TAG, "中断后台线程", e);
-            }
+        if (backgroundHandler != null) {
+            backgroundHandler = null;
+            CameraThreadOwner.getInstance().release();
         }
     }
     
@@ -899,6 +942,25 @@ public class MainActivity extends AppCompatActivity {
                 customCameraManager.setTextureView(textureView);
                 customCameraManager.setSelectedCameraIndex(currentCameraIndex);
                 customCameraManager.setFlashMode(flashModeForCapture);
+                SettingsManager settingsManager = new SettingsManager(MainActivity.this);
+                customCameraManager.setPreEventBuffer(settingsManager.isPreEventEnabled(), settingsManager.getPreEventSeconds());
+                customCameraManager.setThumbnailOutputEnabled(settingsManager.isThumbnailOutputEnabled());
+                customCameraManager.setZslEnabled(settingsManager.isZslEnabled());
+                customCameraManager.setJpegQuality(StorageMonitor.get(MainActivity.this).adjustJpegQuality(
+                        settingsManager.getCameraQuality(), StorageManager.floorBytes(settingsManager.getMinSpaceMB())));
+                customCameraManager.setHdrEnabled(settingsManager.isHdrEnabled());
+                customCameraManager.setCropRegion(settingsManager.getCropRegion(currentCameraIndex));
+                customCameraManager.setPrivacyMasks(settingsManager.getPrivacyMasks());
+                PhotoWriteRecovery.configure(MainActivity.this, settingsManager);
+                customCameraManager.setSegmentStorage(settingsManager.isSegmentStorageEnabled());
+                if (qualityGate == null) {
+                    qualityGate = new FrameQualityGate(settingsManager.getQualityGateMode(),
+                            settingsManager.getQualityMinBrightness(), settingsManager.getQualityMaxOverexposedPercent(),
+                            settingsManager.getQualityMinSharpness());
+                }
+                customCameraManager.setQualityGate(qualityGate);
+                customCameraManager.setLowLightMode(settingsManager.getLowLightMode(), settingsManager.getLowLightFrames(),
+                        settingsManager.getLowLightIsoThreshold(), settingsManager.getLowLightExposureMs());
                 
                 // 设置预览显示回调（不再使用，图片通过文件路径显示）
                 customCameraManager.setPreviewDisplayCallback(null);
@@ -908,6 +970,7 @@ public class MainActivity extends AppCompatActivity {
                     @Override
                     public void onCaptureSuccess(String imagePath) {
                         Log.d(TAG, "图片保存成功，准备关闭摄像头");
+                        CaptureActivity.end(captureToken);
                         
                         // 按照用户要求的流程：拍照完成后立即关闭摄像头和闪光灯
                         // 在后台线程中关闭相机硬件资源，然后在主线程更新UI
@@ -968,6 +1031,7 @@ public class MainActivity extends AppCompatActivity {
                     @Override
                     public void onCaptureError(Exception e) {
                         Log.e(TAG, "拍照失败", e);
+                        CaptureActivity.end(captureToken);
                         runOnUiThread(new Runnable() {
                             @Override
                             public void run() {
@@ -1001,6 +1065,9 @@ public class MainActivity extends AppCompatActivity {
 
         // 更新计数器显示
         updateCaptureCountDisplay();
+        
+        // 从设置页返回后按最新设置启用或取消归档任务
+        ArchiveWorker.schedule(this, new SettingsManager(this));
     }
     
     @Override
@@ -1015,6 +1082,9 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        if (qualityGate != null && qualityGate.isEnabled()) {
+            Log.d(TAG, "本次帧质量统计: " + qualityGate.describeStats());
+        }
         // 使用CustomCameraManager关闭相机
         if (customCameraManager != null) {
             customCameraManager.closeCamera();
@@ -1091,7 +1161,17 @@ public class MainActivity extends AppCompatActivity {
                         if (textureView != null) textureView.setVisibility(View.GONE);
 
                         // 加载并显示图片
-                        Bitmap bitmap = BitmapFactory.decodeFile(photoPath);
+                        Bitmap bitmap = null;
+                        try {
+                            InputStream in = PhotoStorages.forPath(MainActivity.this, photoPath).open(photoPath);
+                            try {
+                                bitmap = BitmapFactory.decodeStream(in);
+                            } finally {
+                                in.close();
+                            }
+                        } catch (IOException e) {
+                            Log.w(TAG, "读取照片失败: " + photoPath, e);
+                        }
                         if (bitmap != null) {
                             ivCapturedImage.setImageBitmap(bitmap);
                             Log.d(TAG, "成功加载并显示照片");
@@ -1,10 +1,12 @@
 package com.pipiqiang.qcamera.app;
 import com.pipiqiang.qcamera.R;
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.os.AsyncTask;
+import android.util.Log;
 import android.util.LruCache;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -16,24 +18,54 @@ import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.ref.WeakReference;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class PhotoAdapter extends RecyclerView.Adapter<PhotoAdapter.PhotoViewHolder> {
     
+    private static final String TAG = "PhotoAdapter";
+    private static final String DISK_CACHE_DIR = "thumbnail_cache";
+    private static final long DISK_CACHE_BYTES = 64L * 1024 * 1024; // 磁盘缩略图缓存上限
+    private static final int DISK_CACHE_QUALITY = 85;
+    
+    // 磁盘缓存在第一次加载缩略图时打开（扫描缓存目录），写入在单独的线程上进行，不占用解码线程
+    private static ThumbnailDiskCache diskCache;
+    private static final ExecutorService diskCacheWriter = Executors.newSingleThreadExecutor();
+    
     private Context context;
     private List<PhotoItem> photoList;
-    private List<PhotoItem> selectedPhotos; // 选中的照片列表
+    private Set<PhotoItem> selectedPhotos; // 选中的照片（按插入顺序，查询为常数时间）
     private OnPhotoClickListener listener;
     private boolean isSelectionMode = false; // 是否处于选择模式
     
     // 使用LruCache作为内存缓存
     private LruCache<String, Bitmap> memoryCache;
+    private int memoryCacheMaxKb;
+    
+    // 位图池：被缓存淘汰且不再显示的缩略图在解码时复用
+    private BitmapPool bitmapPool;
+    private long bitmapPoolMaxBytes;
+    // 正在显示或等待显示的位图引用计数，以及其中已被缓存淘汰的位图
+    private final Map<Bitmap, Integer> bitmapRefs = new IdentityHashMap<>();
+    private final Set<Bitmap> evictedInUse = Collections.newSetFromMap(new IdentityHashMap<Bitmap, Boolean>());
+    // 每个格子当前显示的位图（只在主线程访问）
+    private final Map<ImageView, Bitmap> shownBitmaps = new WeakHashMap<>();
     private int thumbnailSize = 200; // 缩略图大小
     
     public interface OnPhotoClickListener {
@@ -45,7 +77,7 @@ public class PhotoAdapter extends RecyclerView.Adapter<PhotoAdapter.PhotoViewHol
     public PhotoAdapter(Context context, List<PhotoItem> photoList, OnPhotoClickListener listener) {
         this.context = context;
         this.photoList = photoList;
-        this.selectedPhotos = new ArrayList<>();
+        this.selectedPhotos = new LinkedHashSet<>();
         this.listener = listener;
         
         // 初始化内存缓存
@@ -62,13 +94,27 @@ public class PhotoAdapter extends RecyclerView.Adapter<PhotoAdapter.PhotoViewHol
         // 使用最大可用内存的1/8作为缓存大小
         int cacheSize = maxMemory / 8;
         
+        memoryCacheMaxKb = cacheSize;
+        
         memoryCache = new LruCache<String, Bitmap>(cacheSize) {
             @Override
             protected int sizeOf(String key, Bitmap bitmap) {
                 // 重写此方法来衡量每张图片的大小，单位是KB
                 return bitmap.getByteCount() / 1024;
             }
+            
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+                // 被淘汰的缩略图交给位图池，供后续解码复用
+                if (oldValue != newValue) {
+                    onCacheEntryRemoved(oldValue);
+                }
+            }
         };
+        
+        // 位图池使用缓存大小的1/4
+        bitmapPoolMaxBytes = cacheSize * 1024L / 4;
+        bitmapPool = new BitmapPool(bitmapPoolMaxBytes);
     }
     
     // 计算合适的缩略图大小
@@ -97,6 +143,14 @@ public class PhotoAdapter extends RecyclerView.Adapter<PhotoAdapter.PhotoViewHol
         // 显示拍摄时间
         SimpleDateFormat sdf = new SimpleDateFormat("MM-dd HH:mm", Locale.getDefault());
         String timeStr = sdf.format(new Date(photoItem.getTimestamp()));
+        if (photoItem.isArchived()) {
+            // 归档照片已缩小，标注出来
+            timeStr += " · " + context.getString(R.string.photo_archived_label);
+        }
+        if (photoItem.isQualityFlagged()) {
+            // 质量不合格的照片会被优先清理
+            timeStr += " · " + context.getString(R.string.photo_quality_flagged_label);
+        }
         holder.textView.setText(timeStr);
         
         // 设置选择状态
@@ -150,13 +204,19 @@ public class PhotoAdapter extends RecyclerView.Adapter<PhotoAdapter.PhotoViewHol
     // 异步加载缩略图
     private void loadThumbnail(ImageView imageView, String imagePath) {
         // 首先设置默认图片
-        imageView.setImageResource(R.drawable.ic_camera);
+        clearShownBitmap(imageView);
         
-        // 检查内存缓存
-        Bitmap cachedBitmap = getBitmapFromMemCache(imagePath);
-        if (cachedBitmap != null && !cachedBitmap.isRecycled()) {
-            imageView.setImageBitmap(cachedBitmap);
-            return;
+        // 检查内存缓存（查找和加引用是原子的，显示前不会被淘汰复用）
+        Bitmap cachedBitmap = acquireCachedBitmap(imagePath);
+        if (cachedBitmap != null) {
+            boolean usable = !cachedBitmap.isRecycled();
+            if (usable) {
+                showBitmap(imageView, cachedBitmap);
+            }
+            releaseBitmap(cachedBitmap);
+            if (usable) {
+                return;
+            }
         }
         
         // 异步加载图片
@@ -175,6 +235,74 @@ public class PhotoAdapter extends RecyclerView.Adapter<PhotoAdapter.PhotoViewHol
         return memoryCache.get(key);
     }
     
+    // 磁盘缩略图缓存（位于应用缓存目录，系统空间不足时可被清理），打开失败时返回 null
+    private static synchronized ThumbnailDiskCache getDiskCache(Context context) {
+        if (diskCache == null) {
+            try {
+                diskCache = new ThumbnailDiskCache(new File(context.getCacheDir(), DISK_CACHE_DIR), DISK_CACHE_BYTES);
+            } catch (IOException e) {
+                Log.w(TAG, "打开缩略图磁盘缓存失败", e);
+            }
+        }
+        return diskCache;
+    }
+    
+    // 缓存键包含文件大小和修改时间（段存储中的照片不会被改写，修改时间记为0）
+    private static String diskCacheKey(PhotoStorage storage, String path, int size) {
+        File localFile = PhotoStorages.localFile(path);
+        long lastModified = SegmentPhotoStorage.isSegmentPath(path) ? 0 : localFile.lastModified();
+        return ThumbnailDiskCache.keyFor(path, size, storage.length(path), lastModified);
+    }
+    
+    // 异步把解码出的缩略图写入磁盘缓存；写完之前持有位图引用，避免位图被复用后写入错误的内容
+    private static void writeToDiskCache(final PhotoAdapter adapter, final ThumbnailDiskCache cache,
+                                         final String key, final Bitmap bitmap) {
+        adapter.acquireBitmap(bitmap);
+        diskCacheWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                try {
+                    if (bitmap.isRecycled() || !bitmap.compress(Bitmap.CompressFormat.JPEG, DISK_CACHE_QUALITY, out)) {
+                        return;
+                    }
+                    cache.put(key, out.toByteArray());
+                } catch (IllegalStateException e) {
+                    Log.w(TAG, "缩略图已被回收，跳过写入磁盘缓存");
+                } catch (IOException e) {
+                    Log.w(TAG, "写入缩略图磁盘缓存失败", e);
+                } finally {
+                    adapter.releaseBitmap(bitmap);
+                }
+            }
+        });
+    }
+    
+    // 通过照片存储接口解码（普通文件和段存储中的照片）
+    private static Bitmap decodeFromStorage(PhotoStorage storage, String path, BitmapFactory.Options options) throws IOException {
+        InputStream in = storage.open(path);
+        try {
+            return BitmapFactory.decodeStream(in, null, options);
+        } finally {
+            in.close();
+        }
+    }
+    
+    // 解析 JPEG 头部（尺寸和内嵌缩略图），失败时返回 null
+    private static JpegHeaderReader.Header readJpegHeader(PhotoStorage storage, String path) {
+        try {
+            InputStream in = storage.open(path);
+            try {
+                return JpegHeaderReader.read(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "解析JPEG头部失败: " + path, e);
+            return null;
+        }
+    }
+    
     // 缩略图加载任务
     private static class ThumbnailLoaderTask extends AsyncTask<Void, Void, Bitmap> {
         private WeakReference<ImageView> imageViewReference;
@@ -190,8 +318,12 @@ public class PhotoAdapter extends RecyclerView.Adapter<PhotoAdapter.PhotoViewHol
         @Override
         protected Bitmap doInBackground(Void... voids) {
             try {
-                File file = new File(imagePath);
-                if (!file.exists()) {
+                PhotoAdapter adapter = adapterReference.get();
+                if (adapter == null) return null;
+                
+                // 照片可能是普通文件，也可能在段存储中
+                PhotoStorage storage = PhotoStorages.forPath(adapter.context, imagePath);
+                if (!storage.exists(imagePath)) {
                     return null;
                 }
                 
@@ -200,74 +332,290 @@ public class PhotoAdapter extends RecyclerView.Adapter<PhotoAdapter.PhotoViewHol
                     return null;
                 }
                 
-                // 读取图片尺寸
-                BitmapFactory.Options options = new BitmapFactory.Options();
-                options.inJustDecodeBounds = true;
-                BitmapFactory.decodeFile(imagePath, options);
+                // 优先使用拍照时同时生成的缩略图，无需解码原图
+                File thumbnailFile = ThumbnailFiles.thumbnailFor(imagePath);
+                if (thumbnailFile.exists()) {
+                    Bitmap thumbnail = adapter.decodeSmallFile(thumbnailFile);
+                    if (thumbnail != null) {
+                        return deliver(adapter, thumbnail);
+                    }
+                }
                 
-                // 计算缩放比例
-                PhotoAdapter adapter = adapterReference.get();
-                if (adapter == null) return null;
+                // 其次查找磁盘缓存（上次打开图库时解码并保存的缩略图）
+                ThumbnailDiskCache cache = getDiskCache(adapter.context);
+                String cacheKey = null;
+                if (cache != null) {
+                    cacheKey = diskCacheKey(storage, imagePath, adapter.thumbnailSize);
+                    File cachedFile = cache.get(cacheKey);
+                    if (cachedFile != null) {
+                        Bitmap cached = adapter.decodeSmallFile(cachedFile);
+                        if (cached != null) {
+                            return deliver(adapter, cached);
+                        }
+                        // 缓存文件损坏，重新解码后覆盖
+                        cache.remove(cacheKey);
+                    }
+                }
+                
+                // 然后使用原图内嵌的 EXIF 缩略图：只读取文件头部，不解码原图
+                JpegHeaderReader.Header header = readJpegHeader(storage, imagePath);
+                if (header != null && header.thumbnail != null) {
+                    Bitmap embedded = adapter.decodeSmallBytes(header.thumbnail);
+                    if (embedded != null) {
+                        return deliver(adapter, embedded);
+                    }
+                }
                 
-                int scale = Math.min(options.outWidth, options.outHeight) / adapter.thumbnailSize;
+                // 没有内嵌缩略图时才解码原图；图片尺寸优先取自已解析的 SOF 头，省去一次边界解码
+                int width;
+                int height;
+                if (header != null && header.hasSize()) {
+                    width = header.width;
+                    height = header.height;
+                } else {
+                    BitmapFactory.Options bounds = new BitmapFactory.Options();
+                    bounds.inJustDecodeBounds = true;
+                    decodeFromStorage(storage, imagePath, bounds);
+                    width = bounds.outWidth;
+                    height = bounds.outHeight;
+                }
+                
+                // 计算缩放比例
+                int scale = Math.min(width, height) / adapter.thumbnailSize;
                 if (scale <= 0) scale = 1;
                 
                 // 使用更激进的缩放以减少内存占用
                 scale = (int) Math.ceil(scale / 2.0);
                 if (scale <= 0) scale = 1;
                 
-                options.inJustDecodeBounds = false;
+                BitmapFactory.Options options = new BitmapFactory.Options();
                 options.inSampleSize = scale;
                 options.inPreferredConfig = Bitmap.Config.RGB_565; // 使用较低的色彩配置节省内存
-                options.inPurgeable = true;  // 设置位图可被回收
-                options.inInputShareable = true;  // 设置位图可共享引用
                 
                 // 检查是否已取消
                 if (isCancelled()) {
                     return null;
                 }
                 
-                Bitmap bitmap = BitmapFactory.decodeFile(imagePath, options);
-                
-                // 检查是否已取消
-                if (isCancelled()) {
-                    if (bitmap != null && !bitmap.isRecycled()) {
-                        bitmap.recycle();
+                final PhotoStorage source = storage;
+                Bitmap bitmap = adapter.decodePooled(new BitmapSource() {
+                    @Override
+                    public Bitmap decode(BitmapFactory.Options opts) throws IOException {
+                        return decodeFromStorage(source, imagePath, opts);
                     }
+                }, options, width, height);
+                if (bitmap == null) {
                     return null;
                 }
                 
-                // 将加载的图片添加到缓存
-                if (bitmap != null && adapter != null) {
-                    adapter.addBitmapToMemoryCache(imagePath, bitmap);
+                // 将加载的图片添加到缓存（内存缓存立即生效，磁盘缓存异步写入）
+                Bitmap delivered = deliver(adapter, bitmap);
+                if (delivered != null && cache != null) {
+                    writeToDiskCache(adapter, cache, cacheKey, delivered);
                 }
-                
-                return bitmap;
+                return delivered;
             } catch (Exception e) {
-                e.printStackTrace();
+                Log.e(TAG, "加载缩略图失败: " + imagePath, e);
                 return null;
             }
         }
         
+        // 解码完成：已取消时放回位图池；否则由本任务持有一个引用（直到显示后释放）并加入内存缓存，
+        // 避免位图在显示之前就被缓存淘汰并复用
+        private Bitmap deliver(PhotoAdapter adapter, Bitmap bitmap) {
+            if (isCancelled()) {
+                adapter.bitmapPool.release(bitmap);
+                return null;
+            }
+            adapter.acquireBitmap(bitmap);
+            adapter.addBitmapToMemoryCache(imagePath, bitmap);
+            return bitmap;
+        }
+        
         @Override
         protected void onPostExecute(Bitmap bitmap) {
-            if (isCancelled()) {
-                if (bitmap != null && !bitmap.isRecycled()) {
-                    bitmap.recycle();
-                }
+            PhotoAdapter adapter = adapterReference.get();
+            if (bitmap == null || adapter == null) {
                 return;
             }
-            
             ImageView imageView = imageViewReference.get();
-            if (imageView != null && bitmap != null) {
-                imageView.setImageBitmap(bitmap);
+            if (imageView != null) {
+                adapter.showBitmap(imageView, bitmap);
+            }
+            adapter.releaseBitmap(bitmap);
+        }
+        
+        @Override
+        protected void onCancelled(Bitmap bitmap) {
+            PhotoAdapter adapter = adapterReference.get();
+            if (bitmap != null && adapter != null) {
+                adapter.releaseBitmap(bitmap);
+            }
+        }
+    }
+    
+    // 解码来源（文件、字节数组或照片存储）
+    private interface BitmapSource {
+        Bitmap decode(BitmapFactory.Options options) throws IOException;
+    }
+    
+    // 解码时复用位图池中的位图；复用失败（例如尺寸估计不准）时放回池中并按普通方式重新解码
+    private Bitmap decodePooled(BitmapSource source, BitmapFactory.Options options, int width, int height) throws IOException {
+        Bitmap reusable = bitmapPool.prepare(options, width, height);
+        try {
+            Bitmap bitmap = source.decode(options);
+            if (bitmap == null && reusable != null) {
+                bitmapPool.release(reusable);
+            }
+            return bitmap;
+        } catch (IllegalArgumentException e) {
+            options.inBitmap = null;
+            if (reusable != null) {
+                bitmapPool.release(reusable);
+            }
+            return source.decode(options);
+        }
+    }
+    
+    // 解码小图（缩略图文件），先读取尺寸以便从位图池中挑选位图
+    private Bitmap decodeSmallFile(final File file) throws IOException {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getAbsolutePath(), bounds);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        return decodePooled(new BitmapSource() {
+            @Override
+            public Bitmap decode(BitmapFactory.Options opts) {
+                return BitmapFactory.decodeFile(file.getAbsolutePath(), opts);
+            }
+        }, options, bounds.outWidth, bounds.outHeight);
+    }
+    
+    // 解码内嵌缩略图的字节
+    private Bitmap decodeSmallBytes(final byte[] data) throws IOException {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, bounds);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        return decodePooled(new BitmapSource() {
+            @Override
+            public Bitmap decode(BitmapFactory.Options opts) {
+                return BitmapFactory.decodeByteArray(data, 0, data.length, opts);
+            }
+        }, options, bounds.outWidth, bounds.outHeight);
+    }
+    
+    // 在格子上显示位图，并释放该格子之前显示的位图
+    private void showBitmap(ImageView imageView, Bitmap bitmap) {
+        acquireBitmap(bitmap);
+        Bitmap previous = shownBitmaps.put(imageView, bitmap);
+        imageView.setImageBitmap(bitmap);
+        releaseBitmap(previous);
+    }
+    
+    // 格子改为显示占位图
+    private void clearShownBitmap(ImageView imageView) {
+        imageView.setImageResource(R.drawable.ic_camera);
+        releaseBitmap(shownBitmaps.remove(imageView));
+    }
+    
+    // 在引用计数锁内查找内存缓存并加引用：淘汰回调也要取这把锁，
+    // 查到的位图要么已被计数（淘汰后进入 evictedInUse），要么在查找前已被移出缓存
+    private Bitmap acquireCachedBitmap(String key) {
+        synchronized (bitmapRefs) {
+            Bitmap bitmap = memoryCache.get(key);
+            if (bitmap != null) {
+                acquireBitmap(bitmap);
+            }
+            return bitmap;
+        }
+    }
+    
+    private void acquireBitmap(Bitmap bitmap) {
+        synchronized (bitmapRefs) {
+            Integer count = bitmapRefs.get(bitmap);
+            bitmapRefs.put(bitmap, count == null ? 1 : count + 1);
+        }
+    }
+    
+    // 引用归零且已被内存缓存淘汰的位图放入位图池
+    private void releaseBitmap(Bitmap bitmap) {
+        if (bitmap == null) {
+            return;
+        }
+        boolean reusable;
+        synchronized (bitmapRefs) {
+            Integer count = bitmapRefs.get(bitmap);
+            if (count == null) {
+                return;
+            }
+            if (count > 1) {
+                bitmapRefs.put(bitmap, count - 1);
+                return;
             }
+            bitmapRefs.remove(bitmap);
+            reusable = evictedInUse.remove(bitmap);
+        }
+        if (reusable) {
+            bitmapPool.release(bitmap);
         }
     }
     
+    // 内存缓存淘汰位图：仍在显示或等待显示的位图等引用释放后再放入位图池
+    private void onCacheEntryRemoved(Bitmap bitmap) {
+        synchronized (bitmapRefs) {
+            if (bitmapRefs.containsKey(bitmap)) {
+                evictedInUse.add(bitmap);
+                return;
+            }
+        }
+        bitmapPool.release(bitmap);
+    }
+    
+    @Override
+    public void onViewRecycled(@NonNull PhotoViewHolder holder) {
+        super.onViewRecycled(holder);
+        clearShownBitmap(holder.imageView);
+    }
+    
     // 清理图片缓存
     public void clearImageCache() {
         memoryCache.evictAll();
+        Log.d(TAG, bitmapPool.describeStats());
+        bitmapPool.clear();
+    }
+    
+    /**
+     * 系统内存紧张时缩小内存缓存和位图池，紧张程度越高缩得越小
+     */
+    public void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            // 进程即将被杀，全部释放
+            memoryCache.evictAll();
+            bitmapPool.clear();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            memoryCache.resize(Math.max(1, memoryCacheMaxKb / 4));
+            bitmapPool.clear();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            // RUNNING_LOW 和 UI_HIDDEN
+            memoryCache.resize(Math.max(1, memoryCacheMaxKb / 2));
+            bitmapPool.resize(bitmapPoolMaxBytes / 2);
+        } else {
+            bitmapPool.resize(bitmapPoolMaxBytes / 2);
+        }
+        Log.d(TAG, "内存整理 level=" + level + ", 内存缓存 " + memoryCache.size() + "/" + memoryCache.maxSize()
+                + " KB, " + bitmapPool.describeStats());
+    }
+    
+    /**
+     * 回到图库时恢复内存缓存和位图池的容量
+     */
+    public void restoreCacheSize() {
+        memoryCache.resize(memoryCacheMaxKb);
+        bitmapPool.resize(bitmapPoolMaxBytes);
     }
     
     // 切换照片选中状态
@@ -341,17 +689,22 @@ public class PhotoAdapter extends RecyclerView.Adapter<PhotoAdapter.PhotoViewHol
         return paths;
     }
     
-    // 删除选中的照片
-    public void deleteSelectedPhotos() {
-        for (PhotoItem item : selectedPhotos) {
-            // 删除文件
-            File file = new File(item.getPath());
-            if (file.exists()) {
-                file.delete();
+    // 删除选中的照片：一次遍历从列表中移除，文件交给删除队列在后台删除
+    // 返回删除编号，撤销窗口内可通过 DeletionService.undo 恢复
+    public long deleteSelectedPhotos(DeletionService.Listener deletionListener) {
+        List<String> paths = new ArrayList<>(selectedPhotos.size());
+        List<PhotoItem> kept = new ArrayList<>(photoList.size());
+        for (PhotoItem item : photoList) {
+            if (selectedPhotos.contains(item)) {
+                paths.add(item.getPath());
+            } else {
+                kept.add(item);
             }
-            // 从列表中移除
-            photoList.remove(item);
         }
+        // 列表与图库页面共用，原地替换内容
+        photoList.clear();
+        photoList.addAll(kept);
+        long ticket = DeletionService.get(context).trash(paths, deletionListener);
         
         // 清空选中列表
         selectedPhotos.clear();
@@ -361,6 +714,7 @@ public class PhotoAdapter extends RecyclerView.Adapter<PhotoAdapter.PhotoViewHol
         
         // 通知数据改变
         notifyDataSetChanged();
+        return ticket;
     }
     
     static class PhotoViewHolder extends RecyclerView.ViewHolder {
@@ -7,7 +7,6 @@ import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.os.Bundle;
-import android.os.Environment;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
@@ -18,32 +17,36 @@ import androidx.core.content.ContextCompat;
 import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
+import com.google.android.material.snackbar.Snackbar;
+
 import android.util.Log;
 
-import java.io.File;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.Date;
-import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Set;
 
 public class PhotoGalleryActivity extends AppCompatActivity implements PhotoAdapter.OnPhotoClickListener {
     
     private static final int PERMISSION_REQUEST_CODE = 101;
+    private static final int PAGE_SIZE = 300; // 每次从照片目录取的照片数
+    private static final int PREFETCH_DISTANCE = 60; // 距离末尾这么多格时加载下一页
     
     private RecyclerView recyclerView;
     private PhotoAdapter photoAdapter;
     private List<PhotoItem> photoList;
     private Map<String, List<PhotoItem>> photosByDate; // 按日期分组的照片
+    private final SimpleDateFormat dateKeyFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
     private boolean isSelectionMode = false; // 是否处于选择模式
     private MenuItem deleteMenuItem; // 删除菜单项
     private MenuItem selectAllMenuItem; // 全选菜单项
+    private int loadGeneration = 0; // 重新加载时递增，丢弃旧的分页结果
+    private boolean pageLoading = false;
+    private boolean reachedEnd = false;
+    private Snackbar deletionProgress; // 撤销窗口结束后真正删除文件时显示的进度
     
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -58,10 +61,8 @@ public class PhotoGalleryActivity extends AppCompatActivity implements PhotoAdap
         
         initViews();
         
-        // 检查存储权限
-        if (checkStoragePermission()) {
-            loadPhotos();
-        } else {
+        // 检查存储权限（照片在 onResume 中加载）
+        if (!checkStoragePermission()) {
             Toast.makeText(this, "需要存储权限才能查看照片", Toast.LENGTH_LONG).show();
         }
     }
@@ -90,115 +91,103 @@ public class PhotoGalleryActivity extends AppCompatActivity implements PhotoAdap
         RecyclerView.RecycledViewPool recycledViewPool = new RecyclerView.RecycledViewPool();
         recycledViewPool.setMaxRecycledViews(0, 20); // 假设只有一种view type
         recyclerView.setRecycledViewPool(recycledViewPool);
+
+        // 滚动接近末尾时加载下一页
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView view, int dx, int dy) {
+                int last = layoutManager.findLastVisibleItemPosition();
+                if (last >= photoList.size() - PREFETCH_DISTANCE) {
+                    loadNextPage();
+                }
+            }
+        });
     }
     
+    // 重新加载：在后台按拍摄时间倒序从照片目录取照片（最新的在前面），
+    // 至少取回已经显示的数量，返回图库时滚动位置不丢失
     private void loadPhotos() {
-        photoList.clear();
-        photosByDate.clear();
-        
-        // 获取应用私有目录和公共图片目录中的照片
-        List<File> photoDirs = new ArrayList<>();
-        
-        // 添加应用私有目录
-        StorageManager storageManager = new StorageManager(this);
-        File privatePhotoDir = storageManager.getPhotoDirectory();
-        if (privatePhotoDir != null && privatePhotoDir.exists()) {
-            photoDirs.add(privatePhotoDir);
-        }
-        
-        // 添加应用专用的照片目录（Pictures/CameraApp/）
-        File picturesDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_PICTURES);
-        if (picturesDir != null && picturesDir.exists()) {
-            File appPhotoDir = new File(picturesDir, "CameraApp");
-            if (appPhotoDir.exists()) {
-                photoDirs.add(appPhotoDir);
-                Log.d("PhotoGallery", "添加应用照片目录: " + appPhotoDir.getAbsolutePath());
-            } else {
-                Log.d("PhotoGallery", "应用照片目录不存在: " + appPhotoDir.getAbsolutePath());
-            }
-        }
-        
-        // 也添加公共图片根目录（兼容旧照片，如果有的话）
-        //if (picturesDir != null && picturesDir.exists()) {
-            // photoDirs.add(picturesDir);
-        //}
-        
-        // 从所有目录加载照片（递归扫描，包括子文件夹）
-        for (File photoDir : photoDirs) {
-            if (photoDir != null && photoDir.exists()) {
-                loadPhotosFromDirectory(photoDir, photoList, photosByDate);
-            }
-        }
-        
-        // 按拍摄时间倒序排列（最新的在前面）
-        Collections.sort(photoList, new Comparator<PhotoItem>() {
+        final int generation = ++loadGeneration;
+        final int limit = Math.max(PAGE_SIZE, photoList.size());
+        pageLoading = true;
+        new android.os.AsyncTask<Void, Void, List<PhotoCatalog.Entry>>() {
+            private long total;
+
             @Override
-            public int compare(PhotoItem p1, PhotoItem p2) {
-                return Long.compare(p2.getTimestamp(), p1.getTimestamp());
+            protected List<PhotoCatalog.Entry> doInBackground(Void... voids) {
+                PhotoCatalog catalog = PhotoCatalog.get(PhotoGalleryActivity.this);
+                total = catalog.count();
+                return catalog.newest(limit);
             }
-        });
-        
-        // 去重处理，避免同一张照片在不同目录中重复显示
-        Set<String> uniquePaths = new HashSet<>();
-        List<PhotoItem> uniquePhotos = new ArrayList<>();
-        for (PhotoItem photo : photoList) {
-            // 使用文件路径作为去重依据
-            String photoPath = photo.getPath();
-            if (!uniquePaths.contains(photoPath)) {
-                uniquePaths.add(photoPath);
-                uniquePhotos.add(photo);
+
+            @Override
+            protected void onPostExecute(List<PhotoCatalog.Entry> entries) {
+                if (generation != loadGeneration || isFinishing()) {
+                    return;
+                }
+                photoList.clear();
+                photosByDate.clear();
+                appendPage(entries, limit);
+                Log.d("PhotoGallery", "从照片目录加载 " + photoList.size() + "/" + total + " 张照片");
+                photoAdapter.notifyDataSetChanged();
+
+                // 显示照片数量
+                String message = "找到 " + total + " 张照片";
+                if (PhotoCatalog.isImporting()) {
+                    message += "（正在导入已有照片）";
+                }
+                Toast.makeText(PhotoGalleryActivity.this, message, Toast.LENGTH_SHORT).show();
             }
-        }
-        photoList.clear();
-        photoList.addAll(uniquePhotos);
-        
-        photoAdapter.notifyDataSetChanged();
-        
-        // 显示照片数量
-        Toast.makeText(this, "找到 " + photoList.size() + " 张照片", Toast.LENGTH_SHORT).show();
+        }.executeOnExecutor(android.os.AsyncTask.THREAD_POOL_EXECUTOR);
     }
-    
-    // 递归加载目录中的照片
-    private void loadPhotosFromDirectory(File dir, List<PhotoItem> photoList, Map<String, List<PhotoItem>> photosByDate) {
-        if (dir == null || !dir.exists() || !dir.isDirectory()) {
-            return;
-        }
-        
-        File[] files = dir.listFiles();
-        if (files == null) {
+
+    // 在后台取最后一张照片之后的一页
+    private void loadNextPage() {
+        if (pageLoading || reachedEnd || photoList.isEmpty()) {
             return;
         }
-        
-        for (File file : files) {
-            if (file.isDirectory()) {
-                // 递归扫描子目录（包括CameraApp子文件夹）
-                loadPhotosFromDirectory(file, photoList, photosByDate);
-            } else if (file.isFile()) {
-                String fileName = file.getName().toLowerCase(Locale.ROOT);
-                if (fileName.endsWith(".jpg") || fileName.endsWith(".jpeg")) {
-                    PhotoItem photoItem = new PhotoItem(file.getAbsolutePath(), file.lastModified());
-                    photoList.add(photoItem);
-                    
-                    // 按日期分组
-                    String dateKey = getDateKey(file.lastModified());
-                    if (!photosByDate.containsKey(dateKey)) {
-                        photosByDate.put(dateKey, new ArrayList<PhotoItem>());
-                    }
-                    photosByDate.get(dateKey).add(photoItem);
+        final int generation = loadGeneration;
+        PhotoItem last = photoList.get(photoList.size() - 1);
+        final long capturedAt = last.getTimestamp();
+        final String path = last.getPath();
+        pageLoading = true;
+        new android.os.AsyncTask<Void, Void, List<PhotoCatalog.Entry>>() {
+            @Override
+            protected List<PhotoCatalog.Entry> doInBackground(Void... voids) {
+                return PhotoCatalog.get(PhotoGalleryActivity.this).olderThan(capturedAt, path, PAGE_SIZE);
+            }
+
+            @Override
+            protected void onPostExecute(List<PhotoCatalog.Entry> entries) {
+                if (generation != loadGeneration || isFinishing()) {
+                    return;
                 }
+                int start = photoList.size();
+                appendPage(entries, PAGE_SIZE);
+                photoAdapter.notifyItemRangeInserted(start, photoList.size() - start);
             }
+        }.executeOnExecutor(android.os.AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    private void appendPage(List<PhotoCatalog.Entry> entries, int requested) {
+        for (PhotoCatalog.Entry entry : entries) {
+            PhotoItem photoItem = new PhotoItem(entry.path, entry.capturedAt, entry.archived, entry.qualityFlagged);
+            photoList.add(photoItem);
+
+            // 按日期分组
+            String dateKey = getDateKey(entry.capturedAt);
+            if (!photosByDate.containsKey(dateKey)) {
+                photosByDate.put(dateKey, new ArrayList<PhotoItem>());
+            }
+            photosByDate.get(dateKey).add(photoItem);
         }
-        
-        photoAdapter.notifyDataSetChanged();
-        
-        // 显示照片数量
-        Toast.makeText(this, "找到 " + photoList.size() + " 张照片", Toast.LENGTH_SHORT).show();
+        reachedEnd = entries.size() < requested;
+        pageLoading = false;
     }
-    
+
     // 获取日期键值（用于分组）
     private String getDateKey(long timestamp) {
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
-        return sdf.format(new Date(timestamp));
+        return dateKeyFormat.format(new Date(timestamp));
     }
     
     @Override
@@ -288,9 +277,57 @@ public class PhotoGalleryActivity extends AppCompatActivity implements PhotoAdap
     
     // 删除选中的照片
     private void deleteSelectedPhotos() {
-        photoAdapter.deleteSelectedPhotos();
-        Toast.makeText(this, "照片已删除", Toast.LENGTH_SHORT).show();
+        final int count = photoAdapter.getSelectedPhotoPaths().size();
+        final long ticket = photoAdapter.deleteSelectedPhotos(new DeletionService.Listener() {
+            @Override
+            public void onProgress(int done, int total) {
+                if (isFinishing()) {
+                    return;
+                }
+                String text = "正在删除照片 " + done + "/" + total;
+                if (deletionProgress == null || !deletionProgress.isShownOrQueued()) {
+                    deletionProgress = Snackbar.make(recyclerView, text, Snackbar.LENGTH_INDEFINITE);
+                    deletionProgress.show();
+                } else {
+                    deletionProgress.setText(text);
+                }
+            }
+
+            @Override
+            public void onFinished(int deleted, long freedBytes) {
+                if (deletionProgress != null) {
+                    deletionProgress.dismiss();
+                    deletionProgress = null;
+                }
+                if (isFinishing()) {
+                    return;
+                }
+                Snackbar.make(recyclerView, "已删除 " + deleted + " 张照片，释放 " + (freedBytes / (1024 * 1024)) + " MB",
+                        Snackbar.LENGTH_SHORT).show();
+            }
+        });
         exitSelectionMode();
+
+        // 撤销窗口内可以恢复，窗口结束后照片才真正从存储中删除
+        Snackbar.make(recyclerView, "已删除 " + count + " 张照片", Snackbar.LENGTH_LONG)
+                .setDuration((int) DeletionService.UNDO_WINDOW_MS)
+                .setAction("撤销", new View.OnClickListener() {
+                    @Override
+                    public void onClick(View v) {
+                        boolean undone = DeletionService.get(PhotoGalleryActivity.this).undo(ticket, new Runnable() {
+                            @Override
+                            public void run() {
+                                if (!isFinishing()) {
+                                    loadPhotos();
+                                }
+                            }
+                        });
+                        if (!undone) {
+                            Toast.makeText(PhotoGalleryActivity.this, "已超过撤销时间", Toast.LENGTH_SHORT).show();
+                        }
+                    }
+                })
+                .show();
     }
 
     // 上传选中的照片到云端
@@ -371,6 +408,10 @@ public class PhotoGalleryActivity extends AppCompatActivity implements PhotoAdap
     @Override
     protected void onResume() {
         super.onResume();
+        // 内存整理时缩小过的缓存恢复原来的容量
+        if (photoAdapter != null) {
+            photoAdapter.restoreCacheSize();
+        }
         // 返回时重新加载照片列表
         if (checkStoragePermission()) {
             loadPhotos();
@@ -386,6 +427,15 @@ public class PhotoGalleryActivity extends AppCompatActivity implements PhotoAdap
         }
     }
     
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        // 按系统内存状况缩小缩略图缓存和位图池
+        if (photoAdapter != null) {
+            photoAdapter.onTrimMemory(level);
+        }
+    }
+    
     @Override
     public void onBackPressed() {
         if (isSelectionMode) {
@@ -3,12 +3,24 @@ package com.pipiqiang.qcamera.app;
 public class PhotoItem {
     private String path;
     private long timestamp;
+    private boolean archived; // 已缩小重编码的归档照片
+    private boolean qualityFlagged; // 被质量门限标记为不合格
     
     public PhotoItem(String path, long timestamp) {
         this.path = path;
         this.timestamp = timestamp;
     }
     
+    public PhotoItem(String path, long timestamp, boolean archived) {
+        this(path, timestamp);
+        this.archived = archived;
+    }
+    
+    public PhotoItem(String path, long timestamp, boolean archived, boolean qualityFlagged) {
+        this(path, timestamp, archived);
+        this.qualityFlagged = qualityFlagged;
+    }
+    
     public String getPath() {
         return path;
     }
@@ -24,4 +36,12 @@ public class PhotoItem {
     public void setTimestamp(long timestamp) {
         this.timestamp = timestamp;
     }
+    
+    public boolean isArchived() {
+        return archived;
+    }
+    
+    public boolean isQualityFlagged() {
+        return qualityFlagged;
+    }
 }
\ No newline at end of file
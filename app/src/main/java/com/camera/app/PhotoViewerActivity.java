@@ -3,14 +3,17 @@ import com.pipiqiang.qcamera.R;
 
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.media.ExifInterface;
 import android.os.Bundle;
+import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.widget.ImageView;
 
 import androidx.appcompat.app.AppCompatActivity;
 
-import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 
 public class PhotoViewerActivity extends AppCompatActivity {
     
@@ -38,14 +41,41 @@ public class PhotoViewerActivity extends AppCompatActivity {
     private void loadPhoto() {
         String photoPath = getIntent().getStringExtra("photo_path");
         if (photoPath != null && !photoPath.isEmpty()) {
-            File photoFile = new File(photoPath);
-            if (photoFile.exists()) {
-                // 加载原图
-                Bitmap bitmap = BitmapFactory.decodeFile(photoPath);
+            PhotoStorage storage = PhotoStorages.forPath(this, photoPath);
+            if (storage.exists(photoPath)) {
+                // 加载原图（普通文件或段存储中的照片）
+                Bitmap bitmap = null;
+                try {
+                    InputStream in = storage.open(photoPath);
+                    try {
+                        bitmap = BitmapFactory.decodeStream(in);
+                    } finally {
+                        in.close();
+                    }
+                } catch (IOException e) {
+                    Log.w("PhotoViewer", "读取照片失败: " + photoPath, e);
+                }
                 if (bitmap != null) {
                     imageView.setImageBitmap(bitmap);
                 }
+                if (!SegmentPhotoStorage.isSegmentPath(photoPath)) {
+                    // 段存储中的照片不带ROI信息
+                    showCropRegion(photoPath);
+                }
+            }
+        }
+    }
+
+    // 感兴趣区域照片在标题栏显示区域信息
+    private void showCropRegion(String photoPath) {
+        try {
+            ExifInterface exif = new ExifInterface(photoPath);
+            String description = exif.getAttribute(ExifInterface.TAG_IMAGE_DESCRIPTION);
+            if (description != null && description.startsWith(CropRegion.EXIF_PREFIX) && getSupportActionBar() != null) {
+                getSupportActionBar().setSubtitle(description);
             }
+        } catch (IOException e) {
+            Log.w("PhotoViewer", "读取EXIF失败", e);
         }
     }
 
@@ -82,8 +112,7 @@ public class PhotoViewerActivity extends AppCompatActivity {
                         android.widget.Toast.makeText(PhotoViewerActivity.this, ok ? "上传成功" : "上传失败", android.widget.Toast.LENGTH_LONG).show();
                         // 如果删除了源文件，尝试关闭页面
                         if (ok) {
-                            File f = new File(path);
-                            if (!f.exists()) {
+                            if (!PhotoStorages.forPath(PhotoViewerActivity.this, path).exists(path)) {
                                 finish();
                             }
                         }
@@ -2,19 +2,49 @@ package com.pipiqiang.qcamera.app;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.util.Log;
 
 import androidx.preference.PreferenceManager;
 
 public class SettingsManager {
     
+    private static final String TAG = "SettingsManager";
+    
     private static final String PREF_CAMERA_RESOLUTION = "camera_resolution";
     private static final String PREF_CAMERA_QUALITY = "camera_quality";
+    private static final String PREF_PRE_EVENT_ENABLED = "pre_event_enabled";
+    private static final String PREF_PRE_EVENT_SECONDS = "pre_event_seconds";
+    private static final String PREF_THUMBNAIL_OUTPUT = "thumbnail_output";
+    private static final String PREF_ZSL_ENABLED = "zsl_enabled";
+    private static final String PREF_LOW_LIGHT_MODE = "low_light_mode"; // off/auto/always
+    private static final String PREF_LOW_LIGHT_FRAMES = "low_light_frames";
+    private static final String PREF_LOW_LIGHT_ISO = "low_light_iso_threshold";
+    private static final String PREF_LOW_LIGHT_EXPOSURE_MS = "low_light_exposure_ms";
+    private static final String PREF_HDR_ENABLED = "hdr_enabled";
+    private static final String PREF_CAMERA_ROI = "camera_roi"; // 摄像头索引:左,上,右,下;...
+    private static final String PREF_PRIVACY_MASKS = "privacy_masks"; // rect:左,上,右,下;poly:x1,y1,...
+    private static final String PREF_QUALITY_GATE_MODE = "quality_gate_mode"; // off/flag/drop
+    private static final String PREF_QUALITY_MIN_BRIGHTNESS = "quality_min_brightness";
+    private static final String PREF_QUALITY_MAX_OVEREXPOSED = "quality_max_overexposed";
+    private static final String PREF_QUALITY_MIN_SHARPNESS = "quality_min_sharpness";
     private static final String PREF_CAPTURE_INTERVAL = "capture_interval";
     private static final String PREF_STOP_CONDITION = "stop_condition";
     private static final String PREF_STOP_TIME = "stop_time";
     private static final String PREF_STOP_COUNT = "stop_count";
     private static final String PREF_AUTO_CLEAN = "auto_clean";
     private static final String PREF_MIN_SPACE = "min_space";
+    private static final String PREF_CLEAN_SOFT_MARGIN = "clean_soft_margin";
+    private static final String PREF_RETENTION_THINNING = "retention_thinning";
+    private static final String PREF_RETENTION_MAX_GB = "retention_max_gb";
+    private static final String PREF_RETENTION_MAX_COUNT = "retention_max_count";
+    private static final String PREF_FSYNC_POLICY = "fsync_policy";
+    private static final String PREF_FSYNC_BATCH_FILES = "fsync_batch_files";
+    private static final String PREF_FSYNC_BATCH_SECONDS = "fsync_batch_seconds";
+    private static final String PREF_ARCHIVE_ENABLED = "archive_enabled";
+    private static final String PREF_ARCHIVE_AFTER_DAYS = "archive_after_days";
+    private static final String PREF_ARCHIVE_MAX_EDGE = "archive_max_edge";
+    private static final String PREF_ARCHIVE_QUALITY = "archive_quality";
+    private static final String PREF_STORAGE_BACKEND = "storage_backend";
     private static final String PREF_SEND_EMAIL = "send_email";
     private static final String PREF_EMAIL_ADDRESS = "email_address";
     // 云存储设置
@@ -47,11 +77,38 @@ public class SettingsManager {
     // 默认值
     private static final String DEFAULT_RESOLUTION = "1920x1080";
     private static final String DEFAULT_QUALITY = "75";
+    private static final boolean DEFAULT_PRE_EVENT_ENABLED = false;
+    private static final String DEFAULT_PRE_EVENT_SECONDS = "3";
+    private static final boolean DEFAULT_THUMBNAIL_OUTPUT = false;
+    private static final boolean DEFAULT_ZSL_ENABLED = false;
+    private static final String DEFAULT_LOW_LIGHT_MODE = "off";
+    private static final String DEFAULT_LOW_LIGHT_FRAMES = "4";
+    private static final String DEFAULT_LOW_LIGHT_ISO = "800";
+    private static final String DEFAULT_LOW_LIGHT_EXPOSURE_MS = "50";
+    private static final boolean DEFAULT_HDR_ENABLED = false;
+    private static final String DEFAULT_CAMERA_ROI = "";
+    private static final String DEFAULT_PRIVACY_MASKS = "";
+    private static final String DEFAULT_QUALITY_GATE_MODE = "off";
+    private static final String DEFAULT_QUALITY_MIN_BRIGHTNESS = "20";
+    private static final String DEFAULT_QUALITY_MAX_OVEREXPOSED = "60";
+    private static final String DEFAULT_QUALITY_MIN_SHARPNESS = "20";
     private static final String DEFAULT_INTERVAL = "30";
     private static final String DEFAULT_STOP_CONDITION = "never";
     private static final String DEFAULT_STOP_COUNT = "100";
     private static final boolean DEFAULT_AUTO_CLEAN = true;
     private static final String DEFAULT_MIN_SPACE = "100";
+    private static final String DEFAULT_CLEAN_SOFT_MARGIN = "200";
+    private static final boolean DEFAULT_RETENTION_THINNING = false;
+    private static final String DEFAULT_RETENTION_MAX_GB = "0";
+    private static final String DEFAULT_RETENTION_MAX_COUNT = "0";
+    private static final String DEFAULT_FSYNC_POLICY = "batched";
+    private static final String DEFAULT_FSYNC_BATCH_FILES = "10";
+    private static final String DEFAULT_FSYNC_BATCH_SECONDS = "30";
+    private static final boolean DEFAULT_ARCHIVE_ENABLED = false;
+    private static final String DEFAULT_ARCHIVE_AFTER_DAYS = "14";
+    private static final String DEFAULT_ARCHIVE_MAX_EDGE = "1600";
+    private static final String DEFAULT_ARCHIVE_QUALITY = "60";
+    private static final String DEFAULT_STORAGE_BACKEND = "files";
     private static final boolean DEFAULT_SEND_EMAIL = false;
     private static final String DEFAULT_EMAIL = "";
     private static final boolean DEFAULT_CLOUD_ENABLED = false;
@@ -93,6 +150,110 @@ public class SettingsManager {
         }
     }
     
+    // 预事件缓冲：触发时保存之前若干秒的低分辨率帧
+    public boolean isPreEventEnabled() {
+        return sharedPreferences.getBoolean(PREF_PRE_EVENT_ENABLED, DEFAULT_PRE_EVENT_ENABLED);
+    }
+    
+    public int getPreEventSeconds() {
+        int seconds;
+        try {
+            seconds = Integer.parseInt(sharedPreferences.getString(PREF_PRE_EVENT_SECONDS, DEFAULT_PRE_EVENT_SECONDS));
+        } catch (NumberFormatException e) {
+            return 3; // 默认3秒
+        }
+        // 环形缓冲区容量有限，超出上限时按上限保存并记录，不静默截断
+        int clamped = Math.max(1, Math.min(seconds, PreEventRecorder.MAX_SECONDS));
+        if (clamped != seconds) {
+            Log.w(TAG, "触发前保存时长 " + seconds + " 秒超出范围(1-" + PreEventRecorder.MAX_SECONDS
+                    + ")，按 " + clamped + " 秒保存");
+        }
+        return clamped;
+    }
+    
+    // 拍照时同时输出小尺寸缩略图
+    public boolean isThumbnailOutputEnabled() {
+        return sharedPreferences.getBoolean(PREF_THUMBNAIL_OUTPUT, DEFAULT_THUMBNAIL_OUTPUT);
+    }
+    
+    // 零快门延迟拍照：从最近的全分辨率帧中取最接近触发时刻的一帧
+    public boolean isZslEnabled() {
+        return sharedPreferences.getBoolean(PREF_ZSL_ENABLED, DEFAULT_ZSL_ENABLED);
+    }
+    
+    // HDR包围曝光融合：关闭闪光时连拍三帧不同曝光并融合
+    public boolean isHdrEnabled() {
+        return sharedPreferences.getBoolean(PREF_HDR_ENABLED, DEFAULT_HDR_ENABLED);
+    }
+    
+    // 感兴趣区域：按摄像头索引取出配置的区域，未配置时返回null
+    public CropRegion getCropRegion(int cameraIndex) {
+        return CropRegion.forCamera(sharedPreferences.getString(PREF_CAMERA_ROI, DEFAULT_CAMERA_ROI), cameraIndex);
+    }
+    
+    // 隐私遮挡区域（照片上的归一化坐标）
+    public String getPrivacyMasks() {
+        return sharedPreferences.getString(PREF_PRIVACY_MASKS, DEFAULT_PRIVACY_MASKS);
+    }
+    
+    // 帧质量门限：off / flag（标记，不上传不发邮件）/ drop（丢弃）
+    public String getQualityGateMode() {
+        return sharedPreferences.getString(PREF_QUALITY_GATE_MODE, DEFAULT_QUALITY_GATE_MODE);
+    }
+    
+    public int getQualityMinBrightness() {
+        try {
+            return Integer.parseInt(sharedPreferences.getString(PREF_QUALITY_MIN_BRIGHTNESS, DEFAULT_QUALITY_MIN_BRIGHTNESS));
+        } catch (NumberFormatException e) {
+            return 20;
+        }
+    }
+    
+    public int getQualityMaxOverexposedPercent() {
+        try {
+            return Integer.parseInt(sharedPreferences.getString(PREF_QUALITY_MAX_OVEREXPOSED, DEFAULT_QUALITY_MAX_OVEREXPOSED));
+        } catch (NumberFormatException e) {
+            return 60;
+        }
+    }
+    
+    public int getQualityMinSharpness() {
+        try {
+            return Integer.parseInt(sharedPreferences.getString(PREF_QUALITY_MIN_SHARPNESS, DEFAULT_QUALITY_MIN_SHARPNESS));
+        } catch (NumberFormatException e) {
+            return 20;
+        }
+    }
+    
+    // 低光多帧叠加
+    public String getLowLightMode() {
+        return sharedPreferences.getString(PREF_LOW_LIGHT_MODE, DEFAULT_LOW_LIGHT_MODE);
+    }
+    
+    public int getLowLightFrames() {
+        try {
+            return Integer.parseInt(sharedPreferences.getString(PREF_LOW_LIGHT_FRAMES, DEFAULT_LOW_LIGHT_FRAMES));
+        } catch (NumberFormatException e) {
+            return 4; // 默认4帧
+        }
+    }
+    
+    public int getLowLightIsoThreshold() {
+        try {
+            return Integer.parseInt(sharedPreferences.getString(PREF_LOW_LIGHT_ISO, DEFAULT_LOW_LIGHT_ISO));
+        } catch (NumberFormatException e) {
+            return 800;
+        }
+    }
+    
+    public int getLowLightExposureMs() {
+        try {
+            return Integer.parseInt(sharedPreferences.getString(PREF_LOW_LIGHT_EXPOSURE_MS, DEFAULT_LOW_LIGHT_EXPOSURE_MS));
+        } catch (NumberFormatException e) {
+            return 50;
+        }
+    }
+    
     // 拍摄设置
     public int getCaptureInterval() {
         try {
@@ -131,6 +292,95 @@ public class SettingsManager {
         }
     }
     
+    // 提前清理余量：剩余空间低于 最小剩余空间+余量 时在后台清理
+    public int getCleanSoftMarginMB() {
+        try {
+            return Math.max(0, Integer.parseInt(sharedPreferences.getString(PREF_CLEAN_SOFT_MARGIN, DEFAULT_CLEAN_SOFT_MARGIN)));
+        } catch (NumberFormatException e) {
+            return 200;
+        }
+    }
+    
+    // 延时摄影抽稀：24小时内全部保留，30天内每10分钟一张，更早的每小时一张
+    public boolean isRetentionThinningEnabled() {
+        return sharedPreferences.getBoolean(PREF_RETENTION_THINNING, DEFAULT_RETENTION_THINNING);
+    }
+    
+    // 照片总容量上限（GB），0 表示不限
+    public int getRetentionMaxGb() {
+        try {
+            return Math.max(0, Integer.parseInt(sharedPreferences.getString(PREF_RETENTION_MAX_GB, DEFAULT_RETENTION_MAX_GB)));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+    
+    // 照片总张数上限，0 表示不限
+    public int getRetentionMaxCount() {
+        try {
+            return Math.max(0, Integer.parseInt(sharedPreferences.getString(PREF_RETENTION_MAX_COUNT, DEFAULT_RETENTION_MAX_COUNT)));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+    
+    // 照片写盘的 fsync 策略：none / per_file / batched
+    public String getFsyncPolicy() {
+        return sharedPreferences.getString(PREF_FSYNC_POLICY, DEFAULT_FSYNC_POLICY);
+    }
+    
+    public int getFsyncBatchFiles() {
+        try {
+            return Math.max(1, Integer.parseInt(sharedPreferences.getString(PREF_FSYNC_BATCH_FILES, DEFAULT_FSYNC_BATCH_FILES)));
+        } catch (NumberFormatException e) {
+            return 10;
+        }
+    }
+    
+    public int getFsyncBatchSeconds() {
+        try {
+            return Math.max(0, Integer.parseInt(sharedPreferences.getString(PREF_FSYNC_BATCH_SECONDS, DEFAULT_FSYNC_BATCH_SECONDS)));
+        } catch (NumberFormatException e) {
+            return 30;
+        }
+    }
+    
+    // 照片存储方式：files（每张一个文件）/ segments（追加到段文件）
+    public boolean isSegmentStorageEnabled() {
+        return "segments".equals(sharedPreferences.getString(PREF_STORAGE_BACKEND, DEFAULT_STORAGE_BACKEND));
+    }
+    
+    // 归档：超过一定天数的照片缩小重编码
+    public boolean isArchiveEnabled() {
+        return sharedPreferences.getBoolean(PREF_ARCHIVE_ENABLED, DEFAULT_ARCHIVE_ENABLED);
+    }
+    
+    public int getArchiveAfterDays() {
+        try {
+            return Math.max(1, Integer.parseInt(sharedPreferences.getString(PREF_ARCHIVE_AFTER_DAYS, DEFAULT_ARCHIVE_AFTER_DAYS)));
+        } catch (NumberFormatException e) {
+            return 14;
+        }
+    }
+    
+    // 归档照片的长边像素
+    public int getArchiveMaxEdge() {
+        try {
+            return Math.max(320, Integer.parseInt(sharedPreferences.getString(PREF_ARCHIVE_MAX_EDGE, DEFAULT_ARCHIVE_MAX_EDGE)));
+        } catch (NumberFormatException e) {
+            return 1600;
+        }
+    }
+    
+    public int getArchiveQuality() {
+        try {
+            int quality = Integer.parseInt(sharedPreferences.getString(PREF_ARCHIVE_QUALITY, DEFAULT_ARCHIVE_QUALITY));
+            return Math.max(10, Math.min(95, quality));
+        } catch (NumberFormatException e) {
+            return 60;
+        }
+    }
+    
     // 邮件设置
     public boolean isEmailSendingEnabled() {
         return sharedPreferences.getBoolean(PREF_SEND_EMAIL, DEFAULT_SEND_EMAIL);
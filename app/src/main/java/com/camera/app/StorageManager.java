@@ -1,20 +1,17 @@
 package com.pipiqiang.qcamera.app;
 
 import android.content.Context;
-import android.os.Environment;
-import android.os.StatFs;
 import android.util.Log;
 
 import java.io.File;
-import java.io.FileFilter;
-import java.util.Arrays;
-import java.util.Comparator;
 import java.util.Locale;
 
 public class StorageManager {
     
     private static final String TAG = "StorageManager";
     private static final long MIN_FREE_SPACE_DEFAULT = 100 * 1024 * 1024; // 100MB
+    private static final int RETENTION_BATCH = 200; // 每次保留策略最多检查的照片数
+    private static final int ARCHIVE_BATCH = 20; // 每批归档查询的照片数
     
     private Context context;
     
@@ -34,22 +31,16 @@ public class StorageManager {
     
     /**
      * 获取可用存储空间（字节）
+     * 由存储监控低频采样并缓存，拍照周期里不直接访问 StatFs
      * @return 可用空间大小
      */
     public long getFreeSpace() {
-        File path = context.getExternalFilesDir(null);
-        if (path == null) {
-            return 0;
-        }
-        
-        StatFs stat = new StatFs(path.getPath());
-        long blockSize = stat.getBlockSizeLong();
-        long availableBlocks = stat.getAvailableBlocksLong();
-        return availableBlocks * blockSize;
+        return StorageMonitor.get(context).getFreeSpace();
     }
     
     /**
      * 自动清理旧照片以释放空间
+     * 通过照片目录按拍摄时间从最旧的照片开始删除，不扫描目录
      * @param minFreeSpace 最小剩余空间（字节）
      * @return 是否成功清理
      */
@@ -61,48 +52,11 @@ public class StorageManager {
             }
             
             long needToFree = minFreeSpace - currentFreeSpace;
-            long freedSpace = 0;
-            
-            File photoDir = context.getExternalFilesDir(null);
-            if (photoDir == null || !photoDir.exists()) {
-                return false;
-            }
-            
-            // 获取所有照片文件
-            File[] photoFiles = photoDir.listFiles(new FileFilter() {
-                @Override
-                public boolean accept(File file) {
-                    return file.isFile() && file.getName().toLowerCase(Locale.ROOT).endsWith(".jpg");
-                }
-            });
-            
-            if (photoFiles == null || photoFiles.length == 0) {
-                return false;
-            }
-            
-            // 按修改时间排序，旧的在前
-            Arrays.sort(photoFiles, new Comparator<File>() {
-                @Override
-                public int compare(File f1, File f2) {
-                    return Long.compare(f1.lastModified(), f2.lastModified());
-                }
-            });
-            
-            // 删除旧照片直到释放足够空间
-            for (File photoFile : photoFiles) {
-                long fileSize = photoFile.length();
-                if (photoFile.delete()) {
-                    freedSpace += fileSize;
-                    Log.d(TAG, "删除旧照片: " + photoFile.getName() + ", 大小: " + fileSize + " 字节");
-                    
-                    if (freedSpace >= needToFree) {
-                        break;
-                    }
-                }
-            }
+            long freedSpace = PhotoRetention.get(context).freeSpace(needToFree);
+            StorageMonitor.get(context).invalidate();
             
             Log.d(TAG, "清理完成，释放空间: " + freedSpace + " 字节");
-            return true;
+            return freedSpace > 0;
         } catch (Exception e) {
             Log.e(TAG, "清理旧照片时出错", e);
             return false;
@@ -123,21 +77,99 @@ public class StorageManager {
      * @param minSpaceMB 最小剩余空间（MB）
      */
     public void checkAndCleanStorage(boolean autoClean, int minSpaceMB) {
+        checkAndCleanStorage(autoClean, minSpaceMB, 0);
+    }
+    
+    /**
+     * 按水位线检查并清理存储空间（由存储整理线程调用，不在拍照路径上）
+     * 低于软水位时从最旧的照片开始清理到软水位以上；高于软水位但按写入速度预测即将不足时提前清理
+     * @param autoClean 是否启用自动清理
+     * @param minSpaceMB 最小剩余空间（MB），即硬水位
+     * @param softMarginMB 软水位高出硬水位的余量（MB）
+     * @return 清理前的水位
+     */
+    public StorageWatermarks.Level checkAndCleanStorage(boolean autoClean, int minSpaceMB, int softMarginMB) {
         if (!autoClean) {
-            return;
+            return StorageWatermarks.Level.OK;
         }
         
-        long minSpaceBytes = minSpaceMB * 1024L * 1024L;
-        if (minSpaceBytes <= 0) {
-            minSpaceBytes = MIN_FREE_SPACE_DEFAULT;
-        }
+        long minSpaceBytes = floorBytes(minSpaceMB);
+        StorageWatermarks watermarks = new StorageWatermarks(minSpaceBytes, softMarginMB * 1024L * 1024L);
         
-        long freeSpace = getFreeSpace();
-        Log.d(TAG, "当前剩余空间: " + freeSpace + " 字节 (" + (freeSpace / (1024*1024)) + " MB)");
+        StorageMonitor.Snapshot snapshot = StorageMonitor.get(context).getSnapshot(minSpaceBytes);
+        StorageWatermarks.Level level = watermarks.classify(snapshot.freeBytes);
+        Log.d(TAG, "当前剩余空间: " + snapshot.freeBytes + " 字节 (" + (snapshot.freeBytes / (1024*1024)) + " MB), 水位: " + level
+                + ", 写入速度: " + (long) (snapshot.bytesPerHour / (1024 * 1024)) + " MB/小时, 预测措施: " + snapshot.action);
         
-        if (freeSpace < minSpaceBytes) {
-            Log.d(TAG, "空间不足，开始清理旧照片");
-            cleanOldPhotos(minSpaceBytes);
+        if (level != StorageWatermarks.Level.OK) {
+            Log.d(TAG, "低于" + (level == StorageWatermarks.Level.HARD ? "硬" : "软") + "水位，开始清理旧照片");
+            cleanOldPhotos(watermarks.getSoftBytes());
+            PhotoStorages.compactSegments(context);
+        } else if (snapshot.action != StorageForecast.Action.NONE) {
+            // 按写入速度预测将在一天内达到下限，提前清理出一天的余量
+            long toFree = StorageMonitor.get(context).bytesToFreeForHorizon(minSpaceBytes);
+            if (toFree > 0) {
+                Log.d(TAG, "预计 " + String.format(Locale.ROOT, "%.1f", snapshot.hoursToFloor) + " 小时后空间不足，提前清理 " + toFree + " 字节");
+                PhotoRetention.get(context).freeSpace(toFree);
+                StorageMonitor.get(context).invalidate();
+            }
+        }
+        return level;
+    }
+    
+    /**
+     * 执行一批组合保留策略（抽稀和容量/张数上限），每次最多处理 RETENTION_BATCH 张，
+     * 在拍照周期之间调用，逐步完成，不阻塞拍照
+     * @param thinning 是否启用延时摄影抽稀
+     * @param maxGb 总容量上限（GB），0 表示不限
+     * @param maxCount 总张数上限，0 表示不限
+     */
+    public void applyRetentionPolicy(boolean thinning, int maxGb, int maxCount) {
+        if (!thinning && maxGb <= 0 && maxCount <= 0) {
+            return;
+        }
+        RetentionPolicy policy = thinning
+                ? RetentionPolicy.timelapse(maxGb * 1024L * 1024L * 1024L, maxCount)
+                : new RetentionPolicy(maxGb * 1024L * 1024L * 1024L, maxCount);
+        try {
+            PhotoRetention.get(context).applyPolicy(policy, RETENTION_BATCH);
+            // 段存储中被删除的照片只是标记，垃圾比例高的段在这里压缩
+            PhotoStorages.compactSegments(context);
+            StorageMonitor.get(context).invalidate();
+        } catch (Exception e) {
+            Log.e(TAG, "执行保留策略时出错", e);
         }
     }
+    
+    /**
+     * 把超过 afterDays 天的照片缩小重编码（归档），分批进行直到没有候选照片或需要停下。
+     * 在 ArchiveWorker 中调用（充电且未拍照时），不在拍照周期里调用
+     * @return 累计的归档结果
+     */
+    public PhotoArchiver.Result archiveOldPhotos(int afterDays, int maxEdge, int quality,
+                                                 PhotoArchiver.StopSignal stopSignal) {
+        PhotoArchiver.Result total = new PhotoArchiver.Result();
+        long olderThan = System.currentTimeMillis() - afterDays * RetentionPolicy.DAY_MS;
+        PhotoArchiver archiver = new PhotoArchiver(context);
+        PhotoArchiver.Result batch;
+        do {
+            batch = archiver.archiveBatch(olderThan, maxEdge, quality, ARCHIVE_BATCH, stopSignal);
+            total.examined += batch.examined;
+            total.archived += batch.archived;
+            total.bytesReclaimed += batch.bytesReclaimed;
+            total.hasMore = batch.hasMore;
+        } while (batch.hasMore && (stopSignal == null || !stopSignal.shouldStop()));
+        StorageMonitor.get(context).invalidate();
+        Log.d(TAG, "归档完成，检查 " + total.examined + " 张，归档 " + total.archived
+                + " 张，释放 " + total.bytesReclaimed + " 字节");
+        return total;
+    }
+    
+    /**
+     * 剩余空间下限（字节），未设置时使用默认值
+     */
+    public static long floorBytes(int minSpaceMB) {
+        long minSpaceBytes = minSpaceMB * 1024L * 1024L;
+        return minSpaceBytes > 0 ? minSpaceBytes : MIN_FREE_SPACE_DEFAULT;
+    }
 }
\ No newline at end of file
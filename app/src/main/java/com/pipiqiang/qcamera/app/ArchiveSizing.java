@@ -0,0 +1,46 @@
+package com.pipiqiang.qcamera.app;
+
+/**
+ * 归档重编码的尺寸计算
+ * 先用 2 的幂次采样解码，再精确缩放到长边为 maxEdge
+ */
+public final class ArchiveSizing {
+
+    private ArchiveSizing() {
+    }
+
+    /**
+     * 长边超过 maxEdge 的照片才需要缩小
+     */
+    public static boolean needsDownscale(int width, int height, int maxEdge) {
+        return maxEdge > 0 && Math.max(width, height) > maxEdge;
+    }
+
+    /**
+     * 解码采样率：2 的幂次，采样后长边不小于 maxEdge
+     */
+    public static int sampleSize(int width, int height, int maxEdge) {
+        int longEdge = Math.max(width, height);
+        int sample = 1;
+        if (maxEdge <= 0) {
+            return sample;
+        }
+        while (longEdge / (sample * 2) >= maxEdge) {
+            sample *= 2;
+        }
+        return sample;
+    }
+
+    /**
+     * 保持宽高比，长边缩放到 maxEdge 后的尺寸 {宽, 高}（不放大）
+     */
+    public static int[] targetSize(int width, int height, int maxEdge) {
+        if (!needsDownscale(width, height, maxEdge)) {
+            return new int[]{width, height};
+        }
+        if (width >= height) {
+            return new int[]{maxEdge, Math.max(1, Math.round((float) height * maxEdge / width))};
+        }
+        return new int[]{Math.max(1, Math.round((float) width * maxEdge / height)), maxEdge};
+    }
+}
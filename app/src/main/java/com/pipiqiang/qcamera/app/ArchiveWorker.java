@@ -0,0 +1,94 @@
+package com.pipiqiang.qcamera.app;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.Constraints;
+import androidx.work.Data;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 后台归档任务
+ * 只在充电且电量不低时由 WorkManager 调度（WorkManager 自己的有界线程池执行，照片逐张处理），
+ * 拍照开始或任务被系统停止时在两张照片之间停下，下次从剩余的最旧照片继续
+ */
+public class ArchiveWorker extends Worker {
+
+    private static final String TAG = "ArchiveWorker";
+    private static final String WORK_NAME = "photo_archive";
+    private static final long PERIOD_HOURS = 6;
+    // WorkManager 单次执行上限为10分钟，留出余量
+    private static final long MAX_RUN_MS = 8 * 60 * 1000L;
+
+    public static final String KEY_ARCHIVED = "archived";
+    public static final String KEY_BYTES_RECLAIMED = "bytes_reclaimed";
+
+    public ArchiveWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    /**
+     * 按设置启用或取消周期归档任务
+     */
+    public static void schedule(Context context, SettingsManager settingsManager) {
+        WorkManager workManager = WorkManager.getInstance(context.getApplicationContext());
+        if (!settingsManager.isArchiveEnabled()) {
+            workManager.cancelUniqueWork(WORK_NAME);
+            return;
+        }
+        Constraints constraints = new Constraints.Builder()
+                .setRequiresCharging(true)
+                .setRequiresBatteryNotLow(true)
+                .build();
+        PeriodicWorkRequest request = new PeriodicWorkRequest.Builder(ArchiveWorker.class, PERIOD_HOURS, TimeUnit.HOURS)
+                .setConstraints(constraints)
+                .build();
+        workManager.enqueueUniquePeriodicWork(WORK_NAME, ExistingPeriodicWorkPolicy.KEEP, request);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        SettingsManager settings = new SettingsManager(getApplicationContext());
+        if (!settings.isArchiveEnabled()) {
+            return Result.success();
+        }
+        final long deadline = SystemClock.elapsedRealtime() + MAX_RUN_MS;
+        PhotoArchiver.StopSignal stopSignal = new PhotoArchiver.StopSignal() {
+            @Override
+            public boolean shouldStop() {
+                // 只在真正拍照期间让路（相机线程的引用计数包含进程级的常驻引用，不能用来判断）
+                return isStopped()
+                        || CaptureActivity.isCapturing()
+                        || SystemClock.elapsedRealtime() > deadline;
+            }
+        };
+        if (stopSignal.shouldStop()) {
+            Log.d(TAG, "正在拍照，跳过本次归档");
+            return Result.success();
+        }
+
+        try {
+            PhotoArchiver.Result result = new StorageManager(getApplicationContext()).archiveOldPhotos(
+                    settings.getArchiveAfterDays(), settings.getArchiveMaxEdge(),
+                    settings.getArchiveQuality(), stopSignal);
+            Log.i(TAG, "本次归档 " + result.archived + " 张，释放 " + (result.bytesReclaimed / (1024 * 1024)) + " MB"
+                    + (result.hasMore ? "，剩余照片下次继续" : ""));
+            return Result.success(new Data.Builder()
+                    .putInt(KEY_ARCHIVED, result.archived)
+                    .putLong(KEY_BYTES_RECLAIMED, result.bytesReclaimed)
+                    .build());
+        } catch (Exception e) {
+            Log.e(TAG, "归档任务失败", e);
+            return Result.retry();
+        }
+    }
+}
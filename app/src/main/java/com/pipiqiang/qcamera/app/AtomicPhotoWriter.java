@@ -0,0 +1,367 @@
+package com.pipiqiang.qcamera.app;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 原子写照片
+ * 先写隐藏临时文件再重命名，写入期间在日志目录放标记文件，启动时据此恢复
+ */
+public class AtomicPhotoWriter {
+
+    // fsync 在提交时进行（EXIF 等修改之后），重命名后再同步所在目录；
+    // 批量同步时一批中第一张提交后安排一次延迟刷新，拍照间隔较长时照片也会按时落盘
+    public static final String SYNC_NONE = "none";
+    public static final String SYNC_PER_FILE = "per_file";
+    public static final String SYNC_BATCHED = "batched";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String MARKER_SUFFIX = ".pending";
+
+    private final File journalDir;
+    // 本进程的标记前缀，恢复扫描不会处理本进程正在进行的写入
+    private final String sessionId;
+    private int sequence = 0;
+
+    private String syncPolicy = SYNC_NONE;
+    private int batchFiles = 10;
+    private long batchMillis = 30 * 1000L;
+    private final List<File> unsynced = new ArrayList<>();
+    private long firstUnsyncedAt = 0;
+    private boolean flushScheduled = false;
+
+    /**
+     * 恢复扫描的结果
+     */
+    public static final class Recovery {
+        // 已重命名完成但可能还没登记到照片目录的照片
+        public final List<File> committed = new ArrayList<>();
+        // 写入中断、临时文件已删除的照片（最终文件不存在）
+        public final List<File> abandoned = new ArrayList<>();
+    }
+
+    public AtomicPhotoWriter(File journalDir) {
+        this.journalDir = journalDir;
+        this.sessionId = Long.toString(System.currentTimeMillis(), 36) + "-" + Integer.toString(System.identityHashCode(this), 36);
+    }
+
+    /**
+     * 设置 fsync 策略
+     * @param batchFiles 批量同步时累计的文件数
+     * @param batchMillis 批量同步时最长间隔
+     */
+    public synchronized void setSyncPolicy(String policy, int batchFiles, long batchMillis) {
+        this.syncPolicy = policy != null ? policy : SYNC_NONE;
+        this.batchFiles = Math.max(1, batchFiles);
+        this.batchMillis = Math.max(0, batchMillis);
+        if (!SYNC_BATCHED.equals(syncPolicy)) {
+            flush();
+        }
+    }
+
+    public synchronized String getSyncPolicy() {
+        return syncPolicy;
+    }
+
+    /**
+     * 临时文件位置：与最终文件同目录（保证重命名是原子的），隐藏文件不会被图库和导入扫描到
+     */
+    public static File tempFor(File target) {
+        return new File(target.getParentFile(), "." + target.getName() + TEMP_SUFFIX);
+    }
+
+    /**
+     * 开始写一张照片
+     */
+    public Pending begin(File target) throws IOException {
+        File marker;
+        synchronized (this) {
+            if (!journalDir.exists() && !journalDir.mkdirs()) {
+                throw new IOException("无法创建写入日志目录: " + journalDir.getAbsolutePath());
+            }
+            marker = new File(journalDir, sessionId + "_" + (sequence++) + MARKER_SUFFIX);
+        }
+        writeMarker(marker, target);
+        File temp = tempFor(target);
+        return new Pending(target, temp, marker, new FileOutputStream(temp), SYNC_PER_FILE.equals(getSyncPolicy()));
+    }
+
+    /**
+     * 一次进行中的写入
+     */
+    public final class Pending {
+        private final File target;
+        private final File temp;
+        private final File marker;
+        private final boolean syncOnCommit;
+        private final MessageDigest digest = ContentHash.newDigest();
+        private FileOutputStream output;
+        private DigestOutputStream hashingOutput;
+        private String contentHash;
+        // 关闭输出流后临时文件可能被修改（EXIF），提交时需要重新计算哈希
+        private boolean hashStale = false;
+        private boolean done = false;
+
+        Pending(File target, File temp, File marker, FileOutputStream output, boolean syncOnCommit) {
+            this.target = target;
+            this.temp = temp;
+            this.marker = marker;
+            this.output = output;
+            this.hashingOutput = new DigestOutputStream(output, digest);
+            this.syncOnCommit = syncOnCommit;
+        }
+
+        public File getTarget() {
+            return target;
+        }
+
+        /**
+         * 临时文件，关闭输出流后可以在上面修改EXIF。
+         * 关闭后再取临时文件视为要修改内容，写入时计算的哈希作废，提交时从文件重新计算
+         */
+        public File getTempFile() {
+            if (output == null) {
+                hashStale = true;
+            }
+            return temp;
+        }
+
+        public OutputStream getOutputStream() {
+            return hashingOutput;
+        }
+
+        /**
+         * 最终文件内容的 SHA-256，提交后有效；无法计算时为 null
+         */
+        public String getContentHash() {
+            return contentHash;
+        }
+
+        /**
+         * 写完数据后关闭输出流（不同步：之后还可能修改临时文件，同步在提交时进行）
+         */
+        public void closeStream() throws IOException {
+            if (output == null) {
+                return;
+            }
+            try {
+                output.close();
+            } finally {
+                output = null;
+                hashingOutput = null;
+            }
+            contentHash = ContentHash.toHex(digest.digest());
+        }
+
+        /**
+         * 重命名为最终文件
+         * 每文件同步策略下先同步临时文件（包含关闭后对它的所有修改），重命名后再同步目录
+         */
+        public File commit() throws IOException {
+            closeStream();
+            if (syncOnCommit) {
+                try {
+                    syncFile(temp);
+                } catch (IOException e) {
+                    abort();
+                    throw e;
+                }
+            }
+            if (!temp.renameTo(target)) {
+                abort();
+                throw new IOException("重命名照片失败: " + target.getAbsolutePath());
+            }
+            done = true;
+            if (syncOnCommit) {
+                syncDirectory(target.getParentFile());
+            }
+            if (hashStale) {
+                try {
+                    contentHash = ContentHash.of(target);
+                } catch (IOException e) {
+                    contentHash = null;
+                }
+            }
+            onCommitted(target);
+            marker.delete();
+            return target;
+        }
+
+        /**
+         * 放弃写入，删除临时文件（已提交时无操作）
+         */
+        public void abort() {
+            if (done) {
+                return;
+            }
+            done = true;
+            if (output != null) {
+                try {
+                    output.close();
+                } catch (IOException ignored) {
+                }
+                output = null;
+                hashingOutput = null;
+            }
+            temp.delete();
+            marker.delete();
+        }
+    }
+
+    private synchronized void onCommitted(File target) {
+        if (!SYNC_BATCHED.equals(syncPolicy)) {
+            return;
+        }
+        if (unsynced.isEmpty()) {
+            firstUnsyncedAt = System.currentTimeMillis();
+        }
+        unsynced.add(target);
+        if (unsynced.size() >= batchFiles || System.currentTimeMillis() - firstUnsyncedAt >= batchMillis) {
+            flush();
+        } else if (!flushScheduled) {
+            // 不能等下一张照片提交时才检查时间
+            flushScheduled = true;
+            scheduleFlush(batchMillis - (System.currentTimeMillis() - firstUnsyncedAt));
+        }
+    }
+
+    /**
+     * 同步批量策略下还未同步的文件及其所在目录（停止拍照时调用）
+     */
+    public synchronized void flush() {
+        if (flushScheduled) {
+            flushScheduled = false;
+            cancelScheduledFlush();
+        }
+        Set<File> dirs = new LinkedHashSet<>();
+        for (File file : unsynced) {
+            try {
+                syncFile(file);
+                dirs.add(file.getParentFile());
+            } catch (IOException e) {
+                // 文件可能已被删除或移动，忽略
+            }
+        }
+        for (File dir : dirs) {
+            syncDirectory(dir);
+        }
+        unsynced.clear();
+    }
+
+    /**
+     * 安排 delayMs 后在后台调用 flush()。默认不安排（只在下次提交或停止拍照时刷新），
+     * Android 上由 PhotoWriteRecovery 投递到后台线程
+     */
+    protected void scheduleFlush(long delayMs) {
+    }
+
+    /**
+     * 取消 scheduleFlush 安排的刷新（这一批已经同步）
+     */
+    protected void cancelScheduledFlush() {
+    }
+
+    // 重新打开文件并 fsync（文件关闭后的修改也包含在内）
+    private static void syncFile(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.getFD().sync();
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * 同步目录，使重命名后的目录项落盘。
+     * 默认通过 FileChannel 打开目录（JVM 上可用），Android 上由 PhotoWriteRecovery 改用 Os.fsync
+     */
+    protected void syncDirectory(File dir) {
+        if (dir == null) {
+            return;
+        }
+        try {
+            FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ);
+            try {
+                channel.force(true);
+            } finally {
+                channel.close();
+            }
+        } catch (IOException e) {
+            // 部分文件系统不支持同步目录，忽略
+        }
+    }
+
+    /**
+     * 启动时的恢复扫描：处理之前进程留下的标记，删除残留的临时文件
+     */
+    public Recovery recover() {
+        Recovery recovery = new Recovery();
+        File[] markers = journalDir.listFiles();
+        if (markers == null) {
+            return recovery;
+        }
+        for (File marker : markers) {
+            String name = marker.getName();
+            if (!name.endsWith(MARKER_SUFFIX) || name.startsWith(sessionId + "_")) {
+                continue;
+            }
+            File target = readMarker(marker);
+            if (target != null) {
+                File temp = tempFor(target);
+                if (temp.exists()) {
+                    temp.delete();
+                }
+                if (target.exists()) {
+                    recovery.committed.add(target);
+                } else {
+                    recovery.abandoned.add(target);
+                }
+            }
+            marker.delete();
+        }
+        return recovery;
+    }
+
+    private static void writeMarker(File marker, File target) throws IOException {
+        FileOutputStream out = new FileOutputStream(marker);
+        try {
+            out.write(target.getAbsolutePath().getBytes(UTF_8));
+        } finally {
+            out.close();
+        }
+    }
+
+    private static File readMarker(File marker) {
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(marker), UTF_8));
+            String line = reader.readLine();
+            return line != null && !line.isEmpty() ? new File(line) : null;
+        } catch (IOException e) {
+            return null;
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.pipiqiang.qcamera.app;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+/**
+ * 图库缩略图位图池
+ * 收集从内存缓存淘汰且不再显示的缩略图，解码下一张缩略图时通过 BitmapFactory.Options.inBitmap 复用，
+ * 滚动浏览大量照片时不再为每个格子分配新位图。被池淘汰的位图立即回收
+ */
+public final class BitmapPool {
+
+    private final SizeBucketPool<Bitmap> pool;
+
+    public BitmapPool(long maxBytes) {
+        pool = new SizeBucketPool<Bitmap>(maxBytes) {
+            @Override
+            protected void onEvicted(Bitmap bitmap) {
+                bitmap.recycle();
+            }
+        };
+    }
+
+    /**
+     * 解码后的字节数（按采样后的尺寸估计，JPEG 的采样率向下取2的幂）
+     */
+    public static int decodedBytes(int width, int height, int sampleSize, Bitmap.Config config) {
+        int sample = Integer.highestOneBit(Math.max(1, sampleSize));
+        int w = (width + sample - 1) / sample;
+        int h = (height + sample - 1) / sample;
+        return w * h * (config == Bitmap.Config.RGB_565 ? 2 : 4);
+    }
+
+    /**
+     * 为解码选项设置可复用的位图（没有合适的位图时不设置）
+     * @return 设置的位图，解码失败时交给 release 放回池中
+     */
+    public Bitmap prepare(BitmapFactory.Options options, int width, int height) {
+        options.inMutable = true;
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+        Bitmap reusable = pool.get(decodedBytes(width, height, options.inSampleSize, options.inPreferredConfig));
+        while (reusable != null && reusable.isRecycled()) {
+            reusable = pool.get(decodedBytes(width, height, options.inSampleSize, options.inPreferredConfig));
+        }
+        options.inBitmap = reusable;
+        return reusable;
+    }
+
+    /**
+     * 放回一张不再使用的位图（不可变或已回收的位图直接丢弃）
+     */
+    public void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+        if (!bitmap.isMutable() || !pool.put(bitmap.getAllocationByteCount(), bitmap)) {
+            bitmap.recycle();
+        }
+    }
+
+    public void resize(long maxBytes) {
+        pool.resize(maxBytes);
+    }
+
+    public long getMaxBytes() {
+        return pool.getMaxBytes();
+    }
+
+    public void clear() {
+        pool.clear();
+    }
+
+    public String describeStats() {
+        return "位图池: " + pool.count() + " 张 / " + (pool.sizeBytes() / 1024) + " KB, 命中 " + pool.hits()
+                + ", 未命中 " + pool.misses() + ", 淘汰 " + pool.evictions();
+    }
+}
@@ -0,0 +1,76 @@
+package com.pipiqiang.qcamera.app;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 连拍后处理共用的帧缓冲区（进程级）
+ * 低光叠加和HDR融合共用一套缓冲，第一次连拍时分配后一直复用，同一时间只有一个处理器持有
+ */
+final class BurstBuffers {
+
+    private static final long MAX_BYTES = 64L * 1024 * 1024;
+    private static final int MIN_FRAMES = 2;
+
+    private static BurstBuffers shared;
+    private static Object owner;
+
+    final int size;
+    final short[][] frames;
+    final short[] merged;
+    final byte[] nv21;
+    final ByteBuffer nv21Buffer;
+
+    private BurstBuffers(int size, int frameCount) {
+        this.size = size;
+        this.frames = new short[frameCount][size];
+        this.merged = new short[size];
+        this.nv21 = new byte[size];
+        this.nv21Buffer = ByteBuffer.wrap(nv21);
+    }
+
+    /**
+     * 缓冲区总大小上限：固定上限和堆上限的1/4取小
+     */
+    static long budgetBytes() {
+        return Math.min(MAX_BYTES, Runtime.getRuntime().maxMemory() / 4);
+    }
+
+    /**
+     * 在上限内最多能缓冲的帧数（每帧 size 个 short，另有合成缓冲和 NV21 缓冲各一份），不少于2帧
+     */
+    static int maxFrames(int size, long budgetBytes) {
+        long perFrame = size * 2L;
+        long available = budgetBytes - perFrame - size;
+        return (int) Math.max(MIN_FRAMES, available / perFrame);
+    }
+
+    /**
+     * 取得缓冲区，尺寸或帧数不够时重新分配
+     * @return 被其他处理器持有或内存不足时返回 null
+     */
+    static synchronized BurstBuffers acquire(Object who, int size, int frameCount) {
+        if (owner != null && owner != who) {
+            return null;
+        }
+        if (shared == null || shared.size != size || shared.frames.length < frameCount) {
+            shared = null;
+            try {
+                shared = new BurstBuffers(size, frameCount);
+            } catch (OutOfMemoryError e) {
+                return null;
+            }
+        }
+        owner = who;
+        return shared;
+    }
+
+    static synchronized void release(Object who) {
+        if (owner == who) {
+            owner = null;
+        }
+    }
+
+    static synchronized boolean isHeldByOther(Object who) {
+        return owner != null && owner != who;
+    }
+}
@@ -0,0 +1,277 @@
+package com.pipiqiang.qcamera.app;
+
+import android.content.Context;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraManager;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 相机可用性跟踪
+ * 通过 CameraManager.AvailabilityCallback 维护每个摄像头的占用状态，
+ * 定时拍照在相机被其他应用占用时可以等待、推迟或跳过本周期，而不是反复打开失败直到超时。
+ * 打开失败的重试按指数退避，期间收到“相机可用”通知会提前结束等待。
+ * 进程级单例，有使用者时才注册回调并持有共享相机线程，最后一个使用者结束后注销，线程可以空闲退出
+ */
+public final class CameraAvailabilityTracker {
+
+    private static final String TAG = "CameraAvailability";
+    private static final long BASE_BACKOFF_MS = 500;
+    private static final long MAX_BACKOFF_MS = 30 * 1000L;
+
+    private static CameraAvailabilityTracker instance;
+
+    private static class CameraState {
+        boolean available = true;         // 未收到回调前视为可用
+        long unavailableSince = 0;        // elapsedRealtime，可用时为0
+        long availableGeneration = 0;     // 每次变为可用时递增，用于唤醒等待者
+        boolean reported = false;         // 本次注册后是否已收到该摄像头的回调
+        int consecutiveFailures = 0;
+        // 统计
+        int unavailableEvents = 0;
+        long totalUnavailableMs = 0;
+        int openFailures = 0;
+        int contendedFailures = 0;
+        int deferredCycles = 0;
+        int skippedCycles = 0;
+    }
+
+    private final Map<String, CameraState> states = new HashMap<>();
+    private final CameraManager cameraManager;
+    private int trackingUsers = 0;
+
+    private final CameraManager.AvailabilityCallback availabilityCallback = new CameraManager.AvailabilityCallback() {
+        @Override
+        public void onCameraAvailable(String cameraId) {
+            synchronized (CameraAvailabilityTracker.this) {
+                CameraState state = stateFor(cameraId);
+                state.reported = true;
+                if (!state.available && state.unavailableSince > 0) {
+                    state.totalUnavailableMs += SystemClock.elapsedRealtime() - state.unavailableSince;
+                }
+                state.available = true;
+                state.unavailableSince = 0;
+                state.availableGeneration++;
+                CameraAvailabilityTracker.this.notifyAll();
+            }
+            Log.d(TAG, "摄像头可用: " + cameraId);
+        }
+
+        @Override
+        public void onCameraUnavailable(String cameraId) {
+            synchronized (CameraAvailabilityTracker.this) {
+                CameraState state = stateFor(cameraId);
+                state.reported = true;
+                if (state.available) {
+                    state.available = false;
+                    state.unavailableSince = SystemClock.elapsedRealtime();
+                    state.unavailableEvents++;
+                }
+                CameraAvailabilityTracker.this.notifyAll();
+            }
+            // 本应用打开相机同样会触发该回调
+            Log.d(TAG, "摄像头不可用（被占用）: " + cameraId);
+        }
+    };
+
+    public static synchronized CameraAvailabilityTracker get(Context context) {
+        if (instance == null) {
+            instance = new CameraAvailabilityTracker(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private CameraAvailabilityTracker(Context context) {
+        cameraManager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+    }
+
+    /**
+     * 开始跟踪：第一个使用者注册可用性回调，并持有共享相机线程的一个引用。
+     * 注册后系统会立即回调各摄像头的当前状态
+     */
+    public synchronized void startTracking() {
+        if (trackingUsers++ == 0) {
+            Handler handler = CameraThreadOwner.getInstance().acquire();
+            cameraManager.registerAvailabilityCallback(availabilityCallback, handler);
+            Log.d(TAG, "注册相机可用性回调");
+        }
+    }
+
+    /**
+     * 结束跟踪：最后一个使用者注销回调并释放相机线程
+     */
+    public synchronized void stopTracking() {
+        if (trackingUsers == 0) {
+            Log.w(TAG, "stopTracking调用次数多于startTracking");
+            return;
+        }
+        if (--trackingUsers > 0) {
+            return;
+        }
+        cameraManager.unregisterAvailabilityCallback(availabilityCallback);
+        CameraThreadOwner.getInstance().release();
+        // 不跟踪期间状态未知：结算占用时长，恢复为未收到回调时的“可用”
+        long now = SystemClock.elapsedRealtime();
+        for (CameraState state : states.values()) {
+            if (!state.available && state.unavailableSince > 0) {
+                state.totalUnavailableMs += now - state.unavailableSince;
+            }
+            state.available = true;
+            state.unavailableSince = 0;
+            state.reported = false;
+        }
+        Log.d(TAG, "注销相机可用性回调");
+    }
+
+    private CameraState stateFor(String cameraId) {
+        CameraState state = states.get(cameraId);
+        if (state == null) {
+            state = new CameraState();
+            states.put(cameraId, state);
+        }
+        return state;
+    }
+
+    /**
+     * 按索引解析摄像头ID，索引越界时回退到第一个（与 CustomCameraManager 一致）
+     */
+    public String resolveCameraId(int cameraIndex) throws CameraAccessException {
+        String[] ids = cameraManager.getCameraIdList();
+        if (ids.length == 0) {
+            throw new CameraAccessException(CameraAccessException.CAMERA_DISCONNECTED, "没有可用的摄像头");
+        }
+        return ids[cameraIndex >= 0 && cameraIndex < ids.length ? cameraIndex : 0];
+    }
+
+    public synchronized boolean isAvailable(String cameraId) {
+        return stateFor(cameraId).available;
+    }
+
+    /**
+     * 刚开始跟踪时当前状态的回调是异步送达的：等待收到该摄像头的第一次回调后再判断是否可用，
+     * 超时仍未收到时按可用处理
+     */
+    public synchronized boolean awaitReportedAvailable(String cameraId, long timeoutMs) throws InterruptedException {
+        CameraState state = stateFor(cameraId);
+        long deadline = SystemClock.elapsedRealtime() + timeoutMs;
+        while (!state.reported) {
+            long remaining = deadline - SystemClock.elapsedRealtime();
+            if (remaining <= 0) {
+                break;
+            }
+            wait(remaining);
+        }
+        return state.available;
+    }
+
+    /**
+     * 等待摄像头可用
+     * @return 在超时前变为可用时返回 true
+     */
+    public synchronized boolean awaitAvailable(String cameraId, long timeoutMs) throws InterruptedException {
+        CameraState state = stateFor(cameraId);
+        long deadline = SystemClock.elapsedRealtime() + timeoutMs;
+        while (!state.available) {
+            long remaining = deadline - SystemClock.elapsedRealtime();
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining);
+        }
+        return true;
+    }
+
+    /**
+     * 打开失败后的退避等待：等待时长按连续失败次数指数增长，
+     * 期间若收到相机重新可用的通知则提前返回
+     */
+    public synchronized void awaitRetry(String cameraId) throws InterruptedException {
+        CameraState state = stateFor(cameraId);
+        long delay = backoffDelayMs(state.consecutiveFailures);
+        long generation = state.availableGeneration;
+        long deadline = SystemClock.elapsedRealtime() + delay;
+        Log.d(TAG, "摄像头 " + cameraId + " 第" + state.consecutiveFailures + "次打开失败，最多等待 " + delay + "ms 后重试");
+        while (state.availableGeneration == generation) {
+            long remaining = deadline - SystemClock.elapsedRealtime();
+            if (remaining <= 0) {
+                return;
+            }
+            wait(remaining);
+        }
+    }
+
+    static long backoffDelayMs(int failures) {
+        if (failures <= 0) {
+            return 0;
+        }
+        int shift = Math.min(failures - 1, 16);
+        return Math.min(BASE_BACKOFF_MS << shift, MAX_BACKOFF_MS);
+    }
+
+    public synchronized void recordOpenSuccess(String cameraId) {
+        stateFor(cameraId).consecutiveFailures = 0;
+    }
+
+    /**
+     * @param contended 失败原因是否为相机被占用
+     */
+    public synchronized void recordOpenFailure(String cameraId, boolean contended) {
+        CameraState state = stateFor(cameraId);
+        state.consecutiveFailures++;
+        state.openFailures++;
+        if (contended) {
+            state.contendedFailures++;
+        }
+    }
+
+    public synchronized void recordDeferredCycle(String cameraId) {
+        stateFor(cameraId).deferredCycles++;
+    }
+
+    public synchronized void recordSkippedCycle(String cameraId) {
+        stateFor(cameraId).skippedCycles++;
+    }
+
+    public synchronized int getUnavailableEvents(String cameraId) {
+        return stateFor(cameraId).unavailableEvents;
+    }
+
+    public synchronized long getTotalUnavailableMs(String cameraId) {
+        CameraState state = stateFor(cameraId);
+        long total = state.totalUnavailableMs;
+        if (!state.available && state.unavailableSince > 0) {
+            total += SystemClock.elapsedRealtime() - state.unavailableSince;
+        }
+        return total;
+    }
+
+    public synchronized int getOpenFailures(String cameraId) {
+        return stateFor(cameraId).openFailures;
+    }
+
+    public synchronized int getContendedFailures(String cameraId) {
+        return stateFor(cameraId).contendedFailures;
+    }
+
+    public synchronized int getDeferredCycles(String cameraId) {
+        return stateFor(cameraId).deferredCycles;
+    }
+
+    public synchronized int getSkippedCycles(String cameraId) {
+        return stateFor(cameraId).skippedCycles;
+    }
+
+    public synchronized String describeStats(String cameraId) {
+        CameraState state = stateFor(cameraId);
+        return "摄像头 " + cameraId + (state.available ? " 可用" : " 被占用")
+                + ", 占用次数: " + state.unavailableEvents
+                + ", 累计占用: " + getTotalUnavailableMs(cameraId) + "ms"
+                + ", 打开失败: " + state.openFailures + "(占用 " + state.contendedFailures + ")"
+                + ", 推迟周期: " + state.deferredCycles
+                + ", 跳过周期: " + state.skippedCycles;
+    }
+}
@@ -0,0 +1,104 @@
+package com.pipiqiang.qcamera.app;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+
+/**
+ * 进程级相机后台线程
+ * 所有 CustomCameraManager 与 MainActivity 共用同一个 HandlerThread，按引用计数管理生命周期。
+ * 最后一个使用者释放后线程继续保留一段时间，空闲超时才退出（不做 join），
+ * 避免每个拍照周期都创建并 join 一次线程
+ */
+public final class CameraThreadOwner {
+
+    private static final String TAG = "CameraThreadOwner";
+    private static final String THREAD_NAME = "CameraBackground";
+    private static final long IDLE_QUIT_DELAY_MS = 5 * 60 * 1000L; // 空闲5分钟后退出
+
+    private static final CameraThreadOwner INSTANCE = new CameraThreadOwner();
+
+    private HandlerThread thread;
+    private Handler handler;
+    private int refCount = 0;
+
+    // 统计信息
+    private int threadCreations = 0;
+    private long acquireCount = 0;
+    private long releaseCount = 0;
+
+    private final Runnable quitIfIdle = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (CameraThreadOwner.this) {
+                if (refCount == 0 && thread != null) {
+                    Log.d(TAG, "相机线程空闲超时，退出线程");
+                    thread.quitSafely();
+                    thread = null;
+                    handler = null;
+                }
+            }
+        }
+    };
+
+    public static CameraThreadOwner getInstance() {
+        return INSTANCE;
+    }
+
+    private CameraThreadOwner() {
+    }
+
+    /**
+     * 获取共享相机线程的 Handler，引用计数加一
+     */
+    public synchronized Handler acquire() {
+        acquireCount++;
+        refCount++;
+        if (thread == null || !thread.isAlive()) {
+            thread = new HandlerThread(THREAD_NAME);
+            thread.start();
+            handler = new Handler(thread.getLooper());
+            threadCreations++;
+            Log.d(TAG, "创建相机线程，累计创建次数: " + threadCreations);
+        } else {
+            handler.removeCallbacks(quitIfIdle);
+        }
+        return handler;
+    }
+
+    /**
+     * 释放一次引用；引用归零后延迟退出线程
+     */
+    public synchronized void release() {
+        if (refCount == 0) {
+            Log.w(TAG, "release调用次数多于acquire");
+            return;
+        }
+        refCount--;
+        releaseCount++;
+        if (refCount == 0 && handler != null) {
+            handler.postDelayed(quitIfIdle, IDLE_QUIT_DELAY_MS);
+        }
+    }
+
+    public synchronized int getThreadCreations() {
+        return threadCreations;
+    }
+
+    public synchronized long getAcquireCount() {
+        return acquireCount;
+    }
+
+    public synchronized long getReleaseCount() {
+        return releaseCount;
+    }
+
+    public synchronized int getActiveReferences() {
+        return refCount;
+    }
+
+    public synchronized String describeMetrics() {
+        return "线程创建: " + threadCreations + ", acquire: " + acquireCount
+                + ", release: " + releaseCount + ", 当前引用: " + refCount;
+    }
+}
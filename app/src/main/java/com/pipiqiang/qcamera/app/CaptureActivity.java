@@ -0,0 +1,64 @@
+package com.pipiqiang.qcamera.app;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * 进程内正在进行的拍照
+ * 只在真正拍照（打开相机、触发拍照、等待保存）期间登记，归档等后台任务据此让路。
+ * 相机后台线程的引用计数不能用来判断：可用性跟踪器注册回调期间一直持有一个引用。
+ * 每次拍照持有自己的编号，重复结束同一编号不影响其它拍照；回调丢失时该次拍照超过 MAX_CAPTURE_MS 后自动失效
+ */
+public final class CaptureActivity {
+
+    static final long MAX_CAPTURE_MS = 2 * 60 * 1000L;
+
+    // 编号 -> 开始时刻（纳秒）
+    private static final Map<Long, Long> active = new HashMap<>();
+    private static long lastToken = 0;
+
+    private CaptureActivity() {
+    }
+
+    /**
+     * 开始一次拍照
+     * @return 本次拍照的编号，结束时传给 end
+     */
+    public static long begin() {
+        return begin(System.nanoTime());
+    }
+
+    public static void end(long token) {
+        synchronized (active) {
+            active.remove(token);
+        }
+    }
+
+    public static boolean isCapturing() {
+        return isCapturing(System.nanoTime());
+    }
+
+    static long begin(long nowNanos) {
+        synchronized (active) {
+            long token = ++lastToken;
+            active.put(token, nowNanos);
+            return token;
+        }
+    }
+
+    static boolean isCapturing(long nowNanos) {
+        synchronized (active) {
+            boolean capturing = false;
+            Iterator<Long> iterator = active.values().iterator();
+            while (iterator.hasNext()) {
+                if ((nowNanos - iterator.next()) / 1000000L >= MAX_CAPTURE_MS) {
+                    iterator.remove();
+                } else {
+                    capturing = true;
+                }
+            }
+            return capturing;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.pipiqiang.qcamera.app;
+
+import com.pipiqiang.qcamera.imaging.PrivacyMask;
+
+import java.util.Locale;
+
+/**
+ * 感兴趣区域（ROI）
+ * 设置中以照片（按EXIF方向摆正后）的归一化坐标（0-1）描述，与隐私遮挡相同，按摄像头配置，格式为
+ * "0:0.25,0.40,0.75,0.80;1:0,0,0.5,0.5"（摄像头索引:左,上,右,下）。
+ * 拍照时先换算到传感器坐标，再换算为 SCALER_CROP_REGION，并按输出宽高比扩展，避免HAL再次裁剪。
+ */
+public final class CropRegion {
+
+    /** 写入EXIF图像描述的前缀，图库据此识别ROI照片 */
+    public static final String EXIF_PREFIX = "ROI ";
+
+    private static final float MIN_SIZE = 0.05f; // 归一化尺寸下限，过小的区域视为配置错误
+
+    public final float left;
+    public final float top;
+    public final float right;
+    public final float bottom;
+
+    public CropRegion(float left, float top, float right, float bottom) {
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+    }
+
+    /**
+     * 解析单个区域 "左,上,右,下"
+     * @return 格式错误、超出0-1或区域过小时返回 null
+     */
+    public static CropRegion parse(String spec) {
+        if (spec == null) {
+            return null;
+        }
+        String[] parts = spec.trim().split(",");
+        if (parts.length != 4) {
+            return null;
+        }
+        float[] values = new float[4];
+        try {
+            for (int i = 0; i < 4; i++) {
+                values[i] = Float.parseFloat(parts[i].trim());
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        for (float v : values) {
+            if (v < 0f || v > 1f) {
+                return null;
+            }
+        }
+        if (values[2] - values[0] < MIN_SIZE || values[3] - values[1] < MIN_SIZE) {
+            return null;
+        }
+        // 覆盖整个画面时不需要裁剪
+        if (values[0] == 0f && values[1] == 0f && values[2] == 1f && values[3] == 1f) {
+            return null;
+        }
+        return new CropRegion(values[0], values[1], values[2], values[3]);
+    }
+
+    /**
+     * 从多摄像头配置中取出指定摄像头的区域
+     * @return 未配置或配置无效时返回 null
+     */
+    public static CropRegion forCamera(String config, int cameraIndex) {
+        if (config == null || config.trim().isEmpty()) {
+            return null;
+        }
+        for (String entry : config.split(";")) {
+            int colon = entry.indexOf(':');
+            if (colon <= 0) {
+                continue;
+            }
+            try {
+                if (Integer.parseInt(entry.substring(0, colon).trim()) == cameraIndex) {
+                    return parse(entry.substring(colon + 1));
+                }
+            } catch (NumberFormatException e) {
+                // 忽略格式错误的条目
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 照片坐标换算为传感器坐标（与隐私遮挡相同的换算）
+     * @param rotationDegrees 照片相对传感器输出顺时针旋转的角度（EXIF方向），取0/90/180/270
+     */
+    public CropRegion toSensorCoordinates(int rotationDegrees) {
+        float[] corners = PrivacyMask.toSensorCoordinates(new float[]{left, top, right, bottom}, rotationDegrees);
+        return new CropRegion(Math.min(corners[0], corners[2]), Math.min(corners[1], corners[3]),
+                Math.max(corners[0], corners[2]), Math.max(corners[1], corners[3]));
+    }
+
+    /**
+     * 区域在传感器上的宽高比（传感器坐标下的区域）
+     */
+    public double aspectRatio(int activeWidth, int activeHeight) {
+        return (right - left) * activeWidth / ((bottom - top) * (double) activeHeight);
+    }
+
+    /**
+     * 区域占有效像素阵列的面积比例
+     */
+    public double areaFraction() {
+        return (right - left) * (double) (bottom - top);
+    }
+
+    /**
+     * 换算为有效像素阵列坐标下的裁剪区域
+     * 以区域中心为准扩展到输出宽高比，不小于最大数字变焦允许的尺寸，并限制在阵列内，坐标取偶数
+     * @param outputAspect 输出图像的宽高比
+     * @param maxZoom      SCALER_AVAILABLE_MAX_DIGITAL_ZOOM，未知时传 1
+     * @return {left, top, right, bottom}
+     */
+    public int[] toSensorRect(int activeWidth, int activeHeight, double outputAspect, float maxZoom) {
+        double centerX = (left + right) / 2.0 * activeWidth;
+        double centerY = (top + bottom) / 2.0 * activeHeight;
+        double width = (right - left) * (double) activeWidth;
+        double height = (bottom - top) * (double) activeHeight;
+        if (outputAspect > 0) {
+            if (width / height < outputAspect) {
+                width = height * outputAspect;
+            } else {
+                height = width / outputAspect;
+            }
+        }
+        double zoom = maxZoom >= 1f ? maxZoom : 1f;
+        double scaleUp = Math.max(activeWidth / zoom / width, activeHeight / zoom / height);
+        if (scaleUp > 1) {
+            width *= scaleUp;
+            height *= scaleUp;
+        }
+        double scaleDown = Math.min(activeWidth / width, activeHeight / height);
+        if (scaleDown < 1) {
+            width *= scaleDown;
+            height *= scaleDown;
+        }
+        int w = Math.min(activeWidth, (int) Math.round(width)) & ~1;
+        int h = Math.min(activeHeight, (int) Math.round(height)) & ~1;
+        int x = clamp((int) Math.round(centerX - w / 2.0), 0, activeWidth - w) & ~1;
+        int y = clamp((int) Math.round(centerY - h / 2.0), 0, activeHeight - h) & ~1;
+        return new int[]{x, y, x + w, y + h};
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return value < min ? min : (value > max ? max : value);
+    }
+
+    /**
+     * 写入EXIF的描述："ROI 0.250,0.400,0.750,0.800 sensor=1000,1200,3000,2600"
+     */
+    public String toExifDescription(int[] sensorRect) {
+        String description = EXIF_PREFIX + this;
+        if (sensorRect != null) {
+            description += " sensor=" + sensorRect[0] + "," + sensorRect[1] + "," + sensorRect[2] + "," + sensorRect[3];
+        }
+        return description;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%.3f,%.3f,%.3f,%.3f", left, top, right, bottom);
+    }
+}
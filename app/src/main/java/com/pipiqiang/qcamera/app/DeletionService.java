@@ -0,0 +1,264 @@
+package com.pipiqiang.qcamera.app;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 照片删除队列
+ * 所有删除都在一个低优先级后台线程上分批进行，界面和拍照线程只提交路径，不等待文件删除。
+ * 图库删除先在一个事务中把目录记录移入回收站，撤销窗口内可以原样恢复，窗口结束后才真正删除文件；
+ * 保留清理和上传后删除不经过撤销窗口，目录记录当场在一个事务中移入回收站表（下一轮清理不会再选中），
+ * 文件随后在后台删除。进程在文件删除前被杀时，回收站中的批次在下次启动时清理
+ */
+public final class DeletionService {
+
+    private static final String TAG = "DeletionService";
+    public static final long UNDO_WINDOW_MS = 8000;
+    private static final int PROGRESS_BATCH = 32; // 每删除这么多张报告一次进度并刷新剩余空间
+
+    /**
+     * 删除进度回调，在主线程调用
+     */
+    public interface Listener {
+        void onProgress(int done, int total);
+
+        void onFinished(int deleted, long freedBytes);
+    }
+
+    private static DeletionService instance;
+
+    private final Context context;
+    private final PhotoCatalog catalog;
+    private final TrashWindow window = new TrashWindow(UNDO_WINDOW_MS);
+    private final Handler worker;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private DeletionService(Context context) {
+        this.context = context.getApplicationContext();
+        this.catalog = PhotoCatalog.get(context);
+        HandlerThread thread = new HandlerThread("PhotoDeletion", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        this.worker = new Handler(thread.getLooper());
+        worker.post(new Runnable() {
+            @Override
+            public void run() {
+                purgeLeftoverTrash();
+            }
+        });
+    }
+
+    public static synchronized DeletionService get(Context context) {
+        if (instance == null) {
+            instance = new DeletionService(context);
+        }
+        return instance;
+    }
+
+    /**
+     * 把照片移入回收站，撤销窗口结束后在后台删除
+     * @param listener 真正删除时的进度回调，可为 null
+     * @return 本次删除的编号，用于撤销
+     */
+    public long trash(List<String> paths, final Listener listener) {
+        final long now = System.currentTimeMillis();
+        final List<String> batch = new ArrayList<>(paths);
+        final long ticket = window.add(batch, now);
+        worker.post(new Runnable() {
+            @Override
+            public void run() {
+                int moved = catalog.moveToTrash(batch, ticket, now);
+                Log.d(TAG, "移入回收站 " + moved + " 张照片，批次 " + ticket);
+            }
+        });
+        worker.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                purge(ticket, listener);
+            }
+        }, UNDO_WINDOW_MS);
+        return ticket;
+    }
+
+    /**
+     * 撤销一次删除，目录记录恢复后在主线程回调 onRestored
+     * @return 撤销窗口已过或编号无效时返回 false
+     */
+    public boolean undo(final long ticket, final Runnable onRestored) {
+        if (window.undo(ticket, System.currentTimeMillis()) == null) {
+            return false;
+        }
+        worker.post(new Runnable() {
+            @Override
+            public void run() {
+                catalog.restoreFromTrash(ticket);
+                Log.d(TAG, "撤销删除，批次 " + ticket);
+                if (onRestored != null) {
+                    mainHandler.post(onRestored);
+                }
+            }
+        });
+        return true;
+    }
+
+    /**
+     * 立即删除（保留清理、上传后删除用）：目录记录当场在一个事务中移入回收站表，文件在后台删除，
+     * 删除完成后再清掉回收站记录。删除时间记为0，进程中途被杀时下次启动一定会清理
+     */
+    public void deleteNow(List<String> paths) {
+        if (paths.isEmpty()) {
+            return;
+        }
+        final List<String> batch = new ArrayList<>(paths);
+        final long ticket = window.nextTicket(System.currentTimeMillis());
+        catalog.moveToTrash(batch, ticket, 0);
+        worker.post(new Runnable() {
+            @Override
+            public void run() {
+                deleteFiles(pathsOf(batch, ticket), null);
+                catalog.purgeTrash(ticket);
+            }
+        });
+    }
+
+    /**
+     * 等待已提交的立即删除全部完成（硬水位时存储整理线程调用，撤销窗口中的删除不等待）
+     * @return 超时前完成时返回 true
+     */
+    public boolean awaitIdle(long timeoutMs) {
+        final CountDownLatch latch = new CountDownLatch(1);
+        worker.post(new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        });
+        try {
+            return latch.await(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void purge(long ticket, Listener listener) {
+        List<String> batch = window.take(ticket);
+        if (batch == null) {
+            return; // 已撤销
+        }
+        deleteFiles(pathsOf(batch, ticket), listener);
+        catalog.purgeTrash(ticket);
+    }
+
+    // 提交的路径和回收站中的记录取并集：目录中没有记录的照片（尚未登记）也要删除
+    private List<String> pathsOf(List<String> batch, long ticket) {
+        Set<String> paths = new LinkedHashSet<>(batch);
+        paths.addAll(catalog.trashedPaths(ticket));
+        return new ArrayList<>(paths);
+    }
+
+    private void purgeLeftoverTrash() {
+        List<Long> tickets = catalog.expiredTrashTickets(System.currentTimeMillis() - UNDO_WINDOW_MS);
+        for (Long ticket : tickets) {
+            if (!window.isPending(ticket)) {
+                deleteFiles(catalog.trashedPaths(ticket), null);
+                catalog.purgeTrash(ticket);
+            }
+        }
+        if (!tickets.isEmpty()) {
+            Log.d(TAG, "清理上次遗留的回收站批次 " + tickets.size() + " 个");
+        }
+    }
+
+    private void deleteFiles(List<String> paths, final Listener listener) {
+        final int total = paths.size();
+        int deleted = 0;
+        long freed = 0;
+        for (int i = 0; i < total; i++) {
+            long size = deletePhotoFiles(paths.get(i));
+            if (size >= 0) {
+                freed += size;
+                deleted++;
+            }
+            if ((i + 1) % PROGRESS_BATCH == 0 && i + 1 < total) {
+                StorageMonitor.get(context).invalidate();
+                if (listener != null) {
+                    final int done = i + 1;
+                    mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            listener.onProgress(done, total);
+                        }
+                    });
+                }
+            }
+        }
+        StorageMonitor.get(context).invalidate();
+        Log.d(TAG, "删除 " + deleted + "/" + total + " 张照片，释放 " + freed + " 字节");
+        if (listener != null) {
+            final int finalDeleted = deleted;
+            final long finalFreed = freed;
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onFinished(finalDeleted, finalFreed);
+                }
+            });
+        }
+    }
+
+    /**
+     * 删除照片及其缩略图、预事件帧
+     * @return 释放的字节数，删除失败时为 -1
+     */
+    private long deletePhotoFiles(String path) {
+        PhotoStorage storage = PhotoStorages.forPath(context, path);
+        File photo = PhotoStorages.localFile(path);
+        long size = 0;
+        if (storage.exists(path)) {
+            // 还有其它硬链接时删除这个路径不释放空间
+            boolean linked = !SegmentPhotoStorage.isSegmentPath(path) && PhotoCatalog.linkCount(photo) > 1;
+            size = storage.delete(path);
+            if (size < 0) {
+                Log.w(TAG, "删除照片失败: " + path);
+                return -1;
+            }
+            if (linked) {
+                size = 0;
+            }
+        }
+        ThumbnailFiles.deleteFor(photo);
+        return size + deletePreEventFrames(photo);
+    }
+
+    // 照片旁边的预事件帧目录（<文件名>_pre）随照片一起删除
+    private static long deletePreEventFrames(File photo) {
+        String name = photo.getName();
+        int dot = name.lastIndexOf('.');
+        File dir = new File(photo.getParentFile(), (dot > 0 ? name.substring(0, dot) : name) + "_pre");
+        File[] frames = dir.listFiles();
+        if (frames == null) {
+            return 0;
+        }
+        long freed = 0;
+        for (File frame : frames) {
+            long size = frame.length();
+            if (frame.delete()) {
+                freed += size;
+            }
+        }
+        dir.delete();
+        return freed;
+    }
+}
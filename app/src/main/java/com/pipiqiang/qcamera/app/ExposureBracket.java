@@ -0,0 +1,49 @@
+package com.pipiqiang.qcamera.app;
+
+/**
+ * HDR 包围曝光的手动曝光参数
+ * 以预览测光为基准按 2^EV 缩放总曝光量，优先调整曝光时间，超出范围时再调整 ISO
+ */
+public final class ExposureBracket {
+
+    public final long exposureNs;
+    public final int iso;
+
+    public ExposureBracket(long exposureNs, int iso) {
+        this.exposureNs = exposureNs;
+        this.iso = iso;
+    }
+
+    /**
+     * 计算某一档的曝光参数
+     * @param meteredNs     测光曝光时间
+     * @param meteredIso    测光 ISO
+     * @param ev            相对测光的曝光档数（负数为欠曝）
+     * @param maxHandheldNs 曝光时间上限（防止手抖模糊），不超过设备上限
+     * @return 测光数据无效时返回 null
+     */
+    public static ExposureBracket scale(long meteredNs, int meteredIso, float ev,
+                                        long minExposureNs, long maxExposureNs, int minIso, int maxIso,
+                                        long maxHandheldNs) {
+        if (meteredNs <= 0 || meteredIso <= 0) {
+            return null;
+        }
+        long exposureCeiling = Math.max(minExposureNs, Math.min(maxExposureNs, maxHandheldNs));
+        // 总曝光量（曝光时间 × ISO）按 2^EV 缩放
+        double target = meteredNs * (double) meteredIso * Math.pow(2, ev);
+        long exposure = clamp(Math.round(target / meteredIso), minExposureNs, exposureCeiling);
+        int iso = (int) clamp(Math.round(target / exposure), minIso, maxIso);
+        return new ExposureBracket(exposure, iso);
+    }
+
+    /**
+     * 实际达到的曝光档数（相对测光）
+     */
+    public float evFrom(long meteredNs, int meteredIso) {
+        return (float) (Math.log(exposureNs * (double) iso / (meteredNs * (double) meteredIso)) / Math.log(2));
+    }
+
+    private static long clamp(long value, long min, long max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
@@ -0,0 +1,39 @@
+package com.pipiqiang.qcamera.app;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 普通文件存储（默认）
+ */
+public class FilePhotoStorage implements PhotoStorage {
+
+    @Override
+    public boolean exists(String path) {
+        return new File(path).exists();
+    }
+
+    @Override
+    public long length(String path) {
+        return new File(path).length();
+    }
+
+    @Override
+    public InputStream open(String path) throws IOException {
+        return new FileInputStream(path);
+    }
+
+    @Override
+    public long delete(String path) {
+        File file = new File(path);
+        long size = file.length();
+        return file.exists() && file.delete() ? size : -1;
+    }
+
+    @Override
+    public File toLocalFile(String path, File scratchDir) {
+        return new File(path);
+    }
+}
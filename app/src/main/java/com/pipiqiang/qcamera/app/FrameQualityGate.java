@@ -0,0 +1,204 @@
+package com.pipiqiang.qcamera.app;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.media.ExifInterface;
+import android.util.Log;
+
+import com.pipiqiang.qcamera.imaging.FrameQuality;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 帧质量门限
+ * 照片写盘前分析下采样亮度：JPEG 按 inSampleSize 缩小解码（复用 Bitmap 和像素缓冲），
+ * YUV/NV21 直接在亮度平面上按步长采样。不合格的帧按模式丢弃或在EXIF中标记，
+ * 标记的照片不再上传或发送邮件。门限实例跨拍照周期复用，累计本次会话的拒绝统计
+ */
+public class FrameQualityGate {
+
+    private static final String TAG = "FrameQualityGate";
+
+    public static final String MODE_OFF = "off";
+    public static final String MODE_FLAG = "flag";
+    public static final String MODE_DROP = "drop";
+
+    private static final String FLAG_PREFIX = "quality=";
+    private static final int ANALYSIS_WIDTH = 480; // 分析使用的目标宽度
+
+    private final String mode;
+    private final FrameQuality.Thresholds thresholds;
+    private final FrameQuality quality = new FrameQuality();
+
+    // 复用的解码缓冲
+    private final BitmapFactory.Options boundsOptions = new BitmapFactory.Options();
+    private final BitmapFactory.Options decodeOptions = new BitmapFactory.Options();
+    private Bitmap reusableBitmap;
+    private int[] pixels;
+    private byte[] luma;
+
+    // 本次会话统计
+    private int accepted;
+    private int darkCount;
+    private int overexposedCount;
+    private int blurredCount;
+
+    public FrameQualityGate(String mode, int minMeanLuma, int maxOverexposedPercent, int minSharpness) {
+        this.mode = mode != null ? mode : MODE_OFF;
+        this.thresholds = new FrameQuality.Thresholds(minMeanLuma, maxOverexposedPercent / 100f, minSharpness);
+        boundsOptions.inJustDecodeBounds = true;
+        decodeOptions.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        decodeOptions.inMutable = true;
+    }
+
+    public boolean isEnabled() {
+        return !MODE_OFF.equals(mode);
+    }
+
+    public boolean isDropMode() {
+        return MODE_DROP.equals(mode);
+    }
+
+    /**
+     * 检查相机输出的JPEG
+     */
+    public synchronized FrameQuality.Verdict checkJpeg(byte[] jpeg) {
+        if (!isEnabled()) {
+            return FrameQuality.Verdict.OK;
+        }
+        BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, boundsOptions);
+        if (boundsOptions.outWidth <= 0 || boundsOptions.outHeight <= 0) {
+            Log.w(TAG, "无法解析JPEG尺寸，跳过质量检查");
+            return FrameQuality.Verdict.OK;
+        }
+        int sampleSize = 1;
+        while (boundsOptions.outWidth / (sampleSize * 2) >= ANALYSIS_WIDTH) {
+            sampleSize *= 2;
+        }
+        decodeOptions.inSampleSize = sampleSize;
+        decodeOptions.inBitmap = reusableBitmap;
+        Bitmap bitmap;
+        try {
+            bitmap = BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, decodeOptions);
+        } catch (IllegalArgumentException e) {
+            // 缓存的Bitmap不能复用（尺寸变化），重新分配
+            decodeOptions.inBitmap = null;
+            bitmap = BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, decodeOptions);
+        }
+        if (bitmap == null) {
+            Log.w(TAG, "JPEG解码失败，跳过质量检查");
+            return FrameQuality.Verdict.OK;
+        }
+        reusableBitmap = bitmap;
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int count = width * height;
+        if (pixels == null || pixels.length < count) {
+            pixels = new int[count];
+            luma = new byte[count];
+        }
+        bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+        for (int i = 0; i < count; i++) {
+            int c = pixels[i];
+            luma[i] = (byte) ((77 * ((c >> 16) & 0xFF) + 150 * ((c >> 8) & 0xFF) + 29 * (c & 0xFF)) >> 8);
+        }
+        quality.analyze(luma, 0, width, width, height, 1);
+        return record();
+    }
+
+    /**
+     * 检查 NV21 帧（连拍合成结果），在全分辨率亮度平面上按步长采样
+     */
+    public synchronized FrameQuality.Verdict checkNv21(byte[] nv21, int width, int height) {
+        if (!isEnabled()) {
+            return FrameQuality.Verdict.OK;
+        }
+        int step = Math.max(1, width / ANALYSIS_WIDTH);
+        quality.analyze(nv21, 0, width, width, height, step);
+        return record();
+    }
+
+    private FrameQuality.Verdict record() {
+        FrameQuality.Verdict verdict = quality.evaluate(thresholds);
+        switch (verdict) {
+            case DARK:
+                darkCount++;
+                break;
+            case OVEREXPOSED:
+                overexposedCount++;
+                break;
+            case BLURRED:
+                blurredCount++;
+                break;
+            default:
+                accepted++;
+                break;
+        }
+        if (verdict != FrameQuality.Verdict.OK) {
+            Log.w(TAG, "帧质量不合格: " + verdict + ", 平均亮度 " + Math.round(quality.getMeanLuma())
+                    + ", 过曝比例 " + Math.round(quality.getOverexposedRatio() * 100) + "%"
+                    + ", 清晰度 " + Math.round(quality.getSharpness()));
+        }
+        return verdict;
+    }
+
+    public synchronized int getRejectedCount() {
+        return darkCount + overexposedCount + blurredCount;
+    }
+
+    public synchronized String describeStats() {
+        return "合格 " + accepted + ", 过暗 " + darkCount + ", 过曝 " + overexposedCount + ", 模糊 " + blurredCount;
+    }
+
+    /**
+     * 在照片EXIF中标记质量问题
+     */
+    public static void markFlagged(File photo, FrameQuality.Verdict verdict) {
+        try {
+            ExifInterface exif = new ExifInterface(photo.getAbsolutePath());
+            exif.setAttribute(ExifInterface.TAG_USER_COMMENT, FLAG_PREFIX + verdict.name());
+            exif.saveAttributes();
+        } catch (IOException e) {
+            Log.w(TAG, "写入质量标记失败: " + photo.getName(), e);
+        }
+    }
+
+    /**
+     * 读取照片的质量标记，未标记时返回 OK
+     */
+    public static FrameQuality.Verdict readFlag(String photoPath) {
+        if (SegmentPhotoStorage.isSegmentPath(photoPath)) {
+            // 段存储只保存未标记的照片
+            return FrameQuality.Verdict.OK;
+        }
+        try {
+            ExifInterface exif = new ExifInterface(photoPath);
+            String comment = exif.getAttribute(ExifInterface.TAG_USER_COMMENT);
+            if (comment != null && comment.startsWith(FLAG_PREFIX)) {
+                return FrameQuality.Verdict.valueOf(comment.substring(FLAG_PREFIX.length()).trim());
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            Log.w(TAG, "读取质量标记失败: " + photoPath, e);
+        }
+        return FrameQuality.Verdict.OK;
+    }
+
+    /**
+     * 丢弃不合格帧时通过拍照回调报告
+     */
+    public static class FrameRejectedException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        private final FrameQuality.Verdict verdict;
+
+        public FrameRejectedException(FrameQuality.Verdict verdict) {
+            super("帧质量不合格，已丢弃: " + verdict);
+            this.verdict = verdict;
+        }
+
+        public FrameQuality.Verdict getVerdict() {
+            return verdict;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.pipiqiang.qcamera.app;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 预事件帧环形缓冲区
+ * 启动时一次性分配固定数量的堆外槽位，循环覆盖最旧的帧；
+ * 写入过程不产生任何分配，会话运行多久内存占用都保持不变。
+ * 输出期间冻结缓冲区（不再接收新帧），输出可以在其他线程上进行，不阻塞写入帧的相机线程
+ */
+public class FrameRingBuffer {
+
+    /**
+     * 帧输出回调，data 的 [0, length) 区间为帧内容，仅在回调期间有效
+     */
+    public interface FrameSink {
+        void onFrame(ByteBuffer data, int length, long timestampNs, int width, int height) throws IOException;
+    }
+
+    private final ByteBuffer[] slots;
+    private final long[] timestamps;
+    private final int[] lengths;
+    private final int[] widths;
+    private final int[] heights;
+    private final int slotBytes;
+    private final long minIntervalNs; // 两帧之间的最小间隔，用于限制存帧频率
+
+    private int head = 0;  // 下一个写入槽位
+    private int count = 0; // 有效帧数
+    private long lastCommittedTs = Long.MIN_VALUE;
+    private long droppedFrames = 0;
+    private boolean frozen = false;  // 等待或正在输出，不接收新帧
+    private boolean writing = false; // beginFrame 之后、commitFrame/abortFrame 之前
+
+    public FrameRingBuffer(int capacity, int slotBytes, long minIntervalNs) {
+        if (capacity <= 0 || slotBytes <= 0) {
+            throw new IllegalArgumentException("capacity/slotBytes必须为正数");
+        }
+        this.slots = new ByteBuffer[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = ByteBuffer.allocateDirect(slotBytes);
+        }
+        this.timestamps = new long[capacity];
+        this.lengths = new int[capacity];
+        this.widths = new int[capacity];
+        this.heights = new int[capacity];
+        this.slotBytes = slotBytes;
+        this.minIntervalNs = minIntervalNs;
+    }
+
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    public int getSlotBytes() {
+        return slotBytes;
+    }
+
+    /**
+     * 判断该时间戳的帧是否需要保存（按最小间隔抽帧）
+     */
+    public synchronized boolean shouldAccept(long timestampNs) {
+        if (frozen) {
+            return false;
+        }
+        return lastCommittedTs == Long.MIN_VALUE || timestampNs - lastCommittedTs >= minIntervalNs;
+    }
+
+    /**
+     * 取得下一个待写入槽位，调用方写入后必须调用 commitFrame 或 abortFrame
+     * @return 缓冲区已冻结时返回 null
+     */
+    public synchronized ByteBuffer beginFrame() {
+        if (frozen) {
+            return null;
+        }
+        writing = true;
+        ByteBuffer slot = slots[head];
+        slot.clear();
+        return slot;
+    }
+
+    /**
+     * 提交当前槽位，帧长度取槽位的 position
+     */
+    public synchronized void commitFrame(long timestampNs, int width, int height) {
+        writing = false;
+        lengths[head] = slots[head].position();
+        timestamps[head] = timestampNs;
+        widths[head] = width;
+        heights[head] = height;
+        head = (head + 1) % slots.length;
+        if (count < slots.length) {
+            count++;
+        }
+        lastCommittedTs = timestampNs;
+    }
+
+    /**
+     * 放弃当前槽位（例如帧超过槽位大小）
+     */
+    public synchronized void abortFrame() {
+        writing = false;
+        droppedFrames++;
+    }
+
+    /**
+     * 冻结缓冲区，直到下一次 drainTo 完成；触发时在相机线程调用，输出交给后台线程时窗口内的帧不会被覆盖
+     */
+    public synchronized void freeze() {
+        frozen = true;
+    }
+
+    /**
+     * 按时间顺序（旧到新）输出 [fromTs, toTs] 区间内的帧，输出后清空缓冲区并解除冻结。
+     * 输出期间不持有锁，写入线程不会被阻塞
+     * @return 输出的帧数
+     */
+    public int drainTo(long fromTs, long toTs, FrameSink sink) throws IOException {
+        int[] selected;
+        int selectedCount = 0;
+        synchronized (this) {
+            frozen = true;
+            int capacity = slots.length;
+            selected = new int[count];
+            for (int i = 0; i < count; i++) {
+                int index = (head - count + i + capacity) % capacity;
+                // 冻结前已开始写入的槽位正在被覆盖（缓冲区满时就是最旧的帧），跳过
+                if (writing && index == head) {
+                    continue;
+                }
+                long ts = timestamps[index];
+                if (ts >= fromTs && ts <= toTs) {
+                    selected[selectedCount++] = index;
+                }
+            }
+        }
+        int written = 0;
+        try {
+            for (int i = 0; i < selectedCount; i++) {
+                int index = selected[i];
+                ByteBuffer slot = slots[index];
+                slot.position(0);
+                slot.limit(lengths[index]);
+                sink.onFrame(slot, lengths[index], timestamps[index], widths[index], heights[index]);
+                written++;
+            }
+        } finally {
+            synchronized (this) {
+                clear();
+                frozen = false;
+            }
+        }
+        return written;
+    }
+
+    public synchronized void clear() {
+        head = 0;
+        count = 0;
+        lastCommittedTs = Long.MIN_VALUE;
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    public synchronized long getDroppedFrames() {
+        return droppedFrames;
+    }
+}
@@ -0,0 +1,25 @@
+package com.pipiqiang.qcamera.app;
+
+import com.pipiqiang.qcamera.imaging.ExposureFusion;
+import com.pipiqiang.qcamera.imaging.ImagingPools;
+
+/**
+ * HDR包围曝光融合
+ * 锁定AE后连拍的欠曝/正常/过曝三帧按曝光融合合成为一张。
+ * 三帧曝光时间不同，投影对齐会受亮度差异干扰，因此不做对齐，依赖连拍间隔足够短
+ */
+public class HdrFuser extends YuvBurstProcessor {
+
+    public static final int BRACKET_FRAMES = 3;
+
+    private final ExposureFusion fusion = new ExposureFusion(ImagingPools.tilePool());
+
+    public HdrFuser(int width, int height) {
+        super("HdrFuser", width, height, BRACKET_FRAMES);
+    }
+
+    @Override
+    protected void merge(short[][] frames, int frameCount, int width, int height, short[] out) {
+        fusion.fuseNv21(frames, frameCount, width, height, out);
+    }
+}
@@ -0,0 +1,224 @@
+package com.pipiqiang.qcamera.app;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * JPEG 头部解析
+ * 只读取头部标记段，取出 EXIF 方向、内嵌缩略图和图像尺寸，不解码图像数据
+ */
+public final class JpegHeaderReader {
+
+    // 头部最多读取的字节数，超过后放弃（异常文件）
+    public static final int MAX_HEADER_BYTES = 256 * 1024;
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private static final int TAG_ORIENTATION = 0x0112;
+    private static final int TAG_THUMBNAIL_OFFSET = 0x0201;
+    private static final int TAG_THUMBNAIL_LENGTH = 0x0202;
+
+    /**
+     * 解析结果，未找到的字段为 0 或 null
+     */
+    public static final class Header {
+        public final int width;
+        public final int height;
+        public final int orientation;   // EXIF 方向（1-8），没有时为 0
+        public final byte[] thumbnail;  // 内嵌的 JPEG 缩略图
+
+        Header(int width, int height, int orientation, byte[] thumbnail) {
+            this.width = width;
+            this.height = height;
+            this.orientation = orientation;
+            this.thumbnail = thumbnail;
+        }
+
+        public boolean hasSize() {
+            return width > 0 && height > 0;
+        }
+    }
+
+    private JpegHeaderReader() {
+    }
+
+    public static Header read(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            return read(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * 从流的开头解析（不关闭流）
+     * @return 不是 JPEG 时返回 null
+     */
+    public static Header read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream, BUFFER_SIZE));
+        if (in.readUnsignedByte() != 0xFF || in.readUnsignedByte() != 0xD8) {
+            return null;
+        }
+        int width = 0;
+        int height = 0;
+        Exif exif = null;
+        long consumed = 2;
+        try {
+            while (consumed < MAX_HEADER_BYTES) {
+                int marker = readMarker(in);
+                consumed += 2;
+                if (marker == 0xD9 || marker == 0xDA) {
+                    break; // EOI 或图像数据开始
+                }
+                if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+                    continue; // 没有长度字段的标记
+                }
+                int length = in.readUnsignedShort() - 2;
+                consumed += 2 + length;
+                if (length < 0) {
+                    break;
+                }
+                if (marker == 0xE1 && exif == null) {
+                    byte[] payload = new byte[length];
+                    in.readFully(payload);
+                    exif = parseExif(payload);
+                } else if (isStartOfFrame(marker)) {
+                    in.readUnsignedByte(); // 采样精度
+                    height = in.readUnsignedShort();
+                    width = in.readUnsignedShort();
+                    break; // Exif 总在 SOF 之前
+                } else {
+                    skipFully(in, length);
+                }
+            }
+        } catch (EOFException e) {
+            // 文件被截断，返回已解析的部分
+        }
+        return new Header(width, height, exif != null ? exif.orientation : 0, exif != null ? exif.thumbnail : null);
+    }
+
+    private static int readMarker(DataInputStream in) throws IOException {
+        int b = in.readUnsignedByte();
+        if (b != 0xFF) {
+            throw new EOFException("标记段损坏");
+        }
+        // 跳过填充的 0xFF
+        while (b == 0xFF) {
+            b = in.readUnsignedByte();
+        }
+        return b;
+    }
+
+    // SOF0-SOF15，除去 DHT(C4)、JPG(C8) 和 DAC(CC)
+    private static boolean isStartOfFrame(int marker) {
+        return marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+    }
+
+    private static void skipFully(DataInputStream in, int count) throws IOException {
+        int remaining = count;
+        while (remaining > 0) {
+            int skipped = in.skipBytes(remaining);
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            remaining -= skipped;
+        }
+    }
+
+    private static final class Exif {
+        int orientation;
+        byte[] thumbnail;
+    }
+
+    // APP1 内容："Exif\0\0" + TIFF 头 + IFD0（方向）+ IFD1（缩略图位置）
+    private static Exif parseExif(byte[] data) {
+        if (data.length < 14 || data[0] != 'E' || data[1] != 'x' || data[2] != 'i' || data[3] != 'f'
+                || data[4] != 0 || data[5] != 0) {
+            return null;
+        }
+        Tiff tiff = new Tiff(data, 6);
+        if (!tiff.valid) {
+            return null;
+        }
+        Exif exif = new Exif();
+        long ifd0 = tiff.u32(4);
+        int count0 = tiff.u16(ifd0);
+        if (count0 < 0) {
+            return exif;
+        }
+        for (int i = 0; i < count0; i++) {
+            long entry = ifd0 + 2 + i * 12L;
+            if (tiff.u16(entry) == TAG_ORIENTATION) {
+                exif.orientation = Math.max(0, tiff.u16(entry + 8));
+            }
+        }
+        long ifd1 = tiff.u32(ifd0 + 2 + count0 * 12L);
+        int count1 = ifd1 > 0 ? tiff.u16(ifd1) : -1;
+        long offset = -1;
+        long length = -1;
+        for (int i = 0; i < count1; i++) {
+            long entry = ifd1 + 2 + i * 12L;
+            int tag = tiff.u16(entry);
+            if (tag == TAG_THUMBNAIL_OFFSET) {
+                offset = tiff.u32(entry + 8);
+            } else if (tag == TAG_THUMBNAIL_LENGTH) {
+                length = tiff.u32(entry + 8);
+            }
+        }
+        if (offset > 0 && length > 2) {
+            long start = 6 + offset;
+            if (start + length <= data.length
+                    && (data[(int) start] & 0xFF) == 0xFF && (data[(int) start + 1] & 0xFF) == 0xD8) {
+                byte[] thumbnail = new byte[(int) length];
+                System.arraycopy(data, (int) start, thumbnail, 0, (int) length);
+                exif.thumbnail = thumbnail;
+            }
+        }
+        return exif;
+    }
+
+    // TIFF 结构内的读取，偏移相对 TIFF 头，越界时返回 -1
+    private static final class Tiff {
+        private final byte[] data;
+        private final int base;
+        private final boolean littleEndian;
+        final boolean valid;
+
+        Tiff(byte[] data, int base) {
+            this.data = data;
+            this.base = base;
+            littleEndian = data[base] == 'I' && data[base + 1] == 'I';
+            boolean bigEndian = data[base] == 'M' && data[base + 1] == 'M';
+            valid = (littleEndian || bigEndian) && u16(2) == 42;
+        }
+
+        int u16(long offset) {
+            long p = base + offset;
+            if (offset < 0 || p + 2 > data.length) {
+                return -1;
+            }
+            int b0 = data[(int) p] & 0xFF;
+            int b1 = data[(int) p + 1] & 0xFF;
+            return littleEndian ? (b1 << 8) | b0 : (b0 << 8) | b1;
+        }
+
+        long u32(long offset) {
+            long p = base + offset;
+            if (offset < 0 || p + 4 > data.length) {
+                return -1;
+            }
+            long b0 = data[(int) p] & 0xFF;
+            long b1 = data[(int) p + 1] & 0xFF;
+            long b2 = data[(int) p + 2] & 0xFF;
+            long b3 = data[(int) p + 3] & 0xFF;
+            return littleEndian
+                    ? (b3 << 24) | (b2 << 16) | (b1 << 8) | b0
+                    : (b0 << 24) | (b1 << 16) | (b2 << 8) | b3;
+        }
+    }
+}
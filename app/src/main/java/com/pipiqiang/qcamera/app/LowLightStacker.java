@@ -0,0 +1,28 @@
+package com.pipiqiang.qcamera.app;
+
+import com.pipiqiang.qcamera.imaging.FrameStacker;
+import com.pipiqiang.qcamera.imaging.ImagingPools;
+
+/**
+ * 低光多帧叠加
+ * 对连拍的 N 帧做全局对齐后，分块并行均值合成以降低噪声
+ */
+public class LowLightStacker extends YuvBurstProcessor {
+
+    private static final int MAX_SHIFT = 32; // 对齐搜索范围（像素）
+
+    public static final String MODE_OFF = "off";
+    public static final String MODE_AUTO = "auto";
+    public static final String MODE_ALWAYS = "always";
+
+    private final FrameStacker stacker = new FrameStacker(ImagingPools.tilePool());
+
+    public LowLightStacker(int width, int height, int frameCount) {
+        super("LowLightStacker", width, height, Math.max(2, frameCount));
+    }
+
+    @Override
+    protected void merge(short[][] frames, int frameCount, int width, int height, short[] out) {
+        stacker.mergeNv21(frames, frameCount, width, height, true, MAX_SHIFT, FrameStacker.Mode.MEAN, out);
+    }
+}
@@ -0,0 +1,195 @@
+package com.pipiqiang.qcamera.app;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.media.ExifInterface;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 照片归档
+ * 把拍摄时间超过阈值的照片缩小到指定长边并以较低质量重新编码，写回原路径（图库、保留清理和
+ * 缩略图都不需要改路径）。写入经过 AtomicPhotoWriter，进程中途被杀不会损坏原图；
+ * 每张照片处理完立即在照片目录中标记已归档，下次从未归档的最旧照片继续；
+ * 处理失败的照片不标记归档，只记录失败，之后按重试间隔再试。
+ * 由 ArchiveWorker 在充电、未拍照时分批调用
+ */
+public final class PhotoArchiver {
+
+    private static final String TAG = "PhotoArchiver";
+
+    // 需要保留到归档照片上的 EXIF 字段（尺寸相关字段由重新编码生成）
+    private static final String[] EXIF_TAGS = {
+            ExifInterface.TAG_DATETIME,
+            ExifInterface.TAG_DATETIME_ORIGINAL,
+            ExifInterface.TAG_ORIENTATION,
+            ExifInterface.TAG_IMAGE_DESCRIPTION,
+            ExifInterface.TAG_USER_COMMENT,
+            ExifInterface.TAG_MAKE,
+            ExifInterface.TAG_MODEL,
+            ExifInterface.TAG_GPS_LATITUDE,
+            ExifInterface.TAG_GPS_LATITUDE_REF,
+            ExifInterface.TAG_GPS_LONGITUDE,
+            ExifInterface.TAG_GPS_LONGITUDE_REF
+    };
+
+    /**
+     * 每张照片之间检查是否需要停下（拍照开始、任务被系统停止）
+     */
+    public interface StopSignal {
+        boolean shouldStop();
+    }
+
+    /**
+     * 一批归档的结果
+     */
+    public static final class Result {
+        public int examined;
+        public int archived;
+        public long bytesReclaimed;
+        // 还有未检查完的候选照片
+        public boolean hasMore;
+    }
+
+    private final Context context;
+    private final PhotoCatalog catalog;
+
+    public PhotoArchiver(Context context) {
+        this.context = context.getApplicationContext();
+        this.catalog = PhotoCatalog.get(context);
+    }
+
+    /**
+     * 归档一批照片
+     * @param olderThanMs 拍摄时间早于该时间的照片
+     * @param maxEdge 归档后的长边像素
+     * @param quality 归档 JPEG 质量
+     * @param batchSize 本批最多检查的照片数
+     */
+    public Result archiveBatch(long olderThanMs, int maxEdge, int quality, int batchSize, StopSignal stopSignal) {
+        Result result = new Result();
+        List<PhotoCatalog.Entry> candidates = catalog.archiveCandidates(olderThanMs, batchSize);
+        for (PhotoCatalog.Entry entry : candidates) {
+            if (stopSignal != null && stopSignal.shouldStop()) {
+                result.hasMore = true;
+                return result;
+            }
+            result.examined++;
+            try {
+                long reclaimed = archivePhoto(entry, maxEdge, quality);
+                if (reclaimed > 0) {
+                    result.archived++;
+                    result.bytesReclaimed += reclaimed;
+                }
+            } catch (IOException | RuntimeException e) {
+                // 单张失败不影响其它照片；记录失败，隔一段时间再试，多次失败后不再尝试
+                Log.w(TAG, "归档照片失败: " + entry.path, e);
+                catalog.markArchiveFailed(entry.path, System.currentTimeMillis());
+            }
+        }
+        result.hasMore = candidates.size() >= batchSize;
+        return result;
+    }
+
+    /**
+     * 与归档照片共用存储（硬链接）的其它照片改为链接到归档后的文件，原来的数据才会被释放
+     * @return 释放的字节数；有照片无法重新链接时原数据仍被占用，返回 0
+     */
+    private long relinkShared(PhotoCatalog.Entry entry, File archived, long originalSize, long archivedSize) {
+        String fileKey = PhotoCatalog.fileKey(archived);
+        boolean allRelinked = true;
+        List<String> shared = catalog.pathsWithFileKey(entry.fileKey);
+        for (String path : shared) {
+            if (path.equals(entry.path)) {
+                continue;
+            }
+            File other = new File(path);
+            if (other.exists() && PhotoCatalog.replaceWithLink(archived, other)) {
+                catalog.markArchived(path, archivedSize);
+                catalog.setFileKey(path, fileKey);
+            } else {
+                allRelinked = false;
+            }
+        }
+        catalog.setFileKey(entry.path, shared.size() > 1 ? fileKey : null);
+        if (!allRelinked) {
+            Log.w(TAG, "部分共用存储的照片无法重新链接，原数据仍被占用: " + entry.path);
+            return 0;
+        }
+        return originalSize - archivedSize;
+    }
+
+    /**
+     * @return 释放的字节数，不需要或不值得重编码时为 0
+     */
+    private long archivePhoto(PhotoCatalog.Entry entry, int maxEdge, int quality) throws IOException {
+        File photo = new File(entry.path);
+        if (!photo.exists()) {
+            catalog.remove(entry.path);
+            return 0;
+        }
+        long originalSize = photo.length();
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(entry.path, options);
+        if (options.outWidth <= 0 || !ArchiveSizing.needsDownscale(options.outWidth, options.outHeight, maxEdge)) {
+            // 已经足够小（或无法解析），只标记，不重编码
+            catalog.markArchived(entry.path, originalSize);
+            return 0;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = ArchiveSizing.sampleSize(options.outWidth, options.outHeight, maxEdge);
+        Bitmap decoded = BitmapFactory.decodeFile(entry.path, options);
+        if (decoded == null) {
+            catalog.markArchived(entry.path, originalSize);
+            return 0;
+        }
+        int[] target = ArchiveSizing.targetSize(decoded.getWidth(), decoded.getHeight(), maxEdge);
+        Bitmap scaled = decoded;
+        if (target[0] != decoded.getWidth() || target[1] != decoded.getHeight()) {
+            scaled = Bitmap.createScaledBitmap(decoded, target[0], target[1], true);
+            decoded.recycle();
+        }
+
+        ExifInterface original = new ExifInterface(entry.path);
+        AtomicPhotoWriter.Pending pending = PhotoWriteRecovery.writer(context).begin(photo);
+        try {
+            scaled.compress(Bitmap.CompressFormat.JPEG, quality, pending.getOutputStream());
+            pending.closeStream();
+
+            ExifInterface exif = new ExifInterface(pending.getTempFile().getAbsolutePath());
+            for (String tag : EXIF_TAGS) {
+                String value = original.getAttribute(tag);
+                if (value != null) {
+                    exif.setAttribute(tag, value);
+                }
+            }
+            exif.saveAttributes();
+
+            long archivedSize = pending.getTempFile().length();
+            if (archivedSize >= originalSize) {
+                // 重编码没有变小，保留原图
+                pending.abort();
+                catalog.markArchived(entry.path, originalSize);
+                return 0;
+            }
+            pending.commit();
+            // 保持文件时间为拍摄时间，目录迁移和重新导入依赖它
+            photo.setLastModified(entry.capturedAt);
+            catalog.markArchived(entry.path, archivedSize);
+            if (entry.fileKey == null) {
+                return originalSize - archivedSize;
+            }
+            return relinkShared(entry, photo, originalSize, archivedSize);
+        } finally {
+            pending.abort();
+            scaled.recycle();
+        }
+    }
+}
@@ -0,0 +1,795 @@
+package com.pipiqiang.qcamera.app;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.StructStat;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 照片目录（SQLite）
+ * 保存管线写盘后登记每张照片，图库、保留清理和上传都查询这里，不再遍历目录。
+ * 拍摄时间和上传/邮件状态上建有索引，十万张照片时按时间分页或按状态筛选都只需毫秒级查询。
+ * 数据库首次创建时在后台线程扫描一次照片根目录，分批导入已有照片（中断后下次启动继续）。
+ * 归档标记表示照片已被缩小重编码（原路径不变），图库据此标注；归档失败的照片记录失败次数和时间，
+ * 隔一段时间再试，多次失败后不再尝试（不会被误标为已归档）。
+ * 内容哈希建有索引：内容完全相同的照片通过硬链接只存一份，链接成功的照片记录共用的文件标识（设备号:inode），
+ * 总大小、保留清理和归档按文件标识去重计算。照片目录在共享存储（FUSE，默认的 Pictures/CameraApp）上时
+ * 硬链接不可用，相同内容仍各存一份（首次失败时记录日志）；
+ * 已发送/上传过的内容记录在 delivered 表中（照片删除后仍然保留），重复内容不再发送
+ */
+public final class PhotoCatalog extends SQLiteOpenHelper {
+
+    private static final String TAG = "PhotoCatalog";
+    private static final String DB_NAME = "photo_catalog.db";
+    private static final int DB_VERSION = 1;
+    private static final String PREF_NAME = "photo_catalog";
+    private static final String KEY_IMPORT_PENDING = "import_pending";
+    private static final int IMPORT_BATCH = 200; // 每个事务导入的照片数，事务之间拍照线程可以登记新照片
+
+    private static final String TABLE = "photos";
+    public static final String COL_PATH = "path";
+    public static final String COL_CAPTURED_AT = "captured_at";
+    public static final String COL_SIZE = "size";
+    public static final String COL_CAMERA_ID = "camera_id";
+    public static final String COL_HASH = "content_hash";
+    public static final String COL_THUMBNAIL = "thumbnail_path";
+    public static final String COL_UPLOAD_STATE = "upload_state";
+    public static final String COL_EMAIL_STATE = "email_state";
+    public static final String COL_ARCHIVED = "archived";
+    public static final String COL_ARCHIVE_ATTEMPTS = "archive_attempts";
+    public static final String COL_ARCHIVE_FAILED_AT = "archive_failed_at";
+    public static final String COL_FILE_KEY = "file_key"; // 与其它照片硬链接时的文件标识，否则为 null
+    public static final String COL_QUALITY_FLAGGED = "quality_flagged"; // 质量门限标记模式下不合格的照片
+
+    private static final String TABLE_DELIVERED = "delivered";
+    private static final String COL_CHANNEL = "channel";
+
+    // 回收站：与 photos 表相同的列，外加删除批次和删除时间
+    private static final String TABLE_TRASH = "trash";
+    private static final String COL_TICKET = "ticket";
+    private static final String COL_TRASHED_AT = "trashed_at";
+
+    // 上传/邮件状态
+    public static final int STATE_NONE = 0;     // 未启用或未处理
+    public static final int STATE_PENDING = 1;
+    public static final int STATE_DONE = 2;
+    public static final int STATE_FAILED = 3;
+    public static final int STATE_SKIPPED = 4;  // 例如质量不合格的照片
+
+    // 归档失败重试：间隔一天，最多尝试3次
+    public static final int MAX_ARCHIVE_ATTEMPTS = 3;
+    public static final long ARCHIVE_RETRY_DELAY_MS = 24L * 60 * 60 * 1000;
+
+    private static PhotoCatalog instance;
+    private static boolean importRunning = false;
+    private static volatile boolean linkUnsupportedLogged = false;
+
+    private final Context context;
+    private boolean needsImport = false;
+
+    /**
+     * 目录中的一条照片记录
+     */
+    public static final class Entry {
+        public final String path;
+        public final long capturedAt;
+        public final long size;
+        public final String cameraId;
+        public final String contentHash;
+        public final String thumbnailPath;
+        public final int uploadState;
+        public final int emailState;
+        public final boolean archived;
+        public final String fileKey;
+        public final boolean qualityFlagged;
+
+        Entry(Cursor cursor) {
+            path = cursor.getString(0);
+            capturedAt = cursor.getLong(1);
+            size = cursor.getLong(2);
+            cameraId = cursor.getString(3);
+            contentHash = cursor.getString(4);
+            thumbnailPath = cursor.getString(5);
+            uploadState = cursor.getInt(6);
+            emailState = cursor.getInt(7);
+            archived = cursor.getInt(8) != 0;
+            fileKey = cursor.getString(9);
+            qualityFlagged = cursor.getInt(10) != 0;
+        }
+    }
+
+    private static final String[] COLUMNS = {
+            COL_PATH, COL_CAPTURED_AT, COL_SIZE, COL_CAMERA_ID,
+            COL_HASH, COL_THUMBNAIL, COL_UPLOAD_STATE, COL_EMAIL_STATE, COL_ARCHIVED, COL_FILE_KEY,
+            COL_QUALITY_FLAGGED
+    };
+
+    // 移入回收站和撤销时复制的列：查询列加上归档重试状态
+    private static final String[] TRASH_COLUMNS = {
+            COL_PATH, COL_CAPTURED_AT, COL_SIZE, COL_CAMERA_ID,
+            COL_HASH, COL_THUMBNAIL, COL_UPLOAD_STATE, COL_EMAIL_STATE, COL_ARCHIVED, COL_FILE_KEY,
+            COL_QUALITY_FLAGGED, COL_ARCHIVE_ATTEMPTS, COL_ARCHIVE_FAILED_AT
+    };
+
+    private PhotoCatalog(Context context) {
+        super(context.getApplicationContext(), DB_NAME, null, DB_VERSION);
+        this.context = context.getApplicationContext();
+    }
+
+    public static synchronized PhotoCatalog get(Context context) {
+        if (instance == null) {
+            instance = new PhotoCatalog(context);
+            // 触发建库，首次创建时（或上次导入被中断时）在后台导入已有照片
+            instance.getWritableDatabase();
+            SharedPreferences prefs = instance.context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
+            if (instance.needsImport) {
+                instance.needsImport = false;
+                prefs.edit().putBoolean(KEY_IMPORT_PENDING, true).commit();
+            }
+            if (prefs.getBoolean(KEY_IMPORT_PENDING, false)) {
+                instance.startImport(prefs);
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 是否正在导入已有照片（导入期间图库只能看到已导入的部分）
+     */
+    public static synchronized boolean isImporting() {
+        return importRunning;
+    }
+
+    private void startImport(final SharedPreferences prefs) {
+        importRunning = true;
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    importExisting();
+                    prefs.edit().putBoolean(KEY_IMPORT_PENDING, false).apply();
+                } catch (Exception e) {
+                    Log.e(TAG, "导入已有照片失败，下次启动重试", e);
+                } finally {
+                    synchronized (PhotoCatalog.class) {
+                        importRunning = false;
+                    }
+                }
+            }
+        }, "PhotoCatalogImport");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE + " (" + photoColumns() + ")");
+        db.execSQL("CREATE INDEX idx_photos_captured_at ON " + TABLE + "(" + COL_CAPTURED_AT + ")");
+        db.execSQL("CREATE INDEX idx_photos_upload_state ON " + TABLE + "(" + COL_UPLOAD_STATE + ", " + COL_CAPTURED_AT + ")");
+        db.execSQL("CREATE INDEX idx_photos_email_state ON " + TABLE + "(" + COL_EMAIL_STATE + ", " + COL_CAPTURED_AT + ")");
+        db.execSQL("CREATE INDEX idx_photos_archived ON " + TABLE + "(" + COL_ARCHIVED + ", " + COL_CAPTURED_AT + ")");
+        db.execSQL("CREATE INDEX idx_photos_hash ON " + TABLE + "(" + COL_HASH + ")");
+        db.execSQL("CREATE INDEX idx_photos_file_key ON " + TABLE + "(" + COL_FILE_KEY + ")");
+        db.execSQL("CREATE INDEX idx_photos_quality ON " + TABLE + "(" + COL_QUALITY_FLAGGED + ", " + COL_CAPTURED_AT + ")");
+        db.execSQL("CREATE TABLE " + TABLE_DELIVERED + " ("
+                + COL_HASH + " TEXT NOT NULL, "
+                + COL_CHANNEL + " TEXT NOT NULL, "
+                + "PRIMARY KEY (" + COL_HASH + ", " + COL_CHANNEL + "))");
+        // 回收站与照片表列相同，撤销时原样移回
+        db.execSQL("CREATE TABLE " + TABLE_TRASH + " (" + photoColumns() + ", "
+                + COL_TICKET + " INTEGER NOT NULL, "
+                + COL_TRASHED_AT + " INTEGER NOT NULL)");
+        db.execSQL("CREATE INDEX idx_trash_ticket ON " + TABLE_TRASH + "(" + COL_TICKET + ")");
+        needsImport = true;
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // 目前只有第一版
+    }
+
+    private static String photoColumns() {
+        return COL_PATH + " TEXT PRIMARY KEY NOT NULL, "
+                + COL_CAPTURED_AT + " INTEGER NOT NULL, "
+                + COL_SIZE + " INTEGER NOT NULL, "
+                + COL_CAMERA_ID + " TEXT, "
+                + COL_HASH + " TEXT, "
+                + COL_THUMBNAIL + " TEXT, "
+                + COL_UPLOAD_STATE + " INTEGER NOT NULL DEFAULT " + STATE_NONE + ", "
+                + COL_EMAIL_STATE + " INTEGER NOT NULL DEFAULT " + STATE_NONE + ", "
+                + COL_ARCHIVED + " INTEGER NOT NULL DEFAULT 0, "
+                + COL_ARCHIVE_ATTEMPTS + " INTEGER NOT NULL DEFAULT 0, "
+                + COL_ARCHIVE_FAILED_AT + " INTEGER NOT NULL DEFAULT 0, "
+                + COL_FILE_KEY + " TEXT, "
+                + COL_QUALITY_FLAGGED + " INTEGER NOT NULL DEFAULT 0";
+    }
+
+    /**
+     * 保存管线写出照片后调用（在后台线程，需要读取整个文件计算哈希）
+     */
+    public void recordPhoto(File photo, String cameraId) {
+        recordPhoto(photo, cameraId, null);
+    }
+
+    /**
+     * 登记照片，contentHash 为写入时计算的哈希（为 null 时读取文件计算）。
+     * 已有内容相同的照片时，新文件替换为指向它的硬链接
+     */
+    public void recordPhoto(File photo, String cameraId, String contentHash) {
+        String hash = contentHash != null ? contentHash : sha256Hex(photo);
+        // 硬链接共用 inode（包括修改时间），拍摄时间要在链接前取
+        long capturedAt = photo.lastModified();
+        String fileKey = hash != null ? linkDuplicate(photo, hash) : null;
+        insert(photo, cameraId, hash, capturedAt, fileKey);
+    }
+
+    /**
+     * @return 链接成功时返回共用的文件标识（已有照片的记录同时更新），否则为 null
+     */
+    private String linkDuplicate(File photo, String hash) {
+        List<Entry> matches = query(COL_HASH + " = ? AND " + COL_PATH + " != ?",
+                new String[]{hash, photo.getAbsolutePath()}, null, "1");
+        if (matches.isEmpty()) {
+            return null;
+        }
+        Entry match = matches.get(0);
+        File existing = new File(match.path);
+        if (!existing.exists() || existing.length() != photo.length()) {
+            return null;
+        }
+        if (!replaceWithLink(existing, photo)) {
+            return null;
+        }
+        Log.d(TAG, "内容与已有照片相同，共用存储: " + photo.getName() + " -> " + existing.getName());
+        String fileKey = fileKey(existing);
+        if (fileKey != null && !fileKey.equals(match.fileKey)) {
+            setFileKey(match.path, fileKey);
+        }
+        return fileKey;
+    }
+
+    /**
+     * 把 target 替换为指向 source 的硬链接：先链接到临时名再重命名覆盖，任何一步失败都保留原来的 target
+     */
+    static boolean replaceWithLink(File source, File target) {
+        File link = new File(target.getParentFile(), "." + target.getName() + ".link");
+        try {
+            link.delete();
+            Os.link(source.getAbsolutePath(), link.getAbsolutePath());
+            if (link.renameTo(target)) {
+                return true;
+            }
+            link.delete();
+        } catch (ErrnoException e) {
+            // 共享存储（FUSE）返回 EPERM，跨分区返回 EXDEV：相同内容只能各存一份
+            if (!linkUnsupportedLogged) {
+                linkUnsupportedLogged = true;
+                Log.i(TAG, "照片目录所在存储不支持硬链接，相同内容的照片不会合并存储: "
+                        + target.getParent() + " (" + e.getMessage() + ")");
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 文件标识（设备号:inode），硬链接的各个路径相同；无法读取时为 null
+     */
+    static String fileKey(File file) {
+        try {
+            StructStat stat = Os.stat(file.getAbsolutePath());
+            return stat.st_dev + ":" + stat.st_ino;
+        } catch (ErrnoException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 文件的硬链接数，无法读取时按 1 处理（删除这个路径会释放空间）
+     */
+    static long linkCount(File file) {
+        try {
+            return Os.stat(file.getAbsolutePath()).st_nlink;
+        } catch (ErrnoException e) {
+            return 1;
+        }
+    }
+
+    /**
+     * 更新照片的文件标识（重编码后不再与其它照片共用存储时设为 null）
+     */
+    public void setFileKey(String path, String fileKey) {
+        ContentValues values = new ContentValues();
+        if (fileKey != null) {
+            values.put(COL_FILE_KEY, fileKey);
+        } else {
+            values.putNull(COL_FILE_KEY);
+        }
+        try {
+            getWritableDatabase().update(TABLE, values, COL_PATH + " = ?", new String[]{path});
+        } catch (Exception e) {
+            Log.e(TAG, "更新文件标识失败: " + path, e);
+        }
+    }
+
+    /**
+     * 与某文件标识共用存储的照片（目录中现存的）
+     */
+    public List<String> pathsWithFileKey(String fileKey) {
+        List<String> paths = new ArrayList<>();
+        for (Entry entry : query(COL_FILE_KEY + " = ?", new String[]{fileKey}, null, null)) {
+            paths.add(entry.path);
+        }
+        return paths;
+    }
+
+    /**
+     * 记录某内容已通过某个渠道送达（例如 "upload:webdav"、"email:地址"）
+     */
+    public void markDelivered(String contentHash, String channel) {
+        if (contentHash == null) {
+            return;
+        }
+        ContentValues values = new ContentValues();
+        values.put(COL_HASH, contentHash);
+        values.put(COL_CHANNEL, channel);
+        try {
+            getWritableDatabase().insertWithOnConflict(TABLE_DELIVERED, null, values, SQLiteDatabase.CONFLICT_IGNORE);
+        } catch (Exception e) {
+            Log.e(TAG, "记录送达状态失败", e);
+        }
+    }
+
+    /**
+     * 该内容是否已经通过某个渠道送达过
+     */
+    public boolean isDelivered(String contentHash, String channel) {
+        if (contentHash == null) {
+            return false;
+        }
+        Cursor cursor = null;
+        try {
+            cursor = getReadableDatabase().query(TABLE_DELIVERED, new String[]{COL_HASH},
+                    COL_HASH + " = ? AND " + COL_CHANNEL + " = ?", new String[]{contentHash, channel},
+                    null, null, null, "1");
+            return cursor.moveToFirst();
+        } catch (Exception e) {
+            Log.e(TAG, "查询送达状态失败", e);
+            return false;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * 登记不是普通文件的照片（段存储），大小和拍摄时间由调用方提供
+     */
+    public void recordStoredPhoto(String path, long capturedAt, long size, String cameraId, String contentHash) {
+        ContentValues values = new ContentValues();
+        values.put(COL_PATH, path);
+        values.put(COL_CAPTURED_AT, capturedAt);
+        values.put(COL_SIZE, size);
+        values.put(COL_CAMERA_ID, cameraId);
+        values.put(COL_HASH, contentHash);
+        values.put(COL_THUMBNAIL, ThumbnailFiles.thumbnailFor(path).getAbsolutePath());
+        try {
+            getWritableDatabase().insertWithOnConflict(TABLE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+        } catch (Exception e) {
+            Log.e(TAG, "登记照片失败: " + path, e);
+        }
+    }
+
+    private void insert(File photo, String cameraId, String contentHash) {
+        insert(photo, cameraId, contentHash, photo.lastModified(), null);
+    }
+
+    private void insert(File photo, String cameraId, String contentHash, long capturedAt, String fileKey) {
+        ContentValues values = new ContentValues();
+        values.put(COL_PATH, photo.getAbsolutePath());
+        values.put(COL_CAPTURED_AT, capturedAt);
+        values.put(COL_SIZE, photo.length());
+        values.put(COL_CAMERA_ID, cameraId);
+        values.put(COL_HASH, contentHash);
+        values.put(COL_THUMBNAIL, ThumbnailFiles.thumbnailFor(photo).getAbsolutePath());
+        values.put(COL_FILE_KEY, fileKey);
+        try {
+            getWritableDatabase().insertWithOnConflict(TABLE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+        } catch (Exception e) {
+            Log.e(TAG, "登记照片失败: " + photo.getName(), e);
+        }
+    }
+
+    /**
+     * 照片文件被删除后调用
+     */
+    public void remove(String path) {
+        try {
+            getWritableDatabase().delete(TABLE, COL_PATH + " = ?", new String[]{path});
+        } catch (Exception e) {
+            Log.e(TAG, "移除照片记录失败: " + path, e);
+        }
+    }
+
+    /**
+     * 在一个事务中把一批照片记录移入回收站（文件暂不删除，撤销时原样移回）
+     * @return 移入的记录数
+     */
+    public int moveToTrash(List<String> paths, long ticket, long trashedAt) {
+        String columns = TextUtils.join(", ", TRASH_COLUMNS);
+        SQLiteDatabase db = getWritableDatabase();
+        int moved = 0;
+        db.beginTransaction();
+        try {
+            for (String path : paths) {
+                db.execSQL("INSERT OR REPLACE INTO " + TABLE_TRASH + " (" + columns + ", " + COL_TICKET + ", " + COL_TRASHED_AT + ") "
+                                + "SELECT " + columns + ", ?, ? FROM " + TABLE + " WHERE " + COL_PATH + " = ?",
+                        new Object[]{ticket, trashedAt, path});
+                moved += db.delete(TABLE, COL_PATH + " = ?", new String[]{path});
+            }
+            db.setTransactionSuccessful();
+        } catch (Exception e) {
+            Log.e(TAG, "移入回收站失败", e);
+            moved = 0;
+        } finally {
+            db.endTransaction();
+        }
+        return moved;
+    }
+
+    /**
+     * 撤销删除：把一批记录从回收站移回照片表
+     */
+    public void restoreFromTrash(long ticket) {
+        String columns = TextUtils.join(", ", TRASH_COLUMNS);
+        String[] args = {String.valueOf(ticket)};
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.execSQL("INSERT OR REPLACE INTO " + TABLE + " (" + columns + ") "
+                    + "SELECT " + columns + " FROM " + TABLE_TRASH + " WHERE " + COL_TICKET + " = ?", args);
+            db.delete(TABLE_TRASH, COL_TICKET + " = ?", args);
+            db.setTransactionSuccessful();
+        } catch (Exception e) {
+            Log.e(TAG, "撤销删除失败: " + ticket, e);
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * 回收站中某批次的照片路径
+     */
+    public List<String> trashedPaths(long ticket) {
+        List<String> result = new ArrayList<>();
+        Cursor cursor = null;
+        try {
+            cursor = getReadableDatabase().query(TABLE_TRASH, new String[]{COL_PATH},
+                    COL_TICKET + " = ?", new String[]{String.valueOf(ticket)}, null, null, null);
+            while (cursor.moveToNext()) {
+                result.add(cursor.getString(0));
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "查询回收站失败", e);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 回收站中删除时间早于 before 的批次（例如撤销窗口内进程被杀，重启后清理）
+     */
+    public List<Long> expiredTrashTickets(long before) {
+        List<Long> result = new ArrayList<>();
+        Cursor cursor = null;
+        try {
+            cursor = getReadableDatabase().rawQuery("SELECT DISTINCT " + COL_TICKET + " FROM " + TABLE_TRASH
+                    + " WHERE " + COL_TRASHED_AT + " < ?", new String[]{String.valueOf(before)});
+            while (cursor.moveToNext()) {
+                result.add(cursor.getLong(0));
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "查询回收站失败", e);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 文件真正删除后清掉回收站中的记录
+     */
+    public void purgeTrash(long ticket) {
+        try {
+            getWritableDatabase().delete(TABLE_TRASH, COL_TICKET + " = ?", new String[]{String.valueOf(ticket)});
+        } catch (Exception e) {
+            Log.e(TAG, "清理回收站失败: " + ticket, e);
+        }
+    }
+
+    /**
+     * 照片被移动（例如迁移到分片目录），保留原有的状态和哈希
+     */
+    public void movePath(String oldPath, File newFile) {
+        ContentValues values = new ContentValues();
+        values.put(COL_PATH, newFile.getAbsolutePath());
+        values.put(COL_THUMBNAIL, ThumbnailFiles.thumbnailFor(newFile).getAbsolutePath());
+        try {
+            int updated = getWritableDatabase().update(TABLE, values, COL_PATH + " = ?", new String[]{oldPath});
+            if (updated == 0) {
+                insert(newFile, null, null);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "更新照片路径失败: " + oldPath, e);
+        }
+    }
+
+    public void setUploadState(String path, int state) {
+        updateState(path, COL_UPLOAD_STATE, state);
+    }
+
+    public void setEmailState(String path, int state) {
+        updateState(path, COL_EMAIL_STATE, state);
+    }
+
+    private void updateState(String path, String column, int state) {
+        ContentValues values = new ContentValues();
+        values.put(column, state);
+        try {
+            getWritableDatabase().update(TABLE, values, COL_PATH + " = ?", new String[]{path});
+        } catch (Exception e) {
+            Log.e(TAG, "更新照片状态失败: " + path, e);
+        }
+    }
+
+    /**
+     * 照片已归档（缩小重编码后写回原路径），更新大小并清除哈希（内容已变化）
+     */
+    public void markArchived(String path, long newSize) {
+        ContentValues values = new ContentValues();
+        values.put(COL_ARCHIVED, 1);
+        values.put(COL_SIZE, newSize);
+        values.putNull(COL_HASH);
+        try {
+            getWritableDatabase().update(TABLE, values, COL_PATH + " = ?", new String[]{path});
+        } catch (Exception e) {
+            Log.e(TAG, "更新归档状态失败: " + path, e);
+        }
+    }
+
+    /**
+     * 照片被质量门限标记为不合格（标记模式）：保留清理优先删除，不参与归档，图库中标注
+     */
+    public void markQualityFlagged(String path) {
+        ContentValues values = new ContentValues();
+        values.put(COL_QUALITY_FLAGGED, 1);
+        try {
+            getWritableDatabase().update(TABLE, values, COL_PATH + " = ?", new String[]{path});
+        } catch (Exception e) {
+            Log.e(TAG, "记录质量标记失败: " + path, e);
+        }
+    }
+
+    /**
+     * 归档失败：记录失败次数和时间，照片保持未归档
+     */
+    public void markArchiveFailed(String path, long failedAt) {
+        try {
+            getWritableDatabase().execSQL("UPDATE " + TABLE + " SET "
+                            + COL_ARCHIVE_ATTEMPTS + " = " + COL_ARCHIVE_ATTEMPTS + " + 1, "
+                            + COL_ARCHIVE_FAILED_AT + " = ? WHERE " + COL_PATH + " = ?",
+                    new Object[]{failedAt, path});
+        } catch (Exception e) {
+            Log.e(TAG, "记录归档失败状态出错: " + path, e);
+        }
+    }
+
+    /**
+     * 拍摄时间早于 before 且未归档的照片，旧的在前。
+     * 还在等待上传或上传失败的照片不参与归档，避免上传缩小后的版本；段存储中的照片和质量不合格的照片不归档；
+     * 归档失败的照片隔 ARCHIVE_RETRY_DELAY_MS 再试，失败 MAX_ARCHIVE_ATTEMPTS 次后不再选中
+     */
+    public List<Entry> archiveCandidates(long before, int limit) {
+        long retryBefore = System.currentTimeMillis() - ARCHIVE_RETRY_DELAY_MS;
+        return query(COL_ARCHIVED + " = 0 AND " + COL_CAPTURED_AT + " < ? AND "
+                        + COL_UPLOAD_STATE + " NOT IN (" + STATE_PENDING + ", " + STATE_FAILED + ") AND "
+                        + COL_PATH + " NOT LIKE ? AND "
+                        + COL_ARCHIVE_ATTEMPTS + " < " + MAX_ARCHIVE_ATTEMPTS + " AND "
+                        + COL_QUALITY_FLAGGED + " = 0 AND "
+                        + COL_ARCHIVE_FAILED_AT + " < ?",
+                new String[]{String.valueOf(before), SegmentPhotoStorage.SCHEME + "%", String.valueOf(retryBefore)},
+                COL_CAPTURED_AT + " ASC", String.valueOf(limit));
+    }
+
+    /**
+     * 按 (拍摄时间, 路径) 从新到旧查询第一页（图库）
+     */
+    public List<Entry> newest(int limit) {
+        return query(null, null, COL_CAPTURED_AT + " DESC, " + COL_PATH + " DESC", String.valueOf(limit));
+    }
+
+    /**
+     * 按 (拍摄时间, 路径) 从新到旧查询游标之后的一页（图库翻页，不用 OFFSET，越往后翻也不会变慢）
+     */
+    public List<Entry> olderThan(long capturedAt, String path, int limit) {
+        String at = String.valueOf(capturedAt);
+        return query(COL_CAPTURED_AT + " < ? OR (" + COL_CAPTURED_AT + " = ? AND " + COL_PATH + " < ?)",
+                new String[]{at, at, path}, COL_CAPTURED_AT + " DESC, " + COL_PATH + " DESC", String.valueOf(limit));
+    }
+
+    /**
+     * 保留清理的删除顺序：质量不合格的照片在前，其余按拍摄时间从旧到新
+     */
+    public List<Entry> oldest(int limit) {
+        return query(null, null, COL_QUALITY_FLAGGED + " DESC, " + COL_CAPTURED_AT + " ASC", String.valueOf(limit));
+    }
+
+    /**
+     * 按 (拍摄时间, 路径) 升序查询游标之后的照片（分批抽稀）
+     */
+    public List<Entry> after(long capturedAt, String path, int limit) {
+        String at = String.valueOf(capturedAt);
+        return query(COL_CAPTURED_AT + " > ? OR (" + COL_CAPTURED_AT + " = ? AND " + COL_PATH + " > ?)",
+                new String[]{at, at, path}, COL_CAPTURED_AT + " ASC, " + COL_PATH + " ASC", String.valueOf(limit));
+    }
+
+    /**
+     * 按上传状态查询，旧的在前（上传重试）
+     */
+    public List<Entry> withUploadState(int state, int limit) {
+        return query(COL_UPLOAD_STATE + " = ?", new String[]{String.valueOf(state)},
+                COL_CAPTURED_AT + " ASC", String.valueOf(limit));
+    }
+
+    /**
+     * 按邮件状态查询，旧的在前
+     */
+    public List<Entry> withEmailState(int state, int limit) {
+        return query(COL_EMAIL_STATE + " = ?", new String[]{String.valueOf(state)},
+                COL_CAPTURED_AT + " ASC", String.valueOf(limit));
+    }
+
+    public Entry find(String path) {
+        List<Entry> result = query(COL_PATH + " = ?", new String[]{path}, null, "1");
+        return result.isEmpty() ? null : result.get(0);
+    }
+
+    public long count() {
+        Cursor cursor = getReadableDatabase().rawQuery("SELECT COUNT(*) FROM " + TABLE, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * 照片占用的总字节数，硬链接共用的存储只算一次
+     */
+    public long totalBytes() {
+        Cursor cursor = getReadableDatabase().rawQuery("SELECT TOTAL(" + COL_SIZE + ") FROM (SELECT MAX(" + COL_SIZE + ") AS "
+                + COL_SIZE + " FROM " + TABLE + " GROUP BY COALESCE(" + COL_FILE_KEY + ", " + COL_PATH + "))", null);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private List<Entry> query(String selection, String[] args, String orderBy, String limit) {
+        List<Entry> result = new ArrayList<>();
+        Cursor cursor = null;
+        try {
+            cursor = getReadableDatabase().query(TABLE, COLUMNS, selection, args, null, null, orderBy, limit);
+            while (cursor.moveToNext()) {
+                result.add(new Entry(cursor));
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "查询照片目录失败", e);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 计算文件内容的 SHA-256（十六进制），失败时返回 null
+     */
+    public static String sha256Hex(File file) {
+        try {
+            return ContentHash.of(file);
+        } catch (IOException e) {
+            Log.w(TAG, "计算照片哈希失败: " + file.getName(), e);
+            return null;
+        }
+    }
+
+    // 首次建库：在后台扫描一次所有照片根目录，分批在事务中导入已有照片
+    private void importExisting() {
+        List<File> batch = new ArrayList<>(IMPORT_BATCH);
+        int count = 0;
+        for (File root : PhotoRetention.photoRoots(context)) {
+            count += importDirectory(root, batch);
+        }
+        count += flushImport(batch);
+        Log.d(TAG, "首次建立照片目录，导入 " + count + " 张照片");
+    }
+
+    private int importDirectory(File dir, List<File> batch) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return 0;
+        }
+        int count = 0;
+        for (File file : files) {
+            String name = file.getName();
+            if (file.isDirectory()) {
+                // 缩略图和预事件帧随原图处理，不单独登记
+                if (!name.startsWith(".") && !name.endsWith("_pre")) {
+                    count += importDirectory(file, batch);
+                }
+            } else {
+                String lower = name.toLowerCase(Locale.ROOT);
+                if (lower.endsWith(".jpg") || lower.endsWith(".jpeg")) {
+                    batch.add(file);
+                    if (batch.size() >= IMPORT_BATCH) {
+                        count += flushImport(batch);
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    // 一个事务导入一批；已登记的照片（导入期间新拍的，或中断前已导入的）保持不变
+    private int flushImport(List<File> batch) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        SQLiteDatabase db = getWritableDatabase();
+        int count = 0;
+        db.beginTransaction();
+        try {
+            for (File file : batch) {
+                // 导入时不计算哈希，避免首次打开时读取全部照片
+                if (db.insertWithOnConflict(TABLE, null, importValues(file), SQLiteDatabase.CONFLICT_IGNORE) != -1) {
+                    count++;
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        batch.clear();
+        return count;
+    }
+
+    private static ContentValues importValues(File photo) {
+        ContentValues values = new ContentValues();
+        values.put(COL_PATH, photo.getAbsolutePath());
+        values.put(COL_CAPTURED_AT, photo.lastModified());
+        values.put(COL_SIZE, photo.length());
+        values.put(COL_THUMBNAIL, ThumbnailFiles.thumbnailFor(photo).getAbsolutePath());
+        return values;
+    }
+}
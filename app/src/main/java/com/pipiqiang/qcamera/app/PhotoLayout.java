@@ -0,0 +1,120 @@
+package com.pipiqiang.qcamera.app;
+
+import java.io.File;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 照片目录布局
+ * 照片按拍摄时间存放在 根目录/yyyy/MM/dd/HH/ 下，文件名为 IMG_yyyyMMdd_HHmmss_NNN.jpg
+ */
+public final class PhotoLayout {
+
+    private static final Pattern FLAT_NAME = Pattern.compile("IMG_(\\d{8}_\\d{6})(?:_\\d+)?\\.jpe?g",
+            Pattern.CASE_INSENSITIVE);
+
+    // 每个根目录一个实例，保证同一进程内的序号不重复
+    private static final Map<String, PhotoLayout> INSTANCES = new HashMap<>();
+
+    private final File root;
+    private final SimpleDateFormat shardFormat;
+    private final SimpleDateFormat nameFormat;
+
+    // 同一秒内的序号
+    private String lastSecond;
+    private int nextSequence;
+
+    public static synchronized PhotoLayout forRoot(File root) {
+        String key = root.getAbsolutePath();
+        PhotoLayout layout = INSTANCES.get(key);
+        if (layout == null) {
+            layout = new PhotoLayout(root, TimeZone.getDefault());
+            INSTANCES.put(key, layout);
+        }
+        return layout;
+    }
+
+    PhotoLayout(File root, TimeZone timeZone) {
+        this.root = root;
+        this.shardFormat = new SimpleDateFormat("yyyy/MM/dd/HH", Locale.US);
+        this.nameFormat = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US);
+        shardFormat.setTimeZone(timeZone);
+        nameFormat.setTimeZone(timeZone);
+    }
+
+    public File getRoot() {
+        return root;
+    }
+
+    /**
+     * 拍摄时间对应的分片目录
+     */
+    public synchronized File shardDir(long timeMillis) {
+        return new File(root, shardFormat.format(new Date(timeMillis)));
+    }
+
+    /**
+     * 为新照片分配文件（不创建文件，只确保分片目录存在）
+     * 序号在进程内递增，并跳过磁盘上已存在的文件（例如重启后同一秒内再次拍照）
+     */
+    public synchronized File newPhotoFile(long timeMillis) {
+        File dir = shardDir(timeMillis);
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        String second = nameFormat.format(new Date(timeMillis));
+        if (!second.equals(lastSecond)) {
+            lastSecond = second;
+            nextSequence = 0;
+        }
+        while (true) {
+            File file = new File(dir, String.format(Locale.US, "IMG_%s_%03d.jpg", second, nextSequence++));
+            if (!file.exists()) {
+                return file;
+            }
+        }
+    }
+
+    /**
+     * 平铺照片迁移后的位置：按文件名中的时间分片（文件名无法解析时使用修改时间），文件名保持不变，
+     * 目标已存在时追加序号
+     */
+    public synchronized File migrationTarget(File photo) {
+        long time = parseNameTime(photo.getName());
+        if (time < 0) {
+            time = photo.lastModified();
+        }
+        File dir = shardDir(time);
+        File target = new File(dir, photo.getName());
+        String name = photo.getName();
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        String ext = dot > 0 ? name.substring(dot) : "";
+        for (int i = 1; target.exists(); i++) {
+            target = new File(dir, base + "_" + i + ext);
+        }
+        return target;
+    }
+
+    /**
+     * 解析 IMG_yyyyMMdd_HHmmss 文件名中的时间，无法解析时返回 -1
+     */
+    public synchronized long parseNameTime(String name) {
+        Matcher matcher = FLAT_NAME.matcher(name);
+        if (!matcher.matches()) {
+            return -1;
+        }
+        try {
+            return nameFormat.parse(matcher.group(1)).getTime();
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.pipiqiang.qcamera.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Environment;
+import android.util.Log;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 照片保留引擎
+ * 覆盖应用写入照片的所有目录（私有目录和 Pictures/CameraApp），
+ * 清理时按拍摄时间索引从照片目录（PhotoCatalog）中分批取出最旧的照片删除，
+ * 不再列目录和按修改时间排序。组合保留策略（RetentionPolicy）的抽稀游标保存在 SharedPreferences 中。
+ * 选中的照片交给删除队列（DeletionService）：目录记录当场移除，文件在后台删除，拍照周期不等待文件系统
+ */
+public final class PhotoRetention {
+
+    private static final String TAG = "PhotoRetention";
+    public static final String PUBLIC_DIR_NAME = "CameraApp";
+    private static final int BATCH_SIZE = 32;
+    private static final String PREF_NAME = "retention_policy";
+    private static final String KEY_CURSOR_TIME = "cursor_time";
+    private static final String KEY_CURSOR_PATH = "cursor_path";
+    private static final String KEY_CURSOR_TIER = "cursor_tier";
+    private static final String KEY_CURSOR_BUCKET = "cursor_bucket";
+
+    private static PhotoRetention instance;
+
+    private final Context context;
+    private final PhotoCatalog catalog;
+    private final SharedPreferences prefs;
+
+    private PhotoRetention(Context context) {
+        this.context = context.getApplicationContext();
+        this.catalog = PhotoCatalog.get(context);
+        this.prefs = context.getApplicationContext().getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
+    }
+
+    public static synchronized PhotoRetention get(Context context) {
+        if (instance == null) {
+            instance = new PhotoRetention(context);
+        }
+        return instance;
+    }
+
+    /**
+     * 应用写入照片的所有根目录
+     */
+    public static List<File> photoRoots(Context context) {
+        List<File> roots = new ArrayList<>();
+        File privateDir = context.getExternalFilesDir(null);
+        if (privateDir != null) {
+            roots.add(privateDir);
+        }
+        File picturesDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_PICTURES);
+        if (picturesDir != null) {
+            roots.add(new File(picturesDir, PUBLIC_DIR_NAME));
+        }
+        return roots;
+    }
+
+    /**
+     * 从最旧的照片开始删除，直到释放 bytesToFree 字节或没有照片可删
+     * @return 释放的字节数（按目录中记录的大小估计，文件在后台删除）
+     */
+    public synchronized long freeSpace(long bytesToFree) {
+        return deleteOldest(bytesToFree, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 执行一批保留策略：先按张数和字节上限删除最旧的照片，再推进一批抽稀。
+     * 每次最多删除和检查 batchSize 张，在拍照周期之间反复调用逐步完成
+     */
+    public synchronized void applyPolicy(RetentionPolicy policy, int batchSize) {
+        long excessCount = policy.excessCount(catalog.count());
+        if (excessCount > 0) {
+            Log.d(TAG, "超出张数上限 " + excessCount + " 张");
+            deleteOldestCount((int) Math.min(excessCount, batchSize));
+        }
+        long excessBytes = policy.excessBytes(catalog.totalBytes());
+        if (excessBytes > 0) {
+            Log.d(TAG, "超出容量上限 " + excessBytes + " 字节");
+            deleteOldest(excessBytes, batchSize);
+        }
+        if (policy.hasThinning()) {
+            thinBatch(policy, batchSize);
+        }
+    }
+
+    private void thinBatch(RetentionPolicy policy, int batchSize) {
+        RetentionPolicy.Cursor cursor = loadCursor();
+        List<PhotoCatalog.Entry> entries = catalog.after(cursor.timestamp, cursor.path, batchSize);
+        List<RetentionPolicy.Item> items = new ArrayList<>(entries.size());
+        for (PhotoCatalog.Entry entry : entries) {
+            items.add(new RetentionPolicy.Item(entry.path, entry.capturedAt));
+        }
+        List<RetentionPolicy.Item> toDelete = policy.selectForThinning(items, System.currentTimeMillis(), cursor);
+        List<String> paths = new ArrayList<>(toDelete.size());
+        for (RetentionPolicy.Item item : toDelete) {
+            paths.add(item.path);
+        }
+        deletionService().deleteNow(paths);
+        if (cursor.finished || entries.size() < batchSize) {
+            // 扫描到最新的照片，下一轮从最旧的照片重新开始
+            cursor.reset();
+        }
+        saveCursor(cursor);
+        if (!toDelete.isEmpty()) {
+            Log.d(TAG, "抽稀删除 " + toDelete.size() + " 张照片（本批检查 " + entries.size() + " 张）");
+        }
+    }
+
+    private long deleteOldest(long bytesToFree, int maxPhotos) {
+        long freed = 0;
+        int deleted = 0;
+        while (freed < bytesToFree && deleted < maxPhotos) {
+            List<PhotoCatalog.Entry> batch = catalog.oldest(Math.min(BATCH_SIZE, maxPhotos - deleted));
+            if (batch.isEmpty()) {
+                break;
+            }
+            List<String> paths = new ArrayList<>(batch.size());
+            // 硬链接共用的存储：同一文件标识的照片全部删除时才释放
+            Map<String, Integer> linksSelected = new HashMap<>();
+            for (PhotoCatalog.Entry entry : batch) {
+                if (freed >= bytesToFree) {
+                    break;
+                }
+                paths.add(entry.path);
+                freed += freedBy(entry, linksSelected);
+                deleted++;
+            }
+            // 目录记录当场移除，下一批查询不会再取到这些照片
+            deletionService().deleteNow(paths);
+        }
+        Log.d(TAG, "清理完成，删除 " + deleted + " 张照片，预计释放 " + freed + " 字节");
+        return freed;
+    }
+
+    private long freedBy(PhotoCatalog.Entry entry, Map<String, Integer> linksSelected) {
+        if (entry.fileKey == null) {
+            return entry.size;
+        }
+        Integer previous = linksSelected.get(entry.fileKey);
+        int selected = previous != null ? previous + 1 : 1;
+        linksSelected.put(entry.fileKey, selected);
+        return selected >= catalog.pathsWithFileKey(entry.fileKey).size() ? entry.size : 0;
+    }
+
+    private void deleteOldestCount(int count) {
+        List<PhotoCatalog.Entry> batch = catalog.oldest(count);
+        List<String> paths = new ArrayList<>(batch.size());
+        for (PhotoCatalog.Entry entry : batch) {
+            paths.add(entry.path);
+        }
+        deletionService().deleteNow(paths);
+        Log.d(TAG, "按张数上限删除 " + paths.size() + " 张最旧的照片");
+    }
+
+    private DeletionService deletionService() {
+        return DeletionService.get(context);
+    }
+
+    private RetentionPolicy.Cursor loadCursor() {
+        RetentionPolicy.Cursor cursor = new RetentionPolicy.Cursor();
+        cursor.timestamp = prefs.getLong(KEY_CURSOR_TIME, Long.MIN_VALUE);
+        cursor.path = prefs.getString(KEY_CURSOR_PATH, "");
+        cursor.tier = prefs.getInt(KEY_CURSOR_TIER, -1);
+        cursor.bucket = prefs.getLong(KEY_CURSOR_BUCKET, Long.MIN_VALUE);
+        return cursor;
+    }
+
+    private void saveCursor(RetentionPolicy.Cursor cursor) {
+        prefs.edit()
+                .putLong(KEY_CURSOR_TIME, cursor.timestamp)
+                .putString(KEY_CURSOR_PATH, cursor.path)
+                .putInt(KEY_CURSOR_TIER, cursor.tier)
+                .putLong(KEY_CURSOR_BUCKET, cursor.bucket)
+                .apply();
+    }
+}
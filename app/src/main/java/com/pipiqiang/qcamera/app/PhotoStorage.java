@@ -0,0 +1,30 @@
+package com.pipiqiang.qcamera.app;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 照片存储接口
+ * 照片目录中的路径可能是普通文件，也可能是段存储中的照片（"segment:" 前缀），
+ * 图库、查看、上传和删除都通过这个接口访问，不直接 new File(path)
+ */
+public interface PhotoStorage {
+
+    boolean exists(String path);
+
+    long length(String path);
+
+    InputStream open(String path) throws IOException;
+
+    /**
+     * 删除照片
+     * @return 释放的字节数，删除失败或不存在时为 -1
+     */
+    long delete(String path);
+
+    /**
+     * 需要真实文件的接口（云存储上传等）使用：普通文件直接返回，段存储中的照片导出到 scratchDir
+     */
+    File toLocalFile(String path, File scratchDir) throws IOException;
+}
@@ -0,0 +1,76 @@
+package com.pipiqiang.qcamera.app;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 按路径选择照片存储
+ * 段存储位于私有目录下的 segments 子目录，第一次用到时才打开（打开时扫描段文件重建索引）
+ */
+public final class PhotoStorages {
+
+    private static final String TAG = "PhotoStorages";
+    public static final String SEGMENT_DIR_NAME = "segments";
+    // 垃圾比例达到一半的段才压缩
+    private static final double COMPACT_GARBAGE_RATIO = 0.5;
+
+    private static final FilePhotoStorage FILES = new FilePhotoStorage();
+    private static SegmentPhotoStorage segments;
+
+    private PhotoStorages() {
+    }
+
+    public static PhotoStorage forPath(Context context, String path) {
+        if (SegmentPhotoStorage.isSegmentPath(path)) {
+            try {
+                return segments(context);
+            } catch (IOException e) {
+                Log.e(TAG, "打开段存储失败", e);
+            }
+        }
+        return FILES;
+    }
+
+    public static synchronized SegmentPhotoStorage segments(Context context) throws IOException {
+        if (segments == null) {
+            segments = new SegmentPhotoStorage(new SegmentStore(segmentDir(context)));
+        }
+        return segments;
+    }
+
+    private static File segmentDir(Context context) {
+        return new File(context.getExternalFilesDir(null), SEGMENT_DIR_NAME);
+    }
+
+    /**
+     * 照片对应的本地路径：普通文件为自身，段存储中的照片为段目录下的同名（不存在的）文件，
+     * 用来定位缩略图和预事件帧
+     */
+    public static File localFile(String path) {
+        return new File(SegmentPhotoStorage.stripScheme(path));
+    }
+
+    /**
+     * 压缩段存储（没有使用过段存储时不做任何事）
+     * @return 回收的字节数
+     */
+    public static long compactSegments(Context context) {
+        File[] files = segmentDir(context).listFiles();
+        if (files == null || files.length == 0) {
+            return 0;
+        }
+        try {
+            long reclaimed = segments(context).getStore().compact(COMPACT_GARBAGE_RATIO);
+            if (reclaimed > 0) {
+                Log.d(TAG, "段存储压缩回收 " + reclaimed + " 字节");
+            }
+            return reclaimed;
+        } catch (IOException e) {
+            Log.e(TAG, "压缩段存储失败", e);
+            return 0;
+        }
+    }
+}
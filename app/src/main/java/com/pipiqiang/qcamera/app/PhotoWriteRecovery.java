@@ -0,0 +1,116 @@
+package com.pipiqiang.qcamera.app;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileDescriptor;
+
+/**
+ * 照片写入的进程级入口和启动恢复
+ * 所有保存管线共用一个 AtomicPhotoWriter（批量 fsync 需要跨拍照周期累计，到时由后台线程刷新），
+ * 进程启动后在后台执行一次恢复：删除中断写入留下的临时文件，并让照片目录与磁盘一致
+ */
+public final class PhotoWriteRecovery {
+
+    private static final String TAG = "PhotoWriteRecovery";
+    private static final String JOURNAL_DIR = "photo_writes";
+
+    private static AtomicPhotoWriter writer;
+    private static boolean recoveryStarted = false;
+
+    private PhotoWriteRecovery() {
+    }
+
+    public static synchronized AtomicPhotoWriter writer(Context context) {
+        if (writer == null) {
+            HandlerThread thread = new HandlerThread("PhotoWriteFlush", Process.THREAD_PRIORITY_BACKGROUND);
+            thread.start();
+            final Handler flushHandler = new Handler(thread.getLooper());
+            writer = new AtomicPhotoWriter(new File(context.getApplicationContext().getFilesDir(), JOURNAL_DIR)) {
+                private final Runnable flushTask = new Runnable() {
+                    @Override
+                    public void run() {
+                        flush();
+                    }
+                };
+
+                @Override
+                protected void scheduleFlush(long delayMs) {
+                    flushHandler.postDelayed(flushTask, Math.max(0, delayMs));
+                }
+
+                @Override
+                protected void cancelScheduledFlush() {
+                    flushHandler.removeCallbacks(flushTask);
+                }
+
+                @Override
+                protected void syncDirectory(File dir) {
+                    // Android 7.x 没有 java.nio.file，直接用系统调用打开目录并 fsync
+                    if (dir == null) {
+                        return;
+                    }
+                    try {
+                        FileDescriptor fd = Os.open(dir.getAbsolutePath(), OsConstants.O_RDONLY, 0);
+                        try {
+                            Os.fsync(fd);
+                        } finally {
+                            Os.close(fd);
+                        }
+                    } catch (ErrnoException e) {
+                        Log.w(TAG, "同步目录失败: " + dir.getAbsolutePath(), e);
+                    }
+                }
+            };
+        }
+        return writer;
+    }
+
+    /**
+     * 按设置配置 fsync 策略
+     */
+    public static void configure(Context context, SettingsManager settingsManager) {
+        writer(context).setSyncPolicy(settingsManager.getFsyncPolicy(),
+                settingsManager.getFsyncBatchFiles(), settingsManager.getFsyncBatchSeconds() * 1000L);
+    }
+
+    /**
+     * 每个进程只执行一次，在后台线程进行
+     */
+    public static synchronized void recoverAsync(Context context) {
+        if (recoveryStarted) {
+            return;
+        }
+        recoveryStarted = true;
+        final Context appContext = context.getApplicationContext();
+        final AtomicPhotoWriter photoWriter = writer(appContext);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                AtomicPhotoWriter.Recovery recovery = photoWriter.recover();
+                if (recovery.committed.isEmpty() && recovery.abandoned.isEmpty()) {
+                    return;
+                }
+                PhotoCatalog catalog = PhotoCatalog.get(appContext);
+                for (File photo : recovery.committed) {
+                    // 重命名后、登记前被中断的照片补登记
+                    if (catalog.find(photo.getAbsolutePath()) == null) {
+                        catalog.recordPhoto(photo, null);
+                    }
+                }
+                for (File photo : recovery.abandoned) {
+                    catalog.remove(photo.getAbsolutePath());
+                }
+                Log.w(TAG, "写入恢复完成: 补登记 " + recovery.committed.size()
+                        + " 张, 清理中断写入 " + recovery.abandoned.size() + " 张");
+            }
+        }, "PhotoWriteRecovery").start();
+    }
+}
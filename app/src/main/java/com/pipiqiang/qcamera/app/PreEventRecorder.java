@@ -0,0 +1,142 @@
+package com.pipiqiang.qcamera.app;
+
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.YuvImage;
+import android.media.Image;
+import android.util.Log;
+
+import com.pipiqiang.qcamera.imaging.ImagingPools;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+/**
+ * 预事件录制器
+ * 持续把分析流的低分辨率帧写入 {@link FrameRingBuffer}，触发拍照时把触发前若干秒的帧
+ * 编码为JPEG写到原图旁边的 <文件名>_pre 目录中。编码在后处理线程上进行，不占用相机线程。
+ * 缓冲区只包含本次相机会话打开后的帧：定时服务模式每次拍照才打开相机，
+ * 能保存的只是打开相机到触发之间的画面（通常不足设定的时长），预览模式下才有完整的触发前画面
+ */
+public class PreEventRecorder {
+
+    private static final String TAG = "PreEventRecorder";
+    private static final int FRAMES_PER_SECOND = 5;
+    private static final int MAX_CAPACITY = 50;
+    // 缓冲区最多容纳的触发前时长，设置值超出时由 SettingsManager 按该上限处理
+    public static final int MAX_SECONDS = MAX_CAPACITY / FRAMES_PER_SECOND;
+    private static final int JPEG_QUALITY = 80;
+
+    // 进程内复用同一个缓冲区，避免每次拍照周期重新分配堆外内存
+    private static PreEventRecorder shared;
+
+    private final FrameRingBuffer buffer;
+    private final byte[] scratch; // 刷盘时编码用，预先分配
+    private final int width;
+    private final int height;
+    private final int seconds;
+    private final long windowNs;
+
+    public static synchronized PreEventRecorder obtain(int width, int height, int seconds) {
+        if (shared == null || shared.width != width || shared.height != height || shared.seconds != seconds) {
+            shared = new PreEventRecorder(width, height, seconds);
+            Log.d(TAG, "分配预事件缓冲区: " + width + "x" + height + ", 容量: " + shared.buffer.getCapacity()
+                    + ", 单帧: " + shared.buffer.getSlotBytes() + " 字节");
+        }
+        return shared;
+    }
+
+    private PreEventRecorder(int width, int height, int seconds) {
+        this.width = width;
+        this.height = height;
+        this.seconds = Math.max(1, seconds);
+        this.windowNs = this.seconds * 1_000_000_000L;
+        int capacity = Math.min(this.seconds * FRAMES_PER_SECOND, MAX_CAPACITY);
+        int slotBytes = YuvUtils.nv21Size(width, height);
+        this.buffer = new FrameRingBuffer(capacity, slotBytes, 1_000_000_000L / FRAMES_PER_SECOND);
+        this.scratch = new byte[slotBytes];
+    }
+
+    /**
+     * 丢弃之前会话残留的帧
+     */
+    public void reset() {
+        buffer.clear();
+    }
+
+    /**
+     * 分析流新帧到达（在相机后台线程调用）
+     */
+    public void onFrame(Image image) {
+        long ts = image.getTimestamp();
+        if (!buffer.shouldAccept(ts)) {
+            return;
+        }
+        ByteBuffer slot = buffer.beginFrame();
+        if (slot == null) {
+            return; // 正在写出上一次触发的帧
+        }
+        if (YuvUtils.packNv21(image, slot)) {
+            buffer.commitFrame(ts, image.getWidth(), image.getHeight());
+        } else {
+            buffer.abortFrame();
+        }
+    }
+
+    /**
+     * 把触发时刻之前的帧写到照片旁边（在相机线程调用，立即冻结缓冲区，编码和写盘交给后处理线程）
+     * @param photoFile 对应的全分辨率照片
+     * @param triggerTimestampNs 触发帧的传感器时间戳（与分析流同一时基）
+     */
+    public void flushTo(final File photoFile, final long triggerTimestampNs) {
+        buffer.freeze();
+        ImagingPools.postProcessExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                writeFrames(photoFile, triggerTimestampNs);
+            }
+        });
+    }
+
+    private int writeFrames(File photoFile, final long triggerTimestampNs) {
+        String name = photoFile.getName();
+        int dot = name.lastIndexOf('.');
+        final String baseName = dot > 0 ? name.substring(0, dot) : name;
+        final File dir = new File(photoFile.getParentFile(), baseName + "_pre");
+        final int[] index = {0};
+        final long[] earliestOffsetMs = {0};
+        try {
+            int count = buffer.drainTo(triggerTimestampNs - windowNs, triggerTimestampNs, new FrameRingBuffer.FrameSink() {
+                @Override
+                public void onFrame(ByteBuffer data, int length, long timestampNs, int frameWidth, int frameHeight) throws IOException {
+                    if (!dir.exists() && !dir.mkdirs()) {
+                        throw new IOException("无法创建预事件目录: " + dir.getAbsolutePath());
+                    }
+                    data.get(scratch, 0, length);
+                    YuvImage yuvImage = new YuvImage(scratch, ImageFormat.NV21, frameWidth, frameHeight, null);
+                    long offsetMs = (timestampNs - triggerTimestampNs) / 1_000_000L;
+                    index[0]++;
+                    if (index[0] == 1) {
+                        earliestOffsetMs[0] = offsetMs;
+                    }
+                    File out = new File(dir, String.format(Locale.US, "%s_pre_%02d_%dms.jpg", baseName, index[0], offsetMs));
+                    FileOutputStream output = new FileOutputStream(out);
+                    try {
+                        yuvImage.compressToJpeg(new Rect(0, 0, frameWidth, frameHeight), JPEG_QUALITY, output);
+                    } finally {
+                        output.close();
+                    }
+                }
+            });
+            Log.d(TAG, "预事件帧已写出: " + count + " 帧（最早 " + earliestOffsetMs[0] + "ms，设定 -" + seconds
+                    + "s）, 目录: " + dir.getAbsolutePath() + ", 累计丢弃: " + buffer.getDroppedFrames());
+            return count;
+        } catch (IOException e) {
+            Log.e(TAG, "写出预事件帧失败", e);
+            return index[0];
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.pipiqiang.qcamera.app;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 组合保留策略
+ * 按照片年龄分级抽稀，再叠加总字节数和总张数上限；抽稀按游标分批进行
+ */
+public class RetentionPolicy {
+
+    public static final long MINUTE_MS = 60 * 1000L;
+    public static final long HOUR_MS = 60 * MINUTE_MS;
+    public static final long DAY_MS = 24 * HOUR_MS;
+
+    /**
+     * 年龄小于 maxAgeMs 的照片每 spacingMs 保留一张（spacingMs 为 0 表示全部保留）
+     */
+    public static final class Tier {
+        final long maxAgeMs;
+        final long spacingMs;
+
+        Tier(long maxAgeMs, long spacingMs) {
+            this.maxAgeMs = maxAgeMs;
+            this.spacingMs = spacingMs;
+        }
+    }
+
+    /**
+     * 参与抽稀的照片
+     */
+    public static final class Item {
+        public final String path;
+        public final long timestamp;
+
+        public Item(String path, long timestamp) {
+            this.path = path;
+            this.timestamp = timestamp;
+        }
+    }
+
+    /**
+     * 抽稀扫描位置，跨批次（以及跨进程，由调用方持久化）保存
+     */
+    public static final class Cursor {
+        public long timestamp = Long.MIN_VALUE;
+        public String path = "";
+        public int tier = -1;
+        public long bucket = Long.MIN_VALUE;
+        // 扫描到全部保留的年龄段，本轮结束，下一批从头开始
+        public boolean finished = false;
+
+        public void reset() {
+            timestamp = Long.MIN_VALUE;
+            path = "";
+            tier = -1;
+            bucket = Long.MIN_VALUE;
+            finished = false;
+        }
+    }
+
+    private final List<Tier> tiers = new ArrayList<>();
+    private final long maxBytes;
+    private final long maxCount;
+
+    /**
+     * @param maxBytes 总字节数上限，0 表示不限
+     * @param maxCount 总张数上限，0 表示不限
+     */
+    public RetentionPolicy(long maxBytes, long maxCount) {
+        this.maxBytes = maxBytes;
+        this.maxCount = maxCount;
+    }
+
+    /**
+     * 默认的延时摄影分级：24小时内全部保留，30天内每10分钟一张，更早的每小时一张
+     */
+    public static RetentionPolicy timelapse(long maxBytes, long maxCount) {
+        return new RetentionPolicy(maxBytes, maxCount)
+                .addTier(DAY_MS, 0)
+                .addTier(30 * DAY_MS, 10 * MINUTE_MS)
+                .addTier(Long.MAX_VALUE, HOUR_MS);
+    }
+
+    /**
+     * 按年龄从小到大添加分级
+     */
+    public RetentionPolicy addTier(long maxAgeMs, long spacingMs) {
+        if (!tiers.isEmpty() && maxAgeMs <= tiers.get(tiers.size() - 1).maxAgeMs) {
+            throw new IllegalArgumentException("分级必须按年龄递增添加");
+        }
+        tiers.add(new Tier(maxAgeMs, spacingMs));
+        return this;
+    }
+
+    public boolean hasThinning() {
+        for (Tier tier : tiers) {
+            if (tier.spacingMs > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int tierFor(long ageMs) {
+        for (int i = 0; i < tiers.size(); i++) {
+            if (ageMs < tiers.get(i).maxAgeMs) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 处理一批按拍摄时间升序排列、位于游标之后的照片，返回需要删除的照片并推进游标
+     */
+    public List<Item> selectForThinning(List<Item> batch, long nowMillis, Cursor cursor) {
+        List<Item> toDelete = new ArrayList<>();
+        for (Item item : batch) {
+            int tierIndex = tierFor(nowMillis - item.timestamp);
+            if (tierIndex < 0) {
+                // 超出所有分级的照片不受抽稀影响
+                advance(cursor, item, -1, Long.MIN_VALUE);
+                continue;
+            }
+            Tier tier = tiers.get(tierIndex);
+            if (tier.spacingMs <= 0) {
+                if (tierIndex == 0) {
+                    // 后面的照片只会更新，本轮扫描结束
+                    cursor.finished = true;
+                    break;
+                }
+                advance(cursor, item, tierIndex, Long.MIN_VALUE);
+                continue;
+            }
+            long bucket = Math.floorDiv(item.timestamp, tier.spacingMs);
+            if (tierIndex == cursor.tier && bucket == cursor.bucket) {
+                toDelete.add(item);
+                cursor.timestamp = item.timestamp;
+                cursor.path = item.path;
+            } else {
+                advance(cursor, item, tierIndex, bucket);
+            }
+        }
+        return toDelete;
+    }
+
+    private static void advance(Cursor cursor, Item item, int tier, long bucket) {
+        cursor.timestamp = item.timestamp;
+        cursor.path = item.path;
+        cursor.tier = tier;
+        cursor.bucket = bucket;
+    }
+
+    /**
+     * 超出字节上限的部分，未超出时为 0
+     */
+    public long excessBytes(long totalBytes) {
+        return maxBytes > 0 && totalBytes > maxBytes ? totalBytes - maxBytes : 0;
+    }
+
+    /**
+     * 超出张数上限的部分，未超出时为 0
+     */
+    public long excessCount(long count) {
+        return maxCount > 0 && count > maxCount ? count - maxCount : 0;
+    }
+}
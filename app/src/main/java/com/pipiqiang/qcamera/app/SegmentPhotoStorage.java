@@ -0,0 +1,135 @@
+package com.pipiqiang.qcamera.app;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 段存储中的照片
+ * 路径形如 "segment:" + 段目录/照片名，去掉前缀后的路径不存在于磁盘上，
+ * 只用来定位同目录下的缩略图和预事件帧
+ */
+public class SegmentPhotoStorage implements PhotoStorage {
+
+    public static final String SCHEME = "segment:";
+
+    private final SegmentStore store;
+
+    public SegmentPhotoStorage(SegmentStore store) {
+        this.store = store;
+    }
+
+    public SegmentStore getStore() {
+        return store;
+    }
+
+    public static boolean isSegmentPath(String path) {
+        return path != null && path.startsWith(SCHEME);
+    }
+
+    /**
+     * 去掉前缀后的路径（普通文件路径原样返回）
+     */
+    public static String stripScheme(String path) {
+        return isSegmentPath(path) ? path.substring(SCHEME.length()) : path;
+    }
+
+    private static String nameOf(String path) {
+        return new File(stripScheme(path)).getName();
+    }
+
+    /**
+     * 追加一张照片，名称已存在时追加序号
+     * @return 照片在照片目录中的路径
+     */
+    public String append(String name, long timestamp, byte[] data) throws IOException {
+        String unique = name;
+        int suffix = 1;
+        while (store.contains(unique)) {
+            int dot = name.lastIndexOf('.');
+            unique = dot > 0
+                    ? name.substring(0, dot) + "_" + suffix + name.substring(dot)
+                    : name + "_" + suffix;
+            suffix++;
+        }
+        store.append(unique, timestamp, data);
+        return SCHEME + new File(store.getDirectory(), unique).getAbsolutePath();
+    }
+
+    @Override
+    public boolean exists(String path) {
+        return store.contains(nameOf(path));
+    }
+
+    @Override
+    public long length(String path) {
+        SegmentStore.Location location = store.locate(nameOf(path));
+        return location != null ? location.length : 0;
+    }
+
+    @Override
+    public InputStream open(String path) throws IOException {
+        InputStream in = store.openStream(nameOf(path));
+        if (in == null) {
+            throw new IOException("段存储中没有照片: " + path);
+        }
+        return in;
+    }
+
+    @Override
+    public long delete(String path) {
+        try {
+            return store.delete(nameOf(path));
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public File toLocalFile(String path, File scratchDir) throws IOException {
+        String name = nameOf(path);
+        ByteBuffer data = store.read(name);
+        if (data == null) {
+            throw new IOException("段存储中没有照片: " + path);
+        }
+        File file = new File(scratchDir, name);
+        writeFile(file, data, store.locate(name).timestamp);
+        return file;
+    }
+
+    /**
+     * 把所有照片导出为普通 JPEG 文件（文件时间为拍摄时间）
+     * @return 导出的照片数
+     */
+    public static int exportAll(SegmentStore store, File outDir) throws IOException {
+        if (!outDir.exists() && !outDir.mkdirs()) {
+            throw new IOException("无法创建导出目录: " + outDir.getAbsolutePath());
+        }
+        int count = 0;
+        for (String name : store.names()) {
+            ByteBuffer data = store.read(name);
+            SegmentStore.Location location = store.locate(name);
+            if (data != null && location != null) {
+                writeFile(new File(outDir, name), data, location.timestamp);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void writeFile(File file, ByteBuffer data, long timestamp) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            FileChannel channel = out.getChannel();
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        } finally {
+            out.close();
+        }
+        file.setLastModified(timestamp);
+    }
+}
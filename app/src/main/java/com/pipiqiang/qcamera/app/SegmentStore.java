@@ -0,0 +1,503 @@
+package com.pipiqiang.qcamera.app;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeMap;
+
+/**
+ * 追加写的照片段存储
+ * 照片追加到大的段文件中，删除只追加删除记录，打开时扫描所有段重建偏移索引
+ */
+public class SegmentStore {
+
+    public static final long DEFAULT_SEGMENT_BYTES = 256L * 1024 * 1024;
+
+    // 记录格式：魔数(4) 类型(1) 名称长度(2) 名称 时间戳(8) 数据长度(4) 数据；末尾被截断的记录在打开时丢弃。
+    // 删除记录的数据是被删照片所在的段号，目标段还在时压缩会保留它，避免重建索引时照片复活
+    private static final int MAGIC = 0x51534547; // "QSEG"
+    private static final byte TYPE_PUT = 1;
+    private static final byte TYPE_DELETE = 2;
+    private static final int FIXED_HEADER = 4 + 1 + 2 + 8 + 4;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String SEGMENT_PREFIX = "seg_";
+    private static final String SEGMENT_SUFFIX = ".dat";
+
+    /**
+     * 照片在段中的位置
+     */
+    public static final class Location {
+        public final int segment;
+        public final long recordOffset;
+        public final long dataOffset;
+        public final int length;
+        public final long timestamp;
+
+        Location(int segment, long recordOffset, long dataOffset, int length, long timestamp) {
+            this.segment = segment;
+            this.recordOffset = recordOffset;
+            this.dataOffset = dataOffset;
+            this.length = length;
+            this.timestamp = timestamp;
+        }
+    }
+
+    // 每个段的文件和占用统计
+    private static final class Segment {
+        final int id;
+        final File file;
+        long size;
+        long liveBytes;
+
+        Segment(int id, File file) {
+            this.id = id;
+            this.file = file;
+        }
+    }
+
+    private final File dir;
+    private final long maxSegmentBytes;
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    // 名称 -> 位置，按写入顺序
+    private final LinkedHashMap<String, Location> index = new LinkedHashMap<>();
+    private RandomAccessFile activeFile;
+    private Segment active;
+    // 同一时间只允许一个压缩，防止两个压缩同时搬运/删除同一个旧段
+    private final Object compactLock = new Object();
+
+    public SegmentStore(File dir) throws IOException {
+        this(dir, DEFAULT_SEGMENT_BYTES);
+    }
+
+    public SegmentStore(File dir, long maxSegmentBytes) throws IOException {
+        this.dir = dir;
+        // 内存映射按 int 偏移访问，单个段不能超过 2GB
+        this.maxSegmentBytes = Math.min(maxSegmentBytes, Integer.MAX_VALUE);
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("无法创建段存储目录: " + dir.getAbsolutePath());
+        }
+        load();
+    }
+
+    public File getDirectory() {
+        return dir;
+    }
+
+    /**
+     * 追加一张照片，同名照片会被替换
+     */
+    public synchronized Location append(String name, long timestamp, byte[] data) throws IOException {
+        return append(name, timestamp, ByteBuffer.wrap(data));
+    }
+
+    public synchronized Location append(String name, long timestamp, ByteBuffer data) throws IOException {
+        byte[] nameBytes = name.getBytes(UTF_8);
+        int length = data.remaining();
+        ensureActive(FIXED_HEADER + nameBytes.length + length);
+        long recordOffset = active.size;
+        ByteBuffer header = header(TYPE_PUT, nameBytes, timestamp, length);
+        FileChannel channel = activeFile.getChannel();
+        writeFully(channel, header, recordOffset);
+        writeFully(channel, data, recordOffset + header.capacity());
+        long recordSize = header.capacity() + length;
+        active.size += recordSize;
+
+        Location location = new Location(active.id, recordOffset, recordOffset + header.capacity(), length, timestamp);
+        Location previous = index.put(name, location);
+        if (previous != null) {
+            segments.get(previous.segment).liveBytes -= recordSize(name, previous.length);
+        }
+        active.liveBytes += recordSize;
+        return location;
+    }
+
+    /**
+     * 删除照片（追加删除记录）
+     * @return 被删除照片的数据长度，不存在时为 -1
+     */
+    public synchronized long delete(String name) throws IOException {
+        Location location = index.get(name);
+        if (location == null) {
+            return -1;
+        }
+        byte[] nameBytes = name.getBytes(UTF_8);
+        ensureActive(FIXED_HEADER + nameBytes.length + 4);
+        ByteBuffer record = ByteBuffer.allocate(FIXED_HEADER + nameBytes.length + 4);
+        record.put(header(TYPE_DELETE, nameBytes, System.currentTimeMillis(), 4));
+        record.putInt(location.segment);
+        record.flip();
+        writeFully(activeFile.getChannel(), record, active.size);
+        // 删除记录本身不算有效数据
+        active.size += record.capacity();
+
+        index.remove(name);
+        segments.get(location.segment).liveBytes -= recordSize(name, location.length);
+        return location.length;
+    }
+
+    public synchronized boolean contains(String name) {
+        return index.containsKey(name);
+    }
+
+    public synchronized Location locate(String name) {
+        return index.get(name);
+    }
+
+    /**
+     * 按写入顺序列出所有照片名称
+     */
+    public synchronized List<String> names() {
+        return new ArrayList<>(index.keySet());
+    }
+
+    /**
+     * 读取照片数据（只映射这张照片的数据区域，只读、不复制；映射随返回的缓冲区一起被回收）
+     */
+    public synchronized ByteBuffer read(String name) throws IOException {
+        Location location = index.get(name);
+        if (location == null) {
+            return null;
+        }
+        Segment segment = segments.get(location.segment);
+        RandomAccessFile raf = new RandomAccessFile(segment.file, "r");
+        try {
+            return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, location.dataOffset, location.length);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * 以输入流方式读取照片
+     */
+    public InputStream openStream(String name) throws IOException {
+        final ByteBuffer buffer = read(name);
+        if (buffer == null) {
+            return null;
+        }
+        return new InputStream() {
+            @Override
+            public int read() {
+                return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (!buffer.hasRemaining()) {
+                    return -1;
+                }
+                int count = Math.min(len, buffer.remaining());
+                buffer.get(b, off, count);
+                return count;
+            }
+
+            @Override
+            public int available() {
+                return buffer.remaining();
+            }
+        };
+    }
+
+    /**
+     * 把当前段同步到存储
+     */
+    public synchronized void sync() throws IOException {
+        if (activeFile != null) {
+            activeFile.getChannel().force(false);
+        }
+    }
+
+    /**
+     * 压缩：垃圾比例不低于 minGarbageRatio 的旧段，有效照片搬到当前段后删除旧段
+     * 读取旧段时不持有存储锁，只在检查和追加每张照片时短暂加锁
+     * @return 回收的字节数
+     */
+    public long compact(double minGarbageRatio) throws IOException {
+        synchronized (compactLock) {
+            List<Segment> candidates = new ArrayList<>();
+            synchronized (this) {
+                for (Segment segment : segments.values()) {
+                    if (segment != active && segment.size > 0
+                            && 1.0 - (double) segment.liveBytes / segment.size >= minGarbageRatio) {
+                        candidates.add(segment);
+                    }
+                }
+            }
+            long reclaimed = 0;
+            for (Segment segment : candidates) {
+                reclaimed += compactSegment(segment);
+            }
+            return reclaimed;
+        }
+    }
+
+    // 旧段已封口，segment.size 不再变化；只有压缩会删除旧段，而压缩由 compactLock 串行化
+    private long compactSegment(Segment segment) throws IOException {
+        long size;
+        synchronized (this) {
+            size = segment.size;
+        }
+        RandomAccessFile raf = new RandomAccessFile(segment.file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long offset = 0;
+            while (offset < size) {
+                Record record = readRecord(channel, offset, size);
+                if (record == null) {
+                    break;
+                }
+                if (record.type == TYPE_PUT) {
+                    if (isCurrent(record.name, segment.id, offset)) {
+                        ByteBuffer data = ByteBuffer.allocate(record.length);
+                        readFully(channel, data, record.dataOffset);
+                        data.flip();
+                        synchronized (this) {
+                            // 读取期间照片可能已被删除或替换
+                            if (isCurrent(record.name, segment.id, offset)) {
+                                append(record.name, record.timestamp, data);
+                            }
+                        }
+                    }
+                } else if (record.type == TYPE_DELETE) {
+                    synchronized (this) {
+                        int target = record.deletedSegment;
+                        if (segments.containsKey(target) && target != segment.id) {
+                            // 目标段还在，删除记录必须保留
+                            rewriteDelete(record.name, target);
+                        }
+                    }
+                }
+                offset = record.dataOffset + record.length;
+            }
+        } finally {
+            raf.close();
+        }
+        synchronized (this) {
+            sync();
+            segments.remove(segment.id);
+            if (!segment.file.delete()) {
+                throw new IOException("删除旧段失败: " + segment.file.getName());
+            }
+        }
+        return size;
+    }
+
+    private synchronized boolean isCurrent(String name, int segmentId, long recordOffset) {
+        Location location = index.get(name);
+        return location != null && location.segment == segmentId && location.recordOffset == recordOffset;
+    }
+
+    private void rewriteDelete(String name, int target) throws IOException {
+        byte[] nameBytes = name.getBytes(UTF_8);
+        ensureActive(FIXED_HEADER + nameBytes.length + 4);
+        ByteBuffer record = ByteBuffer.allocate(FIXED_HEADER + nameBytes.length + 4);
+        record.put(header(TYPE_DELETE, nameBytes, System.currentTimeMillis(), 4));
+        record.putInt(target);
+        record.flip();
+        writeFully(activeFile.getChannel(), record, active.size);
+        active.size += record.capacity();
+    }
+
+    /**
+     * 有效照片数据占用的字节数（含记录头）
+     */
+    public synchronized long liveBytes() {
+        long total = 0;
+        for (Segment segment : segments.values()) {
+            total += segment.liveBytes;
+        }
+        return total;
+    }
+
+    /**
+     * 所有段文件的总大小
+     */
+    public synchronized long totalBytes() {
+        long total = 0;
+        for (Segment segment : segments.values()) {
+            total += segment.size;
+        }
+        return total;
+    }
+
+    public synchronized int segmentCount() {
+        return segments.size();
+    }
+
+    public synchronized int size() {
+        return index.size();
+    }
+
+    public synchronized void close() throws IOException {
+        if (activeFile != null) {
+            activeFile.getChannel().force(false);
+            activeFile.close();
+            activeFile = null;
+        }
+    }
+
+    private void ensureActive(int recordSize) throws IOException {
+        if (active != null && (active.size == 0 || active.size + recordSize <= maxSegmentBytes)) {
+            return;
+        }
+        if (activeFile != null) {
+            activeFile.getChannel().force(false);
+            activeFile.close();
+        }
+        int id = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+        Segment segment = new Segment(id, segmentFile(id));
+        segments.put(id, segment);
+        openActive(segment);
+    }
+
+    private void openActive(Segment segment) throws IOException {
+        active = segment;
+        activeFile = new RandomAccessFile(segment.file, "rw");
+        // 丢弃末尾不完整的记录
+        activeFile.setLength(segment.size);
+    }
+
+    private File segmentFile(int id) {
+        return new File(dir, String.format(Locale.ROOT, "%s%06d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+    }
+
+    // 按段号顺序重放所有记录重建索引
+    private void load() throws IOException {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    try {
+                        int id = Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                        segments.put(id, new Segment(id, file));
+                    } catch (NumberFormatException ignored) {
+                    }
+                }
+            }
+        }
+        for (Segment segment : segments.values()) {
+            RandomAccessFile raf = new RandomAccessFile(segment.file, "r");
+            try {
+                FileChannel channel = raf.getChannel();
+                long fileSize = channel.size();
+                long offset = 0;
+                while (offset < fileSize) {
+                    Record record = readRecord(channel, offset, fileSize);
+                    if (record == null) {
+                        break;
+                    }
+                    long recordSize = record.dataOffset + record.length - offset;
+                    if (record.type == TYPE_PUT) {
+                        Location previous = index.put(record.name,
+                                new Location(segment.id, offset, record.dataOffset, record.length, record.timestamp));
+                        if (previous != null) {
+                            segments.get(previous.segment).liveBytes -= recordSize(record.name, previous.length);
+                        }
+                        segment.liveBytes += recordSize;
+                    } else if (record.type == TYPE_DELETE) {
+                        Location previous = index.get(record.name);
+                        if (previous != null && previous.segment == record.deletedSegment) {
+                            index.remove(record.name);
+                            segments.get(previous.segment).liveBytes -= recordSize(record.name, previous.length);
+                        }
+                    }
+                    offset += recordSize;
+                }
+                segment.size = offset;
+            } finally {
+                raf.close();
+            }
+        }
+        if (!segments.isEmpty()) {
+            openActive(segments.lastEntry().getValue());
+        }
+    }
+
+    private static final class Record {
+        byte type;
+        String name;
+        long timestamp;
+        long dataOffset;
+        int length;
+        int deletedSegment;
+    }
+
+    // 读取一条记录的头部，记录不完整或损坏时返回 null
+    private static Record readRecord(FileChannel channel, long offset, long limit) throws IOException {
+        if (offset + FIXED_HEADER > limit) {
+            return null;
+        }
+        ByteBuffer prefix = ByteBuffer.allocate(7);
+        readFully(channel, prefix, offset);
+        prefix.flip();
+        if (prefix.getInt() != MAGIC) {
+            return null;
+        }
+        Record record = new Record();
+        record.type = prefix.get();
+        int nameLength = prefix.getShort() & 0xFFFF;
+        if (offset + FIXED_HEADER + nameLength > limit) {
+            return null;
+        }
+        ByteBuffer rest = ByteBuffer.allocate(nameLength + 12);
+        readFully(channel, rest, offset + 7);
+        rest.flip();
+        byte[] nameBytes = new byte[nameLength];
+        rest.get(nameBytes);
+        record.name = new String(nameBytes, UTF_8);
+        record.timestamp = rest.getLong();
+        record.length = rest.getInt();
+        record.dataOffset = offset + FIXED_HEADER + nameLength;
+        if (record.length < 0 || record.dataOffset + record.length > limit) {
+            return null;
+        }
+        if (record.type == TYPE_DELETE) {
+            ByteBuffer target = ByteBuffer.allocate(4);
+            readFully(channel, target, record.dataOffset);
+            target.flip();
+            record.deletedSegment = target.getInt();
+        }
+        return record;
+    }
+
+    private static ByteBuffer header(byte type, byte[] nameBytes, long timestamp, int length) {
+        ByteBuffer header = ByteBuffer.allocate(FIXED_HEADER + nameBytes.length);
+        header.putInt(MAGIC);
+        header.put(type);
+        header.putShort((short) nameBytes.length);
+        header.put(nameBytes);
+        header.putLong(timestamp);
+        header.putInt(length);
+        header.flip();
+        return header;
+    }
+
+    private static long recordSize(String name, int length) {
+        return FIXED_HEADER + name.getBytes(UTF_8).length + length;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("段文件意外结束");
+            }
+            position += read;
+        }
+    }
+}
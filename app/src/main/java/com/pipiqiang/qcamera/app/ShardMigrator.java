@@ -0,0 +1,188 @@
+package com.pipiqiang.qcamera.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.media.MediaScannerConnection;
+import android.util.Log;
+
+import java.io.File;
+import java.util.Locale;
+
+/**
+ * 平铺目录迁移
+ * 在后台线程把根目录下平铺的旧照片逐张移动到分片目录（连同缩略图和预事件帧目录），
+ * 每移动一张就更新照片目录中的路径，迁移过程中图库和上传始终能找到照片。
+ * 移动前记录待完成的移动，进程被杀后下次启动先补完这一步再继续，全部完成后不再扫描
+ */
+public final class ShardMigrator {
+
+    private static final String TAG = "ShardMigrator";
+    private static final String PREF_NAME = "shard_migration";
+    private static final String KEY_DONE = "done";
+    private static final String KEY_PENDING_FROM = "pending_from";
+    private static final String KEY_PENDING_TO = "pending_to";
+    private static final int BATCH_SIZE = 50;
+    private static final long BATCH_PAUSE_MS = 200; // 批次之间让出IO，避免影响拍照写盘
+
+    private static boolean running = false;
+
+    private final Context context;
+    private final SharedPreferences prefs;
+    private final PhotoCatalog catalog;
+
+    private ShardMigrator(Context context) {
+        this.context = context.getApplicationContext();
+        this.prefs = this.context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
+        this.catalog = PhotoCatalog.get(this.context);
+    }
+
+    /**
+     * 需要时在后台启动迁移（已完成或正在运行时直接返回）
+     */
+    public static synchronized void startIfNeeded(Context context) {
+        if (running) {
+            return;
+        }
+        final ShardMigrator migrator = new ShardMigrator(context);
+        if (migrator.prefs.getBoolean(KEY_DONE, false)) {
+            return;
+        }
+        running = true;
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    migrator.run();
+                } finally {
+                    synchronized (ShardMigrator.class) {
+                        running = false;
+                    }
+                }
+            }
+        }, "ShardMigrator");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * 照片是否正处于迁移中（已记录待完成的移动，文件可能已不在原路径，目录中的路径还没更新）
+     */
+    public static boolean isMoving(Context context, String path) {
+        SharedPreferences prefs = context.getApplicationContext().getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
+        return path != null && path.equals(prefs.getString(KEY_PENDING_FROM, null));
+    }
+
+    private void run() {
+        finishPendingMove();
+        int moved = 0;
+        boolean complete = true;
+        for (File root : PhotoRetention.photoRoots(context)) {
+            File[] files = root.listFiles();
+            if (files == null) {
+                // 目录存在但无法读取（例如还没有存储权限）时下次再试
+                if (root.exists()) {
+                    complete = false;
+                }
+                continue;
+            }
+            PhotoLayout layout = PhotoLayout.forRoot(root);
+            for (File file : files) {
+                String name = file.getName().toLowerCase(Locale.ROOT);
+                if (!file.isFile() || !(name.endsWith(".jpg") || name.endsWith(".jpeg"))) {
+                    continue;
+                }
+                if (!migrate(layout, file)) {
+                    complete = false;
+                    continue;
+                }
+                moved++;
+                if (moved % BATCH_SIZE == 0) {
+                    Log.d(TAG, "已迁移 " + moved + " 张照片");
+                    try {
+                        Thread.sleep(BATCH_PAUSE_MS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+        }
+        if (complete) {
+            prefs.edit().putBoolean(KEY_DONE, true).apply();
+        }
+        Log.d(TAG, "平铺目录迁移" + (complete ? "完成" : "部分完成") + "，本次迁移 " + moved + " 张照片");
+    }
+
+    private boolean migrate(PhotoLayout layout, File photo) {
+        File target = layout.migrationTarget(photo);
+        File dir = target.getParentFile();
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.w(TAG, "无法创建分片目录: " + dir.getAbsolutePath());
+            return false;
+        }
+        // 先记录待完成的移动，重命名和目录更新之间被中断时下次补完
+        prefs.edit()
+                .putString(KEY_PENDING_FROM, photo.getAbsolutePath())
+                .putString(KEY_PENDING_TO, target.getAbsolutePath())
+                .commit();
+        if (!photo.renameTo(target)) {
+            Log.w(TAG, "移动照片失败: " + photo.getAbsolutePath());
+            clearPending();
+            return false;
+        }
+        completeMove(photo, target);
+        return true;
+    }
+
+    // 重命名已完成：移动附属文件，更新照片目录并通知媒体库
+    private void completeMove(File from, File to) {
+        moveCompanions(from, to);
+        catalog.movePath(from.getAbsolutePath(), to);
+        clearPending();
+        MediaScannerConnection.scanFile(context,
+                new String[]{from.getAbsolutePath(), to.getAbsolutePath()}, null, null);
+    }
+
+    private void finishPendingMove() {
+        String from = prefs.getString(KEY_PENDING_FROM, null);
+        String to = prefs.getString(KEY_PENDING_TO, null);
+        if (from == null || to == null) {
+            return;
+        }
+        File fromFile = new File(from);
+        File toFile = new File(to);
+        if (toFile.exists() && !fromFile.exists()) {
+            Log.d(TAG, "补完上次中断的迁移: " + from);
+            completeMove(fromFile, toFile);
+        } else {
+            clearPending();
+        }
+    }
+
+    private void clearPending() {
+        prefs.edit().remove(KEY_PENDING_FROM).remove(KEY_PENDING_TO).commit();
+    }
+
+    // 缩略图和预事件帧目录跟随原图
+    private static void moveCompanions(File from, File to) {
+        File thumbnail = ThumbnailFiles.thumbnailFor(from);
+        if (thumbnail.exists()) {
+            try {
+                ThumbnailFiles.ensureDirFor(to);
+                thumbnail.renameTo(ThumbnailFiles.thumbnailFor(to));
+            } catch (Exception e) {
+                Log.w(TAG, "移动缩略图失败: " + thumbnail.getAbsolutePath(), e);
+            }
+        }
+        File preDir = new File(from.getParentFile(), baseName(from) + "_pre");
+        if (preDir.isDirectory()) {
+            preDir.renameTo(new File(to.getParentFile(), baseName(to) + "_pre"));
+        }
+    }
+
+    private static String baseName(File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+}
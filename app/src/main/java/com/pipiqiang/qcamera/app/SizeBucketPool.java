@@ -0,0 +1,121 @@
+package com.pipiqiang.qcamera.app;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 按字节数分桶的对象池（图库缩略图位图复用）
+ */
+public class SizeBucketPool<T> {
+
+    private static final int MAX_WASTE = 2;
+
+    private final TreeMap<Integer, ArrayDeque<T>> buckets = new TreeMap<>();
+    private long maxBytes;
+    private long currentBytes = 0;
+    private int count = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    public SizeBucketPool(long maxBytes) {
+        this.maxBytes = Math.max(0, maxBytes);
+    }
+
+    /**
+     * 取出一个至少 minBytes 字节的对象
+     * @return 没有合适的对象时返回 null（计为未命中）
+     */
+    public synchronized T get(int minBytes) {
+        Map.Entry<Integer, ArrayDeque<T>> bucket = buckets.ceilingEntry(minBytes);
+        if (bucket == null || bucket.getKey() > (long) minBytes * MAX_WASTE) {
+            misses++;
+            return null;
+        }
+        T item = bucket.getValue().pollLast();
+        if (bucket.getValue().isEmpty()) {
+            buckets.remove(bucket.getKey());
+        }
+        currentBytes -= bucket.getKey();
+        count--;
+        hits++;
+        return item;
+    }
+
+    /**
+     * 放回一个对象
+     * @return 超过池容量未被接收时返回 false（由调用方释放）
+     */
+    public synchronized boolean put(int bytes, T item) {
+        if (bytes <= 0 || bytes > maxBytes) {
+            return false;
+        }
+        ArrayDeque<T> bucket = buckets.get(bytes);
+        if (bucket == null) {
+            bucket = new ArrayDeque<>();
+            buckets.put(bytes, bucket);
+        }
+        bucket.addLast(item);
+        currentBytes += bytes;
+        count++;
+        trimToSize(maxBytes);
+        return true;
+    }
+
+    /**
+     * 调整容量（内存紧张时缩小），超出部分立即淘汰
+     */
+    public synchronized void resize(long newMaxBytes) {
+        maxBytes = Math.max(0, newMaxBytes);
+        trimToSize(maxBytes);
+    }
+
+    public synchronized void clear() {
+        trimToSize(0);
+    }
+
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized long sizeBytes() {
+        return currentBytes;
+    }
+
+    public synchronized int count() {
+        return count;
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    /**
+     * 对象被淘汰时调用（例如回收位图），在持有池锁时调用
+     */
+    protected void onEvicted(T item) {
+    }
+
+    private void trimToSize(long limit) {
+        while (currentBytes > limit && !buckets.isEmpty()) {
+            Map.Entry<Integer, ArrayDeque<T>> largest = buckets.lastEntry();
+            T item = largest.getValue().pollFirst();
+            if (largest.getValue().isEmpty()) {
+                buckets.remove(largest.getKey());
+            }
+            currentBytes -= largest.getKey();
+            count--;
+            evictions++;
+            onEvicted(item);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.pipiqiang.qcamera.app;
+
+/**
+ * 存储填充速度预测
+ * 按小时分桶累计最近24小时写入的字节数，估算每小时写入量和剩余空间降到下限所需的时间，
+ * 并据此给出逐级加强的应对措施（提前清理、降低画质、拉长拍照间隔）。
+ * 分桶可以编码为字符串保存，重启后恢复，预测不会每次启动都从零开始。
+ */
+public class StorageForecast {
+
+    private static final long HOUR_MS = 60 * 60 * 1000L;
+    private static final int WINDOW_HOURS = 24;
+    private static final double MIN_OBSERVED_HOURS = 0.25; // 观察时间太短时按15分钟计，避免刚启动时高估速度
+
+    // 预计剩余时间低于这些阈值时采取对应措施
+    public static final double CLEANUP_HORIZON_HOURS = 24;
+    public static final double DOWNSCALE_HOURS = 6;
+    public static final double STRETCH_HOURS = 2;
+
+    /**
+     * 应对措施，后面的级别包含前面的措施
+     */
+    public enum Action {
+        NONE,
+        CLEANUP,
+        DOWNSCALE,
+        STRETCH_INTERVAL
+    }
+
+    private final long[] bucketBytes = new long[WINDOW_HOURS];
+    private final long[] bucketHour = new long[WINDOW_HOURS];
+    private long firstRecordMs = -1;
+
+    /**
+     * 记录一次写入
+     */
+    public synchronized void record(long timeMillis, long bytes) {
+        if (firstRecordMs < 0) {
+            firstRecordMs = timeMillis;
+        }
+        long hour = timeMillis / HOUR_MS;
+        int slot = (int) (hour % WINDOW_HOURS);
+        if (bucketHour[slot] != hour) {
+            bucketHour[slot] = hour;
+            bucketBytes[slot] = 0;
+        }
+        bucketBytes[slot] += bytes;
+    }
+
+    /**
+     * 编码为 "首次记录时间;小时:字节,小时:字节..."，只包含有写入的桶
+     */
+    public synchronized String encode() {
+        StringBuilder builder = new StringBuilder().append(firstRecordMs).append(';');
+        boolean first = true;
+        for (int i = 0; i < WINDOW_HOURS; i++) {
+            if (bucketBytes[i] == 0) {
+                continue;
+            }
+            if (!first) {
+                builder.append(',');
+            }
+            builder.append(bucketHour[i]).append(':').append(bucketBytes[i]);
+            first = false;
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 从 encode 的结果恢复，格式错误时保持为空
+     */
+    public synchronized void restore(String encoded) {
+        if (encoded == null || encoded.isEmpty()) {
+            return;
+        }
+        int separator = encoded.indexOf(';');
+        if (separator < 0) {
+            return;
+        }
+        long[] hours = new long[WINDOW_HOURS];
+        long[] bytes = new long[WINDOW_HOURS];
+        long firstMs;
+        try {
+            firstMs = Long.parseLong(encoded.substring(0, separator));
+            String buckets = encoded.substring(separator + 1);
+            if (!buckets.isEmpty()) {
+                for (String bucket : buckets.split(",")) {
+                    int colon = bucket.indexOf(':');
+                    long hour = Long.parseLong(bucket.substring(0, colon));
+                    int slot = (int) (hour % WINDOW_HOURS);
+                    hours[slot] = hour;
+                    bytes[slot] = Long.parseLong(bucket.substring(colon + 1));
+                }
+            }
+        } catch (RuntimeException e) {
+            return;
+        }
+        System.arraycopy(hours, 0, bucketHour, 0, WINDOW_HOURS);
+        System.arraycopy(bytes, 0, bucketBytes, 0, WINDOW_HOURS);
+        firstRecordMs = firstMs;
+    }
+
+    /**
+     * 最近24小时的平均每小时写入字节数
+     */
+    public synchronized double bytesPerHour(long nowMillis) {
+        if (firstRecordMs < 0) {
+            return 0;
+        }
+        long currentHour = nowMillis / HOUR_MS;
+        long total = 0;
+        for (int i = 0; i < WINDOW_HOURS; i++) {
+            if (bucketHour[i] > currentHour - WINDOW_HOURS && bucketHour[i] <= currentHour) {
+                total += bucketBytes[i];
+            }
+        }
+        double observedHours = Math.min(WINDOW_HOURS, (nowMillis - firstRecordMs) / (double) HOUR_MS);
+        return total / Math.max(MIN_OBSERVED_HOURS, observedHours);
+    }
+
+    /**
+     * 剩余空间降到下限的预计小时数，没有写入时为正无穷
+     */
+    public double hoursToFloor(long freeBytes, long floorBytes, long nowMillis) {
+        long headroom = freeBytes - floorBytes;
+        if (headroom <= 0) {
+            return 0;
+        }
+        double rate = bytesPerHour(nowMillis);
+        return rate > 0 ? headroom / rate : Double.POSITIVE_INFINITY;
+    }
+
+    public Action recommend(long freeBytes, long floorBytes, long nowMillis) {
+        double hours = hoursToFloor(freeBytes, floorBytes, nowMillis);
+        if (hours < STRETCH_HOURS) {
+            return Action.STRETCH_INTERVAL;
+        }
+        if (hours < DOWNSCALE_HOURS) {
+            return Action.DOWNSCALE;
+        }
+        if (hours < CLEANUP_HORIZON_HOURS) {
+            return Action.CLEANUP;
+        }
+        return Action.NONE;
+    }
+
+    /**
+     * 保持 CLEANUP_HORIZON_HOURS 小时余量需要额外释放的字节数
+     */
+    public long bytesToFreeForHorizon(long freeBytes, long floorBytes, long nowMillis) {
+        double needed = bytesPerHour(nowMillis) * CLEANUP_HORIZON_HOURS - (freeBytes - floorBytes);
+        return needed > 0 ? (long) Math.ceil(needed) : 0;
+    }
+}
@@ -0,0 +1,128 @@
+package com.pipiqiang.qcamera.app;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 存储整理
+ * 剩余空间检查、清理和保留策略在一个低优先级后台线程上运行，拍照完成后只提交一次请求就返回，
+ * 多次请求在整理线程空闲前合并为一次。整理结果记录为水位（StorageWatermarks），
+ * 拍照前只读取上次的水位：只有低于硬水位时才等待一轮整理（含后台删除）完成，
+ * 其余情况下拍照不访问 StatFs，也不等待文件删除
+ */
+public final class StorageHousekeeper {
+
+    private static final String TAG = "StorageHousekeeper";
+    // 低于硬水位时拍照前最多等待的时间，超时后照常拍照
+    private static final long HARD_FLOOR_WAIT_MS = 15000;
+
+    private static StorageHousekeeper instance;
+
+    private final Context context;
+    private final StorageManager storageManager;
+    private final Handler worker;
+    private final AtomicBoolean requested = new AtomicBoolean(false);
+    private volatile StorageWatermarks.Level level = StorageWatermarks.Level.OK;
+
+    private StorageHousekeeper(Context context) {
+        this.context = context.getApplicationContext();
+        this.storageManager = new StorageManager(this.context);
+        HandlerThread thread = new HandlerThread("StorageHousekeeping", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        this.worker = new Handler(thread.getLooper());
+    }
+
+    public static synchronized StorageHousekeeper get(Context context) {
+        if (instance == null) {
+            instance = new StorageHousekeeper(context);
+        }
+        return instance;
+    }
+
+    /**
+     * 上次整理后的水位
+     */
+    public StorageWatermarks.Level getLevel() {
+        return level;
+    }
+
+    /**
+     * 请求一轮后台整理（拍照完成后调用），立即返回；已有未开始的请求时合并
+     */
+    public void requestHousekeeping() {
+        if (!requested.compareAndSet(false, true)) {
+            return;
+        }
+        worker.post(new Runnable() {
+            @Override
+            public void run() {
+                requested.set(false);
+                housekeep();
+            }
+        });
+    }
+
+    /**
+     * 拍照前调用：高于硬水位时直接返回，低于硬水位时等待一轮整理完成
+     * @return 剩余空间回到硬水位以上时返回 true（返回 false 时由调用方决定是否仍然拍照）
+     */
+    public boolean awaitCaptureSpace() {
+        if (level != StorageWatermarks.Level.HARD) {
+            return true;
+        }
+        Log.w(TAG, "剩余空间低于硬水位，等待清理完成后再拍照");
+        final CountDownLatch done = new CountDownLatch(1);
+        worker.post(new Runnable() {
+            @Override
+            public void run() {
+                housekeep();
+                done.countDown();
+            }
+        });
+        try {
+            if (!done.await(HARD_FLOOR_WAIT_MS, TimeUnit.MILLISECONDS)) {
+                Log.w(TAG, "等待清理超时");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return level != StorageWatermarks.Level.HARD;
+    }
+
+    // 在整理线程上运行
+    private void housekeep() {
+        SettingsManager settingsManager = new SettingsManager(context);
+        boolean autoClean = settingsManager.isAutoCleanEnabled();
+        int minSpaceMB = settingsManager.getMinSpaceMB();
+        int softMarginMB = settingsManager.getCleanSoftMarginMB();
+        try {
+            StorageWatermarks.Level before = storageManager.checkAndCleanStorage(autoClean, minSpaceMB, softMarginMB);
+
+            // 组合保留策略（抽稀和上限）每次只推进一批
+            storageManager.applyRetentionPolicy(settingsManager.isRetentionThinningEnabled(),
+                    settingsManager.getRetentionMaxGb(), settingsManager.getRetentionMaxCount());
+
+            if (before == StorageWatermarks.Level.HARD) {
+                // 清理只提交了删除，等文件真正删掉后再重新测量
+                DeletionService.get(context).awaitIdle(HARD_FLOOR_WAIT_MS);
+                StorageMonitor.get(context).invalidate();
+            }
+            if (autoClean) {
+                StorageWatermarks watermarks = new StorageWatermarks(StorageManager.floorBytes(minSpaceMB),
+                        softMarginMB * 1024L * 1024L);
+                level = watermarks.classify(StorageMonitor.get(context).getFreeSpace());
+            } else {
+                level = StorageWatermarks.Level.OK;
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "存储整理失败", e);
+        }
+    }
+}
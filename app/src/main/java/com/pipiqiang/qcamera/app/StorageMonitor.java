@@ -0,0 +1,184 @@
+package com.pipiqiang.qcamera.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.StatFs;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.util.Locale;
+
+/**
+ * 存储监控
+ * StatFs 低频采样（默认10分钟一次）并缓存，两次采样之间用保存管线报告的写入量扣减估算，
+ * 拍照周期里查询剩余空间不再访问文件系统。同时统计写入速度，预测空间降到下限的时间，
+ * 供清理、画质和拍照间隔调整使用，也供界面显示
+ */
+public final class StorageMonitor {
+
+    private static final String TAG = "StorageMonitor";
+    private static final long SAMPLE_INTERVAL_MS = 10 * 60 * 1000L;
+    private static final long SAVE_INTERVAL_MS = 60 * 1000L; // 写入统计最多每分钟保存一次
+    private static final String PREF_NAME = "storage_monitor";
+    private static final String KEY_FORECAST = "forecast_buckets";
+    public static final int DOWNSCALE_JPEG_QUALITY = 70; // 空间紧张时的JPEG质量上限
+    public static final int STRETCH_INTERVAL_FACTOR = 2; // 空间即将耗尽时拍照间隔的倍数
+
+    private static StorageMonitor instance;
+
+    private final Context context;
+    private final SharedPreferences prefs;
+    private final StorageForecast forecast = new StorageForecast();
+    private long forecastSavedAt = 0; // elapsedRealtime
+    private long sampledFreeBytes = -1;
+    private long sampledAt = 0; // elapsedRealtime
+    private long writtenSinceSample = 0;
+
+    /**
+     * 某一时刻的存储状态快照
+     */
+    public static final class Snapshot {
+        public final long freeBytes;
+        public final long floorBytes;
+        public final double bytesPerHour;
+        public final double hoursToFloor;
+        public final StorageForecast.Action action;
+
+        Snapshot(long freeBytes, long floorBytes, double bytesPerHour, double hoursToFloor,
+                 StorageForecast.Action action) {
+            this.freeBytes = freeBytes;
+            this.floorBytes = floorBytes;
+            this.bytesPerHour = bytesPerHour;
+            this.hoursToFloor = hoursToFloor;
+            this.action = action;
+        }
+
+        /**
+         * 界面显示用的中文描述
+         */
+        public String describe() {
+            String free = "剩余 " + (freeBytes / (1024 * 1024)) + " MB";
+            if (Double.isInfinite(hoursToFloor)) {
+                return free;
+            }
+            String eta = hoursToFloor >= 48
+                    ? Math.round(hoursToFloor / 24) + " 天"
+                    : String.format(Locale.getDefault(), "%.1f 小时", hoursToFloor);
+            return free + "，约 " + eta + "后达到下限";
+        }
+    }
+
+    private StorageMonitor(Context context) {
+        this.context = context.getApplicationContext();
+        this.prefs = this.context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
+        // 恢复上次进程的写入统计，重启后仍能给出剩余天数
+        forecast.restore(prefs.getString(KEY_FORECAST, null));
+    }
+
+    public static synchronized StorageMonitor get(Context context) {
+        if (instance == null) {
+            instance = new StorageMonitor(context);
+        }
+        return instance;
+    }
+
+    /**
+     * 保存管线写出文件后调用
+     */
+    public synchronized void onBytesWritten(long bytes) {
+        forecast.record(System.currentTimeMillis(), bytes);
+        writtenSinceSample += bytes;
+        long now = SystemClock.elapsedRealtime();
+        if (forecastSavedAt == 0 || now - forecastSavedAt >= SAVE_INTERVAL_MS) {
+            forecastSavedAt = now;
+            prefs.edit().putString(KEY_FORECAST, forecast.encode()).apply();
+        }
+    }
+
+    /**
+     * 剩余空间（缓存值减去之后写入的量，采样过期时重新采样）
+     */
+    public synchronized long getFreeSpace() {
+        if (sampledFreeBytes < 0 || SystemClock.elapsedRealtime() - sampledAt >= SAMPLE_INTERVAL_MS) {
+            sample();
+        }
+        return Math.max(0, sampledFreeBytes - writtenSinceSample);
+    }
+
+    /**
+     * 删除文件后调用，下次查询时重新采样
+     */
+    public synchronized void invalidate() {
+        sampledFreeBytes = -1;
+    }
+
+    /**
+     * 查询当前存储状态和预测
+     * @param floorBytes 剩余空间下限
+     */
+    public synchronized Snapshot getSnapshot(long floorBytes) {
+        long free = getFreeSpace();
+        long now = System.currentTimeMillis();
+        return new Snapshot(free, floorBytes, forecast.bytesPerHour(now),
+                forecast.hoursToFloor(free, floorBytes, now), forecast.recommend(free, floorBytes, now));
+    }
+
+    /**
+     * 保持预测余量需要提前释放的字节数
+     */
+    public synchronized long bytesToFreeForHorizon(long floorBytes) {
+        return forecast.bytesToFreeForHorizon(getFreeSpace(), floorBytes, System.currentTimeMillis());
+    }
+
+    /**
+     * 按存储预测调整后的JPEG质量（0 表示设备默认）
+     */
+    public int adjustJpegQuality(int quality, long floorBytes) {
+        StorageForecast.Action action = getSnapshot(floorBytes).action;
+        if (action.compareTo(StorageForecast.Action.DOWNSCALE) >= 0
+                && (quality <= 0 || quality > DOWNSCALE_JPEG_QUALITY)) {
+            Log.w(TAG, "存储即将耗尽，JPEG质量降为 " + DOWNSCALE_JPEG_QUALITY);
+            return DOWNSCALE_JPEG_QUALITY;
+        }
+        return quality;
+    }
+
+    /**
+     * 按存储预测调整后的拍照间隔
+     */
+    public long adjustIntervalMs(long intervalMs, long floorBytes) {
+        if (getSnapshot(floorBytes).action == StorageForecast.Action.STRETCH_INTERVAL) {
+            Log.w(TAG, "存储即将耗尽，拍照间隔延长为 " + (intervalMs * STRETCH_INTERVAL_FACTOR) + "ms");
+            return intervalMs * STRETCH_INTERVAL_FACTOR;
+        }
+        return intervalMs;
+    }
+
+    // 取所有照片根目录中最小的可用空间
+    private void sample() {
+        long minFree = -1;
+        for (File root : PhotoRetention.photoRoots(context)) {
+            File path = root;
+            while (path != null && !path.exists()) {
+                path = path.getParentFile();
+            }
+            if (path == null) {
+                continue;
+            }
+            try {
+                StatFs stat = new StatFs(path.getPath());
+                long free = stat.getAvailableBlocksLong() * stat.getBlockSizeLong();
+                if (minFree < 0 || free < minFree) {
+                    minFree = free;
+                }
+            } catch (IllegalArgumentException e) {
+                Log.w(TAG, "读取存储空间失败: " + path, e);
+            }
+        }
+        sampledFreeBytes = Math.max(0, minFree);
+        sampledAt = SystemClock.elapsedRealtime();
+        writtenSinceSample = 0;
+        Log.d(TAG, "存储采样: 剩余 " + (sampledFreeBytes / (1024 * 1024)) + " MB");
+    }
+}
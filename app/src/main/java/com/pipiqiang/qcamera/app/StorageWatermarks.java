@@ -0,0 +1,51 @@
+package com.pipiqiang.qcamera.app;
+
+/**
+ * 存储水位线
+ * 低于软水位时后台清理，拍照不等待；低于硬水位时下一次拍照前等待清理完成
+ */
+public final class StorageWatermarks {
+
+    public enum Level {
+        OK,     // 高于软水位
+        SOFT,   // 低于软水位，后台清理
+        HARD    // 低于硬水位，拍照前等待清理
+    }
+
+    private final long hardBytes;
+    private final long softBytes;
+
+    public StorageWatermarks(long hardBytes, long softMarginBytes) {
+        this.hardBytes = Math.max(0, hardBytes);
+        this.softBytes = this.hardBytes + Math.max(0, softMarginBytes);
+    }
+
+    public static StorageWatermarks ofMegabytes(int hardMb, int softMarginMb) {
+        return new StorageWatermarks(hardMb * 1024L * 1024L, softMarginMb * 1024L * 1024L);
+    }
+
+    public long getHardBytes() {
+        return hardBytes;
+    }
+
+    public long getSoftBytes() {
+        return softBytes;
+    }
+
+    public Level classify(long freeBytes) {
+        if (freeBytes < hardBytes) {
+            return Level.HARD;
+        }
+        if (freeBytes < softBytes) {
+            return Level.SOFT;
+        }
+        return Level.OK;
+    }
+
+    /**
+     * 回到软水位以上需要释放的字节数
+     */
+    public long bytesToFree(long freeBytes) {
+        return Math.max(0, softBytes - freeBytes);
+    }
+}
@@ -0,0 +1,155 @@
+package com.pipiqiang.qcamera.app;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 图库缩略图磁盘缓存
+ * 每个条目一个 JPEG 文件，按最近使用淘汰，总字节数不超过上限
+ */
+public final class ThumbnailDiskCache {
+
+    private static final String SUFFIX = ".jpg";
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private final File dir;
+    private final long maxBytes;
+    // 按使用顺序排列（最久未使用的在前），值为文件大小
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long totalBytes = 0;
+
+    public ThumbnailDiskCache(File dir, long maxBytes) throws IOException {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("无法创建缩略图缓存目录: " + dir.getAbsolutePath());
+        }
+        load();
+    }
+
+    /**
+     * 缓存键：照片路径 + 缩略图尺寸 + 文件大小 + 修改时间
+     */
+    public static String keyFor(String path, int size, long length, long lastModified) {
+        String source = path + "|" + size + "|" + length + "|" + lastModified;
+        byte[] hash = ContentHash.newDigest().digest(source.getBytes(StandardCharsets.UTF_8));
+        // 128 位足够区分，文件名短一些
+        return ContentHash.toHex(Arrays.copyOf(hash, 16));
+    }
+
+    /**
+     * 查找缓存的缩略图文件，命中时标记为最近使用
+     * @return 缩略图文件，未命中时返回 null
+     */
+    public synchronized File get(String key) {
+        if (entries.get(key) == null) {
+            return null;
+        }
+        File file = fileFor(key);
+        if (!file.exists()) {
+            // 被系统清理了缓存目录
+            totalBytes -= entries.remove(key);
+            return null;
+        }
+        file.setLastModified(System.currentTimeMillis());
+        return file;
+    }
+
+    /**
+     * 写入一条缩略图（JPEG 数据），超出上限时淘汰最久未使用的条目
+     */
+    public void put(String key, byte[] jpeg) throws IOException {
+        File tmp = new File(dir, key + TMP_SUFFIX);
+        FileOutputStream out = new FileOutputStream(tmp);
+        try {
+            out.write(jpeg);
+        } finally {
+            out.close();
+        }
+        synchronized (this) {
+            if (!tmp.renameTo(fileFor(key))) {
+                tmp.delete();
+                throw new IOException("写入缩略图缓存失败: " + key);
+            }
+            Long previous = entries.put(key, (long) jpeg.length);
+            if (previous != null) {
+                totalBytes -= previous;
+            }
+            totalBytes += jpeg.length;
+            trimToSize(maxBytes);
+        }
+    }
+
+    public synchronized boolean contains(String key) {
+        return entries.containsKey(key);
+    }
+
+    public synchronized void remove(String key) {
+        Long size = entries.remove(key);
+        if (size != null) {
+            totalBytes -= size;
+            fileFor(key).delete();
+        }
+    }
+
+    public synchronized long sizeBytes() {
+        return totalBytes;
+    }
+
+    public synchronized int count() {
+        return entries.size();
+    }
+
+    private void trimToSize(long limit) {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (totalBytes > limit && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            fileFor(eldest.getKey()).delete();
+            totalBytes -= eldest.getValue();
+            iterator.remove();
+        }
+    }
+
+    private File fileFor(String key) {
+        return new File(dir, key + SUFFIX);
+    }
+
+    // 扫描缓存目录，按修改时间从旧到新重建使用顺序，清掉残留的临时文件
+    private void load() {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        final long[] modified = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            modified[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Long.compare(modified[a], modified[b]);
+            }
+        });
+        for (Integer i : order) {
+            File file = files[i];
+            String name = file.getName();
+            if (name.endsWith(TMP_SUFFIX)) {
+                file.delete();
+            } else if (name.endsWith(SUFFIX)) {
+                long size = file.length();
+                entries.put(name.substring(0, name.length() - SUFFIX.length()), size);
+                totalBytes += size;
+            }
+        }
+        trimToSize(maxBytes);
+    }
+}
@@ -0,0 +1,61 @@
+package com.pipiqiang.qcamera.app;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 缩略图文件命名规则
+ * 缩略图与原图位于同一目录下的 .thumbnails 子目录，文件名与原图相同，
+ * 图库可以直接根据原图路径定位缩略图
+ */
+public final class ThumbnailFiles {
+
+    private static final String TAG = "ThumbnailFiles";
+    public static final String DIR_NAME = ".thumbnails";
+
+    private ThumbnailFiles() {
+    }
+
+    /**
+     * 原图对应的缩略图路径（不保证存在）
+     */
+    public static File thumbnailFor(File photo) {
+        return new File(new File(photo.getParentFile(), DIR_NAME), photo.getName());
+    }
+
+    public static File thumbnailFor(String photoPath) {
+        // 段存储中的照片，缩略图在段目录下
+        return thumbnailFor(new File(SegmentPhotoStorage.stripScheme(photoPath)));
+    }
+
+    /**
+     * 确保缩略图目录存在，并放置 .nomedia 避免被媒体库扫描
+     */
+    public static File ensureDirFor(File photo) throws IOException {
+        File dir = new File(photo.getParentFile(), DIR_NAME);
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("无法创建缩略图目录: " + dir.getAbsolutePath());
+        }
+        File noMedia = new File(dir, ".nomedia");
+        if (!noMedia.exists()) {
+            try {
+                noMedia.createNewFile();
+            } catch (IOException e) {
+                Log.w(TAG, "创建.nomedia失败", e);
+            }
+        }
+        return dir;
+    }
+
+    /**
+     * 删除原图对应的缩略图
+     */
+    public static void deleteFor(File photo) {
+        File thumbnail = thumbnailFor(photo);
+        if (thumbnail.exists() && !thumbnail.delete()) {
+            Log.w(TAG, "删除缩略图失败: " + thumbnail.getAbsolutePath());
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.pipiqiang.qcamera.app;
+
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.YuvImage;
+import android.media.Image;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 双输出拍照的缩略图写入器
+ * 拍照请求同时输出到全分辨率JPEG和小尺寸YUV流，两路图像的传感器时间戳相同；
+ * 本类按时间戳把小尺寸帧与已保存的原图配对，直接编码为缩略图，无需再解码原图。
+ * 小尺寸帧是传感器方向，编码前按原图的 JPEG 方向（90度）旋转像素，图库不读EXIF也能正确显示。
+ * 所有方法都在相机后台线程调用
+ */
+public class ThumbnailWriter {
+
+    private static final String TAG = "ThumbnailWriter";
+    private static final int JPEG_QUALITY = 85;
+    private static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+    private final byte[] nv21;
+    private final byte[] rotated; // 旋转后的帧，预先分配
+    private final ByteBuffer nv21Buffer;
+    private int frameWidth;
+    private int frameHeight;
+
+    private long expectedTimestamp = NO_TIMESTAMP; // 拍照帧的传感器时间戳
+    private long frameTimestamp = NO_TIMESTAMP;    // 已缓存的小尺寸帧
+    private File pendingPhoto;                     // 原图先于小尺寸帧到达时暂存
+    private long pendingPhotoTimestamp = NO_TIMESTAMP;
+
+    public ThumbnailWriter(int width, int height) {
+        this.nv21 = new byte[YuvUtils.nv21Size(width, height)];
+        this.rotated = new byte[nv21.length];
+        this.nv21Buffer = ByteBuffer.wrap(nv21);
+    }
+
+    /**
+     * 拍照请求开始曝光时调用，记录拍照帧时间戳
+     */
+    public void expect(long sensorTimestamp) {
+        expectedTimestamp = sensorTimestamp;
+    }
+
+    /**
+     * 小尺寸流的帧到达
+     * @return 该帧是拍照帧并已被接收时返回 true
+     */
+    public boolean offer(Image image) {
+        long ts = image.getTimestamp();
+        if (expectedTimestamp == NO_TIMESTAMP || ts != expectedTimestamp) {
+            return false;
+        }
+        nv21Buffer.clear();
+        if (!YuvUtils.packNv21(image, nv21Buffer)) {
+            Log.w(TAG, "缩略图帧尺寸超出缓冲区");
+            return true;
+        }
+        frameWidth = image.getWidth();
+        frameHeight = image.getHeight();
+        frameTimestamp = ts;
+        expectedTimestamp = NO_TIMESTAMP;
+        if (pendingPhoto != null && pendingPhotoTimestamp == ts) {
+            write(pendingPhoto);
+            pendingPhoto = null;
+            pendingPhotoTimestamp = NO_TIMESTAMP;
+        }
+        return true;
+    }
+
+    /**
+     * 原图保存完成后调用；若对应的小尺寸帧已到达则立即写出缩略图
+     */
+    public void onPhotoSaved(File photo, long sensorTimestamp) {
+        if (frameTimestamp == sensorTimestamp) {
+            write(photo);
+        } else {
+            pendingPhoto = photo;
+            pendingPhotoTimestamp = sensorTimestamp;
+        }
+    }
+
+    private void write(File photo) {
+        frameTimestamp = NO_TIMESTAMP;
+        FileOutputStream output = null;
+        try {
+            ThumbnailFiles.ensureDirFor(photo);
+            File thumbnail = ThumbnailFiles.thumbnailFor(photo);
+            output = new FileOutputStream(thumbnail);
+            // 旋转后宽高互换
+            YuvUtils.rotateNv21Clockwise(nv21, rotated, frameWidth, frameHeight);
+            YuvImage yuvImage = new YuvImage(rotated, ImageFormat.NV21, frameHeight, frameWidth, null);
+            yuvImage.compressToJpeg(new Rect(0, 0, frameHeight, frameWidth), JPEG_QUALITY, output);
+            Log.d(TAG, "缩略图已保存: " + thumbnail.getAbsolutePath());
+        } catch (IOException e) {
+            Log.e(TAG, "保存缩略图失败", e);
+        } finally {
+            if (output != null) {
+                try {
+                    output.close();
+                } catch (IOException e) {
+                    Log.e(TAG, "关闭缩略图输出流失败", e);
+                }
+            }
+        }
+    }
+}
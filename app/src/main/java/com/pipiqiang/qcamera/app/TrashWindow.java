@@ -0,0 +1,82 @@
+package com.pipiqiang.qcamera.app;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 删除的撤销窗口
+ * 每次删除对应一个编号，撤销和到期删除只有先取走的一方生效
+ */
+public class TrashWindow {
+
+    private static final class Batch {
+        final List<String> paths;
+        final long deadline;
+
+        Batch(List<String> paths, long deadline) {
+            this.paths = paths;
+            this.deadline = deadline;
+        }
+    }
+
+    private final long windowMs;
+    private final Map<Long, Batch> batches = new HashMap<>();
+    private long lastTicket = 0;
+
+    public TrashWindow(long windowMs) {
+        this.windowMs = windowMs;
+    }
+
+    public long getWindowMs() {
+        return windowMs;
+    }
+
+    /**
+     * 放入一批待删除的照片
+     * @return 这次删除的编号（跨进程递增，可用作持久化的键）
+     */
+    public synchronized long add(List<String> paths, long nowMillis) {
+        long ticket = nextTicket(nowMillis);
+        batches.put(ticket, new Batch(new ArrayList<>(paths), nowMillis + windowMs));
+        return ticket;
+    }
+
+    /**
+     * 取一个不进入撤销窗口的编号（立即删除的批次也记入回收站表，需要与窗口中的编号区分）
+     */
+    public synchronized long nextTicket(long nowMillis) {
+        long ticket = Math.max(nowMillis, lastTicket + 1);
+        lastTicket = ticket;
+        return ticket;
+    }
+
+    /**
+     * 撤销：窗口期内返回这批照片并移出窗口，已过期、已删除或编号不存在时返回 null
+     */
+    public synchronized List<String> undo(long ticket, long nowMillis) {
+        Batch batch = batches.get(ticket);
+        if (batch == null || nowMillis >= batch.deadline) {
+            return null;
+        }
+        batches.remove(ticket);
+        return batch.paths;
+    }
+
+    /**
+     * 到期删除：取出这批照片，已被撤销时返回 null
+     */
+    public synchronized List<String> take(long ticket) {
+        Batch batch = batches.remove(ticket);
+        return batch != null ? batch.paths : null;
+    }
+
+    public synchronized boolean isPending(long ticket) {
+        return batches.containsKey(ticket);
+    }
+
+    public synchronized int pendingCount() {
+        return batches.size();
+    }
+}
@@ -0,0 +1,306 @@
+package com.pipiqiang.qcamera.app;
+
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.YuvImage;
+import android.media.ExifInterface;
+import android.media.Image;
+import android.util.Log;
+
+import com.pipiqiang.qcamera.imaging.FrameQuality;
+import com.pipiqiang.qcamera.imaging.ImagingPools;
+import com.pipiqiang.qcamera.imaging.PrivacyMask;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * YUV连拍后处理的公共流程
+ * 连拍的 N 帧在相机线程上按传感器时间戳筛选并打包进 short[] NV21 缓冲区（进程级共用，见 {@link BurstBuffers}），
+ * 收齐后交给后处理线程合成（由子类实现），再编码为一张JPEG。
+ * 合成完成前不接受新的连拍（isBusy），调用方此时应回退为普通拍照。
+ * 合成开始后取消不会中断它：合成在后处理线程上完成并释放缓冲区，相机可以先关闭
+ */
+public abstract class YuvBurstProcessor {
+
+    public interface Listener {
+        void onProcessed(File photo, long sensorTimestamp);
+        void onProcessFailed(Exception e);
+    }
+
+    protected final String tag;
+    protected final int width;
+    protected final int height;
+    protected final int frameCount;
+    private final int bufferSize;
+    private BurstBuffers buffers; // 从 begin 到合成结束（或取消收集）持有
+
+    private boolean collecting = false;
+    private boolean busy = false;
+    private boolean processing = false;
+    private int collected = 0;
+    private final long[] expectedTimestamps; // 连拍帧的传感器时间戳，用于与重复请求的帧区分
+    private int expectedCount = 0;
+    private long firstTimestamp;
+    private File target;
+    private Listener listener;
+    private int jpegQuality = 90;
+    private FrameQualityGate qualityGate;
+    private PrivacyMask privacyMask;
+    private AtomicPhotoWriter photoWriter;
+    private String imageDescription;
+
+    protected YuvBurstProcessor(String tag, int width, int height, int frameCount) {
+        this.tag = tag;
+        this.width = width;
+        this.height = height;
+        this.bufferSize = YuvUtils.nv21Size(width, height);
+        int maxFrames = BurstBuffers.maxFrames(bufferSize, BurstBuffers.budgetBytes());
+        if (frameCount > maxFrames) {
+            Log.w(tag, "连拍缓冲区超过上限，帧数从 " + frameCount + " 减少到 " + maxFrames);
+        }
+        this.frameCount = Math.min(frameCount, maxFrames);
+        this.expectedTimestamps = new long[this.frameCount];
+    }
+
+    /**
+     * 合成收齐的帧（后处理线程）
+     */
+    protected abstract void merge(short[][] frames, int frameCount, int width, int height, short[] out);
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    public void setJpegQuality(int quality) {
+        if (quality > 0) {
+            this.jpegQuality = quality;
+        }
+    }
+
+    public void setQualityGate(FrameQualityGate gate) {
+        this.qualityGate = gate;
+    }
+
+    /**
+     * 设置隐私遮挡，区间表须按本处理器的帧尺寸编译
+     */
+    public void setPrivacyMask(PrivacyMask mask) {
+        this.privacyMask = mask;
+    }
+
+    /**
+     * 设置原子写入器，未设置时直接写最终文件
+     */
+    public void setPhotoWriter(AtomicPhotoWriter writer) {
+        this.photoWriter = writer;
+    }
+
+    /**
+     * 写入EXIF图像描述（例如ROI信息），在提交前写到临时文件上
+     */
+    public void setImageDescription(String description) {
+        this.imageDescription = description;
+    }
+
+    /**
+     * 正在收集或合成，或共用的缓冲区被另一个处理器占用
+     */
+    public synchronized boolean isBusy() {
+        return busy || BurstBuffers.isHeldByOther(this);
+    }
+
+    /**
+     * 开始收集一次连拍
+     * @param target 合成结果的保存位置
+     */
+    public synchronized boolean begin(File target, Listener listener) {
+        if (busy) {
+            return false;
+        }
+        buffers = BurstBuffers.acquire(this, bufferSize, frameCount);
+        if (buffers == null) {
+            Log.w(tag, "连拍缓冲区被占用或内存不足");
+            return false;
+        }
+        this.target = target;
+        this.listener = listener;
+        this.collected = 0;
+        this.expectedCount = 0;
+        this.collecting = true;
+        this.busy = true;
+        return true;
+    }
+
+    /**
+     * 连拍请求开始曝光时调用，记录该帧时间戳
+     */
+    public synchronized void expect(long sensorTimestamp) {
+        if (collecting && expectedCount < expectedTimestamps.length) {
+            expectedTimestamps[expectedCount++] = sensorTimestamp;
+        }
+    }
+
+    private boolean isExpected(long timestamp) {
+        for (int i = 0; i < expectedCount; i++) {
+            if (expectedTimestamps[i] == timestamp) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 连拍失败、被中止或相机关闭时放弃收集；已开始合成时让它在后处理线程上完成
+     */
+    public synchronized void cancel() {
+        if (processing) {
+            Log.d(tag, "合成进行中，完成后再释放缓冲区");
+            return;
+        }
+        collecting = false;
+        busy = false;
+        collected = 0;
+        releaseBuffers();
+    }
+
+    private void releaseBuffers() {
+        if (buffers != null) {
+            buffers = null;
+            BurstBuffers.release(this);
+        }
+    }
+
+    /**
+     * 连拍帧到达（相机线程）
+     * @return 该帧被本次连拍接收时返回 true
+     */
+    public synchronized boolean offer(Image image) {
+        if (!collecting || !isExpected(image.getTimestamp())) {
+            return false;
+        }
+        byte[] nv21 = buffers.nv21;
+        buffers.nv21Buffer.clear();
+        if (image.getWidth() != width || image.getHeight() != height || !YuvUtils.packNv21(image, buffers.nv21Buffer)) {
+            Log.w(tag, "连拍帧尺寸与缓冲区不一致，放弃本次合成");
+            // 必须回调失败，否则调用方一直认为拍照还在进行
+            Listener callback = listener;
+            listener = null;
+            cancel();
+            if (callback != null) {
+                callback.onProcessFailed(new IOException("连拍帧尺寸 " + image.getWidth() + "x" + image.getHeight()
+                        + " 与缓冲区 " + width + "x" + height + " 不一致"));
+            }
+            return true;
+        }
+        short[] frame = buffers.frames[collected];
+        for (int i = 0; i < nv21.length; i++) {
+            frame[i] = (short) (nv21[i] & 0xFF);
+        }
+        if (collected == 0) {
+            firstTimestamp = image.getTimestamp();
+        }
+        collected++;
+        if (collected == frameCount) {
+            collecting = false;
+            processing = true;
+            final BurstBuffers owned = buffers;
+            final File photo = target;
+            final Listener callback = listener;
+            final long timestamp = firstTimestamp;
+            ImagingPools.postProcessExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    process(owned, photo, timestamp, callback);
+                }
+            });
+        }
+        return true;
+    }
+
+    private void process(BurstBuffers owned, File photo, long timestamp, Listener callback) {
+        long start = System.currentTimeMillis();
+        OutputStream output = null;
+        AtomicPhotoWriter.Pending pending = null;
+        short[] merged = owned.merged;
+        byte[] nv21 = owned.nv21;
+        try {
+            merge(owned.frames, frameCount, width, height, merged);
+            for (int i = 0; i < merged.length; i++) {
+                nv21[i] = (byte) merged[i];
+            }
+            if (privacyMask != null) {
+                privacyMask.applyNv21(nv21);
+            }
+            // 合成结果在编码前做质量检查
+            FrameQuality.Verdict verdict = qualityGate != null
+                    ? qualityGate.checkNv21(nv21, width, height) : FrameQuality.Verdict.OK;
+            if (verdict != FrameQuality.Verdict.OK && qualityGate.isDropMode()) {
+                throw new FrameQualityGate.FrameRejectedException(verdict);
+            }
+            // 先写临时文件，EXIF写完后再重命名为最终文件
+            File written = photo;
+            if (photoWriter != null) {
+                pending = photoWriter.begin(photo);
+                output = pending.getOutputStream();
+                written = pending.getTempFile();
+            } else {
+                output = new FileOutputStream(photo);
+            }
+            YuvImage yuvImage = new YuvImage(nv21, ImageFormat.NV21, width, height, null);
+            if (!yuvImage.compressToJpeg(new Rect(0, 0, width, height), jpegQuality, output)) {
+                throw new IOException("JPEG编码失败");
+            }
+            if (pending != null) {
+                pending.closeStream();
+            } else {
+                output.close();
+            }
+            output = null;
+            // 与相机输出的JPEG保持相同方向
+            ExifInterface exif = new ExifInterface(written.getAbsolutePath());
+            exif.setAttribute(ExifInterface.TAG_ORIENTATION, String.valueOf(ExifInterface.ORIENTATION_ROTATE_90));
+            if (imageDescription != null) {
+                exif.setAttribute(ExifInterface.TAG_IMAGE_DESCRIPTION, imageDescription);
+            }
+            exif.saveAttributes();
+            if (verdict != FrameQuality.Verdict.OK) {
+                FrameQualityGate.markFlagged(written, verdict);
+            }
+            if (pending != null) {
+                pending.commit();
+            }
+            Log.d(tag, frameCount + "帧合成完成，耗时 " + (System.currentTimeMillis() - start) + "ms: " + photo.getAbsolutePath());
+            finishProcessing();
+            if (callback != null) {
+                callback.onProcessed(photo, timestamp);
+            }
+        } catch (Exception e) {
+            Log.e(tag, "多帧合成失败", e);
+            finishProcessing();
+            if (callback != null) {
+                callback.onProcessFailed(e);
+            }
+        } finally {
+            if (pending != null) {
+                // 未提交的写入删除临时文件
+                pending.abort();
+            } else if (output != null) {
+                try {
+                    output.close();
+                } catch (IOException e) {
+                    Log.e(tag, "关闭输出流失败", e);
+                }
+            }
+        }
+    }
+
+    // 合成结束（成功或失败）：释放共用缓冲区，可以开始下一次连拍
+    private synchronized void finishProcessing() {
+        processing = false;
+        busy = false;
+        releaseBuffers();
+    }
+}
@@ -0,0 +1,92 @@
+package com.pipiqiang.qcamera.app;
+
+import android.media.Image;
+
+import java.nio.ByteBuffer;
+
+/**
+ * YUV_420_888 图像工具方法
+ */
+public final class YuvUtils {
+
+    private YuvUtils() {
+    }
+
+    /**
+     * NV21 数据所需字节数
+     */
+    public static int nv21Size(int width, int height) {
+        return width * height + 2 * ((width + 1) / 2) * ((height + 1) / 2);
+    }
+
+    /**
+     * 将 YUV_420_888 图像按 NV21 排布写入 dst（从 dst 当前 position 开始），不做任何分配
+     * @return dst 空间不足时返回 false
+     */
+    public static boolean packNv21(Image image, ByteBuffer dst) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        if (dst.remaining() < nv21Size(width, height)) {
+            return false;
+        }
+        Image.Plane[] planes = image.getPlanes();
+
+        // Y 平面：逐行批量复制，跳过行尾填充
+        ByteBuffer y = planes[0].getBuffer();
+        int yRowStride = planes[0].getRowStride();
+        int yLimit = y.limit();
+        for (int row = 0; row < height; row++) {
+            int start = row * yRowStride;
+            y.limit(yLimit);
+            y.position(start);
+            y.limit(start + width);
+            dst.put(y);
+        }
+        y.limit(yLimit);
+        y.position(0);
+
+        // UV 平面：按 V、U 交错写入
+        ByteBuffer u = planes[1].getBuffer();
+        ByteBuffer v = planes[2].getBuffer();
+        int uvRowStride = planes[1].getRowStride();
+        int uvPixelStride = planes[1].getPixelStride();
+        int chromaWidth = (width + 1) / 2;
+        int chromaHeight = (height + 1) / 2;
+        for (int row = 0; row < chromaHeight; row++) {
+            int rowStart = row * uvRowStride;
+            for (int col = 0; col < chromaWidth; col++) {
+                int offset = rowStart + col * uvPixelStride;
+                dst.put(v.get(offset));
+                dst.put(u.get(offset));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * NV21 顺时针旋转90度（与拍照请求的 JPEG_ORIENTATION=90 一致），输出尺寸为 height x width
+     * @param dst 至少 nv21Size(width, height) 字节
+     */
+    public static void rotateNv21Clockwise(byte[] src, byte[] dst, int width, int height) {
+        int ySize = width * height;
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            int column = height - 1 - y;
+            for (int x = 0; x < width; x++) {
+                dst[x * height + column] = src[row + x];
+            }
+        }
+        // 色度平面：每个 VU 对对应 2x2 亮度像素，按对旋转；奇数边长时色度行按 packNv21 向上取整
+        int chromaWidth = (width + 1) / 2;
+        int chromaHeight = (height + 1) / 2;
+        for (int cy = 0; cy < chromaHeight; cy++) {
+            int row = ySize + cy * chromaWidth * 2;
+            int column = (chromaHeight - 1 - cy) * 2;
+            for (int cx = 0; cx < chromaWidth; cx++) {
+                int out = ySize + cx * chromaHeight * 2 + column;
+                dst[out] = src[row + cx * 2];
+                dst[out + 1] = src[row + cx * 2 + 1];
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.pipiqiang.qcamera.app;
+
+import android.hardware.camera2.CaptureResult;
+import android.hardware.camera2.TotalCaptureResult;
+import android.media.Image;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * 零快门延迟（ZSL）帧队列
+ * 保存最近若干帧全分辨率 PRIVATE 图像及其拍摄结果，触发时挑选与触发时刻最接近的一帧用于重处理，
+ * 而不是重新曝光。所有方法都在相机后台线程调用
+ */
+public class ZslFrameQueue {
+
+    /**
+     * 一帧图像与对应的拍摄结果
+     */
+    public static class Frame {
+        public final Image image;
+        public final TotalCaptureResult result;
+        public final long timestamp;
+
+        Frame(Image image, TotalCaptureResult result, long timestamp) {
+            this.image = image;
+            this.result = result;
+            this.timestamp = timestamp;
+        }
+    }
+
+    private final int capacity;
+    private final ArrayDeque<Image> images = new ArrayDeque<>();
+    private final ArrayDeque<TotalCaptureResult> results = new ArrayDeque<>();
+
+    public ZslFrameQueue(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public synchronized void addImage(Image image) {
+        images.addLast(image);
+        while (images.size() > capacity) {
+            images.removeFirst().close();
+        }
+    }
+
+    public synchronized void addResult(TotalCaptureResult result) {
+        results.addLast(result);
+        // 结果通常先于图像到达，多保留一些以便配对
+        while (results.size() > capacity * 2) {
+            results.removeFirst();
+        }
+    }
+
+    /**
+     * 取出时间戳最接近 targetTimestamp 的已配对帧，调用方负责图像的释放
+     * @param targetTimestamp 触发时刻（与传感器同一时基），小于0时取最新帧
+     * @return 没有可用帧时返回 null
+     */
+    public synchronized Frame takeClosest(long targetTimestamp) {
+        Image bestImage = null;
+        TotalCaptureResult bestResult = null;
+        long bestDistance = Long.MAX_VALUE;
+        for (Image image : images) {
+            long ts = image.getTimestamp();
+            TotalCaptureResult result = findResult(ts);
+            if (result == null) {
+                continue;
+            }
+            long distance = targetTimestamp < 0 ? -ts : Math.abs(ts - targetTimestamp);
+            if (bestImage == null || distance < bestDistance) {
+                bestImage = image;
+                bestResult = result;
+                bestDistance = distance;
+            }
+        }
+        if (bestImage == null) {
+            return null;
+        }
+        images.remove(bestImage);
+        return new Frame(bestImage, bestResult, bestImage.getTimestamp());
+    }
+
+    private TotalCaptureResult findResult(long timestamp) {
+        for (TotalCaptureResult result : results) {
+            Long ts = result.get(CaptureResult.SENSOR_TIMESTAMP);
+            if (ts != null && ts == timestamp) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    public synchronized int size() {
+        return images.size();
+    }
+
+    public synchronized void clear() {
+        Iterator<Image> it = images.iterator();
+        while (it.hasNext()) {
+            it.next().close();
+            it.remove();
+        }
+        results.clear();
+    }
+}
@@ -0,0 +1,261 @@
+package com.pipiqiang.qcamera.imaging;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Mertens 风格的曝光融合
+ * 权重图在缩小的网格上计算并平滑，融合时双线性放大，以代替完整的拉普拉斯金字塔
+ */
+public final class ExposureFusion {
+
+    private static final int DEFAULT_SCALE = 8;      // 权重网格相对原图的缩小倍数
+    private static final int DEFAULT_TILE_SIZE = 64;
+    private static final float SIGMA = 0.2f;         // 曝光适度高斯宽度
+    private static final float FLOOR = 0.05f;         // 对比度/饱和度下限，避免平坦区域权重全部为0
+    private static final float EPSILON = 1e-6f;
+
+    private final ForkJoinPool pool;
+    private final int scale;
+    private final int tileSize;
+
+    public ExposureFusion(ForkJoinPool pool) {
+        this(pool, DEFAULT_SCALE, DEFAULT_TILE_SIZE);
+    }
+
+    public ExposureFusion(ForkJoinPool pool, int scale, int tileSize) {
+        this.pool = pool;
+        this.scale = scale > 0 ? scale : DEFAULT_SCALE;
+        this.tileSize = tileSize > 0 ? tileSize : DEFAULT_TILE_SIZE;
+    }
+
+    /**
+     * 融合 NV21 帧
+     * @param frames     包围曝光帧（已对齐）
+     * @param frameCount 帧数
+     * @param out        输出，NV21 布局
+     */
+    public void fuseNv21(final short[][] frames, final int frameCount, final int width, final int height,
+                         final short[] out) {
+        final int gridWidth = (width + scale - 1) / scale;
+        final int gridHeight = (height + scale - 1) / scale;
+        final float[][] weights = new float[frameCount][gridWidth * gridHeight];
+        final float[][] means = new float[frameCount][gridWidth * gridHeight];
+
+        // 1. 每个网格单元的亮度均值
+        runRows(gridHeight, new RowBody() {
+            @Override
+            public void run(int gy0, int gy1) {
+                for (int f = 0; f < frameCount; f++) {
+                    for (int gy = gy0; gy < gy1; gy++) {
+                        for (int gx = 0; gx < gridWidth; gx++) {
+                            means[f][gy * gridWidth + gx] = blockMean(frames[f], width, height, gx, gy);
+                        }
+                    }
+                }
+            }
+        });
+
+        // 2. 权重 = 对比度 × 饱和度 × 曝光适度，并在帧间归一化
+        runRows(gridHeight, new RowBody() {
+            @Override
+            public void run(int gy0, int gy1) {
+                for (int gy = gy0; gy < gy1; gy++) {
+                    for (int gx = 0; gx < gridWidth; gx++) {
+                        int index = gy * gridWidth + gx;
+                        float sum = 0;
+                        for (int f = 0; f < frameCount; f++) {
+                            float w = weight(frames[f], means[f], width, height, gridWidth, gridHeight, gx, gy);
+                            weights[f][index] = w;
+                            sum += w;
+                        }
+                        for (int f = 0; f < frameCount; f++) {
+                            weights[f][index] = sum > EPSILON ? weights[f][index] / sum : 1.0f / frameCount;
+                        }
+                    }
+                }
+            }
+        });
+
+        // 3. 平滑权重图，减轻块边界
+        final float[][] smoothed = new float[frameCount][gridWidth * gridHeight];
+        runRows(gridHeight, new RowBody() {
+            @Override
+            public void run(int gy0, int gy1) {
+                for (int f = 0; f < frameCount; f++) {
+                    boxBlur(weights[f], smoothed[f], gridWidth, gridHeight, gy0, gy1);
+                }
+            }
+        });
+
+        // 4. 双线性放大权重并融合全分辨率像素
+        List<RecursiveAction> tasks = new ArrayList<>();
+        for (int y = 0; y < height; y += tileSize) {
+            for (int x = 0; x < width; x += tileSize) {
+                final int x0 = x;
+                final int y0 = y;
+                final int x1 = Math.min(width, x + tileSize);
+                final int y1 = Math.min(height, y + tileSize);
+                tasks.add(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        blendTile(frames, frameCount, smoothed, width, height, gridWidth, gridHeight,
+                                x0, y0, x1, y1, out);
+                    }
+                });
+            }
+        }
+        pool.invoke(new InvokeAll(tasks));
+    }
+
+    private float blockMean(short[] frame, int width, int height, int gx, int gy) {
+        int x0 = gx * scale;
+        int y0 = gy * scale;
+        int x1 = Math.min(width, x0 + scale);
+        int y1 = Math.min(height, y0 + scale);
+        int sum = 0;
+        for (int y = y0; y < y1; y++) {
+            int row = y * width;
+            for (int x = x0; x < x1; x++) {
+                sum += frame[row + x];
+            }
+        }
+        return sum / (float) ((x1 - x0) * (y1 - y0) * 255);
+    }
+
+    private float weight(short[] frame, float[] mean, int width, int height, int gridWidth, int gridHeight,
+                         int gx, int gy) {
+        int index = gy * gridWidth + gx;
+        float center = mean[index];
+        // 对比度：网格上的拉普拉斯响应，加上块内的亮度起伏
+        float laplacian = Math.abs(4 * center
+                - mean[gy * gridWidth + Math.max(0, gx - 1)]
+                - mean[gy * gridWidth + Math.min(gridWidth - 1, gx + 1)]
+                - mean[Math.max(0, gy - 1) * gridWidth + gx]
+                - mean[Math.min(gridHeight - 1, gy + 1) * gridWidth + gx]);
+        int px = Math.min(width - 2, gx * scale + scale / 2) & ~1;
+        int py = Math.min(height - 2, gy * scale + scale / 2) & ~1;
+        // 水平和垂直梯度分别取绝对值再相加，方向相反的边缘不会互相抵消
+        int pixel = frame[py * width + px];
+        float detail = (Math.abs(pixel - frame[py * width + px + 1])
+                + Math.abs(pixel - frame[(py + 1) * width + px])) / 255f;
+        float contrast = laplacian + detail;
+        // 饱和度：色度偏离中性的程度
+        int vu = width * height + (py / 2) * width + px;
+        float saturation = (Math.abs(frame[vu] - 128) + Math.abs(frame[vu + 1] - 128)) / 255f;
+        // 曝光适度：亮度接近0.5的权重高
+        float d = center - 0.5f;
+        float wellExposed = (float) Math.exp(-(d * d) / (2 * SIGMA * SIGMA));
+        return (contrast + FLOOR) * (saturation + FLOOR) * wellExposed + EPSILON;
+    }
+
+    private static void boxBlur(float[] src, float[] dst, int gridWidth, int gridHeight, int gy0, int gy1) {
+        for (int gy = gy0; gy < gy1; gy++) {
+            for (int gx = 0; gx < gridWidth; gx++) {
+                float sum = 0;
+                int count = 0;
+                for (int dy = -1; dy <= 1; dy++) {
+                    int y = gy + dy;
+                    if (y < 0 || y >= gridHeight) {
+                        continue;
+                    }
+                    for (int dx = -1; dx <= 1; dx++) {
+                        int x = gx + dx;
+                        if (x < 0 || x >= gridWidth) {
+                            continue;
+                        }
+                        sum += src[y * gridWidth + x];
+                        count++;
+                    }
+                }
+                dst[gy * gridWidth + gx] = sum / count;
+            }
+        }
+    }
+
+    private void blendTile(short[][] frames, int frameCount, float[][] weights, int width, int height,
+                           int gridWidth, int gridHeight, int x0, int y0, int x1, int y1, short[] out) {
+        float[] w = new float[frameCount];
+        int chromaOffset = width * height;
+        for (int y = y0; y < y1; y++) {
+            for (int x = x0; x < x1; x++) {
+                sampleWeights(weights, frameCount, gridWidth, gridHeight, x, y, w);
+                int index = y * width + x;
+                out[index] = blend(frames, frameCount, w, index);
+                // 每个2x2块的左上像素同时融合对应的VU
+                if ((x & 1) == 0 && (y & 1) == 0) {
+                    int vu = chromaOffset + (y / 2) * width + x;
+                    out[vu] = blend(frames, frameCount, w, vu);
+                    out[vu + 1] = blend(frames, frameCount, w, vu + 1);
+                }
+            }
+        }
+    }
+
+    private static short blend(short[][] frames, int frameCount, float[] w, int index) {
+        float value = 0;
+        for (int f = 0; f < frameCount; f++) {
+            value += w[f] * frames[f][index];
+        }
+        int v = Math.round(value);
+        return (short) (v < 0 ? 0 : (v > 255 ? 255 : v));
+    }
+
+    private void sampleWeights(float[][] weights, int frameCount, int gridWidth, int gridHeight,
+                               int x, int y, float[] w) {
+        float gxf = (x + 0.5f) / scale - 0.5f;
+        float gyf = (y + 0.5f) / scale - 0.5f;
+        int gx0 = (int) Math.floor(gxf);
+        int gy0 = (int) Math.floor(gyf);
+        float fx = gxf - gx0;
+        float fy = gyf - gy0;
+        int ax = Math.max(0, Math.min(gridWidth - 1, gx0));
+        int bx = Math.max(0, Math.min(gridWidth - 1, gx0 + 1));
+        int ay = Math.max(0, Math.min(gridHeight - 1, gy0));
+        int by = Math.max(0, Math.min(gridHeight - 1, gy0 + 1));
+        for (int f = 0; f < frameCount; f++) {
+            float[] map = weights[f];
+            float top = map[ay * gridWidth + ax] * (1 - fx) + map[ay * gridWidth + bx] * fx;
+            float bottom = map[by * gridWidth + ax] * (1 - fx) + map[by * gridWidth + bx] * fx;
+            w[f] = top * (1 - fy) + bottom * fy;
+        }
+    }
+
+    private interface RowBody {
+        void run(int y0, int y1);
+    }
+
+    // 按行带并行执行网格上的计算
+    private void runRows(int rows, final RowBody body) {
+        int band = Math.max(1, tileSize / scale);
+        List<RecursiveAction> tasks = new ArrayList<>();
+        for (int y = 0; y < rows; y += band) {
+            final int y0 = y;
+            final int y1 = Math.min(rows, y + band);
+            tasks.add(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    body.run(y0, y1);
+                }
+            });
+        }
+        pool.invoke(new InvokeAll(tasks));
+    }
+
+    private static class InvokeAll extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<RecursiveAction> tasks;
+
+        InvokeAll(List<RecursiveAction> tasks) {
+            this.tasks = tasks;
+        }
+
+        @Override
+        protected void compute() {
+            invokeAll(tasks);
+        }
+    }
+}
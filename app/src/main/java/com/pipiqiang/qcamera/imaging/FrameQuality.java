@@ -0,0 +1,149 @@
+package com.pipiqiang.qcamera.imaging;
+
+import java.util.Arrays;
+
+/**
+ * 帧质量分析
+ * 在下采样的亮度平面上统计亮度直方图和拉普拉斯方差（清晰度），分析过程不分配内存
+ */
+public final class FrameQuality {
+
+    public enum Verdict {
+        OK,
+        DARK,          // 镜头遮挡或夜间全黑
+        OVEREXPOSED,   // 大面积过曝
+        BLURRED        // 运动模糊或失焦
+    }
+
+    /** 判定阈值 */
+    public static final class Thresholds {
+        public final int minMeanLuma;           // 平均亮度下限（0-255）
+        public final float maxOverexposedRatio; // 过曝像素比例上限（0-1）
+        public final float minSharpness;        // 拉普拉斯方差下限
+
+        public Thresholds(int minMeanLuma, float maxOverexposedRatio, float minSharpness) {
+            this.minMeanLuma = minMeanLuma;
+            this.maxOverexposedRatio = maxOverexposedRatio;
+            this.minSharpness = minSharpness;
+        }
+    }
+
+    private static final int DARK_LEVEL = 16;
+    private static final int BRIGHT_LEVEL = 245;
+
+    private final int[] histogram = new int[256];
+    private int samples;
+    private float meanLuma;
+    private float darkRatio;
+    private float overexposedRatio;
+    private float sharpness;
+
+    /**
+     * 分析亮度平面
+     * @param luma   亮度数据，按无符号字节解释
+     * @param offset 平面起始位置
+     * @param stride 行跨度
+     * @param step   下采样步长，1 表示逐像素
+     */
+    public void analyze(byte[] luma, int offset, int stride, int width, int height, int step) {
+        if (step < 1) {
+            step = 1;
+        }
+        Arrays.fill(histogram, 0);
+        long lapSum = 0;
+        long lapSquares = 0;
+        int lapCount = 0;
+        int count = 0;
+        for (int y = 0; y < height; y += step) {
+            int row = offset + y * stride;
+            boolean inner = y >= step && y + step < height;
+            for (int x = 0; x < width; x += step) {
+                int center = luma[row + x] & 0xFF;
+                histogram[center]++;
+                count++;
+                if (inner && x >= step && x + step < width) {
+                    // 下采样网格上的4邻域拉普拉斯
+                    int lap = 4 * center
+                            - (luma[row + x - step] & 0xFF)
+                            - (luma[row + x + step] & 0xFF)
+                            - (luma[row - step * stride + x] & 0xFF)
+                            - (luma[row + step * stride + x] & 0xFF);
+                    lapSum += lap;
+                    lapSquares += (long) lap * lap;
+                    lapCount++;
+                }
+            }
+        }
+        samples = count;
+        summarize();
+        if (lapCount > 0) {
+            double mean = (double) lapSum / lapCount;
+            sharpness = (float) ((double) lapSquares / lapCount - mean * mean);
+        } else {
+            sharpness = 0;
+        }
+    }
+
+    private void summarize() {
+        if (samples == 0) {
+            meanLuma = 0;
+            darkRatio = 0;
+            overexposedRatio = 0;
+            return;
+        }
+        long sum = 0;
+        int dark = 0;
+        int bright = 0;
+        for (int v = 0; v < 256; v++) {
+            int n = histogram[v];
+            sum += (long) v * n;
+            if (v <= DARK_LEVEL) {
+                dark += n;
+            } else if (v >= BRIGHT_LEVEL) {
+                bright += n;
+            }
+        }
+        meanLuma = (float) sum / samples;
+        darkRatio = (float) dark / samples;
+        overexposedRatio = (float) bright / samples;
+    }
+
+    /**
+     * 按阈值判定最近一次分析的结果，依次检查过暗、过曝、模糊
+     */
+    public Verdict evaluate(Thresholds thresholds) {
+        if (samples == 0) {
+            return Verdict.OK;
+        }
+        if (meanLuma < thresholds.minMeanLuma) {
+            return Verdict.DARK;
+        }
+        if (thresholds.maxOverexposedRatio > 0 && overexposedRatio > thresholds.maxOverexposedRatio) {
+            return Verdict.OVEREXPOSED;
+        }
+        if (sharpness < thresholds.minSharpness) {
+            return Verdict.BLURRED;
+        }
+        return Verdict.OK;
+    }
+
+    public int[] getHistogram() {
+        return histogram;
+    }
+
+    public float getMeanLuma() {
+        return meanLuma;
+    }
+
+    public float getDarkRatio() {
+        return darkRatio;
+    }
+
+    public float getOverexposedRatio() {
+        return overexposedRatio;
+    }
+
+    public float getSharpness() {
+        return sharpness;
+    }
+}
@@ -0,0 +1,236 @@
+package com.pipiqiang.qcamera.imaging;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 多帧叠加降噪
+ * 先用行/列投影做全局平移对齐，再按块在 ForkJoinPool 上并行做均值或中值合成
+ */
+public final class FrameStacker {
+
+    public enum Mode {
+        MEAN,
+        MEDIAN
+    }
+
+    private static final int DEFAULT_TILE_SIZE = 64;
+
+    private final ForkJoinPool pool;
+    private final int tileSize;
+
+    public FrameStacker(ForkJoinPool pool) {
+        this(pool, DEFAULT_TILE_SIZE);
+    }
+
+    public FrameStacker(ForkJoinPool pool, int tileSize) {
+        this.pool = pool;
+        this.tileSize = tileSize > 0 ? tileSize : DEFAULT_TILE_SIZE;
+    }
+
+    /**
+     * 估计 frame 相对 ref 的全局平移：frame(x + dx, y + dy) 对应 ref(x, y)
+     * 使用单通道平面的行、列投影，在 [-maxShift, maxShift] 范围内分别搜索使平均绝对差最小的位移
+     * @return {dx, dy}
+     */
+    public static int[] estimateShift(short[] ref, short[] frame, int offset, int width, int height, int maxShift) {
+        long[] refCols = new long[width];
+        long[] refRows = new long[height];
+        long[] colProfile = new long[width];
+        long[] rowProfile = new long[height];
+        project(ref, offset, width, height, refCols, refRows);
+        project(frame, offset, width, height, colProfile, rowProfile);
+        int dx = bestShift(refCols, colProfile, maxShift);
+        int dy = bestShift(refRows, rowProfile, maxShift);
+        return new int[]{dx, dy};
+    }
+
+    private static void project(short[] plane, int offset, int width, int height, long[] cols, long[] rows) {
+        for (int y = 0; y < height; y++) {
+            int index = offset + y * width;
+            long rowSum = 0;
+            for (int x = 0; x < width; x++) {
+                int v = plane[index + x];
+                rowSum += v;
+                cols[x] += v;
+            }
+            rows[y] = rowSum;
+        }
+    }
+
+    private static int bestShift(long[] ref, long[] profile, int maxShift) {
+        int length = ref.length;
+        int limit = Math.min(maxShift, length / 4);
+        int best = 0;
+        double bestCost = Double.MAX_VALUE;
+        for (int shift = -limit; shift <= limit; shift++) {
+            int from = Math.max(0, -shift);
+            int to = Math.min(length, length - shift);
+            long cost = 0;
+            for (int i = from; i < to; i++) {
+                cost += Math.abs(ref[i] - profile[i + shift]);
+            }
+            double normalized = (double) cost / (to - from);
+            // 代价相同时偏向较小的位移
+            if (normalized < bestCost || (normalized == bestCost && Math.abs(shift) < Math.abs(best))) {
+                bestCost = normalized;
+                best = shift;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 合成一个平面
+     * @param frames   输入帧，frames[0] 为参考帧
+     * @param offset   平面在数组中的起始位置
+     * @param width    平面宽度（像素）
+     * @param height   平面高度（像素）
+     * @param channels 每个像素的交错通道数（Y 为1，NV21 的 VU 为2）
+     * @param dx       各帧在本平面坐标下的水平位移，null 表示不对齐
+     * @param dy       各帧在本平面坐标下的垂直位移，null 表示不对齐
+     * @param out      输出数组，与输入布局相同
+     */
+    public void mergePlane(short[][] frames, int frameCount, int offset, int width, int height, int channels,
+                           int[] dx, int[] dy, Mode mode, short[] out) {
+        List<TileTask> tasks = new ArrayList<>();
+        for (int y = 0; y < height; y += tileSize) {
+            for (int x = 0; x < width; x += tileSize) {
+                tasks.add(new TileTask(frames, frameCount, offset, width, height, channels, dx, dy, mode, out,
+                        x, y, Math.min(width, x + tileSize), Math.min(height, y + tileSize)));
+            }
+        }
+        pool.invoke(new TileBatch(tasks));
+    }
+
+    private static class TileBatch extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<TileTask> tasks;
+
+        TileBatch(List<TileTask> tasks) {
+            this.tasks = tasks;
+        }
+
+        @Override
+        protected void compute() {
+            invokeAll(tasks);
+        }
+    }
+
+    private static class TileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final short[][] frames;
+        private final int frameCount;
+        private final int offset;
+        private final int width;
+        private final int height;
+        private final int channels;
+        private final int[] dx;
+        private final int[] dy;
+        private final Mode mode;
+        private final short[] out;
+        private final int x0;
+        private final int y0;
+        private final int x1;
+        private final int y1;
+
+        TileTask(short[][] frames, int frameCount, int offset, int width, int height, int channels,
+                 int[] dx, int[] dy, Mode mode, short[] out, int x0, int y0, int x1, int y1) {
+            this.frames = frames;
+            this.frameCount = frameCount;
+            this.offset = offset;
+            this.width = width;
+            this.height = height;
+            this.channels = channels;
+            this.dx = dx;
+            this.dy = dy;
+            this.mode = mode;
+            this.out = out;
+            this.x0 = x0;
+            this.y0 = y0;
+            this.x1 = x1;
+            this.y1 = y1;
+        }
+
+        @Override
+        protected void compute() {
+            int[] samples = new int[frameCount];
+            int rowStride = width * channels;
+            for (int y = y0; y < y1; y++) {
+                for (int x = x0; x < x1; x++) {
+                    for (int c = 0; c < channels; c++) {
+                        for (int f = 0; f < frameCount; f++) {
+                            // 位移后超出边界的采样取边缘像素
+                            int sx = clamp(x + (dx != null ? dx[f] : 0), width);
+                            int sy = clamp(y + (dy != null ? dy[f] : 0), height);
+                            samples[f] = frames[f][offset + sy * rowStride + sx * channels + c];
+                        }
+                        out[offset + y * rowStride + x * channels + c] = (short) (mode == Mode.MEDIAN
+                                ? median(samples, frameCount)
+                                : mean(samples, frameCount));
+                    }
+                }
+            }
+        }
+
+        private static int clamp(int value, int size) {
+            return value < 0 ? 0 : (value >= size ? size - 1 : value);
+        }
+
+        private static int mean(int[] samples, int count) {
+            int sum = 0;
+            for (int i = 0; i < count; i++) {
+                sum += samples[i];
+            }
+            return (sum + count / 2) / count;
+        }
+
+        // 帧数很少，插入排序即可
+        private static int median(int[] samples, int count) {
+            for (int i = 1; i < count; i++) {
+                int v = samples[i];
+                int j = i - 1;
+                while (j >= 0 && samples[j] > v) {
+                    samples[j + 1] = samples[j];
+                    j--;
+                }
+                samples[j + 1] = v;
+            }
+            if ((count & 1) == 1) {
+                return samples[count / 2];
+            }
+            return (samples[count / 2 - 1] + samples[count / 2] + 1) / 2;
+        }
+    }
+
+    /**
+     * 合成 NV21 帧：在 Y 平面估计位移，VU 平面使用减半的位移
+     * @param alignFrames 是否做全局对齐
+     * @param maxShift    Y 平面上的最大搜索位移（像素）
+     */
+    public void mergeNv21(short[][] frames, int frameCount, int width, int height, boolean alignFrames,
+                          int maxShift, Mode mode, short[] out) {
+        int[] dx = new int[frameCount];
+        int[] dy = new int[frameCount];
+        if (alignFrames) {
+            for (int f = 1; f < frameCount; f++) {
+                int[] shift = estimateShift(frames[0], frames[f], 0, width, height, maxShift);
+                // 保持偶数位移，使色度与亮度对齐
+                dx[f] = shift[0] & ~1;
+                dy[f] = shift[1] & ~1;
+            }
+        }
+        mergePlane(frames, frameCount, 0, width, height, 1, dx, dy, mode, out);
+        int[] cdx = new int[frameCount];
+        int[] cdy = new int[frameCount];
+        for (int f = 0; f < frameCount; f++) {
+            cdx[f] = dx[f] / 2;
+            cdy[f] = dy[f] / 2;
+        }
+        mergePlane(frames, frameCount, width * height, width / 2, height / 2, 2, cdx, cdy, mode, out);
+    }
+}
@@ -0,0 +1,47 @@
+package com.pipiqiang.qcamera.imaging;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 图像后处理使用的线程池
+ * 分块计算使用固定并行度的 ForkJoinPool（不超过CPU核数），
+ * 整张图像的处理流程在单独的后处理线程上串行执行，不占用相机线程
+ */
+public final class ImagingPools {
+
+    private static ForkJoinPool tilePool;
+    private static ExecutorService postProcessExecutor;
+
+    private ImagingPools() {
+    }
+
+    /**
+     * 分块并行计算使用的线程池
+     */
+    public static synchronized ForkJoinPool tilePool() {
+        if (tilePool == null) {
+            tilePool = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors()));
+        }
+        return tilePool;
+    }
+
+    /**
+     * 后处理流程（对齐、合成、编码）使用的单线程执行器，按提交顺序处理
+     */
+    public static synchronized ExecutorService postProcessExecutor() {
+        if (postProcessExecutor == null) {
+            postProcessExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "ImagingPostProcess");
+                    thread.setPriority(Thread.NORM_PRIORITY - 1);
+                    return thread;
+                }
+            });
+        }
+        return postProcessExecutor;
+    }
+}
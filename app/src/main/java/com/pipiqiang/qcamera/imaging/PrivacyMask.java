@@ -0,0 +1,254 @@
+package com.pipiqiang.qcamera.imaging;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 隐私遮挡
+ * 遮挡区域在配置时编译为每行的像素区间，拍照时直接在 NV21 平面上按区间填充黑色
+ */
+public final class PrivacyMask {
+
+    private static final byte BLACK_LUMA = 0;
+    private static final byte NEUTRAL_CHROMA = (byte) 128;
+
+    private final int width;
+    private final int height;
+    // 第 y 行的区间为 spans[rowStart[y] .. rowStart[y + 1])，每两个数为 [x0, x1)
+    private final int[] lumaRowStart;
+    private final int[] lumaSpans;
+    private final int[] chromaRowStart;
+    private final int[] chromaSpans;
+
+    private PrivacyMask(int width, int height, int[] lumaRowStart, int[] lumaSpans,
+                        int[] chromaRowStart, int[] chromaSpans) {
+        this.width = width;
+        this.height = height;
+        this.lumaRowStart = lumaRowStart;
+        this.lumaSpans = lumaSpans;
+        this.chromaRowStart = chromaRowStart;
+        this.chromaSpans = chromaSpans;
+    }
+
+    /**
+     * 解析遮挡配置，坐标为照片上的归一化坐标（0-1）
+     * 格式："rect:左,上,右,下;poly:x1,y1,x2,y2,x3,y3..."，格式错误的条目被忽略
+     * @return 多边形列表，每个多边形为 {x1, y1, x2, y2, ...}
+     */
+    public static List<float[]> parse(String spec) {
+        List<float[]> polygons = new ArrayList<>();
+        if (spec == null) {
+            return polygons;
+        }
+        for (String entry : spec.split(";")) {
+            int colon = entry.indexOf(':');
+            if (colon <= 0) {
+                continue;
+            }
+            String type = entry.substring(0, colon).trim();
+            float[] values = parseNumbers(entry.substring(colon + 1));
+            if (values == null) {
+                continue;
+            }
+            if ("rect".equals(type) && values.length == 4 && values[2] > values[0] && values[3] > values[1]) {
+                polygons.add(new float[]{
+                        values[0], values[1],
+                        values[2], values[1],
+                        values[2], values[3],
+                        values[0], values[3]});
+            } else if ("poly".equals(type) && values.length >= 6 && values.length % 2 == 0) {
+                polygons.add(values);
+            }
+        }
+        return polygons;
+    }
+
+    private static float[] parseNumbers(String text) {
+        String[] parts = text.split(",");
+        float[] values = new float[parts.length];
+        try {
+            for (int i = 0; i < parts.length; i++) {
+                values[i] = Float.parseFloat(parts[i].trim());
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return values;
+    }
+
+    /**
+     * 将照片坐标下的多边形换算到传感器输出帧坐标
+     * @param rotationDegrees 照片相对传感器输出顺时针旋转的角度（EXIF方向），取0/90/180/270
+     */
+    public static float[] toSensorCoordinates(float[] polygon, int rotationDegrees) {
+        float[] result = new float[polygon.length];
+        for (int i = 0; i < polygon.length; i += 2) {
+            float u = polygon[i];
+            float v = polygon[i + 1];
+            float x;
+            float y;
+            switch (rotationDegrees) {
+                case 90:
+                    x = v;
+                    y = 1 - u;
+                    break;
+                case 180:
+                    x = 1 - u;
+                    y = 1 - v;
+                    break;
+                case 270:
+                    x = 1 - v;
+                    y = u;
+                    break;
+                default:
+                    x = u;
+                    y = v;
+                    break;
+            }
+            result[i] = x;
+            result[i + 1] = y;
+        }
+        return result;
+    }
+
+    /**
+     * 按帧尺寸编译行区间表（配置变化或帧尺寸变化时调用一次）
+     * @param polygons 传感器输出帧坐标下的归一化多边形
+     */
+    public static PrivacyMask compile(List<float[]> polygons, int width, int height) {
+        List<List<int[]>> rows = new ArrayList<>(height);
+        float[] crossings = new float[16];
+        for (int y = 0; y < height; y++) {
+            List<int[]> spans = new ArrayList<>();
+            float yc = (y + 0.5f) / height;
+            for (float[] polygon : polygons) {
+                int count = 0;
+                int points = polygon.length / 2;
+                for (int i = 0; i < points; i++) {
+                    float x1 = polygon[2 * i];
+                    float y1 = polygon[2 * i + 1];
+                    float x2 = polygon[2 * ((i + 1) % points)];
+                    float y2 = polygon[2 * ((i + 1) % points) + 1];
+                    if ((y1 <= yc && yc < y2) || (y2 <= yc && yc < y1)) {
+                        if (count == crossings.length) {
+                            crossings = Arrays.copyOf(crossings, count * 2);
+                        }
+                        crossings[count++] = x1 + (yc - y1) * (x2 - x1) / (y2 - y1);
+                    }
+                }
+                Arrays.sort(crossings, 0, count);
+                // 奇偶规则：相邻两个交点之间为内部
+                for (int i = 0; i + 1 < count; i += 2) {
+                    int x0 = clamp(Math.round(crossings[i] * width), width);
+                    int x1 = clamp(Math.round(crossings[i + 1] * width), width);
+                    if (x1 > x0) {
+                        spans.add(new int[]{x0, x1});
+                    }
+                }
+            }
+            rows.add(merge(spans));
+        }
+
+        int[] lumaRowStart = new int[height + 1];
+        int[] lumaSpans = flatten(rows, lumaRowStart);
+
+        // 色度行覆盖两行亮度，取两行区间的并集并换算到色度列
+        int chromaHeight = (height + 1) / 2;
+        List<List<int[]>> chromaRows = new ArrayList<>(chromaHeight);
+        for (int cy = 0; cy < chromaHeight; cy++) {
+            List<int[]> spans = new ArrayList<>();
+            for (int y = 2 * cy; y < Math.min(height, 2 * cy + 2); y++) {
+                for (int[] span : rows.get(y)) {
+                    spans.add(new int[]{span[0] / 2, (span[1] + 1) / 2});
+                }
+            }
+            chromaRows.add(merge(spans));
+        }
+        int[] chromaRowStart = new int[chromaHeight + 1];
+        int[] chromaSpans = flatten(chromaRows, chromaRowStart);
+        return new PrivacyMask(width, height, lumaRowStart, lumaSpans, chromaRowStart, chromaSpans);
+    }
+
+    private static int clamp(int value, int size) {
+        return value < 0 ? 0 : (value > size ? size : value);
+    }
+
+    private static List<int[]> merge(List<int[]> spans) {
+        if (spans.size() < 2) {
+            return spans;
+        }
+        Collections.sort(spans, new Comparator<int[]>() {
+            @Override
+            public int compare(int[] a, int[] b) {
+                return a[0] - b[0];
+            }
+        });
+        List<int[]> merged = new ArrayList<>();
+        int[] current = spans.get(0);
+        for (int i = 1; i < spans.size(); i++) {
+            int[] next = spans.get(i);
+            if (next[0] <= current[1]) {
+                current = new int[]{current[0], Math.max(current[1], next[1])};
+            } else {
+                merged.add(current);
+                current = next;
+            }
+        }
+        merged.add(current);
+        return merged;
+    }
+
+    private static int[] flatten(List<List<int[]>> rows, int[] rowStart) {
+        int total = 0;
+        for (List<int[]> row : rows) {
+            total += row.size() * 2;
+        }
+        int[] spans = new int[total];
+        int index = 0;
+        for (int y = 0; y < rows.size(); y++) {
+            rowStart[y] = index;
+            for (int[] span : rows.get(y)) {
+                spans[index++] = span[0];
+                spans[index++] = span[1];
+            }
+        }
+        rowStart[rows.size()] = index;
+        return spans;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public boolean isEmpty() {
+        return lumaSpans.length == 0;
+    }
+
+    /**
+     * 在 NV21 帧上填充遮挡区域（亮度置黑，色度置中性）
+     */
+    public void applyNv21(byte[] nv21) {
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            for (int i = lumaRowStart[y]; i < lumaRowStart[y + 1]; i += 2) {
+                Arrays.fill(nv21, row + lumaSpans[i], row + lumaSpans[i + 1], BLACK_LUMA);
+            }
+        }
+        int chromaOffset = width * height;
+        int chromaStride = 2 * ((width + 1) / 2);
+        int chromaHeight = (height + 1) / 2;
+        for (int cy = 0; cy < chromaHeight; cy++) {
+            int row = chromaOffset + cy * chromaStride;
+            for (int i = chromaRowStart[cy]; i < chromaRowStart[cy + 1]; i += 2) {
+                Arrays.fill(nv21, row + 2 * chromaSpans[i], row + 2 * chromaSpans[i + 1], NEUTRAL_CHROMA);
+            }
+        }
+    }
+}
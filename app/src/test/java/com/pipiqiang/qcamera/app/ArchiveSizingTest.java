@@ -0,0 +1,35 @@
+package com.pipiqiang.qcamera.app;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ArchiveSizingTest {
+
+    @Test
+    public void testNeedsDownscale() {
+        assertTrue(ArchiveSizing.needsDownscale(4000, 3000, 1600));
+        assertFalse(ArchiveSizing.needsDownscale(1600, 1200, 1600));
+        assertFalse(ArchiveSizing.needsDownscale(4000, 3000, 0));
+    }
+
+    @Test
+    public void testSampleSizeKeepsLongEdgeAboveTarget() {
+        assertEquals(2, ArchiveSizing.sampleSize(4000, 3000, 1600));
+        assertEquals(4, ArchiveSizing.sampleSize(4000, 3000, 1000));
+        assertEquals(1, ArchiveSizing.sampleSize(1920, 1080, 1600));
+        // 竖拍照片按长边计算
+        assertEquals(2, ArchiveSizing.sampleSize(3000, 4000, 1600));
+        assertTrue(4000 / ArchiveSizing.sampleSize(4000, 3000, 1600) >= 1600);
+    }
+
+    @Test
+    public void testTargetSizeKeepsAspectRatio() {
+        assertArrayEquals(new int[]{1600, 1200}, ArchiveSizing.targetSize(4000, 3000, 1600));
+        assertArrayEquals(new int[]{900, 1600}, ArchiveSizing.targetSize(2250, 4000, 1600));
+        assertArrayEquals(new int[]{800, 600}, ArchiveSizing.targetSize(800, 600, 1600));
+    }
+}
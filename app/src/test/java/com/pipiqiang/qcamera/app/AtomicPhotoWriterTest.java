@@ -0,0 +1,239 @@
+package com.pipiqiang.qcamera.app;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AtomicPhotoWriterTest {
+
+    private File root;
+    private File journal;
+    private File photos;
+
+    @Before
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("atomic_writer").toFile();
+        journal = new File(root, "journal");
+        photos = new File(root, "photos");
+        assertTrue(photos.mkdirs());
+    }
+
+    @After
+    public void tearDown() {
+        deleteRecursively(root);
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static int markerCount(File dir) {
+        File[] files = dir.listFiles();
+        return files == null ? 0 : files.length;
+    }
+
+    @Test
+    public void testCommitRenamesTempFile() throws IOException {
+        AtomicPhotoWriter writer = new AtomicPhotoWriter(journal);
+        writer.setSyncPolicy(AtomicPhotoWriter.SYNC_PER_FILE, 1, 0);
+        File target = new File(photos, "IMG_1.jpg");
+
+        AtomicPhotoWriter.Pending pending = writer.begin(target);
+        pending.getOutputStream().write(new byte[]{1, 2, 3});
+        assertFalse(target.exists());
+        assertTrue(pending.getTempFile().exists());
+        assertEquals(1, markerCount(journal));
+
+        pending.commit();
+        assertTrue(target.exists());
+        assertEquals(3, target.length());
+        assertFalse(AtomicPhotoWriter.tempFor(target).exists());
+        assertEquals(0, markerCount(journal));
+
+        // 已提交后 abort 不删除照片
+        pending.abort();
+        assertTrue(target.exists());
+    }
+
+    @Test
+    public void testPerFileSyncRunsAfterEditsAndSyncsDirectory() throws IOException {
+        final List<File> syncedDirs = new ArrayList<>();
+        AtomicPhotoWriter writer = new AtomicPhotoWriter(journal) {
+            @Override
+            protected void syncDirectory(File dir) {
+                // 目录同步时照片必须已经重命名到位
+                assertTrue(new File(dir, "IMG_2.jpg").exists());
+                syncedDirs.add(dir);
+            }
+        };
+        writer.setSyncPolicy(AtomicPhotoWriter.SYNC_PER_FILE, 1, 0);
+        File target = new File(photos, "IMG_2.jpg");
+
+        AtomicPhotoWriter.Pending pending = writer.begin(target);
+        pending.getOutputStream().write(new byte[]{1, 2, 3});
+        pending.closeStream();
+        // 关闭后修改临时文件（模拟写 EXIF）
+        FileOutputStream edit = new FileOutputStream(pending.getTempFile(), true);
+        edit.write(new byte[]{4, 5});
+        edit.close();
+        assertTrue(syncedDirs.isEmpty());
+
+        pending.commit();
+        assertEquals(5, target.length());
+        assertEquals(1, syncedDirs.size());
+        assertEquals(photos.getAbsoluteFile(), syncedDirs.get(0).getAbsoluteFile());
+    }
+
+    @Test
+    public void testBatchedFlushSyncsEachDirectoryOnce() throws IOException {
+        final List<File> syncedDirs = new ArrayList<>();
+        AtomicPhotoWriter writer = new AtomicPhotoWriter(journal) {
+            @Override
+            protected void syncDirectory(File dir) {
+                syncedDirs.add(dir);
+            }
+        };
+        writer.setSyncPolicy(AtomicPhotoWriter.SYNC_BATCHED, 100, 60 * 1000L);
+        for (int i = 0; i < 3; i++) {
+            AtomicPhotoWriter.Pending pending = writer.begin(new File(photos, "IMG_B" + i + ".jpg"));
+            pending.getOutputStream().write(new byte[]{1});
+            pending.commit();
+        }
+        assertTrue(syncedDirs.isEmpty());
+        writer.flush();
+        assertEquals(1, syncedDirs.size());
+    }
+
+    @Test
+    public void testBatchedCommitSchedulesDelayedFlush() throws IOException {
+        final List<File> syncedDirs = new ArrayList<>();
+        final List<Long> scheduled = new ArrayList<>();
+        final int[] cancelled = {0};
+        AtomicPhotoWriter writer = new AtomicPhotoWriter(journal) {
+            @Override
+            protected void syncDirectory(File dir) {
+                syncedDirs.add(dir);
+            }
+
+            @Override
+            protected void scheduleFlush(long delayMs) {
+                scheduled.add(delayMs);
+            }
+
+            @Override
+            protected void cancelScheduledFlush() {
+                cancelled[0]++;
+            }
+        };
+        writer.setSyncPolicy(AtomicPhotoWriter.SYNC_BATCHED, 100, 60 * 1000L);
+        for (int i = 0; i < 2; i++) {
+            AtomicPhotoWriter.Pending pending = writer.begin(new File(photos, "IMG_D" + i + ".jpg"));
+            pending.getOutputStream().write(new byte[]{1});
+            pending.commit();
+        }
+        // 一批只安排一次，延迟不超过批量时间
+        assertEquals(1, scheduled.size());
+        assertTrue(scheduled.get(0) <= 60 * 1000L);
+        assertTrue(syncedDirs.isEmpty());
+
+        // 到时刷新（或停止拍照时刷新）后取消安排，下一批重新安排
+        writer.flush();
+        assertEquals(1, syncedDirs.size());
+        assertEquals(1, cancelled[0]);
+        AtomicPhotoWriter.Pending pending = writer.begin(new File(photos, "IMG_D2.jpg"));
+        pending.getOutputStream().write(new byte[]{1});
+        pending.commit();
+        assertEquals(2, scheduled.size());
+    }
+
+    @Test
+    public void testContentHashComputedWhileWriting() throws IOException {
+        AtomicPhotoWriter writer = new AtomicPhotoWriter(journal);
+        File target = new File(photos, "IMG_6.jpg");
+
+        AtomicPhotoWriter.Pending pending = writer.begin(target);
+        pending.getOutputStream().write(new byte[]{1, 2, 3});
+        pending.commit();
+        assertEquals(ContentHash.of(target), pending.getContentHash());
+    }
+
+    @Test
+    public void testContentHashRecomputedAfterEdit() throws IOException {
+        AtomicPhotoWriter writer = new AtomicPhotoWriter(journal);
+        File target = new File(photos, "IMG_7.jpg");
+
+        AtomicPhotoWriter.Pending pending = writer.begin(target);
+        pending.getOutputStream().write(new byte[]{1, 2, 3});
+        pending.closeStream();
+        // 模拟写入后修改EXIF（长度不变）
+        FileOutputStream edit = new FileOutputStream(pending.getTempFile());
+        edit.write(new byte[]{4, 5, 6});
+        edit.close();
+        pending.commit();
+        assertEquals(ContentHash.of(target), pending.getContentHash());
+    }
+
+    @Test
+    public void testAbortDeletesTempFile() throws IOException {
+        AtomicPhotoWriter writer = new AtomicPhotoWriter(journal);
+        File target = new File(photos, "IMG_2.jpg");
+
+        AtomicPhotoWriter.Pending pending = writer.begin(target);
+        pending.getOutputStream().write(new byte[]{1, 2, 3});
+        pending.abort();
+        assertFalse(target.exists());
+        assertFalse(pending.getTempFile().exists());
+        assertEquals(0, markerCount(journal));
+    }
+
+    @Test
+    public void testRecoverFromPreviousSession() throws IOException {
+        AtomicPhotoWriter crashed = new AtomicPhotoWriter(journal);
+        crashed.setSyncPolicy(AtomicPhotoWriter.SYNC_BATCHED, 100, 60 * 1000L);
+
+        // 写到一半被杀：只有临时文件和标记
+        File interrupted = new File(photos, "IMG_3.jpg");
+        crashed.begin(interrupted).getOutputStream().write(new byte[]{1});
+
+        // 重命名后、删除标记前被杀：模拟为最终文件已存在
+        File renamed = new File(photos, "IMG_4.jpg");
+        AtomicPhotoWriter.Pending pending = crashed.begin(renamed);
+        pending.closeStream();
+        assertTrue(pending.getTempFile().renameTo(renamed));
+
+        AtomicPhotoWriter restarted = new AtomicPhotoWriter(journal);
+        // 本进程自己正在进行的写入不参与恢复
+        File inFlight = new File(photos, "IMG_5.jpg");
+        AtomicPhotoWriter.Pending current = restarted.begin(inFlight);
+
+        AtomicPhotoWriter.Recovery recovery = restarted.recover();
+        assertEquals(1, recovery.committed.size());
+        assertEquals(renamed.getAbsolutePath(), recovery.committed.get(0).getAbsolutePath());
+        assertEquals(1, recovery.abandoned.size());
+        assertEquals(interrupted.getAbsolutePath(), recovery.abandoned.get(0).getAbsolutePath());
+        assertFalse(AtomicPhotoWriter.tempFor(interrupted).exists());
+        assertTrue(current.getTempFile().exists());
+        assertEquals(1, markerCount(journal));
+
+        current.commit();
+        assertTrue(inFlight.exists());
+        assertTrue(restarted.recover().committed.isEmpty());
+    }
+}
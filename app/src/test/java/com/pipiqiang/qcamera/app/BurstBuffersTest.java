@@ -0,0 +1,50 @@
+package com.pipiqiang.qcamera.app;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BurstBuffersTest {
+
+    @Test
+    public void testSharedBetweenProcessorsOneAtATime() {
+        Object lowLight = new Object();
+        Object hdr = new Object();
+        BurstBuffers first = BurstBuffers.acquire(lowLight, 96, 4);
+        assertNotNull(first);
+        assertTrue(BurstBuffers.isHeldByOther(hdr));
+        assertNull(BurstBuffers.acquire(hdr, 96, 3));
+
+        BurstBuffers.release(lowLight);
+        assertFalse(BurstBuffers.isHeldByOther(hdr));
+        // 帧数足够时复用同一套缓冲区
+        assertSame(first, BurstBuffers.acquire(hdr, 96, 3));
+        BurstBuffers.release(hdr);
+    }
+
+    @Test
+    public void testReallocatesWhenTooSmall() {
+        Object processor = new Object();
+        BurstBuffers small = BurstBuffers.acquire(processor, 96, 2);
+        BurstBuffers.release(processor);
+        BurstBuffers larger = BurstBuffers.acquire(processor, 96, 5);
+        assertEquals(5, larger.frames.length);
+        assertFalse(small == larger);
+        BurstBuffers resized = BurstBuffers.acquire(processor, 150, 2);
+        assertEquals(150, resized.merged.length);
+        BurstBuffers.release(processor);
+    }
+
+    @Test
+    public void testMaxFramesFitsBudget() {
+        int size = 1920 * 1440 * 3 / 2;
+        // 每帧约8MB，64MB中扣除合成缓冲和NV21缓冲
+        assertEquals(6, BurstBuffers.maxFrames(size, 64L * 1024 * 1024));
+        assertEquals(2, BurstBuffers.maxFrames(size, 8L * 1024 * 1024));
+    }
+}
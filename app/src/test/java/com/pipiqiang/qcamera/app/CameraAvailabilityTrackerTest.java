@@ -0,0 +1,18 @@
+package com.pipiqiang.qcamera.app;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class CameraAvailabilityTrackerTest {
+
+    @Test
+    public void testBackoffGrowsExponentiallyAndIsCapped() {
+        assertEquals(0, CameraAvailabilityTracker.backoffDelayMs(0));
+        assertEquals(500, CameraAvailabilityTracker.backoffDelayMs(1));
+        assertEquals(1000, CameraAvailabilityTracker.backoffDelayMs(2));
+        assertEquals(4000, CameraAvailabilityTracker.backoffDelayMs(4));
+        assertEquals(30000, CameraAvailabilityTracker.backoffDelayMs(7));
+        assertEquals(30000, CameraAvailabilityTracker.backoffDelayMs(100));
+    }
+}
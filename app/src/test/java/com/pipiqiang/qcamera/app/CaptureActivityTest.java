@@ -0,0 +1,35 @@
+package com.pipiqiang.qcamera.app;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CaptureActivityTest {
+
+    @Test
+    public void testRepeatedEndOnlyEndsItsOwnCapture() {
+        assertFalse(CaptureActivity.isCapturing());
+        long first = CaptureActivity.begin();
+        long second = CaptureActivity.begin();
+        assertTrue(CaptureActivity.isCapturing());
+        // 例如连拍中多帧失败，同一次拍照结束多次
+        CaptureActivity.end(first);
+        CaptureActivity.end(first);
+        assertTrue(CaptureActivity.isCapturing());
+        CaptureActivity.end(second);
+        assertFalse(CaptureActivity.isCapturing());
+    }
+
+    @Test
+    public void testLostCaptureExpiresOnItsOwn() {
+        long start = 1000000000L;
+        long lost = CaptureActivity.begin(start);
+        // 之后不断开始新的拍照，不会让丢失回调的那次一直有效
+        long later = CaptureActivity.begin(start + (CaptureActivity.MAX_CAPTURE_MS - 1000) * 1000000L);
+        CaptureActivity.end(later);
+        assertTrue(CaptureActivity.isCapturing(start + 1000000L));
+        assertFalse(CaptureActivity.isCapturing(start + CaptureActivity.MAX_CAPTURE_MS * 1000000L));
+        CaptureActivity.end(lost);
+    }
+}
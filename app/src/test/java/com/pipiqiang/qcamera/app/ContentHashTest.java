@@ -0,0 +1,34 @@
+package com.pipiqiang.qcamera.app;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertEquals;
+
+public class ContentHashTest {
+
+    private static final String ABC_SHA256 = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+
+    @Test
+    public void testToHexMatchesKnownVector() {
+        byte[] hash = ContentHash.newDigest().digest("abc".getBytes(Charset.forName("UTF-8")));
+        assertEquals(ABC_SHA256, ContentHash.toHex(hash));
+    }
+
+    @Test
+    public void testHashOfFile() throws IOException {
+        File file = File.createTempFile("content_hash", ".jpg");
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            out.write("abc".getBytes(Charset.forName("UTF-8")));
+            out.close();
+            assertEquals(ABC_SHA256, ContentHash.of(file));
+        } finally {
+            file.delete();
+        }
+    }
+}
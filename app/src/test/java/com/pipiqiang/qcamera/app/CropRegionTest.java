@@ -0,0 +1,67 @@
+package com.pipiqiang.qcamera.app;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class CropRegionTest {
+
+    @Test
+    public void testForCameraPicksMatchingEntry() {
+        String config = "0:0.25,0.4,0.75,0.8; 1:0,0,0.5,0.5";
+        CropRegion back = CropRegion.forCamera(config, 0);
+        assertNotNull(back);
+        assertEquals(0.25f, back.left, 1e-6);
+        assertEquals(0.8f, back.bottom, 1e-6);
+        CropRegion front = CropRegion.forCamera(config, 1);
+        assertNotNull(front);
+        assertEquals(0.5f, front.right, 1e-6);
+        assertNull(CropRegion.forCamera(config, 2));
+        assertNull(CropRegion.forCamera("", 0));
+    }
+
+    @Test
+    public void testInvalidRegionsAreRejected() {
+        assertNull(CropRegion.parse("0.5,0.5,0.4,0.9"));   // 左大于右
+        assertNull(CropRegion.parse("0,0,1.2,1"));         // 超出范围
+        assertNull(CropRegion.parse("0,0,1"));             // 缺少坐标
+        assertNull(CropRegion.parse("a,0,1,1"));
+        assertNull(CropRegion.parse("0,0,1,1"));           // 完整画面不裁剪
+    }
+
+    @Test
+    public void testSensorRectExpandsToOutputAspect() {
+        // 4000x3000 阵列上 1000x1000 的区域，输出 4:3 时宽度扩展到 1333 并取偶数
+        CropRegion region = new CropRegion(0.375f, 1f / 3f, 0.625f, 2f / 3f);
+        int[] rect = region.toSensorRect(4000, 3000, 4.0 / 3.0, 10f);
+        assertEquals(1000, rect[3] - rect[1]);
+        assertEquals(1332, rect[2] - rect[0]);
+        assertEquals(2000, (rect[0] + rect[2]) / 2, 2);
+        assertEquals(1500, (rect[1] + rect[3]) / 2, 2);
+    }
+
+    @Test
+    public void testSensorRectRespectsMaxZoomAndBounds() {
+        // 最大变焦2倍时区域不小于阵列的一半，靠边的区域被移回阵列内
+        CropRegion corner = new CropRegion(0.9f, 0.9f, 1f, 1f);
+        int[] rect = corner.toSensorRect(4000, 3000, 4.0 / 3.0, 2f);
+        assertArrayEquals(new int[]{2000, 1500, 4000, 3000}, rect);
+    }
+
+    @Test
+    public void testPhotoCoordinatesConvertLikePrivacyMask() {
+        // 竖拍照片的左上角区域，在传感器输出（顺时针旋转90度前）位于左下
+        CropRegion photo = new CropRegion(0.1f, 0.2f, 0.5f, 0.6f);
+        CropRegion sensor = photo.toSensorCoordinates(90);
+        assertEquals(0.2f, sensor.left, 1e-6);
+        assertEquals(0.5f, sensor.top, 1e-6);
+        assertEquals(0.6f, sensor.right, 1e-6);
+        assertEquals(0.9f, sensor.bottom, 1e-6);
+        CropRegion same = photo.toSensorCoordinates(0);
+        assertEquals(0.1f, same.left, 1e-6);
+        assertEquals(0.6f, same.bottom, 1e-6);
+    }
+}
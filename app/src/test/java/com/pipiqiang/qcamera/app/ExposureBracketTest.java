@@ -0,0 +1,54 @@
+package com.pipiqiang.qcamera.app;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ExposureBracketTest {
+
+    private static final long MIN_NS = 100000L;          // 0.1ms
+    private static final long MAX_NS = 1000000000L;      // 1s
+    private static final long HANDHELD_NS = 66000000L;   // 66ms
+
+    private static ExposureBracket scale(long ns, int iso, float ev) {
+        return ExposureBracket.scale(ns, iso, ev, MIN_NS, MAX_NS, 100, 3200, HANDHELD_NS);
+    }
+
+    @Test
+    public void testScalesExposureTimeFirst() {
+        ExposureBracket under = scale(10000000L, 200, -2f);
+        assertEquals(2500000L, under.exposureNs);
+        assertEquals(200, under.iso);
+        ExposureBracket over = scale(10000000L, 200, 2f);
+        assertEquals(40000000L, over.exposureNs);
+        assertEquals(200, over.iso);
+        assertEquals(2f, over.evFrom(10000000L, 200), 0.01f);
+    }
+
+    @Test
+    public void testRaisesIsoPastHandheldLimit() {
+        ExposureBracket over = scale(33000000L, 400, 2f);
+        assertEquals(HANDHELD_NS, over.exposureNs);
+        assertEquals(800, over.iso);
+        assertEquals(2f, over.evFrom(33000000L, 400), 0.05f);
+    }
+
+    @Test
+    public void testClampsToDeviceLimits() {
+        // 测光已到最短曝光和最低ISO，欠曝档无法再降低
+        ExposureBracket under = scale(MIN_NS, 100, -2f);
+        assertEquals(MIN_NS, under.exposureNs);
+        assertEquals(100, under.iso);
+        // 暗光下过曝档受ISO上限限制
+        ExposureBracket over = scale(HANDHELD_NS, 3200, 2f);
+        assertEquals(HANDHELD_NS, over.exposureNs);
+        assertEquals(3200, over.iso);
+    }
+
+    @Test
+    public void testInvalidMeteringReturnsNull() {
+        assertNull(scale(0, 100, 2f));
+        assertNull(scale(10000000L, 0, 2f));
+    }
+}
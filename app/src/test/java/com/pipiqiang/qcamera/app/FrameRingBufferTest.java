@@ -0,0 +1,116 @@
+package com.pipiqiang.qcamera.app;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FrameRingBufferTest {
+
+    private static void writeFrame(FrameRingBuffer buffer, long ts, byte value) {
+        ByteBuffer slot = buffer.beginFrame();
+        slot.put(value);
+        slot.put(value);
+        buffer.commitFrame(ts, 2, 1);
+    }
+
+    @Test
+    public void testOverwritesOldestAndDrainsInOrder() throws Exception {
+        FrameRingBuffer buffer = new FrameRingBuffer(3, 16, 0);
+        for (int i = 1; i <= 5; i++) {
+            writeFrame(buffer, i * 100L, (byte) i);
+        }
+        assertEquals(3, buffer.size());
+
+        final List<Long> timestamps = new ArrayList<>();
+        final List<Byte> values = new ArrayList<>();
+        int count = buffer.drainTo(0, Long.MAX_VALUE, new FrameRingBuffer.FrameSink() {
+            @Override
+            public void onFrame(ByteBuffer data, int length, long timestampNs, int width, int height) {
+                assertEquals(2, length);
+                timestamps.add(timestampNs);
+                values.add(data.get(0));
+            }
+        });
+
+        assertEquals(3, count);
+        assertEquals(Long.valueOf(300), timestamps.get(0));
+        assertEquals(Long.valueOf(500), timestamps.get(2));
+        assertEquals(Byte.valueOf((byte) 3), values.get(0));
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void testDrainHonoursWindowAndFrameInterval() throws Exception {
+        FrameRingBuffer buffer = new FrameRingBuffer(8, 16, 100);
+        long[] arrivals = {0, 50, 100, 180, 200, 320};
+        for (long ts : arrivals) {
+            if (buffer.shouldAccept(ts)) {
+                writeFrame(buffer, ts, (byte) 1);
+            }
+        }
+        // 0、100、200、320 被接受
+        assertEquals(4, buffer.size());
+        assertFalse(buffer.shouldAccept(380));
+        assertTrue(buffer.shouldAccept(420));
+
+        final List<Long> timestamps = new ArrayList<>();
+        buffer.drainTo(100, 250, new FrameRingBuffer.FrameSink() {
+            @Override
+            public void onFrame(ByteBuffer data, int length, long timestampNs, int width, int height) {
+                timestamps.add(timestampNs);
+            }
+        });
+        assertEquals(2, timestamps.size());
+        assertEquals(Long.valueOf(100), timestamps.get(0));
+        assertEquals(Long.valueOf(200), timestamps.get(1));
+    }
+
+    @Test
+    public void testFreezeKeepsFramesUntilDrained() throws Exception {
+        FrameRingBuffer buffer = new FrameRingBuffer(2, 4, 0);
+        writeFrame(buffer, 100, (byte) 1);
+        writeFrame(buffer, 200, (byte) 2);
+        buffer.freeze();
+        // 冻结后新帧不覆盖窗口内的帧
+        assertFalse(buffer.shouldAccept(300));
+        assertEquals(null, buffer.beginFrame());
+
+        final List<Byte> values = new ArrayList<>();
+        int count = buffer.drainTo(0, 250, new FrameRingBuffer.FrameSink() {
+            @Override
+            public void onFrame(ByteBuffer data, int length, long timestampNs, int width, int height) {
+                values.add(data.get(0));
+            }
+        });
+        assertEquals(2, count);
+        assertEquals(Byte.valueOf((byte) 1), values.get(0));
+        assertEquals(Byte.valueOf((byte) 2), values.get(1));
+        // 输出完成后恢复接收
+        assertTrue(buffer.shouldAccept(300));
+    }
+
+    @Test
+    public void testDrainSkipsSlotBeingOverwritten() throws Exception {
+        FrameRingBuffer buffer = new FrameRingBuffer(2, 4, 0);
+        writeFrame(buffer, 100, (byte) 1);
+        writeFrame(buffer, 200, (byte) 2);
+        // 冻结前开始写入：覆盖最旧的帧
+        ByteBuffer slot = buffer.beginFrame();
+        slot.put((byte) 3);
+        final List<Long> timestamps = new ArrayList<>();
+        int count = buffer.drainTo(0, Long.MAX_VALUE, new FrameRingBuffer.FrameSink() {
+            @Override
+            public void onFrame(ByteBuffer data, int length, long timestampNs, int width, int height) {
+                timestamps.add(timestampNs);
+            }
+        });
+        assertEquals(1, count);
+        assertEquals(Long.valueOf(200), timestamps.get(0));
+    }
+}
@@ -0,0 +1,111 @@
+package com.pipiqiang.qcamera.app;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class JpegHeaderReaderTest {
+
+    private static final byte[] THUMBNAIL = {(byte) 0xFF, (byte) 0xD8, 1, 2, 3, 4, (byte) 0xFF, (byte) 0xD9};
+
+    // TIFF：IFD0 含方向，IFD1 指向紧随其后的缩略图
+    private static byte[] exifPayload(ByteOrder order, int orientation, byte[] thumbnail) {
+        ByteBuffer tiff = ByteBuffer.allocate(8 + 18 + 30 + thumbnail.length).order(order);
+        tiff.put(order == ByteOrder.LITTLE_ENDIAN ? new byte[]{'I', 'I'} : new byte[]{'M', 'M'});
+        tiff.putShort((short) 42).putInt(8);
+        // IFD0：1 个条目
+        tiff.putShort((short) 1);
+        tiff.putShort((short) 0x0112).putShort((short) 3).putInt(1).putShort((short) orientation).putShort((short) 0);
+        tiff.putInt(26);
+        // IFD1：2 个条目
+        tiff.putShort((short) 2);
+        tiff.putShort((short) 0x0201).putShort((short) 4).putInt(1).putInt(56);
+        tiff.putShort((short) 0x0202).putShort((short) 4).putInt(1).putInt(thumbnail.length);
+        tiff.putInt(0);
+        tiff.put(thumbnail);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write('E');
+        out.write('x');
+        out.write('i');
+        out.write('f');
+        out.write(0);
+        out.write(0);
+        out.write(tiff.array(), 0, tiff.array().length);
+        return out.toByteArray();
+    }
+
+    private static void segment(ByteArrayOutputStream out, int marker, byte[] payload) {
+        out.write(0xFF);
+        out.write(marker);
+        out.write((payload.length + 2) >> 8);
+        out.write((payload.length + 2) & 0xFF);
+        out.write(payload, 0, payload.length);
+    }
+
+    private static byte[] jpeg(byte[] exif, int width, int height) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0xFF);
+        out.write(0xD8);
+        segment(out, 0xE0, new byte[14]); // APP0(JFIF)
+        if (exif != null) {
+            segment(out, 0xE1, exif);
+        }
+        segment(out, 0xDB, new byte[65]); // DQT
+        segment(out, 0xC0, new byte[]{8, (byte) (height >> 8), (byte) height, (byte) (width >> 8), (byte) width, 1, 1, 0x11, 0});
+        segment(out, 0xDA, new byte[8]);
+        byte[] scan = new byte[100];
+        out.write(scan, 0, scan.length);
+        out.write(0xFF);
+        out.write(0xD9);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testReadsSizeOrientationAndThumbnail() throws IOException {
+        byte[] file = jpeg(exifPayload(ByteOrder.LITTLE_ENDIAN, 6, THUMBNAIL), 4000, 3000);
+        JpegHeaderReader.Header header = JpegHeaderReader.read(new ByteArrayInputStream(file));
+        assertEquals(4000, header.width);
+        assertEquals(3000, header.height);
+        assertEquals(6, header.orientation);
+        assertArrayEquals(THUMBNAIL, header.thumbnail);
+    }
+
+    @Test
+    public void testBigEndianExif() throws IOException {
+        byte[] file = jpeg(exifPayload(ByteOrder.BIG_ENDIAN, 3, THUMBNAIL), 640, 480);
+        JpegHeaderReader.Header header = JpegHeaderReader.read(new ByteArrayInputStream(file));
+        assertEquals(3, header.orientation);
+        assertArrayEquals(THUMBNAIL, header.thumbnail);
+        assertTrue(header.hasSize());
+    }
+
+    @Test
+    public void testWithoutExifOnlySize() throws IOException {
+        JpegHeaderReader.Header header = JpegHeaderReader.read(new ByteArrayInputStream(jpeg(null, 1920, 1080)));
+        assertEquals(1920, header.width);
+        assertEquals(1080, header.height);
+        assertEquals(0, header.orientation);
+        assertNull(header.thumbnail);
+    }
+
+    @Test
+    public void testNotJpegAndTruncated() throws IOException {
+        assertNull(JpegHeaderReader.read(new ByteArrayInputStream(new byte[]{'P', 'N', 'G', 0})));
+
+        byte[] file = jpeg(exifPayload(ByteOrder.LITTLE_ENDIAN, 1, THUMBNAIL), 4000, 3000);
+        JpegHeaderReader.Header header = JpegHeaderReader.read(new ByteArrayInputStream(Arrays.copyOf(file, 30)));
+        assertFalse(header.hasSize());
+        assertNull(header.thumbnail);
+    }
+}
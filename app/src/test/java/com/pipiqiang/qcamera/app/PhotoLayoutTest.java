@@ -0,0 +1,89 @@
+package com.pipiqiang.qcamera.app;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PhotoLayoutTest {
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+    // 2024-03-05 07:08:09 UTC
+    private static final long TIME = 1709622489000L;
+
+    private static File tempRoot() {
+        File root = new File(System.getProperty("java.io.tmpdir"), "layout" + System.nanoTime());
+        root.mkdirs();
+        return root;
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    @Test
+    public void testShardDirectoryByHour() {
+        File root = new File("/photos");
+        PhotoLayout layout = new PhotoLayout(root, UTC);
+        assertEquals(new File(root, "2024/03/05/07"), layout.shardDir(TIME));
+        assertEquals(new File(root, "2024/03/05/07"), layout.shardDir(TIME + 50 * 60 * 1000L));
+        assertEquals(new File(root, "2024/03/05/08"), layout.shardDir(TIME + 60 * 60 * 1000L));
+    }
+
+    @Test
+    public void testSameSecondGetsDistinctNames() throws Exception {
+        File root = tempRoot();
+        try {
+            PhotoLayout layout = new PhotoLayout(root, UTC);
+            File first = layout.newPhotoFile(TIME);
+            File second = layout.newPhotoFile(TIME + 300);
+            assertEquals("IMG_20240305_070809_000.jpg", first.getName());
+            assertEquals("IMG_20240305_070809_001.jpg", second.getName());
+            assertTrue(first.getParentFile().isDirectory());
+
+            // 新实例（模拟重启）跳过磁盘上已存在的文件
+            assertTrue(first.createNewFile());
+            PhotoLayout restarted = new PhotoLayout(root, UTC);
+            assertEquals("IMG_20240305_070809_001.jpg", restarted.newPhotoFile(TIME).getName());
+            assertEquals("IMG_20240305_070810_000.jpg", restarted.newPhotoFile(TIME + 1000).getName());
+        } finally {
+            deleteRecursively(root);
+        }
+    }
+
+    @Test
+    public void testMigrationTargetUsesNameTime() throws Exception {
+        File root = tempRoot();
+        try {
+            PhotoLayout layout = new PhotoLayout(root, UTC);
+            File flat = new File(root, "IMG_20240305_070809.jpg");
+            File target = layout.migrationTarget(flat);
+            assertEquals(new File(root, "2024/03/05/07/IMG_20240305_070809.jpg"), target);
+
+            target.getParentFile().mkdirs();
+            assertTrue(target.createNewFile());
+            assertEquals("IMG_20240305_070809_1.jpg", layout.migrationTarget(flat).getName());
+        } finally {
+            deleteRecursively(root);
+        }
+    }
+
+    @Test
+    public void testParseNameTime() {
+        PhotoLayout layout = new PhotoLayout(new File("/photos"), UTC);
+        assertEquals(TIME, layout.parseNameTime("IMG_20240305_070809.jpg"));
+        assertEquals(TIME, layout.parseNameTime("IMG_20240305_070809_003.jpg"));
+        assertEquals(-1, layout.parseNameTime("holiday.jpg"));
+        assertFalse(layout.parseNameTime("IMG_2024.jpg") >= 0);
+    }
+}
@@ -0,0 +1,92 @@
+package com.pipiqiang.qcamera.app;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RetentionPolicyTest {
+
+    private static final long MINUTE = RetentionPolicy.MINUTE_MS;
+    private static final long HOUR = RetentionPolicy.HOUR_MS;
+    private static final long DAY = RetentionPolicy.DAY_MS;
+    private static final long NOW = 20000 * DAY;
+
+    // 从 start 开始每分钟一张
+    private static List<RetentionPolicy.Item> everyMinute(long start, int count) {
+        List<RetentionPolicy.Item> items = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            long ts = start + i * MINUTE;
+            items.add(new RetentionPolicy.Item("/p" + ts + ".jpg", ts));
+        }
+        return items;
+    }
+
+    private static Set<String> paths(List<RetentionPolicy.Item> items) {
+        Set<String> result = new HashSet<>();
+        for (RetentionPolicy.Item item : items) {
+            result.add(item.path);
+        }
+        return result;
+    }
+
+    @Test
+    public void testThinsByTier() {
+        RetentionPolicy policy = RetentionPolicy.timelapse(0, 0);
+        RetentionPolicy.Cursor cursor = new RetentionPolicy.Cursor();
+
+        // 40天前的两小时：每小时保留一张
+        List<RetentionPolicy.Item> old = everyMinute(NOW - 40 * DAY, 120);
+        List<RetentionPolicy.Item> deleted = policy.selectForThinning(old, NOW, cursor);
+        assertEquals(118, deleted.size());
+        assertFalse(cursor.finished);
+
+        // 10天前的一小时：每10分钟保留一张
+        cursor.reset();
+        List<RetentionPolicy.Item> recent = everyMinute(NOW - 10 * DAY, 60);
+        assertEquals(54, policy.selectForThinning(recent, NOW, cursor).size());
+
+        // 24小时内全部保留，并结束本轮扫描
+        cursor.reset();
+        List<RetentionPolicy.Item> today = everyMinute(NOW - HOUR, 30);
+        assertTrue(policy.selectForThinning(today, NOW, cursor).isEmpty());
+        assertTrue(cursor.finished);
+    }
+
+    @Test
+    public void testBatchesMatchSinglePass() {
+        RetentionPolicy policy = RetentionPolicy.timelapse(0, 0);
+        List<RetentionPolicy.Item> all = everyMinute(NOW - 35 * DAY, 500);
+
+        Set<String> single = paths(policy.selectForThinning(all, NOW, new RetentionPolicy.Cursor()));
+
+        // 分成每批7张处理，游标跨批次保存时间桶
+        Set<String> batched = new HashSet<>();
+        RetentionPolicy.Cursor cursor = new RetentionPolicy.Cursor();
+        for (int i = 0; i < all.size(); i += 7) {
+            batched.addAll(paths(policy.selectForThinning(all.subList(i, Math.min(all.size(), i + 7)), NOW, cursor)));
+        }
+        assertEquals(single, batched);
+        assertEquals(all.get(all.size() - 1).timestamp, cursor.timestamp);
+    }
+
+    @Test
+    public void testQuotas() {
+        RetentionPolicy policy = new RetentionPolicy(1000, 10);
+        assertFalse(policy.hasThinning());
+        assertEquals(0, policy.excessBytes(1000));
+        assertEquals(500, policy.excessBytes(1500));
+        assertEquals(0, policy.excessCount(10));
+        assertEquals(5, policy.excessCount(15));
+
+        RetentionPolicy unlimited = new RetentionPolicy(0, 0);
+        assertEquals(0, unlimited.excessBytes(Long.MAX_VALUE));
+        assertEquals(0, unlimited.excessCount(Long.MAX_VALUE));
+    }
+}
@@ -0,0 +1,147 @@
+package com.pipiqiang.qcamera.app;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SegmentStoreTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("segment_store").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    private static byte[] photo(int seed, int size) {
+        byte[] data = new byte[size];
+        Arrays.fill(data, (byte) seed);
+        return data;
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] data = new byte[buffer.remaining()];
+        buffer.get(data);
+        return data;
+    }
+
+    @Test
+    public void testAppendAndRead() throws IOException {
+        SegmentStore store = new SegmentStore(dir);
+        store.append("IMG_1.jpg", 1000L, photo(1, 100));
+        store.append("IMG_2.jpg", 2000L, photo(2, 200));
+
+        assertArrayEquals(photo(2, 200), bytes(store.read("IMG_2.jpg")));
+        assertEquals(2000L, store.locate("IMG_2.jpg").timestamp);
+        assertNull(store.read("IMG_3.jpg"));
+        assertEquals(Arrays.asList("IMG_1.jpg", "IMG_2.jpg"), store.names());
+        store.close();
+    }
+
+    @Test
+    public void testReadMapsOnlyTheRecordWhileSegmentGrows() throws IOException {
+        SegmentStore store = new SegmentStore(dir);
+        for (int i = 0; i < 5; i++) {
+            store.append("IMG_" + i + ".jpg", i, photo(i, 100 + i));
+            // 当前段不断增长，之前读出的照片和新照片都只映射自身的数据
+            ByteBuffer first = store.read("IMG_0.jpg");
+            assertEquals(100, first.capacity());
+            assertArrayEquals(photo(0, 100), bytes(first));
+            ByteBuffer latest = store.read("IMG_" + i + ".jpg");
+            assertEquals(100 + i, latest.capacity());
+            assertArrayEquals(photo(i, 100 + i), bytes(latest));
+        }
+        store.close();
+    }
+
+    @Test
+    public void testDeleteSurvivesReopen() throws IOException {
+        SegmentStore store = new SegmentStore(dir);
+        store.append("IMG_1.jpg", 1000L, photo(1, 100));
+        store.append("IMG_2.jpg", 2000L, photo(2, 100));
+        assertEquals(100, store.delete("IMG_1.jpg"));
+        assertEquals(-1, store.delete("IMG_1.jpg"));
+        store.close();
+
+        SegmentStore reopened = new SegmentStore(dir);
+        assertFalse(reopened.contains("IMG_1.jpg"));
+        assertArrayEquals(photo(2, 100), bytes(reopened.read("IMG_2.jpg")));
+        reopened.close();
+    }
+
+    @Test
+    public void testTruncatedTailIsDiscarded() throws IOException {
+        SegmentStore store = new SegmentStore(dir);
+        store.append("IMG_1.jpg", 1000L, photo(1, 100));
+        store.append("IMG_2.jpg", 2000L, photo(2, 100));
+        store.close();
+
+        // 模拟写第二张时被杀：截掉最后几个字节
+        File segment = dir.listFiles()[0];
+        RandomAccessFile raf = new RandomAccessFile(segment, "rw");
+        raf.setLength(raf.length() - 10);
+        raf.close();
+
+        SegmentStore reopened = new SegmentStore(dir);
+        assertTrue(reopened.contains("IMG_1.jpg"));
+        assertFalse(reopened.contains("IMG_2.jpg"));
+        // 新写入覆盖被截断的记录
+        reopened.append("IMG_3.jpg", 3000L, photo(3, 50));
+        reopened.close();
+        SegmentStore again = new SegmentStore(dir);
+        assertArrayEquals(photo(3, 50), bytes(again.read("IMG_3.jpg")));
+        again.close();
+    }
+
+    @Test
+    public void testCompactionReclaimsDeletedEntries() throws IOException {
+        // 每段约放两张照片
+        SegmentStore store = new SegmentStore(dir, 1000);
+        for (int i = 0; i < 8; i++) {
+            store.append("IMG_" + i + ".jpg", i, photo(i, 400));
+        }
+        int segmentsBefore = store.segmentCount();
+        for (int i = 0; i < 6; i++) {
+            store.delete("IMG_" + i + ".jpg");
+        }
+        long totalBefore = store.totalBytes();
+
+        long reclaimed = store.compact(0.5);
+        assertTrue(reclaimed > 0);
+        assertTrue(store.totalBytes() < totalBefore);
+        assertTrue(store.segmentCount() <= segmentsBefore);
+        assertArrayEquals(photo(6, 400), bytes(store.read("IMG_6.jpg")));
+        assertArrayEquals(photo(7, 400), bytes(store.read("IMG_7.jpg")));
+        store.close();
+
+        // 压缩后重建索引，被删除的照片不会复活
+        SegmentStore reopened = new SegmentStore(dir, 1000);
+        assertEquals(Arrays.asList("IMG_6.jpg", "IMG_7.jpg"), reopened.names());
+        assertArrayEquals(photo(7, 400), bytes(reopened.read("IMG_7.jpg")));
+        reopened.close();
+    }
+}
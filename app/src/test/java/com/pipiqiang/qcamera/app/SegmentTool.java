@@ -0,0 +1,122 @@
+package com.pipiqiang.qcamera.app;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * 段存储命令行工具（在电脑上对从存储卡拷出的段目录运行）
+ *   export <段目录> <输出目录>        把段文件还原为普通 JPEG 文件
+ *   bench <工作目录> [张数] [每张KB]   对比普通文件和段存储的写入、读取、删除耗时
+ * 只在电脑上使用，放在测试源码集中，不打包进应用
+ */
+public final class SegmentTool {
+
+    private SegmentTool() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length >= 3 && "export".equals(args[0])) {
+            SegmentStore store = new SegmentStore(new File(args[1]));
+            try {
+                int count = SegmentPhotoStorage.exportAll(store, new File(args[2]));
+                System.out.println("导出 " + count + " 张照片到 " + args[2]);
+            } finally {
+                store.close();
+            }
+        } else if (args.length >= 2 && "bench".equals(args[0])) {
+            int count = args.length >= 3 ? Integer.parseInt(args[2]) : 1000;
+            int sizeKb = args.length >= 4 ? Integer.parseInt(args[3]) : 300;
+            System.out.println(benchmark(new File(args[1]), count, sizeKb * 1024));
+        } else {
+            System.out.println("用法: export <段目录> <输出目录> | bench <工作目录> [张数] [每张KB]");
+        }
+    }
+
+    /**
+     * 分别用普通文件和段存储写入 count 张照片、全部读取一遍、删除一半（段存储再压缩一次），返回耗时报告
+     */
+    public static String benchmark(File workDir, int count, int size) throws IOException {
+        byte[] photo = new byte[size];
+        new Random(42).nextBytes(photo);
+        byte[] readBuffer = new byte[64 * 1024];
+
+        File flatDir = new File(workDir, "flat");
+        if (!flatDir.exists() && !flatDir.mkdirs()) {
+            throw new IOException("无法创建目录: " + flatDir.getAbsolutePath());
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            FileOutputStream out = new FileOutputStream(new File(flatDir, name(i)));
+            try {
+                out.write(photo);
+                out.getFD().sync();
+            } finally {
+                out.close();
+            }
+        }
+        long flatWrite = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            InputStream in = new FileInputStream(new File(flatDir, name(i)));
+            try {
+                while (in.read(readBuffer) != -1) {
+                    // 只计时
+                }
+            } finally {
+                in.close();
+            }
+        }
+        long flatRead = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < count; i += 2) {
+            new File(flatDir, name(i)).delete();
+        }
+        long flatDelete = System.nanoTime() - start;
+
+        File segmentDir = new File(workDir, "segments");
+        SegmentStore store = new SegmentStore(segmentDir);
+        start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            store.append(name(i), i, photo);
+            store.sync();
+        }
+        long segmentWrite = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            ByteBuffer data = store.read(name(i));
+            while (data.hasRemaining()) {
+                data.get(readBuffer, 0, Math.min(readBuffer.length, data.remaining()));
+            }
+        }
+        long segmentRead = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < count; i += 2) {
+            store.delete(name(i));
+        }
+        store.sync();
+        long segmentDelete = System.nanoTime() - start;
+        start = System.nanoTime();
+        long reclaimed = store.compact(0.3);
+        long segmentCompact = System.nanoTime() - start;
+        store.close();
+
+        return String.format(Locale.ROOT,
+                "%d 张 x %d KB\n"
+                        + "普通文件: 写入 %d ms, 读取 %d ms, 删除一半 %d ms\n"
+                        + "段存储:   写入 %d ms, 读取 %d ms, 删除一半 %d ms, 压缩 %d ms (回收 %d MB)",
+                count, size / 1024,
+                flatWrite / 1000000, flatRead / 1000000, flatDelete / 1000000,
+                segmentWrite / 1000000, segmentRead / 1000000, segmentDelete / 1000000,
+                segmentCompact / 1000000, reclaimed / (1024 * 1024));
+    }
+
+    private static String name(int i) {
+        return String.format(Locale.ROOT, "IMG_%06d.jpg", i);
+    }
+}
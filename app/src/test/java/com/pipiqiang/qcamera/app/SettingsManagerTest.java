@@ -0,0 +1,42 @@
+package com.pipiqiang.qcamera.app;
+
+import android.content.Context;
+import androidx.preference.PreferenceManager;
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricTestRunner.class)
+public class SettingsManagerTest {
+
+    private Context ctx;
+
+    @Before
+    public void setUp() {
+        ctx = ApplicationProvider.getApplicationContext();
+        PreferenceManager.getDefaultSharedPreferences(ctx).edit().clear().commit();
+    }
+
+    private int preEventSeconds(String value) {
+        PreferenceManager.getDefaultSharedPreferences(ctx).edit().putString("pre_event_seconds", value).commit();
+        return new SettingsManager(ctx).getPreEventSeconds();
+    }
+
+    @Test
+    public void testPreEventSecondsClampedToBufferCapacity() {
+        assertEquals(10, PreEventRecorder.MAX_SECONDS);
+        assertEquals(3, new SettingsManager(ctx).getPreEventSeconds());
+        // 上限处不截断，超出一秒即按上限
+        assertEquals(10, preEventSeconds("10"));
+        assertEquals(10, preEventSeconds("11"));
+        assertEquals(10, preEventSeconds("60"));
+        assertEquals(1, preEventSeconds("1"));
+        assertEquals(1, preEventSeconds("0"));
+        assertEquals(3, preEventSeconds("abc"));
+    }
+}
@@ -0,0 +1,63 @@
+package com.pipiqiang.qcamera.app;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class SizeBucketPoolTest {
+
+    @Test
+    public void testGetPicksSmallestFittingBucket() {
+        SizeBucketPool<String> pool = new SizeBucketPool<>(10000);
+        pool.put(1000, "small");
+        pool.put(3000, "large");
+
+        assertEquals("small", pool.get(800));
+        // 1000 字节的已被取走，3000 超过 1200 的两倍，不用
+        assertNull(pool.get(1200));
+        assertEquals("large", pool.get(2000));
+        assertEquals(2, pool.hits());
+        assertEquals(1, pool.misses());
+        assertEquals(0, pool.sizeBytes());
+    }
+
+    @Test
+    public void testEvictsLargestWhenOverCapacity() {
+        final List<String> evicted = new ArrayList<>();
+        SizeBucketPool<String> pool = new SizeBucketPool<String>(5000) {
+            @Override
+            protected void onEvicted(String item) {
+                evicted.add(item);
+            }
+        };
+        pool.put(1000, "a");
+        pool.put(3000, "b");
+        pool.put(2000, "c");
+
+        assertEquals(1, evicted.size());
+        assertEquals("b", evicted.get(0));
+        assertEquals(3000, pool.sizeBytes());
+        assertFalse(pool.put(6000, "too big"));
+    }
+
+    @Test
+    public void testResizeAndClear() {
+        SizeBucketPool<String> pool = new SizeBucketPool<>(10000);
+        pool.put(2000, "a");
+        pool.put(2000, "b");
+        pool.put(2000, "c");
+
+        pool.resize(4000);
+        assertEquals(2, pool.count());
+        assertEquals(1, pool.evictions());
+
+        pool.clear();
+        assertEquals(0, pool.count());
+        assertEquals(0, pool.sizeBytes());
+    }
+}
@@ -0,0 +1,69 @@
+package com.pipiqiang.qcamera.app;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StorageForecastTest {
+
+    private static final long HOUR = 60 * 60 * 1000L;
+    private static final long MB = 1024 * 1024L;
+    private static final long START = 1000 * HOUR;
+
+    @Test
+    public void testNoWritesNeverFills() {
+        StorageForecast forecast = new StorageForecast();
+        assertEquals(0.0, forecast.bytesPerHour(START), 0);
+        assertTrue(Double.isInfinite(forecast.hoursToFloor(1000 * MB, 100 * MB, START)));
+        assertEquals(StorageForecast.Action.NONE, forecast.recommend(1000 * MB, 100 * MB, START));
+    }
+
+    @Test
+    public void testRateAndTimeToFloor() {
+        StorageForecast forecast = new StorageForecast();
+        // 10小时内每小时写入 100MB
+        for (int h = 0; h < 10; h++) {
+            forecast.record(START + h * HOUR, 100 * MB);
+        }
+        long now = START + 10 * HOUR;
+        assertEquals(100.0 * MB, forecast.bytesPerHour(now), 1);
+        assertEquals(9.0, forecast.hoursToFloor(1000 * MB, 100 * MB, now), 0.01);
+        assertEquals(StorageForecast.Action.CLEANUP, forecast.recommend(1000 * MB, 100 * MB, now));
+        assertEquals(StorageForecast.Action.DOWNSCALE, forecast.recommend(500 * MB, 100 * MB, now));
+        assertEquals(StorageForecast.Action.STRETCH_INTERVAL, forecast.recommend(250 * MB, 100 * MB, now));
+        assertEquals(StorageForecast.Action.NONE, forecast.recommend(3000 * MB, 100 * MB, now));
+        // 保持24小时余量：需要 2400MB，目前只有 900MB
+        assertEquals(1500 * MB, forecast.bytesToFreeForHorizon(1000 * MB, 100 * MB, now));
+    }
+
+    @Test
+    public void testOldBucketsExpire() {
+        StorageForecast forecast = new StorageForecast();
+        forecast.record(START, 2400 * MB);
+        long now = START + 30 * HOUR;
+        forecast.record(now, 24 * MB);
+        // 30小时前的写入已移出24小时窗口
+        assertEquals(1.0 * MB, forecast.bytesPerHour(now), 1);
+    }
+
+    @Test
+    public void testEncodeAndRestoreKeepsRate() {
+        StorageForecast forecast = new StorageForecast();
+        for (int h = 0; h < 5; h++) {
+            forecast.record(START + h * HOUR, 50 * MB);
+        }
+        long now = START + 5 * HOUR;
+        StorageForecast restored = new StorageForecast();
+        restored.restore(forecast.encode());
+        assertEquals(forecast.bytesPerHour(now), restored.bytesPerHour(now), 1);
+
+        // 格式错误时保持为空
+        StorageForecast broken = new StorageForecast();
+        broken.restore("abc;1:x");
+        assertEquals(0.0, broken.bytesPerHour(now), 0);
+        StorageForecast empty = new StorageForecast();
+        empty.restore(new StorageForecast().encode());
+        assertEquals(0.0, empty.bytesPerHour(now), 0);
+    }
+}
@@ -0,0 +1,34 @@
+package com.pipiqiang.qcamera.app;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class StorageWatermarksTest {
+
+    private static final long MB = 1024L * 1024L;
+
+    @Test
+    public void testClassify() {
+        StorageWatermarks watermarks = StorageWatermarks.ofMegabytes(100, 200);
+        assertEquals(300 * MB, watermarks.getSoftBytes());
+        assertEquals(StorageWatermarks.Level.OK, watermarks.classify(300 * MB));
+        assertEquals(StorageWatermarks.Level.SOFT, watermarks.classify(300 * MB - 1));
+        assertEquals(StorageWatermarks.Level.SOFT, watermarks.classify(100 * MB));
+        assertEquals(StorageWatermarks.Level.HARD, watermarks.classify(100 * MB - 1));
+    }
+
+    @Test
+    public void testBytesToFreeRefillsToSoftWatermark() {
+        StorageWatermarks watermarks = StorageWatermarks.ofMegabytes(100, 200);
+        assertEquals(0, watermarks.bytesToFree(500 * MB));
+        assertEquals(250 * MB, watermarks.bytesToFree(50 * MB));
+    }
+
+    @Test
+    public void testZeroMarginCollapsesToHardFloor() {
+        StorageWatermarks watermarks = StorageWatermarks.ofMegabytes(100, 0);
+        assertEquals(StorageWatermarks.Level.OK, watermarks.classify(100 * MB));
+        assertEquals(StorageWatermarks.Level.HARD, watermarks.classify(100 * MB - 1));
+    }
+}
@@ -0,0 +1,78 @@
+package com.pipiqiang.qcamera.app;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ThumbnailDiskCacheTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("thumbnail_cache").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void testKeyChangesWithSizeAndModification() {
+        String key = ThumbnailDiskCache.keyFor("/a.jpg", 200, 1000, 5000);
+        assertEquals(key, ThumbnailDiskCache.keyFor("/a.jpg", 200, 1000, 5000));
+        assertFalse(key.equals(ThumbnailDiskCache.keyFor("/a.jpg", 300, 1000, 5000)));
+        assertFalse(key.equals(ThumbnailDiskCache.keyFor("/a.jpg", 200, 800, 5000)));
+        assertFalse(key.equals(ThumbnailDiskCache.keyFor("/a.jpg", 200, 1000, 6000)));
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() throws IOException {
+        ThumbnailDiskCache cache = new ThumbnailDiskCache(dir, 250);
+        cache.put("a", new byte[100]);
+        cache.put("b", new byte[100]);
+        // 访问 a 后 b 成为最久未使用
+        assertNotNull(cache.get("a"));
+        cache.put("c", new byte[100]);
+
+        assertTrue(cache.contains("a"));
+        assertFalse(cache.contains("b"));
+        assertTrue(cache.contains("c"));
+        assertEquals(200, cache.sizeBytes());
+        assertFalse(new File(dir, "b.jpg").exists());
+    }
+
+    @Test
+    public void testSurvivesReopenInUsageOrder() throws IOException {
+        ThumbnailDiskCache cache = new ThumbnailDiskCache(dir, 1000);
+        cache.put("old", new byte[100]);
+        cache.put("new", new byte[100]);
+        new File(dir, "old.jpg").setLastModified(1000000L);
+        new File(dir, "new.jpg").setLastModified(2000000L);
+        // 残留的临时文件在打开时清掉
+        Files.write(new File(dir, "partial.tmp").toPath(), new byte[10]);
+
+        ThumbnailDiskCache reopened = new ThumbnailDiskCache(dir, 150);
+        assertEquals(1, reopened.count());
+        assertNull(reopened.get("old"));
+        assertNotNull(reopened.get("new"));
+        assertFalse(new File(dir, "partial.tmp").exists());
+    }
+}
@@ -0,0 +1,55 @@
+package com.pipiqiang.qcamera.app;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TrashWindowTest {
+
+    private static final List<String> PATHS = Arrays.asList("/a.jpg", "/b.jpg");
+
+    @Test
+    public void testUndoWithinWindow() {
+        TrashWindow window = new TrashWindow(5000);
+        long ticket = window.add(PATHS, 1000);
+        assertEquals(PATHS, window.undo(ticket, 5999));
+        // 撤销后到期删除不再生效
+        assertNull(window.take(ticket));
+        assertEquals(0, window.pendingCount());
+    }
+
+    @Test
+    public void testUndoAfterDeadlineFails() {
+        TrashWindow window = new TrashWindow(5000);
+        long ticket = window.add(PATHS, 1000);
+        assertNull(window.undo(ticket, 6000));
+        assertTrue(window.isPending(ticket));
+        assertEquals(PATHS, window.take(ticket));
+        assertFalse(window.isPending(ticket));
+    }
+
+    @Test
+    public void testTicketsAreUniqueWithinSameMillisecond() {
+        TrashWindow window = new TrashWindow(5000);
+        long first = window.add(PATHS, 1000);
+        long second = window.add(PATHS, 1000);
+        assertTrue(second > first);
+        assertEquals(2, window.pendingCount());
+    }
+
+    @Test
+    public void testImmediateTicketsDoNotEnterWindow() {
+        TrashWindow window = new TrashWindow(5000);
+        long pending = window.add(PATHS, 1000);
+        long immediate = window.nextTicket(1000);
+        assertTrue(immediate > pending);
+        assertFalse(window.isPending(immediate));
+        assertEquals(1, window.pendingCount());
+    }
+}
@@ -0,0 +1,84 @@
+package com.pipiqiang.qcamera.app;
+
+import android.media.Image;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+public class YuvBurstProcessorTest {
+
+    private static final class RecordingListener implements YuvBurstProcessor.Listener {
+        int processed;
+        Exception failure;
+
+        @Override
+        public void onProcessed(File photo, long sensorTimestamp) {
+            processed++;
+        }
+
+        @Override
+        public void onProcessFailed(Exception e) {
+            failure = e;
+        }
+    }
+
+    private static YuvBurstProcessor processor() {
+        return new YuvBurstProcessor("YuvBurstProcessorTest", 4, 4, 2) {
+            @Override
+            protected void merge(short[][] frames, int frameCount, int width, int height, short[] out) {
+            }
+        };
+    }
+
+    private static Image frame(int width, int height, long timestamp) {
+        Image image = mock(Image.class);
+        when(image.getWidth()).thenReturn(width);
+        when(image.getHeight()).thenReturn(height);
+        when(image.getTimestamp()).thenReturn(timestamp);
+        return image;
+    }
+
+    @Test
+    public void testSizeMismatchReportsFailureAndReleasesBuffers() {
+        YuvBurstProcessor processor = processor();
+        RecordingListener listener = new RecordingListener();
+        assertTrue(processor.begin(new File("unused.jpg"), listener));
+        processor.expect(100L);
+
+        assertTrue(processor.offer(frame(8, 4, 100L)));
+        assertTrue(listener.failure != null);
+        assertEquals(0, listener.processed);
+        assertFalse(processor.isBusy());
+
+        // 下一次连拍可以正常开始
+        RecordingListener next = new RecordingListener();
+        assertTrue(processor.begin(new File("unused.jpg"), next));
+        processor.cancel();
+        assertNull(next.failure);
+    }
+
+    @Test
+    public void testUnexpectedFrameIsIgnored() {
+        YuvBurstProcessor processor = processor();
+        RecordingListener listener = new RecordingListener();
+        assertTrue(processor.begin(new File("unused.jpg"), listener));
+        processor.expect(100L);
+
+        // 重复请求的帧（时间戳不在连拍中）不影响本次连拍
+        assertFalse(processor.offer(frame(8, 4, 200L)));
+        assertNull(listener.failure);
+        assertTrue(processor.isBusy());
+        processor.cancel();
+    }
+}
@@ -0,0 +1,86 @@
+package com.pipiqiang.qcamera.app;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class YuvUtilsTest {
+
+    private static byte[] bytes(int... values) {
+        byte[] data = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            data[i] = (byte) values[i];
+        }
+        return data;
+    }
+
+    private static byte[] rotate(byte[] src, int width, int height) {
+        byte[] dst = new byte[YuvUtils.nv21Size(height, width)];
+        YuvUtils.rotateNv21Clockwise(src, dst, width, height);
+        return dst;
+    }
+
+    @Test
+    public void testRotateEvenDimensions() {
+        // 4x2：亮度两行，色度一行两个 VU 对
+        byte[] src = bytes(1, 2, 3, 4,
+                5, 6, 7, 8,
+                10, 11, 12, 13);
+        // 2x4：左下角转到左上角，色度对变为两行
+        byte[] expected = bytes(5, 1,
+                6, 2,
+                7, 3,
+                8, 4,
+                10, 11,
+                12, 13);
+        assertArrayEquals(expected, rotate(src, 4, 2));
+    }
+
+    @Test
+    public void testRotateOddWidth() {
+        // 3x2：色度宽度向上取整为两个 VU 对
+        byte[] src = bytes(1, 2, 3,
+                4, 5, 6,
+                10, 11, 12, 13);
+        assertEquals(src.length, YuvUtils.nv21Size(3, 2));
+        byte[] expected = bytes(4, 1,
+                5, 2,
+                6, 3,
+                10, 11,
+                12, 13);
+        assertArrayEquals(expected, rotate(src, 3, 2));
+    }
+
+    @Test
+    public void testRotateOddHeight() {
+        // 2x3：色度两行各一个 VU 对，旋转后成为一行两个
+        byte[] src = bytes(1, 2,
+                3, 4,
+                5, 6,
+                10, 11,
+                12, 13);
+        byte[] expected = bytes(5, 3, 1,
+                6, 4, 2,
+                12, 13, 10, 11);
+        assertArrayEquals(expected, rotate(src, 2, 3));
+    }
+
+    @Test
+    public void testFourRotationsRestoreOriginal() {
+        int width = 6;
+        int height = 4;
+        byte[] src = new byte[YuvUtils.nv21Size(width, height)];
+        for (int i = 0; i < src.length; i++) {
+            src[i] = (byte) i;
+        }
+        byte[] data = src;
+        for (int i = 0; i < 4; i++) {
+            data = rotate(data, width, height);
+            int swap = width;
+            width = height;
+            height = swap;
+        }
+        assertArrayEquals(src, data);
+    }
+}
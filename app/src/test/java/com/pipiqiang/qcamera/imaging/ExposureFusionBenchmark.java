@@ -0,0 +1,86 @@
+package com.pipiqiang.qcamera.imaging;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 曝光融合内核的JMH基准（2MP / 12MP，三帧包围曝光）
+ * 运行：在IDE中执行 main，或将测试类路径交给 JMH Runner
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ExposureFusionBenchmark {
+
+    @Param({"1632x1224", "4000x3000"})
+    public String size;
+
+    private int width;
+    private int height;
+    private short[][] frames;
+    private short[] out;
+    private ForkJoinPool pool;
+    private ExposureFusion fusion;
+
+    @Setup
+    public void setUp() {
+        String[] parts = size.split("x");
+        width = Integer.parseInt(parts[0]);
+        height = Integer.parseInt(parts[1]);
+        int length = width * height * 3 / 2;
+        frames = new short[3][length];
+        out = new short[length];
+        Random random = new Random(42);
+        int[] bias = {-60, 0, 60};
+        for (int f = 0; f < 3; f++) {
+            for (int i = 0; i < width * height; i++) {
+                int base = (i % width) * 255 / width + random.nextInt(16) + bias[f];
+                frames[f][i] = (short) Math.max(0, Math.min(255, base));
+            }
+            for (int i = width * height; i < length; i++) {
+                frames[f][i] = (short) (120 + random.nextInt(16));
+            }
+        }
+        pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        fusion = new ExposureFusion(pool);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public short[] fuse() {
+        fusion.fuseNv21(frames, 3, width, height, out);
+        return out;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ExposureFusionBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
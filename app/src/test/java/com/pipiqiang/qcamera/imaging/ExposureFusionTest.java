@@ -0,0 +1,88 @@
+package com.pipiqiang.qcamera.imaging;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ExposureFusionTest {
+
+    private static final int W = 96;
+    private static final int H = 64;
+
+    private static short[] flat(int luma) {
+        short[] frame = new short[W * H * 3 / 2];
+        Arrays.fill(frame, 0, W * H, (short) luma);
+        Arrays.fill(frame, W * H, frame.length, (short) 128);
+        return frame;
+    }
+
+    @Test
+    public void testIdenticalFramesAreUnchanged() {
+        ExposureFusion fusion = new ExposureFusion(new ForkJoinPool(2), 8, 32);
+        short[] frame = flat(90);
+        for (int i = 0; i < W * H; i += 7) {
+            frame[i] = (short) (i % 256);
+        }
+        short[][] frames = {frame, frame.clone(), frame.clone()};
+        short[] out = new short[frame.length];
+        fusion.fuseNv21(frames, 3, W, H, out);
+        for (int i = 0; i < out.length; i++) {
+            assertEquals(frame[i], out[i]);
+        }
+    }
+
+    @Test
+    public void testPrefersWellExposedFrame() {
+        ExposureFusion fusion = new ExposureFusion(new ForkJoinPool(2), 8, 32);
+        short[][] frames = {flat(10), flat(128), flat(245)};
+        short[] out = new short[frames[0].length];
+        fusion.fuseNv21(frames, 3, W, H, out);
+        // 中间曝光占主导，结果接近128
+        assertTrue("fused luma " + out[W * H / 2], Math.abs(out[W * H / 2] - 128) < 20);
+        assertEquals(128, out[out.length - 1]);
+    }
+
+    @Test
+    public void testRegionsTakeTheirBestExposure() {
+        ExposureFusion fusion = new ExposureFusion(new ForkJoinPool(2), 8, 32);
+        // 左半边在短曝光中曝光适度，右半边在长曝光中曝光适度
+        short[] shortExposure = flat(0);
+        short[] longExposure = flat(0);
+        for (int y = 0; y < H; y++) {
+            for (int x = 0; x < W; x++) {
+                boolean left = x < W / 2;
+                shortExposure[y * W + x] = (short) (left ? 120 : 5);
+                longExposure[y * W + x] = (short) (left ? 250 : 130);
+            }
+        }
+        short[][] frames = {shortExposure, longExposure};
+        short[] out = new short[shortExposure.length];
+        fusion.fuseNv21(frames, 2, W, H, out);
+        int leftValue = out[(H / 2) * W + 8];
+        int rightValue = out[(H / 2) * W + W - 8];
+        assertTrue("left " + leftValue, Math.abs(leftValue - 120) < 25);
+        assertTrue("right " + rightValue, Math.abs(rightValue - 130) < 25);
+    }
+
+    @Test
+    public void testOpposingGradientsCountAsDetail() {
+        ExposureFusion fusion = new ExposureFusion(new ForkJoinPool(2), 8, 32);
+        // 右边的像素更亮、下边的像素更暗：两个梯度符号相反，块均值与平坦帧相同
+        short[] textured = flat(128);
+        for (int y = 0; y < H; y++) {
+            for (int x = 0; x < W; x++) {
+                textured[y * W + x] = (short) (128 + 40 * (x % 2) - 40 * (y % 2));
+            }
+        }
+        short[][] frames = {textured, flat(128)};
+        short[] out = new short[textured.length];
+        fusion.fuseNv21(frames, 2, W, H, out);
+        // 有细节的帧权重更高，结果接近它而不是两帧的平均值（148）
+        int value = out[(H / 2) * W + 9];
+        assertTrue("fused luma " + value, value > 155);
+    }
+}
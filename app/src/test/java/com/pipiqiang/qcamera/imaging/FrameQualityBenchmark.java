@@ -0,0 +1,66 @@
+package com.pipiqiang.qcamera.imaging;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 帧质量分析的JMH基准：480宽的解码结果逐像素分析，以及12MP亮度平面按步长采样
+ * 运行：在IDE中执行 main，或将测试类路径交给 JMH Runner
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FrameQualityBenchmark {
+
+    @Param({"480x360:1", "4000x3000:8"})
+    public String config;
+
+    private int width;
+    private int height;
+    private int step;
+    private byte[] luma;
+    private FrameQuality quality;
+
+    @Setup
+    public void setUp() {
+        String[] parts = config.split("[x:]");
+        width = Integer.parseInt(parts[0]);
+        height = Integer.parseInt(parts[1]);
+        step = Integer.parseInt(parts[2]);
+        luma = new byte[width * height];
+        new Random(42).nextBytes(luma);
+        quality = new FrameQuality();
+    }
+
+    @Benchmark
+    public float analyze() {
+        quality.analyze(luma, 0, width, width, height, step);
+        return quality.getSharpness();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(FrameQualityBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,71 @@
+package com.pipiqiang.qcamera.imaging;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FrameQualityTest {
+
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+    private static final FrameQuality.Thresholds THRESHOLDS = new FrameQuality.Thresholds(20, 0.6f, 20f);
+
+    private static byte[] texture(int bias, int contrast, long seed) {
+        byte[] luma = new byte[WIDTH * HEIGHT];
+        Random random = new Random(seed);
+        for (int i = 0; i < luma.length; i++) {
+            int v = bias + random.nextInt(contrast + 1) - contrast / 2;
+            luma[i] = (byte) Math.max(0, Math.min(255, v));
+        }
+        return luma;
+    }
+
+    @Test
+    public void testHistogramAndVerdicts() {
+        FrameQuality quality = new FrameQuality();
+
+        quality.analyze(texture(128, 80, 1), 0, WIDTH, WIDTH, HEIGHT, 1);
+        assertEquals(WIDTH * HEIGHT, sum(quality.getHistogram()));
+        assertEquals(128, quality.getMeanLuma(), 2);
+        assertEquals(FrameQuality.Verdict.OK, quality.evaluate(THRESHOLDS));
+
+        quality.analyze(texture(5, 6, 2), 0, WIDTH, WIDTH, HEIGHT, 1);
+        assertEquals(FrameQuality.Verdict.DARK, quality.evaluate(THRESHOLDS));
+        assertTrue(quality.getDarkRatio() > 0.99f);
+
+        quality.analyze(texture(252, 6, 3), 0, WIDTH, WIDTH, HEIGHT, 1);
+        assertEquals(FrameQuality.Verdict.OVEREXPOSED, quality.evaluate(THRESHOLDS));
+    }
+
+    @Test
+    public void testFlatFrameIsBlurredAndTextureIsSharp() {
+        FrameQuality quality = new FrameQuality();
+        byte[] flat = new byte[WIDTH * HEIGHT];
+        for (int i = 0; i < flat.length; i++) {
+            flat[i] = (byte) (100 + (i % WIDTH) / 64); // 平缓渐变，几乎没有高频
+        }
+        quality.analyze(flat, 0, WIDTH, WIDTH, HEIGHT, 2);
+        assertEquals(FrameQuality.Verdict.BLURRED, quality.evaluate(THRESHOLDS));
+
+        quality.analyze(texture(128, 80, 4), 0, WIDTH, WIDTH, HEIGHT, 2);
+        assertTrue(quality.getSharpness() > 100f);
+    }
+
+    @Test
+    public void testStepSamplesSubGrid() {
+        FrameQuality quality = new FrameQuality();
+        quality.analyze(texture(128, 80, 5), 0, WIDTH, WIDTH, HEIGHT, 4);
+        assertEquals((WIDTH / 4) * (HEIGHT / 4), sum(quality.getHistogram()));
+    }
+
+    private static int sum(int[] histogram) {
+        int total = 0;
+        for (int n : histogram) {
+            total += n;
+        }
+        return total;
+    }
+}
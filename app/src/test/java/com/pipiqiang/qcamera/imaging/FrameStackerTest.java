@@ -0,0 +1,76 @@
+package com.pipiqiang.qcamera.imaging;
+
+import org.junit.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+
+public class FrameStackerTest {
+
+    private static final int W = 64;
+    private static final int H = 48;
+
+    // 带纹理的测试图案，frame(x, y) = pattern(x - sx, y - sy)
+    private static short[] pattern(int sx, int sy) {
+        short[] plane = new short[W * H * 3 / 2];
+        for (int y = 0; y < H; y++) {
+            for (int x = 0; x < W; x++) {
+                int px = x - sx;
+                int py = y - sy;
+                plane[y * W + x] = (short) (((px * 7 + py * 13) ^ (px * py)) & 0xFF);
+            }
+        }
+        for (int i = W * H; i < plane.length; i++) {
+            plane[i] = 128;
+        }
+        return plane;
+    }
+
+    @Test
+    public void testEstimateShiftRecoversTranslation() {
+        short[] ref = pattern(0, 0);
+        short[] moved = pattern(3, -2);
+        int[] shift = FrameStacker.estimateShift(ref, moved, 0, W, H, 8);
+        assertEquals(3, shift[0]);
+        assertEquals(-2, shift[1]);
+    }
+
+    @Test
+    public void testMeanAndMedianMerge() {
+        FrameStacker stacker = new FrameStacker(new ForkJoinPool(2), 16);
+        short[][] frames = new short[3][W * H * 3 / 2];
+        for (int i = 0; i < frames[0].length; i++) {
+            frames[0][i] = 100;
+            frames[1][i] = 110;
+            frames[2][i] = 120;
+        }
+        // 单帧异常值：中值不受影响
+        frames[2][5] = 250;
+
+        short[] mean = new short[frames[0].length];
+        stacker.mergeNv21(frames, 3, W, H, false, 0, FrameStacker.Mode.MEAN, mean);
+        assertEquals(110, mean[0]);
+        assertEquals(153, mean[5]);
+        assertEquals(110, mean[W * H + 1]);
+
+        short[] median = new short[frames[0].length];
+        stacker.mergeNv21(frames, 3, W, H, false, 0, FrameStacker.Mode.MEDIAN, median);
+        assertEquals(110, median[5]);
+        assertEquals(110, median[median.length - 1]);
+    }
+
+    @Test
+    public void testAlignedMergeOfShiftedFramesMatchesReference() {
+        FrameStacker stacker = new FrameStacker(new ForkJoinPool(2), 16);
+        short[][] frames = {pattern(0, 0), pattern(2, 4), pattern(-4, 2)};
+        short[] out = new short[frames[0].length];
+        stacker.mergeNv21(frames, 3, W, H, true, 8, FrameStacker.Mode.MEDIAN, out);
+        // 远离边缘的区域与参考帧一致
+        for (int y = 8; y < H - 8; y++) {
+            for (int x = 8; x < W - 8; x++) {
+                assertEquals(frames[0][y * W + x], out[y * W + x]);
+            }
+        }
+    }
+}
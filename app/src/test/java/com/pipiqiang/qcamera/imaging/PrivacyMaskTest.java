@@ -0,0 +1,78 @@
+package com.pipiqiang.qcamera.imaging;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PrivacyMaskTest {
+
+    private static final int WIDTH = 16;
+    private static final int HEIGHT = 8;
+
+    private static byte[] grayFrame() {
+        byte[] nv21 = new byte[WIDTH * HEIGHT * 3 / 2];
+        Arrays.fill(nv21, (byte) 200);
+        return nv21;
+    }
+
+    @Test
+    public void testParseAcceptsRectsAndPolygons() {
+        List<float[]> polygons = PrivacyMask.parse("rect:0.1,0.2,0.5,0.6; poly:0,0,1,0,0.5,1; rect:0.5,0.5,0.2,0.2; bad");
+        assertEquals(2, polygons.size());
+        assertEquals(8, polygons.get(0).length);
+        assertEquals(6, polygons.get(1).length);
+    }
+
+    @Test
+    public void testRectFillsLumaAndChromaSpans() {
+        // 左半部分的上半部分：亮度 x∈[0,8)，y∈[0,4)
+        PrivacyMask mask = PrivacyMask.compile(PrivacyMask.parse("rect:0,0,0.5,0.5"), WIDTH, HEIGHT);
+        byte[] nv21 = grayFrame();
+        mask.applyNv21(nv21);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                boolean inside = x < 8 && y < 4;
+                assertEquals("(" + x + "," + y + ")", inside ? 0 : (byte) 200, nv21[y * WIDTH + x]);
+            }
+        }
+        int chroma = WIDTH * HEIGHT;
+        for (int cy = 0; cy < HEIGHT / 2; cy++) {
+            for (int i = 0; i < WIDTH; i++) {
+                boolean inside = i < 8 && cy < 2;
+                assertEquals(inside ? (byte) 128 : (byte) 200, nv21[chroma + cy * WIDTH + i]);
+            }
+        }
+    }
+
+    @Test
+    public void testTriangleSpansNarrowTowardsApex() {
+        PrivacyMask mask = PrivacyMask.compile(PrivacyMask.parse("poly:0,0,1,0,0.5,1"), WIDTH, HEIGHT);
+        byte[] nv21 = grayFrame();
+        mask.applyNv21(nv21);
+        int previous = WIDTH + 1;
+        for (int y = 0; y < HEIGHT; y++) {
+            int covered = 0;
+            for (int x = 0; x < WIDTH; x++) {
+                if (nv21[y * WIDTH + x] == 0) {
+                    covered++;
+                }
+            }
+            assertTrue(covered <= previous);
+            previous = covered;
+        }
+        assertEquals(0, nv21[WIDTH / 2]);                     // 首行中点被遮挡
+        assertEquals((byte) 200, nv21[(HEIGHT - 1) * WIDTH]); // 末行边缘未遮挡
+    }
+
+    @Test
+    public void testRotationMapsPhotoCoordinatesToSensor() {
+        // 照片顺时针旋转90度：照片左上角对应传感器左下角
+        float[] sensor = PrivacyMask.toSensorCoordinates(new float[]{0f, 0f, 1f, 0.25f}, 90);
+        assertArrayEquals(new float[]{0f, 1f, 0.25f, 0f}, sensor, 1e-6f);
+    }
+}